@@ -0,0 +1,278 @@
+/* 
+ *  COPYRIGHT (c) 2008-2009 by Institute of Computer Science, 
+ *  Foundation for Research and Technology - Hellas
+ *  Contact: 
+ *      POBox 1385, Heraklio Crete, GR-700 13 GREECE
+ *      Tel:+30-2810-391632
+ *      Fax: +30-2810-391638
+ *      E-mail: isl@ics.forth.gr
+ *      http://www.ics.forth.gr/isl
+ *
+ *   Authors  :  Dimitris Andreou, Nelly Vouzoukidou.
+ *
+ *   This file is part of SWKM model APIs (see also http://athena.ics.forth.gr:9090/SWKM/).
+ *
+ *    SWKM model APIs is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU Lesser General Public License as published by
+ *    the Free Software Foundation, either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *   SWKM model APIs is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Lesser General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Lesser General Public License
+ *   along with SWKM model APIs.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ *   SWKM has been partially supported by EU project KP-Lab (IP IST-27490) kp-lab.org
+ */
+
+
+package gr.forth.ics.swkm.model2;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.Lists;
+import com.google.common.collect.MapMaker;
+import com.google.common.collect.Sets;
+import gr.forth.ics.swkm.model2.index.ModelIndexer;
+import gr.forth.ics.swkm.model2.index.ObjectViewSupport;
+import gr.forth.ics.swkm.model2.vocabulary.RdfSchema;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * An ObjectViewSupport that caches the transitive ancestors and descendants of classes and properties,
+ * and delegates everything else to another one.
+ *
+ * <p>The closure of a resource is computed the first time it is asked, and is kept (as an immutable set)
+ * until a {@code rdfs:subClassOf} or {@code rdfs:subPropertyOf} triple that affects it is
+ * {@linkplain #tripleChanged(Triple) added or deleted}. Ancestry queries are answered from a cached closure,
+ * if there is one, or else by a bidirectional search, that does not need to compute any closure.
+ *
+ * <p>Closures may be computed concurrently by readers of the model, while invalidations are expected
+ * to happen only while the model is being modified, i.e. under its write lock.
+ */
+class ClosureCachingObjectViewSupport implements ObjectViewSupport {
+    private final ModelImpl model;
+    private final ModelIndexer indexer;
+    private final ObjectViewSupport delegate;
+
+    private final Hierarchy classes = new Hierarchy(RdfSchema.SUBCLASSOF);
+    private final Hierarchy properties = new Hierarchy(RdfSchema.SUBPROPERTYOF);
+
+    ClosureCachingObjectViewSupport(ModelImpl model, ModelIndexer indexer, ObjectViewSupport delegate) {
+        this.model = model;
+        this.indexer = indexer;
+        this.delegate = delegate;
+    }
+
+    /**
+     * Invalidates the closures that may be affected by the addition or deletion of the specified triple,
+     * which must already be reflected in the indexer. Triples of any other predicate than
+     * {@code rdfs:subClassOf} and {@code rdfs:subPropertyOf} are ignored.
+     */
+    void tripleChanged(Triple triple) {
+        Uri predicate = triple.predicate().getUri();
+        if (classes.isaProperty.equals(predicate)) {
+            classes.invalidate(triple);
+        } else if (properties.isaProperty.equals(predicate)) {
+            properties.invalidate(triple);
+        }
+    }
+
+    private Hierarchy hierarchyFor(Resource schemaResource) {
+        return schemaResource.type().isProperty() ? properties : classes;
+    }
+
+    public Iterable<? extends RdfNode> findAncestors(Resource schemaResource, Transitively transitively) {
+        if (transitively == Transitively.NO) {
+            return delegate.findAncestors(schemaResource, transitively);
+        }
+        return hierarchyFor(schemaResource).closure(schemaResource, true);
+    }
+
+    public Iterable<? extends RdfNode> findDescendants(Resource schemaResource, Transitively transitively) {
+        if (transitively == Transitively.NO) {
+            return delegate.findDescendants(schemaResource, transitively);
+        }
+        return hierarchyFor(schemaResource).closure(schemaResource, false);
+    }
+
+    public boolean isFirstAncestorOfSecond(Resource maybeAncestor, Resource maybeDescendant) {
+        if (maybeAncestor == maybeDescendant) {
+            return true;
+        }
+        Hierarchy hierarchy = hierarchyFor(maybeAncestor);
+        Set<RdfNode> closure = hierarchy.descendants.get(maybeAncestor);
+        if (closure != null) {
+            return closure.contains(maybeDescendant);
+        }
+        closure = hierarchy.ancestors.get(maybeDescendant);
+        if (closure != null) {
+            return closure.contains(maybeAncestor);
+        }
+        return hierarchy.isReachable(maybeDescendant, maybeAncestor);
+    }
+
+    public Iterable<? extends RdfNode> findIndividuals(Resource clazz) {
+        return delegate.findIndividuals(clazz);
+    }
+
+    public Iterable<? extends RdfNode> findPropertiesWithDomain(Resource domainClass) {
+        return delegate.findPropertiesWithDomain(domainClass);
+    }
+
+    public Iterable<? extends RdfNode> findPropertiesWithRange(Resource rangeClass) {
+        return delegate.findPropertiesWithRange(rangeClass);
+    }
+
+    public Iterable<? extends RdfNode> findMetaclassesOfClass(Resource clazz) {
+        return delegate.findMetaclassesOfClass(clazz);
+    }
+
+    public Iterable<? extends RdfNode> findMetapropertiesOfProperty(Resource property) {
+        return delegate.findMetapropertiesOfProperty(property);
+    }
+
+    public Triples findPropertyInstances(Resource property) {
+        return delegate.findPropertyInstances(property);
+    }
+
+    public Iterable<? extends RdfNode> findClassesOfIndividual(ObjectNode individual) {
+        return delegate.findClassesOfIndividual(individual);
+    }
+
+    public Iterable<? extends RdfNode> findClassesOfMetaclass(Resource metaclass) {
+        return delegate.findClassesOfMetaclass(metaclass);
+    }
+
+    public Iterable<? extends RdfNode> findPropertiesOfMetaproperty(Resource metaproperty) {
+        return delegate.findPropertiesOfMetaproperty(metaproperty);
+    }
+
+    public Iterable<? extends RdfNode> findDomainsOfProperty(Resource property) {
+        return delegate.findDomainsOfProperty(property);
+    }
+
+    public Iterable<? extends RdfNode> findRangesOfProperty(Resource property) {
+        return delegate.findRangesOfProperty(property);
+    }
+
+    public Iterable<? extends RdfNode> findMembersOfContainer(ObjectNode container) {
+        return delegate.findMembersOfContainer(container);
+    }
+
+    /**
+     * The cached closures of a transitive property, upward (ancestors) and downward (descendants).
+     * Nodes are weakly referenced as keys, so that deleted nodes do not remain in the cache.
+     */
+    private class Hierarchy {
+        final Uri isaProperty;
+        final ConcurrentMap<RdfNode, ImmutableSet<RdfNode>> ancestors = new MapMaker().weakKeys().makeMap();
+        final ConcurrentMap<RdfNode, ImmutableSet<RdfNode>> descendants = new MapMaker().weakKeys().makeMap();
+
+        Hierarchy(Uri isaProperty) {
+            this.isaProperty = isaProperty;
+        }
+
+        Set<RdfNode> closure(Resource root, boolean upward) {
+            ConcurrentMap<RdfNode, ImmutableSet<RdfNode>> closures = upward ? ancestors : descendants;
+            ImmutableSet<RdfNode> closure = closures.get(root);
+            if (closure == null) {
+                Resource property = model.mapResource(isaProperty);
+                Set<RdfNode> visited = Sets.newHashSet();
+                List<RdfNode> reached = Lists.newArrayList();
+                List<RdfNode> frontier = Lists.<RdfNode>newArrayList(root);
+                while (!frontier.isEmpty()) {
+                    List<RdfNode> next = Lists.newArrayList();
+                    for (RdfNode node : frontier) {
+                        for (Iterator<Triple> i = findDirect(node, property, upward); i.hasNext(); ) {
+                            RdfNode relative = relative(i.next(), upward);
+                            if (visited.add(relative)) {
+                                reached.add(relative);
+                                next.add(relative);
+                            }
+                        }
+                    }
+                    frontier = next;
+                }
+                closure = ImmutableSet.copyOf(reached);
+                closures.put(root, closure);
+            }
+            return closure;
+        }
+
+        /**
+         * Searches a path from the descendant up to the ancestor, expanding each time the smaller
+         * of the two frontiers, until they meet.
+         */
+        boolean isReachable(Resource descendant, Resource ancestor) {
+            Resource property = model.mapResource(isaProperty);
+            Set<RdfNode> visitedUpward = Sets.<RdfNode>newHashSet(descendant);
+            Set<RdfNode> visitedDownward = Sets.<RdfNode>newHashSet(ancestor);
+            List<RdfNode> upwardFrontier = Lists.<RdfNode>newArrayList(descendant);
+            List<RdfNode> downwardFrontier = Lists.<RdfNode>newArrayList(ancestor);
+            while (!upwardFrontier.isEmpty() && !downwardFrontier.isEmpty()) {
+                boolean upward = upwardFrontier.size() <= downwardFrontier.size();
+                List<RdfNode> frontier = upward ? upwardFrontier : downwardFrontier;
+                Set<RdfNode> visited = upward ? visitedUpward : visitedDownward;
+                Set<RdfNode> target = upward ? visitedDownward : visitedUpward;
+                List<RdfNode> next = Lists.newArrayList();
+                for (RdfNode node : frontier) {
+                    for (Iterator<Triple> i = findDirect(node, property, upward); i.hasNext(); ) {
+                        RdfNode relative = relative(i.next(), upward);
+                        if (target.contains(relative)) {
+                            return true;
+                        }
+                        if (visited.add(relative)) {
+                            next.add(relative);
+                        }
+                    }
+                }
+                if (upward) {
+                    upwardFrontier = next;
+                } else {
+                    downwardFrontier = next;
+                }
+            }
+            return false;
+        }
+
+        private Iterator<Triple> findDirect(RdfNode node, Resource property, boolean upward) {
+            if (upward) {
+                if (!node.isObjectNode()) {
+                    return Iterators.emptyIterator();
+                }
+                return indexer.findTriples(null, (ObjectNode)node, property, null);
+            }
+            return indexer.findTriples(null, null, property, node);
+        }
+
+        private RdfNode relative(Triple triple, boolean upward) {
+            return upward ? triple.object() : triple.subject();
+        }
+
+        /**
+         * Invalidates the ancestors of the subject (and of anything below it), and the descendants
+         * of the object (and of anything above it).
+         */
+        void invalidate(Triple triple) {
+            invalidate(ancestors, triple.subject());
+            invalidate(descendants, triple.object());
+        }
+
+        private void invalidate(Map<RdfNode, ImmutableSet<RdfNode>> closures, RdfNode node) {
+            closures.remove(node);
+            for (Iterator<ImmutableSet<RdfNode>> i = closures.values().iterator(); i.hasNext(); ) {
+                if (i.next().contains(node)) {
+                    i.remove();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,194 @@
+/* 
+ *  COPYRIGHT (c) 2008-2009 by Institute of Computer Science, 
+ *  Foundation for Research and Technology - Hellas
+ *  Contact: 
+ *      POBox 1385, Heraklio Crete, GR-700 13 GREECE
+ *      Tel:+30-2810-391632
+ *      Fax: +30-2810-391638
+ *      E-mail: isl@ics.forth.gr
+ *      http://www.ics.forth.gr/isl
+ *
+ *   Authors  :  Dimitris Andreou, Nelly Vouzoukidou.
+ *
+ *   This file is part of SWKM model APIs (see also http://athena.ics.forth.gr:9090/SWKM/).
+ *
+ *    SWKM model APIs is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU Lesser General Public License as published by
+ *    the Free Software Foundation, either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *   SWKM model APIs is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Lesser General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Lesser General Public License
+ *   along with SWKM model APIs.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ *   SWKM has been partially supported by EU project KP-Lab (IP IST-27490) kp-lab.org
+ */
+
+
+package gr.forth.ics.swkm.model2;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * The immutable set of named graphs of a triple. Named graphs are identified by small integer
+ * ids (assigned by their model, see {@link ResourceImpl#graphId}), and are kept sorted by id, so
+ * membership tests are done without hashing.
+ *
+ * <p>Sets of a single graph are cached in the graph itself, while sets of multiple graphs are
+ * canonicalized and reference counted by the model, so triples in the same graphs share
+ * the same set.
+ */
+final class GraphSet extends AbstractSet<ResourceImpl> {
+    static final GraphSet EMPTY = new GraphSet(new ResourceImpl[0], new int[0]);
+
+    private final ResourceImpl[] graphs;
+    private final int[] ids;
+    private int hashCode;
+
+    /**
+     * The number of triples that refer to this set, if it is canonical; maintained by the model.
+     */
+    int references;
+
+    private GraphSet(ResourceImpl[] graphs, int[] ids) {
+        this.graphs = graphs;
+        this.ids = ids;
+    }
+
+    static GraphSet singleton(ResourceImpl graph) {
+        checkHasId(graph);
+        return new GraphSet(new ResourceImpl[] { graph }, new int[] { graph.graphId });
+    }
+
+    private static void checkHasId(ResourceImpl graph) {
+        if (graph.graphId < 0) {
+            throw new IllegalStateException("No graph id has been assigned to " + graph);
+        }
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        if (!(o instanceof ResourceImpl)) {
+            return false;
+        }
+        return indexOf((ResourceImpl)o) >= 0;
+    }
+
+    private int indexOf(ResourceImpl graph) {
+        int id = graph.graphId;
+        if (id < 0) {
+            return -1;
+        }
+        int index = ids.length == 1 ? (ids[0] == id ? 0 : -1) : Arrays.binarySearch(ids, id);
+        //ids are unique in a model, but the graph may belong to another one
+        return index >= 0 && graphs[index] == graph ? index : -1;
+    }
+
+    /**
+     * Returns a set with the graphs of this set, plus the specified one.
+     */
+    GraphSet with(ResourceImpl graph) {
+        checkHasId(graph);
+        if (indexOf(graph) >= 0) {
+            return this;
+        }
+        int position = -Arrays.binarySearch(ids, graph.graphId) - 1;
+        if (position < 0) {
+            throw new IllegalArgumentException(graph + " belongs to another model");
+        }
+        ResourceImpl[] newGraphs = new ResourceImpl[graphs.length + 1];
+        int[] newIds = new int[ids.length + 1];
+        System.arraycopy(graphs, 0, newGraphs, 0, position);
+        System.arraycopy(ids, 0, newIds, 0, position);
+        newGraphs[position] = graph;
+        newIds[position] = graph.graphId;
+        System.arraycopy(graphs, position, newGraphs, position + 1, graphs.length - position);
+        System.arraycopy(ids, position, newIds, position + 1, ids.length - position);
+        return new GraphSet(newGraphs, newIds);
+    }
+
+    /**
+     * Returns a set with the graphs of this set, plus the specified ones.
+     */
+    GraphSet withAll(Collection<ResourceImpl> graphs) {
+        GraphSet result = this;
+        for (ResourceImpl graph : graphs) {
+            result = result.with(graph);
+        }
+        return result;
+    }
+
+    /**
+     * Returns a set with the graphs of this set, except the specified one.
+     */
+    GraphSet without(ResourceImpl graph) {
+        int position = indexOf(graph);
+        if (position < 0) {
+            return this;
+        }
+        if (graphs.length == 1) {
+            return EMPTY;
+        }
+        ResourceImpl[] newGraphs = new ResourceImpl[graphs.length - 1];
+        int[] newIds = new int[ids.length - 1];
+        System.arraycopy(graphs, 0, newGraphs, 0, position);
+        System.arraycopy(ids, 0, newIds, 0, position);
+        System.arraycopy(graphs, position + 1, newGraphs, position, graphs.length - position - 1);
+        System.arraycopy(ids, position + 1, newIds, position, ids.length - position - 1);
+        return new GraphSet(newGraphs, newIds);
+    }
+
+    @Override
+    public int size() {
+        return graphs.length;
+    }
+
+    @Override
+    public Iterator<ResourceImpl> iterator() {
+        return new Iterator<ResourceImpl>() {
+            private int next = 0;
+
+            public boolean hasNext() {
+                return next < graphs.length;
+            }
+
+            public ResourceImpl next() {
+                if (next == graphs.length) {
+                    throw new NoSuchElementException();
+                }
+                return graphs[next++];
+            }
+
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (o instanceof GraphSet) {
+            GraphSet other = (GraphSet)o;
+            return Arrays.equals(ids, other.ids) && Arrays.equals(graphs, other.graphs);
+        }
+        return super.equals(o);
+    }
+
+    @Override
+    public int hashCode() {
+        int h = hashCode;
+        if (h == 0) {
+            h = super.hashCode();
+            hashCode = h;
+        }
+        return h;
+    }
+}
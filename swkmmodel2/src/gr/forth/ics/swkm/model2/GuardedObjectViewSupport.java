@@ -0,0 +1,183 @@
+/* 
+ *  COPYRIGHT (c) 2008-2009 by Institute of Computer Science, 
+ *  Foundation for Research and Technology - Hellas
+ *  Contact: 
+ *      POBox 1385, Heraklio Crete, GR-700 13 GREECE
+ *      Tel:+30-2810-391632
+ *      Fax: +30-2810-391638
+ *      E-mail: isl@ics.forth.gr
+ *      http://www.ics.forth.gr/isl
+ *
+ *   Authors  :  Dimitris Andreou, Nelly Vouzoukidou.
+ *
+ *   This file is part of SWKM model APIs (see also http://athena.ics.forth.gr:9090/SWKM/).
+ *
+ *    SWKM model APIs is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU Lesser General Public License as published by
+ *    the Free Software Foundation, either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *   SWKM model APIs is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Lesser General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Lesser General Public License
+ *   along with SWKM model APIs.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ *   SWKM has been partially supported by EU project KP-Lab (IP IST-27490) kp-lab.org
+ */
+
+
+package gr.forth.ics.swkm.model2;
+
+import gr.forth.ics.swkm.model2.index.ObjectViewSupport;
+
+/**
+ * An ObjectViewSupport that delegates to another one under the read lock of a concurrent
+ * model, {@linkplain ModelLock#guard(Iterable) guarding} the results as well.
+ */
+class GuardedObjectViewSupport implements ObjectViewSupport {
+    private final ModelLock lock;
+    private final ObjectViewSupport delegate;
+
+    GuardedObjectViewSupport(ModelLock lock, ObjectViewSupport delegate) {
+        this.lock = lock;
+        this.delegate = delegate;
+    }
+
+    public Iterable<? extends RdfNode> findIndividuals(Resource clazz) {
+        lock.lockRead();
+        try {
+            return lock.guard(delegate.findIndividuals(clazz));
+        } finally {
+            lock.unlockRead();
+        }
+    }
+
+    public Iterable<? extends RdfNode> findPropertiesWithDomain(Resource domainClass) {
+        lock.lockRead();
+        try {
+            return lock.guard(delegate.findPropertiesWithDomain(domainClass));
+        } finally {
+            lock.unlockRead();
+        }
+    }
+
+    public Iterable<? extends RdfNode> findPropertiesWithRange(Resource rangeClass) {
+        lock.lockRead();
+        try {
+            return lock.guard(delegate.findPropertiesWithRange(rangeClass));
+        } finally {
+            lock.unlockRead();
+        }
+    }
+
+    public Iterable<? extends RdfNode> findMetaclassesOfClass(Resource clazz) {
+        lock.lockRead();
+        try {
+            return lock.guard(delegate.findMetaclassesOfClass(clazz));
+        } finally {
+            lock.unlockRead();
+        }
+    }
+
+    public Iterable<? extends RdfNode> findMetapropertiesOfProperty(Resource property) {
+        lock.lockRead();
+        try {
+            return lock.guard(delegate.findMetapropertiesOfProperty(property));
+        } finally {
+            lock.unlockRead();
+        }
+    }
+
+    public Triples findPropertyInstances(Resource property) {
+        lock.lockRead();
+        try {
+            return lock.guard(delegate.findPropertyInstances(property));
+        } finally {
+            lock.unlockRead();
+        }
+    }
+
+    public Iterable<? extends RdfNode> findClassesOfIndividual(ObjectNode individual) {
+        lock.lockRead();
+        try {
+            return lock.guard(delegate.findClassesOfIndividual(individual));
+        } finally {
+            lock.unlockRead();
+        }
+    }
+
+    public Iterable<? extends RdfNode> findAncestors(Resource schemaResource, Transitively transitively) {
+        lock.lockRead();
+        try {
+            return lock.guard(delegate.findAncestors(schemaResource, transitively));
+        } finally {
+            lock.unlockRead();
+        }
+    }
+
+    public Iterable<? extends RdfNode> findDescendants(Resource schemaResource, Transitively transitively) {
+        lock.lockRead();
+        try {
+            return lock.guard(delegate.findDescendants(schemaResource, transitively));
+        } finally {
+            lock.unlockRead();
+        }
+    }
+
+    public Iterable<? extends RdfNode> findClassesOfMetaclass(Resource metaclass) {
+        lock.lockRead();
+        try {
+            return lock.guard(delegate.findClassesOfMetaclass(metaclass));
+        } finally {
+            lock.unlockRead();
+        }
+    }
+
+    public Iterable<? extends RdfNode> findPropertiesOfMetaproperty(Resource metaproperty) {
+        lock.lockRead();
+        try {
+            return lock.guard(delegate.findPropertiesOfMetaproperty(metaproperty));
+        } finally {
+            lock.unlockRead();
+        }
+    }
+
+    public Iterable<? extends RdfNode> findDomainsOfProperty(Resource property) {
+        lock.lockRead();
+        try {
+            return lock.guard(delegate.findDomainsOfProperty(property));
+        } finally {
+            lock.unlockRead();
+        }
+    }
+
+    public Iterable<? extends RdfNode> findRangesOfProperty(Resource property) {
+        lock.lockRead();
+        try {
+            return lock.guard(delegate.findRangesOfProperty(property));
+        } finally {
+            lock.unlockRead();
+        }
+    }
+
+    public boolean isFirstAncestorOfSecond(Resource maybeAncestor, Resource maybeDescendant) {
+        lock.lockRead();
+        try {
+            return delegate.isFirstAncestorOfSecond(maybeAncestor, maybeDescendant);
+        } finally {
+            lock.unlockRead();
+        }
+    }
+
+    public Iterable<? extends RdfNode> findMembersOfContainer(ObjectNode container) {
+        lock.lockRead();
+        try {
+            return lock.guard(delegate.findMembersOfContainer(container));
+        } finally {
+            lock.unlockRead();
+        }
+    }
+}
@@ -33,6 +33,7 @@ package gr.forth.ics.swkm.model2;
 
 import com.google.common.base.Function;
 import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
 import gr.forth.ics.graph.Direction;
 import gr.forth.ics.graph.Edge;
 import gr.forth.ics.graph.Graph;
@@ -265,7 +266,8 @@ public class Inference {
     private static void materializePropertyInstanceInference(Graph g, Model model, Closure closure) {
         for (Node n1 : g.nodes()) {
             Resource property = (Resource) n1.getValue();
-            for (Triple triple : model.triples().p(property).fetch()) {
+            //copied, since triples of the same property (the subproperties) are added while iterating
+            for (Triple triple : Lists.newArrayList(model.triples().p(property).fetch())) {
                 for (Node propAnc : closure.successorsOf(n1)) {
                     ObjectNode subj = triple.subject();
                     RdfNode obj = triple.object();
@@ -290,7 +292,8 @@ public class Inference {
         Resource p = model.mapResource(Rdf.TYPE);
         for (Node n : g.nodes()) {
             Resource node = (Resource) n.getValue();
-            for (ObjectNode instance : model.triples().p(p).o(node).fetch().subjects()) {
+            //copied, since rdf:type triples are added while iterating
+            for (ObjectNode instance : Lists.newArrayList(model.triples().p(p).o(node).fetch().subjects())) {
                 for (Node anc : closure.successorsOf(n)) {
                     model.add().s(instance).p(p).o((RdfNode) anc.getValue());
                 }
@@ -228,15 +228,36 @@ public class Literal {
         if (literal == null) {
             return null;
         }
-        Matcher m = literalPattern.matcher(literal);
-        if (m.matches()) {
-            String value = m.group(1);
-            String lang = m.group(2);
-            String type = m.group(3);
-            return newLiteral(value, lang, type);
-        } else {
+        //a hand-written equivalent of literalPattern.matcher(literal).matches(), since this is
+        //called for every term given as a string to a model, mostly for terms that are not literals
+        int length = literal.length();
+        int start = 0;
+        while (start < length && isWhitespace(literal.charAt(start))) {
+            start++;
+        }
+        if (start == length || literal.charAt(start) != '"') {
             return null;
         }
+        //the value ends at the first quote which is followed by nothing, a language or a type
+        for (int end = literal.indexOf('"', start + 1); end >= 0; end = literal.indexOf('"', end + 1)) {
+            int next = end + 1;
+            if (next == length) {
+                return newLiteral(literal.substring(start + 1, end), null, null);
+            }
+            char c = literal.charAt(next);
+            if (c == '@') {
+                return newLiteral(literal.substring(start + 1, end), literal.substring(next + 1), null);
+            }
+            if (c == '^' && next + 1 < length && literal.charAt(next + 1) == '^') {
+                return newLiteral(literal.substring(start + 1, end), null, literal.substring(next + 2));
+            }
+        }
+        return null;
+    }
+
+    //same as \s of regular expressions
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\013' || c == '\f' || c == '\r';
     }
 
     private static Literal newLiteral(String value, String lang, String type) {
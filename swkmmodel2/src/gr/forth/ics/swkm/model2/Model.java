@@ -31,13 +31,16 @@
 
 package gr.forth.ics.swkm.model2;
 
+import com.google.common.collect.ListMultimap;
 import gr.forth.ics.swkm.model2.Literal.LiteralFormatException;
 import gr.forth.ics.swkm.model2.Uri.UriFormatException;
+import gr.forth.ics.swkm.model2.event.BulkTripleListener;
 import gr.forth.ics.swkm.model2.event.RdfNodeListener;
 import gr.forth.ics.swkm.model2.event.TripleListener;
 import gr.forth.ics.swkm.model2.labels.LabelManager;
 import gr.forth.ics.swkm.model2.labels.PredefinedLabels;
 import gr.forth.ics.swkm.model2.views.Inheritable;
+import java.util.Collection;
 import java.util.Iterator;
 import java.util.Set;
 
@@ -111,6 +114,10 @@ import java.util.Set;
  *
  * <p>All methods of this type throw {@linkplain NullPointerException} for null arguments, unless otherwise specified.
  *
+ * <p>A model may be accessed by multiple threads only if it is {@linkplain #freeze() frozen}, or created
+ * {@linkplain ModelBuilder.Builder#withConcurrency() with concurrency}; the results of the queries of the latter
+ * reflect its state when their iteration started.
+ *
  * @see <a href="../../../../../docs/ClassPropertyResource.pdf">"Discussion on the semantics of rdfs:Resource, rdfs:Class, rdf:Property" for a reference of supported RDF typing rules.</a>
  * @see <a href="../../../../../gr/forth/ics/swkm/model2/RdfNode.html#nodeTyping">Node typing section in RdfNode</a>
  * @see RdfNode
@@ -181,6 +188,30 @@ public interface Model {
      */
     AddContext add();
 
+    /**
+     * Starts a bulk load session, through which many triples can be added to this model
+     * considerably faster than through {@linkplain #add(Resource, ObjectNode, Resource, RdfNode)}.
+     *
+     * <p>Quads added to the session are only buffered; this model is not modified until
+     * {@linkplain BulkLoad#commit()} is invoked. At that point, all buffered triples are indexed
+     * in a single pass, node typing is performed once for the whole batch, the labels are invalidated
+     * once, and {@linkplain TripleListener triple listeners} are notified (see {@linkplain BulkTripleListener}
+     * for listeners that prefer a single event for the whole batch).
+     *
+     * <p>Example:
+     * <pre>{@code
+     *Model model = ...;
+     *Model.BulkLoad bulkLoad = model.bulkLoad();
+     *for (...) {
+     *    bulkLoad.add(namedGraph, subject, predicate, object);
+     *}
+     *bulkLoad.commit();
+     * }</pre>
+     *
+     * @return a new bulk load session for this model
+     */
+    BulkLoad bulkLoad();
+
     /**
      * Deletes a single triple from this model.
      *
@@ -242,6 +273,24 @@ public interface Model {
      */
     void retypeNodes();
 
+    /**
+     * Returns a read-only copy of the current state of this model. The copy shares no state
+     * with this model, so this model can be freely modified afterwards.
+     *
+     * <p>The triples of the copy are kept in compact, immutable indexes, and its labels are
+     * computed in advance; since the node types, the named graphs of the triples and the labels
+     * of a frozen model can never change, any number of threads can query it without
+     * any locking, and ancestry queries never trigger a relabeling.
+     * Any attempt to modify the copy (including {@linkplain #retypeNodes()} and
+     * {@linkplain #updateLabels()}) fails with an {@link UnsupportedOperationException}.
+     * Nodes can still be {@linkplain #mapResource(Uri) mapped} in it, though.
+     *
+     * <p>If this model is already frozen, it is returned itself.
+     *
+     * @return a read-only copy of the current state of this model
+     */
+    Model freeze();
+
     /**
      * Maps a literal to a unique node of this model, creating such a node if necessary.
      *
@@ -414,6 +463,34 @@ public interface Model {
      */
     QueryBuilder triples();
 
+    /**
+     * Creates a query that selects all the combinations of triples that match a set of triple patterns, and
+     * reports them as {@linkplain Bindings bindings} of the variables of the patterns. For example,
+     * this finds all pairs of instances of the same class that are related through a property, along
+     * with that class:
+     * <pre>{@code
+     *Model model = ...;
+     *for (Bindings bindings : model.match()
+     *      .where("?x", Rdf.TYPE, "?class")
+     *      .where("?y", Rdf.TYPE, "?class")
+     *      .where("?x", myProperty, "?y")
+     *      .fetch()) {
+     *   RdfNode x = bindings.get("x");
+     *   //...
+     *}
+     *}</pre>
+     *
+     * <p>The patterns are not evaluated in the order they are given; the query is planned
+     * according to the {@linkplain QueryBuilder#estimate() estimated} number of triples that
+     * match each pattern, starting from the most selective one, and each pattern is joined
+     * either by looking up the index for each partial solution, or by scanning its triples
+     * once and joining them through a hash table, whichever is expected to be cheaper.
+     *
+     * @return an object to be used to create a query of multiple triple patterns
+     * @see PatternQuery
+     */
+    PatternQuery match();
+
 
     /**
      * Returns all nodes of this model that their {@link RdfNode#type() type} is equal
@@ -690,6 +767,81 @@ public interface Model {
          */
         Triples fetch();
 
+        /**
+         * Returns, for each of the specified subjects, the triples that have that subject and match all (if any)
+         * the other specified criteria (on named graph, predicate, object). This is equivalent to running the query
+         * once for each subject, but all lookups are made at once, in the order that suits the indexes of the model.
+         * For example, this finds the types of many nodes:
+         * <pre>{@code
+         *ListMultimap<ObjectNode, Triple> types = model.triples()
+         *      .p(Rdf.TYPE)
+         *      .fetchForSubjects(nodes);
+         * }</pre>
+         *
+         * <p>The returned multimap is not affected by later modifications of the model.
+         *
+         * @param subjects the subjects to find triples for; duplicates are ignored
+         * @return the matching triples, grouped by subject; subjects without matching triples are not contained
+         * @throws IllegalStateException if a subject has already been specified
+         * @throws IllegalArgumentException if any of the subjects does not belong to the model
+         * which this query builder targets
+         */
+        ListMultimap<ObjectNode, Triple> fetchForSubjects(Collection<? extends ObjectNode> subjects);
+
+        /**
+         * Returns, for each of the specified predicates, the triples that have that predicate and match all (if any)
+         * the other specified criteria (on named graph, subject, object). See {@link #fetchForSubjects(Collection)}.
+         *
+         * @param predicates the predicates to find triples for; duplicates are ignored
+         * @return the matching triples, grouped by predicate; predicates without matching triples are not contained
+         * @throws IllegalStateException if a predicate has already been specified
+         * @throws IllegalArgumentException if any of the predicates does not belong to the model
+         * which this query builder targets
+         */
+        ListMultimap<Resource, Triple> fetchForPredicates(Collection<? extends Resource> predicates);
+
+        /**
+         * Returns, for each of the specified objects, the triples that have that object and match all (if any)
+         * the other specified criteria (on named graph, subject, predicate). See {@link #fetchForSubjects(Collection)}.
+         *
+         * @param objects the objects to find triples for; duplicates are ignored
+         * @return the matching triples, grouped by object; objects without matching triples are not contained
+         * @throws IllegalStateException if an object has already been specified
+         * @throws IllegalArgumentException if any of the objects does not belong to the model
+         * which this query builder targets
+         */
+        ListMultimap<RdfNode, Triple> fetchForObjects(Collection<? extends RdfNode> objects);
+
+        /**
+         * Returns whether any triple matches all (if any) the specified criteria (on named graph,
+         * subject, predicate, object). This is equivalent to {@code fetch().iterator().hasNext()},
+         * but it stops at the first matching triple, and uses a direct lookup if subject, predicate
+         * and object are all specified.
+         *
+         * @return whether any triple matches all (if any) the specified criteria
+         */
+        boolean exists();
+
+        /**
+         * Returns the number of triples that match all (if any) the specified criteria (on named graph,
+         * subject, predicate, object). Each triple is counted once, even if it is contained in multiple
+         * named graphs. This is computed from the indexes of the model where possible, and is much
+         * cheaper than iterating {@link #fetch()}.
+         *
+         * @return the number of triples that match all (if any) the specified criteria
+         */
+        int count();
+
+        /**
+         * Returns an estimation of the number of triples that match all (if any) the specified criteria
+         * (on named graph, subject, predicate, object), which is never less than {@link #count()}.
+         * It is computed only from the sizes of the indexes of the model, so it is cheap, but it can be
+         * far from the actual count.
+         *
+         * @return an upper bound of the number of triples that match all (if any) the specified criteria
+         */
+        int estimate();
+
         /**
          * Deletes the triples that match all (if any) the specified criteria (on named graph,
          * subject, predicate, object).
@@ -709,6 +861,128 @@ public interface Model {
         boolean delete();
     }
 
+    /**
+     * A conjunctive query of triple patterns. Each term of a pattern can be either:
+     * <ul>
+     * <li>a variable, {@literal i.e.} a {@code String} starting with {@code '?'}, such as {@code "?x"}.
+     * All occurrences of a variable (in the same or in different patterns) must be bound to the same node.
+     * <li>{@code null}, which matches any node, {@literal i.e.} it is an anonymous variable
+     * <li>a node of the model, or a {@linkplain Uri}, {@linkplain Literal} or {@code String}, which are mapped
+     * to a node as in the respective methods of {@linkplain QueryBuilder}
+     * </ul>
+     *
+     * <p>Each distinct assignment of nodes to the variables is reported once.
+     */
+    interface PatternQuery {
+        /**
+         * Adds a triple pattern, which can be matched by triples of any named graph.
+         *
+         * @param subject the subject term of the pattern
+         * @param predicate the predicate term of the pattern
+         * @param object the object term of the pattern
+         * @return this
+         * @throws IllegalArgumentException if a term is not a variable, {@code null} or a node of the
+         * appropriate type (for example, a literal as a subject) owned by the model which this query targets
+         * @throws UriFormatException if mapping a {@code String} term throws this exception
+         */
+        PatternQuery where(Object subject, Object predicate, Object object);
+
+        /**
+         * Adds a triple pattern, which can only be matched by triples of the specified named graph.
+         * If the named graph term is a variable, it is bound to each named graph that contains
+         * a matching triple.
+         *
+         * @param namedGraph the named graph term of the pattern; {@code null} matches any named graph
+         * @param subject the subject term of the pattern
+         * @param predicate the predicate term of the pattern
+         * @param object the object term of the pattern
+         * @return this
+         * @throws IllegalArgumentException if a term is not a variable, {@code null} or a node of the
+         * appropriate type (for example, a literal as a subject) owned by the model which this query targets
+         * @throws UriFormatException if mapping a {@code String} term throws this exception
+         */
+        PatternQuery where(Object namedGraph, Object subject, Object predicate, Object object);
+
+        /**
+         * Returns the solutions of the query. The query is evaluated each time an iterator is
+         * requested, and all its solutions are computed at once; the iterators reflect the model
+         * at that time.
+         *
+         * <p><strong>Note:</strong> The returned iterable creates iterators that do <em>not</em>
+         * support {@linkplain Iterator#remove()} method.
+         *
+         * @return the solutions of the query
+         */
+        Iterable<Bindings> fetch();
+
+        /**
+         * Returns whether the query has any solution. This stops at the first solution found,
+         * and is much cheaper than iterating {@link #fetch()}.
+         *
+         * @return whether the query has any solution
+         */
+        boolean exists();
+
+        /**
+         * Returns the number of solutions of the query.
+         *
+         * @return the number of solutions of the query
+         */
+        int count();
+    }
+
+    /**
+     * A bulk load session of a model, which buffers triples and adds them to the model all at once.
+     * A session may be committed multiple times; each commit empties its buffer.
+     *
+     * @see Model#bulkLoad()
+     */
+    interface BulkLoad {
+        /**
+         * Buffers a triple to be added in the specified named graph, when this session is committed.
+         *
+         * @param namedGraph the named graph that the added triple belongs. If null, {@linkplain Model#defaultNamedGraph()} is assumed
+         * @param subject the subject of the triple
+         * @param predicate the predicate of the triple
+         * @param object the object of the triple
+         * @return this session
+         * @throws IllegalArgumentException if any node is given that is not owned by the model of this session
+         */
+        BulkLoad add(Resource namedGraph, ObjectNode subject, Resource predicate, RdfNode object);
+
+        /**
+         * Declares the type of a node, as already inferred for it by node typing (for example, in a model
+         * that was previously saved). Declared types are assigned when this session is committed,
+         * before the buffered triples are added, so that node typing has little left to infer.
+         *
+         * @param node the node whose type is declared
+         * @param type the type of the node
+         * @return this session
+         * @throws IllegalArgumentException if the node is not owned by the model of this session
+         */
+        BulkLoad withType(ObjectNode node, RdfType type);
+
+        /**
+         * Returns the number of distinct triples (regardless of their named graphs) that are
+         * currently buffered in this session.
+         *
+         * @return the number of buffered triples
+         */
+        int size();
+
+        /**
+         * Adds all buffered triples to the model, and empties this session.
+         *
+         * <p>Node typing is performed after all triples have been added. If it fails, the triples
+         * remain in the model (exactly as if they were added one by one), and the user may delete them.
+         *
+         * @return the number of triples that were created, i.e. were not already contained in the model
+         * @throws ValidationException if the added triples create a node typing error, or if a
+         * {@linkplain #withType(ObjectNode, RdfType) declared} type cannot be assigned
+         */
+        int commit();
+    }
+
     /**
      * The initial builder of a triple addition, which allows the user to define either the named graph
      * or the subject (implying the use of the {@linkplain Model#defaultNamedGraph()
@@ -36,6 +36,9 @@ import gr.forth.ics.swkm.model2.ModelBuilder.DefaultUriSettings;
 import gr.forth.ics.swkm.model2.ModelBuilder.UriValidationSettings;
 import gr.forth.ics.swkm.model2.index.ModelIndexer;
 import gr.forth.ics.swkm.model2.index.ModelIndexers;
+import gr.forth.ics.swkm.model2.index.QueryCache;
+import gr.forth.ics.swkm.model2.labels.LabelManagers;
+import gr.forth.ics.swkm.model2.labels.Labelers;
 import gr.forth.ics.swkm.model2.vocabulary.RdfSuite;
 
 /**
@@ -48,13 +51,16 @@ import gr.forth.ics.swkm.model2.vocabulary.RdfSuite;
  * All available options are the following:
  * <pre>
  * ModelBuilder.
- *      [newSparse(). | newFull(). | newTrees().]
+ *      [newSparse(). | newFull(). | newTrees(). | newCompact().]
  *      [withTypeInference(). | withoutTypeInference().]?   //Default value: with
  *      [withUriValidation(). | withoutUriValidation().]?   //Default value: with
  *      [withDefaultNamedGraphUri("someUri").]?             //Default value: RdfSuite.DEFAULT_GRAPH_URI
+ *      [withConcurrency().]?                               //Default value: not concurrent
+ *      [withQueryCache(cache).]?                           //Default value: no cache
+ *      [withIncrementalLabeling().]?                       //Default value: labels recomputed after any change
  *      build();
  *</pre>
- * <p>Except for the above three index implementations there is also another one called
+ * <p>Except for the above four index implementations there is also another one called
  * Horizontal. This one does not allow typing inference. All other options are available
  * for this implementation, too.</p>
  * 
@@ -100,6 +106,21 @@ public class ModelBuilder {
         return new ModelBuilderImpl(ModelIndexers.createTreeMapModelIndexer());
     }
 
+    /**
+     * Creates a builder that will build a {@link Model} with a compact, dictionary-encoded
+     * storage of triples.
+     *
+     * <p>Every node is encoded as an integer, and triples are kept in sorted integer
+     * arrays. It has much lower memory requirements than {@link #newFull()}, while
+     * it is still efficient in answering triple queries. Suitable for very large models.</p>
+     *
+     * @return a builder that will build a {@link Model} with a compact, dictionary-encoded
+     * storage of triples
+     */
+    public static TypeInferenceSettings newCompact() {
+        return new ModelBuilderImpl(ModelIndexers.createCompactModelIndexer());
+    }
+
     /**
      * Creates a builder that will build a {@link Model} with minimal memory footprint
      * but very slow in triple queries.
@@ -193,6 +214,55 @@ public class ModelBuilder {
      */
     public interface Builder {
 
+        /**
+         * Declares that the model to be created will be accessed by multiple threads. Any number
+         * of threads may query the model at the same time, while modifications (additions, deletions,
+         * retyping and label updates) are exclusive.
+         *
+         * <p>The results of queries are computed when they are iterated: an iterator reads all of them
+         * at once, while modifications are excluded, and then iterates them without excluding anything.
+         * Thus an iteration sees the model as it was when the iteration started, however long it takes,
+         * and is not affected by modifications made in the meantime, either by other threads or by
+         * the iterating thread itself; in exchange, the results are kept in memory as a whole. Readers
+         * of different threads mostly acquire different locks, and mapping a new node does not
+         * exclude readers.
+         *
+         * <p>A model without concurrency is faster, and should be preferred if it is confined
+         * to a single thread (or externally synchronized).
+         *
+         * @return an object to handle the rest of the procedure of the model creation
+         */
+        Builder withConcurrency();
+
+        /**
+         * Declares that the triples found by simple queries of the model to be created (e.g.
+         * {@code model.triples().p(rdfs:domain).o(someClass).fetch()}) are to be cached in the given
+         * {@link QueryCache}. Cached results are invalidated by any modification of the model
+         * that could affect them.
+         *
+         * <p>This is worthwhile for models that are mostly read, repeatedly asking the same questions,
+         * and should be avoided otherwise. The statistics of the cache can be used to tune its size.
+         * A cache can only be used by a single model.
+         *
+         * @param cache the cache of the query results of the model; must be non-null
+         * @return an object to handle the rest of the procedure of the model creation
+         */
+        Builder withQueryCache(QueryCache cache);
+
+        /**
+         * Declares that the labels of the {@code is-a} hierarchies of the model to be created (used to
+         * answer ancestry queries, see {@link Model#updateLabels()}) are to be maintained incrementally,
+         * by a {@link LabelManagers.IncrementalMainMemoryManager}. Modifications that do not touch a
+         * hierarchy keep the labels available, and the rest only relabel the affected part of it.
+         * By default, any modification makes the labels unavailable until they are recomputed from scratch.
+         *
+         * <p>This is worthwhile for models that interleave modifications with ancestry queries.
+         * The graphs of the hierarchies are then kept in memory along with the model.
+         *
+         * @return an object to handle the rest of the procedure of the model creation
+         */
+        Builder withIncrementalLabeling();
+
         /**
          * Builds a {@link Model} instance, using the settings specified on this builder instance.
          *
@@ -224,7 +294,7 @@ class ModelBuilderImpl extends ModelBuilderHorizontal implements ModelBuilder.Ty
 
     @Override
     public Model build() {
-        return new ModelImpl(index, typeInferenceStrategy, uriValidationStrategy, defaultUri);
+        return configure(new ModelImpl(indexer(), typeInferenceStrategy, uriValidationStrategy, defaultUri, concurrent));
     }
 }
 
@@ -233,6 +303,9 @@ class ModelBuilderHorizontal implements ModelBuilder.DefaultUriSettings, ModelBu
     protected final ModelIndexer index;
     protected Uri defaultUri = RdfSuite.DEFAULT_GRAPH_URI;
     protected ModelImpl.UriValidationStrategy uriValidationStrategy;
+    protected boolean concurrent;
+    protected QueryCache queryCache;
+    protected boolean incrementalLabeling;
 
     ModelBuilderHorizontal(ModelIndexer index) {
         this.index = index;
@@ -254,7 +327,36 @@ class ModelBuilderHorizontal implements ModelBuilder.DefaultUriSettings, ModelBu
         return this;
     }
 
+    public ModelBuilder.Builder withConcurrency() {
+        concurrent = true;
+        return this;
+    }
+
+    public ModelBuilder.Builder withQueryCache(QueryCache cache) {
+        this.queryCache = Preconditions.checkNotNull(cache);
+        return this;
+    }
+
+    public ModelBuilder.Builder withIncrementalLabeling() {
+        incrementalLabeling = true;
+        return this;
+    }
+
     public Model build() {
-        return new ModelImpl(index, ModelImpl.TypeInferenceStrategy.NO_TYPING, uriValidationStrategy, defaultUri);
+        return configure(new ModelImpl(indexer(), ModelImpl.TypeInferenceStrategy.NO_TYPING, uriValidationStrategy, defaultUri, concurrent));
+    }
+
+    protected Model configure(ModelImpl model) {
+        if (incrementalLabeling) {
+            model.setLabelManager(new LabelManagers.IncrementalMainMemoryManager(model, Labelers.newDefault()));
+        }
+        return model;
+    }
+
+    protected ModelIndexer indexer() {
+        if (queryCache == null) {
+            return index;
+        }
+        return ModelIndexers.createCachingModelIndexer(index, queryCache);
     }
 }
@@ -35,15 +35,21 @@ import gr.forth.ics.swkm.model2.event.TypeChange;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Predicate;
 import com.google.common.collect.Iterables;
+import com.google.common.collect.LinkedListMultimap;
+import com.google.common.collect.ListMultimap;
 import com.google.common.collect.Lists;
 import com.google.common.collect.MapMaker;
+import com.google.common.collect.Multimaps;
 import gr.forth.ics.swkm.model2.Uri.UriFormatException;
+import gr.forth.ics.swkm.model2.event.BulkTripleListener;
 import gr.forth.ics.swkm.model2.event.RdfNodeListener;
 import gr.forth.ics.swkm.model2.event.TripleListener;
 import gr.forth.ics.swkm.model2.index.ModelIndexer;
+import gr.forth.ics.swkm.model2.index.ModelIndexers;
 import gr.forth.ics.swkm.model2.index.ModelView;
 import gr.forth.ics.swkm.model2.index.ObjectViewSupport;
 import gr.forth.ics.swkm.model2.index.TripleDeletionListener;
+import gr.forth.ics.swkm.model2.index.common.Multikey;
 import gr.forth.ics.swkm.model2.labels.LabelManager;
 import gr.forth.ics.swkm.model2.labels.LabelManagers;
 import gr.forth.ics.swkm.model2.labels.Labelers;
@@ -52,13 +58,16 @@ import gr.forth.ics.swkm.model2.vocabulary.Rdf;
 import gr.forth.ics.swkm.model2.vocabulary.RdfSchema;
 import gr.forth.ics.swkm.model2.vocabulary.RdfSuite;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
 import org.springframework.util.Assert;
 
 /**
@@ -67,16 +76,18 @@ import org.springframework.util.Assert;
  * @author Andreou Dimitris, email: jim.andreou (at) gmail (dot) com
  */
 public class ModelImpl implements Model {
-    private final Map<Literal, LiteralNodeImpl> literals =
+    private final ConcurrentMap<Literal, LiteralNodeImpl> literals =
             new MapMaker().weakValues().makeMap();
 
-    private final Map<Uri, ResourceImpl> resources =
+    private final ConcurrentMap<Uri, ResourceImpl> resources =
             new MapMaker().weakValues().makeMap();
     
-    private final Map<String, BlankNodeImpl> blankNodes =
+    private final ConcurrentMap<String, BlankNodeImpl> blankNodes =
             new MapMaker().weakValues().makeMap();
     
-    private final Map<Set<ResourceImpl>, Set<ResourceImpl>> usedGraphsCombinations;
+    //canonical sets of multiple named graphs; a set is removed when no triple refers to it
+    private final Map<GraphSet, GraphSet> usedGraphsCombinations;
+    private int nextGraphId;
     
     /**
      * Helper for handling type events.
@@ -85,6 +96,7 @@ public class ModelImpl implements Model {
     private final TripleListenerSupport tripleListenerSupport = new TripleListenerSupport();
 
     private final ModelIndexer indexer;
+    private final ClosureCachingObjectViewSupport closures;
     private final ObjectViewSupport objectViewSupport;
 
     private final TypeInferenceStrategy typeInferenceStrategy;
@@ -93,6 +105,13 @@ public class ModelImpl implements Model {
     private final Resource defaultNamedGraph;
     private LabelManager labelManager;
 
+    private final ModelLock lock;
+    //the number of writes at the time labels were last checked, and whether they were available then;
+    //only used by concurrent models
+    private volatile int labelsCheckedAt = -1;
+    private volatile boolean labelsAvailable;
+    private final Object labelsCheckLock = new Object();
+
     ModelImpl(ModelIndexer indexer) {
         this(indexer, RdfSuite.DEFAULT_GRAPH_URI);
     }
@@ -104,17 +123,30 @@ public class ModelImpl implements Model {
 
     ModelImpl(ModelIndexer indexer, TypeInferenceStrategy typeInferenceStrategy,
             UriValidationStrategy uriValidationStrategy, Uri defaultNamedGraphUri) {
+        this(indexer, typeInferenceStrategy, uriValidationStrategy, defaultNamedGraphUri, false);
+    }
+
+    ModelImpl(ModelIndexer indexer, TypeInferenceStrategy typeInferenceStrategy,
+            UriValidationStrategy uriValidationStrategy, Uri defaultNamedGraphUri, boolean concurrent) {
+        this(indexer, typeInferenceStrategy, uriValidationStrategy, defaultNamedGraphUri,
+                concurrent ? ModelLock.readWrite() : ModelLock.none());
+    }
+
+    private ModelImpl(ModelIndexer indexer, TypeInferenceStrategy typeInferenceStrategy,
+            UriValidationStrategy uriValidationStrategy, Uri defaultNamedGraphUri, ModelLock lock) {
         this.indexer = Preconditions.checkNotNull(indexer);
+        this.lock = lock;
         this.typeInferenceStrategy = typeInferenceStrategy;
         this.uriValidationStrategy = uriValidationStrategy;
 
         this.defaultNamedGraph = mapResource(Preconditions.checkNotNull(defaultNamedGraphUri));
         indexer.setModelView(new ModelViewImpl());
         indexer.setModel(this);
-        this.objectViewSupport = indexer.objectViewSupport();
+        this.closures = new ClosureCachingObjectViewSupport(this, indexer, indexer.objectViewSupport());
+        this.objectViewSupport = lock.guard(closures);
         this.labelManager = new LabelManagers.NonIncrementalMainMemoryManager(
                 this, Labelers.newDefault());
-        this.usedGraphsCombinations = new HashMap<Set<ResourceImpl>, Set<ResourceImpl>>();
+        this.usedGraphsCombinations = new HashMap<GraphSet, GraphSet>();
     }
 
     public Resource defaultNamedGraph() {
@@ -136,11 +168,21 @@ public class ModelImpl implements Model {
     }
 
     public boolean delete(Triple triple) {
-        return deleteTriple((TripleImpl)triple, true);
+        lock.lockWrite();
+        try {
+            return deleteTriple((TripleImpl)triple, true);
+        } finally {
+            lock.unlockWrite();
+        }
     }
 
     public boolean delete(Iterable<Triple> triplesToRemove) {
-        return deleteTriples(triplesToRemove, true);
+        lock.lockWrite();
+        try {
+            return deleteTriples(triplesToRemove, true);
+        } finally {
+            lock.unlockWrite();
+        }
     }
 
     private boolean deleteTriples(Iterable<Triple> triplesToRemove, boolean notifyIndexer) {
@@ -156,24 +198,35 @@ public class ModelImpl implements Model {
             return false;
         }
         decrementCounters(t);
+        //the indexer must see the named graphs of the triple, to remove it from them as well
+        if (notifyIndexer) {
+            indexer.delete(t);
+        }
+        closures.tripleChanged(t);
         
         //removing named graphs one by one
-        Set<ResourceImpl> graphs = t.namedGraphs;
-        t.namedGraphs = Collections.emptySet();
+        GraphSet graphs = t.namedGraphs;
+        setNamedGraphs(t, GraphSet.EMPTY);
         for (Iterator<ResourceImpl> i = graphs.iterator(); i.hasNext(); ) {
             ResourceImpl namedGraph = i.next();
             namedGraph.decrementCounter();
             tripleListenerSupport.fireTripleDeletion(namedGraph, t);
         }
         
-        if (notifyIndexer) {
-            indexer.delete(t);
-        }
         labelManager.tripleDeleted(t);
         return true;
     }
 
     public void retypeNodes() {
+        lock.lockWrite();
+        try {
+            doRetypeNodes();
+        } finally {
+            lock.unlockWrite();
+        }
+    }
+
+    private void doRetypeNodes() {
         for (ObjectNodeImpl objectNode : Iterables.concat(blankNodes.values(), resources.values())) {
             if (objectNode.hasTriples()) {
                 objectNode.resetType();
@@ -187,6 +240,48 @@ public class ModelImpl implements Model {
         }
     }
 
+    public Model freeze() {
+        if (lock.isFrozen()) {
+            return this;
+        }
+        ModelLock.FreezableModelLock frozenLock = ModelLock.freezable();
+        ModelImpl frozen = new ModelImpl(ModelIndexers.createCompactModelIndexer(),
+                TypeInferenceStrategy.NO_TYPING, uriValidationStrategy, defaultNamedGraph.getUri(), frozenLock);
+        //labels are computed once, after all triples are added
+        frozen.labelManager = new LabelManagers.NonIncrementalMainMemoryManager(frozen, Labelers.newDefault());
+        lock.lockRead();
+        try {
+            BulkLoad bulkLoad = frozen.bulkLoad();
+            Set<RdfNode> typed = new HashSet<RdfNode>();
+            for (Triple t : triples().fetch()) {
+                ObjectNode subject = t.subject().mappedTo(frozen);
+                Resource predicate = t.predicate().mappedTo(frozen);
+                RdfNode object = t.object().mappedTo(frozen);
+                copyType(bulkLoad, typed, t.subject(), subject);
+                copyType(bulkLoad, typed, t.predicate(), predicate);
+                if (object.isObjectNode()) {
+                    copyType(bulkLoad, typed, t.object(), (ObjectNode)object);
+                }
+                for (Resource namedGraph : t.graphs()) {
+                    bulkLoad.add(namedGraph.mappedTo(frozen), subject, predicate, object);
+                }
+            }
+            bulkLoad.commit();
+        } finally {
+            lock.unlockRead();
+        }
+        frozen.labelManager.updateLabels(PredefinedLabels.swkmPredefinedLabels());
+        ModelIndexers.trimToSize(frozen.indexer);
+        frozenLock.freeze();
+        return frozen;
+    }
+
+    private static void copyType(BulkLoad bulkLoad, Set<RdfNode> typed, RdfNode original, ObjectNode copy) {
+        if (typed.add(copy)) {
+            bulkLoad.withType(copy, original.type());
+        }
+    }
+
     enum TypeInferenceStrategy {
         WITH_TYPING() {
             void perhapsDoTyping(TripleImpl triple) {
@@ -230,7 +325,12 @@ public class ModelImpl implements Model {
         if (namedGraph == null) {
             namedGraph = defaultNamedGraph();
         }
-        return addQuad(namedGraph, subject, predicate, object);
+        lock.lockWrite();
+        try {
+            return addQuad(namedGraph, subject, predicate, object);
+        } finally {
+            lock.unlockWrite();
+        }
     }
     
     TripleImpl addQuad(Resource namedGraph,
@@ -256,6 +356,7 @@ public class ModelImpl implements Model {
         addNamedGraph(ng, triple);
         if (addInIndexer) {
             indexer.add(namedGraph, triple);
+            closures.tripleChanged(triple);
         } else {
             indexer.addInNamedGraph(namedGraph, triple);
         }
@@ -271,29 +372,180 @@ public class ModelImpl implements Model {
         return triple;
     }
     
+    public BulkLoad bulkLoad() {
+        return new BulkLoadSession();
+    }
+
+    private class BulkLoadSession implements BulkLoad {
+        //buffered triples, keyed by (subject, predicate, object); insertion order is kept for the events
+        private Map<Multikey, BufferedTriple> buffer = new LinkedHashMap<Multikey, BufferedTriple>();
+        private Map<ObjectNodeImpl, RdfType> types = new LinkedHashMap<ObjectNodeImpl, RdfType>();
+
+        public BulkLoad add(Resource namedGraph, ObjectNode subject, Resource predicate, RdfNode object) {
+            if (namedGraph == null) {
+                namedGraph = defaultNamedGraph();
+            }
+            checkOwned(namedGraph, true);
+            checkOwned(subject, true);
+            checkOwned(predicate, true);
+            checkOwned(object, true);
+            Multikey key = new Multikey(subject, predicate, object);
+            BufferedTriple buffered = buffer.get(key);
+            if (buffered == null) {
+                buffered = new BufferedTriple((ObjectNodeImpl)subject, (ResourceImpl)predicate, (RdfNodeImpl)object);
+                buffer.put(key, buffered);
+            }
+            if (!buffered.namedGraphs.contains(namedGraph)) {
+                buffered.namedGraphs.add((ResourceImpl)namedGraph);
+            }
+            return this;
+        }
+
+        public BulkLoad withType(ObjectNode node, RdfType type) {
+            checkOwned(node, true);
+            types.put((ObjectNodeImpl)node, Preconditions.checkNotNull(type));
+            return this;
+        }
+
+        public int size() {
+            return buffer.size();
+        }
+
+        public int commit() {
+            lock.lockWrite();
+            try {
+                return doCommit();
+            } finally {
+                lock.unlockWrite();
+            }
+        }
+
+        private int doCommit() {
+            Collection<BufferedTriple> batch = buffer.values();
+            buffer = new LinkedHashMap<Multikey, BufferedTriple>();
+            Map<ObjectNodeImpl, RdfType> knownTypes = types;
+            types = new LinkedHashMap<ObjectNodeImpl, RdfType>();
+            for (Map.Entry<ObjectNodeImpl, RdfType> entry : knownTypes.entrySet()) {
+                TypeInference.applyKnownType(entry.getKey(), entry.getValue());
+            }
+
+            Set<ResourceImpl> batchGraphs = new HashSet<ResourceImpl>();
+            for (BufferedTriple buffered : batch) {
+                batchGraphs.addAll(buffered.namedGraphs);
+            }
+            for (ResourceImpl ng : batchGraphs) {
+                assignGraphId(ng);
+                TypeInference.applyTypingRulesForNamedGraph(ng);
+            }
+
+            //a linked multimap keeps the order of the additions across named graphs as well
+            ListMultimap<Resource, Triple> added = LinkedListMultimap.create();
+            List<TripleImpl> touched = Lists.newArrayListWithCapacity(batch.size());
+            int created = 0;
+            for (BufferedTriple buffered : batch) {
+                //a node without triples cannot be part of an existing triple; skip the index lookup then
+                TripleImpl triple = null;
+                if (buffered.subject.hasTriples() && buffered.predicate.hasTriples() && buffered.object.hasTriples()) {
+                    triple = getTriple(buffered.subject, buffered.predicate, buffered.object);
+                }
+                boolean addInIndexer = triple == null;
+                if (addInIndexer) {
+                    triple = new TripleImpl(buffered.subject, buffered.predicate, buffered.object);
+                    created++;
+                }
+                //the named graphs set is created and canonicalized once per triple, not once per graph
+                GraphSet oldGraphs = triple.namedGraphs;
+                GraphSet namedGraphs = oldGraphs.withAll(buffered.namedGraphs);
+                if (namedGraphs.size() == oldGraphs.size()) {
+                    continue; //nothing to do
+                }
+                setNamedGraphs(triple, namedGraphs);
+                for (ResourceImpl ng : buffered.namedGraphs) {
+                    if (oldGraphs.contains(ng)) {
+                        continue;
+                    }
+                    incrementCounters(ng, triple);
+                    if (addInIndexer) {
+                        indexer.add(ng, triple);
+                        closures.tripleChanged(triple);
+                        addInIndexer = false;
+                    } else {
+                        indexer.addInNamedGraph(ng, triple);
+                    }
+                    added.put(ng, triple);
+                }
+                touched.add(triple);
+            }
+            if (touched.isEmpty()) {
+                return created;
+            }
+            tripleListenerSupport.fireTripleAdditions(added);
+            labelManager.triplesAdded(touched);
+
+            //typing is done last, after all triples are indexed; see addQuad()
+            for (TripleImpl triple : touched) {
+                typeInferenceStrategy.perhapsDoTyping(triple);
+            }
+            return created;
+        }
+    }
+
+    private static class BufferedTriple {
+        final ObjectNodeImpl subject;
+        final ResourceImpl predicate;
+        final RdfNodeImpl object;
+        final List<ResourceImpl> namedGraphs = new ArrayList<ResourceImpl>(1);
+
+        BufferedTriple(ObjectNodeImpl subject, ResourceImpl predicate, RdfNodeImpl object) {
+            this.subject = subject;
+            this.predicate = predicate;
+            this.object = object;
+        }
+    }
+
     private void addNamedGraph(ResourceImpl ng, TripleImpl triple) {
-        updateNamedGraph(true, ng, triple);
+        assignGraphId(ng);
+        setNamedGraphs(triple, triple.namedGraphs.with(ng));
     }
     
     private void removeNamedGraph(ResourceImpl ng, TripleImpl triple) {
-        updateNamedGraph(false, ng, triple);
+        setNamedGraphs(triple, triple.namedGraphs.without(ng));
         ng.decrementCounter();
     }
-    
-    private void updateNamedGraph(boolean add, ResourceImpl ng, TripleImpl triple) {
-        //actual namedGraphs Set must be copied: it is used by other triples, too
-        Set<ResourceImpl> namedGraphs = new HashSet<ResourceImpl>(triple.namedGraphs);
-        if (add) {
-            namedGraphs.add(ng);
-        } else {
-            namedGraphs.remove(ng);
+
+    private void assignGraphId(ResourceImpl ng) {
+        if (ng.graphId < 0) {
+            ng.graphId = nextGraphId++;
         }
-        Set<ResourceImpl> usedSet = usedGraphsCombinations.get(namedGraphs);
-        if (usedSet == null) {
-            usedGraphsCombinations.put(namedGraphs, namedGraphs);
-            usedSet = namedGraphs;
+    }
+
+    private void setNamedGraphs(TripleImpl triple, GraphSet namedGraphs) {
+        //sets are shared by many triples, so they are never modified, but replaced
+        GraphSet oldGraphs = triple.namedGraphs;
+        GraphSet newGraphs = canonicalGraphs(namedGraphs);
+        if (newGraphs.size() > 1) {
+            newGraphs.references++;
+        }
+        if (oldGraphs.size() > 1 && --oldGraphs.references == 0) {
+            usedGraphsCombinations.remove(oldGraphs);
+        }
+        triple.namedGraphs = newGraphs;
+    }
+
+    private GraphSet canonicalGraphs(GraphSet namedGraphs) {
+        switch (namedGraphs.size()) {
+            case 0:
+                return GraphSet.EMPTY;
+            case 1:
+                return namedGraphs.iterator().next().singletonGraphSet();
+            default:
+                GraphSet usedSet = usedGraphsCombinations.get(namedGraphs);
+                if (usedSet == null) {
+                    usedGraphsCombinations.put(namedGraphs, namedGraphs);
+                    usedSet = namedGraphs;
+                }
+                return usedSet;
         }
-        triple.namedGraphs = usedSet;
     }
 
     private TripleImpl getTriple(ObjectNode subject, Resource predicate, RdfNode object) {
@@ -311,8 +563,19 @@ public class ModelImpl implements Model {
         Assert.notNull(literal);
         LiteralNodeImpl literalNode = literals.get(literal);
         if (literalNode == null) {
-            literalNode = new LiteralNodeImpl(this, literal);
-            literals.put(literal, literalNode);
+            lock.lockNodeCreation();
+            try {
+                literalNode = literals.get(literal);
+                if (literalNode == null) {
+                    literalNode = new LiteralNodeImpl(this, literal);
+                    LiteralNodeImpl existing = literals.putIfAbsent(literal, literalNode);
+                    if (existing != null) {
+                        literalNode = existing;
+                    }
+                }
+            } finally {
+                lock.unlockNodeCreation();
+            }
         }
         return literalNode;
     }
@@ -325,8 +588,19 @@ public class ModelImpl implements Model {
         Assert.notNull(id);
         BlankNodeImpl blankNode = blankNodes.get(id);
         if (blankNode == null) {
-            blankNode = new BlankNodeImpl(this, id);
-            blankNodes.put(id, blankNode);
+            lock.lockNodeCreation();
+            try {
+                blankNode = blankNodes.get(id);
+                if (blankNode == null) {
+                    blankNode = new BlankNodeImpl(this, id);
+                    BlankNodeImpl existing = blankNodes.putIfAbsent(id, blankNode);
+                    if (existing != null) {
+                        blankNode = existing;
+                    }
+                }
+            } finally {
+                lock.unlockNodeCreation();
+            }
         }
         return blankNode;
     }
@@ -345,10 +619,22 @@ public class ModelImpl implements Model {
         }
         ResourceImpl resource = resources.get(uri);
         if (resource == null) {
-            resource = new ResourceImpl(this, uri);
-            resources.put(uri, resource);
+            //a node is indexed as soon as it is created, so this must not overlap with writers
+            lock.lockNodeCreation();
+            try {
+                resource = resources.get(uri);
+                if (resource == null) {
+                    resource = new ResourceImpl(this, uri);
+                    ResourceImpl existing = resources.putIfAbsent(uri, resource);
+                    if (existing != null) {
+                        resource = existing;
+                    }
+                }
+            } finally {
+                lock.unlockNodeCreation();
+            }
         }
-        return resource;    
+        return resource;
     }
 
     public Resource mapResource(Uri uri) {
@@ -409,12 +695,16 @@ public class ModelImpl implements Model {
         return new QueryBuilderImpl();
     }
 
+    public PatternQuery match() {
+        return new PatternQueryImpl(this, indexer, lock);
+    }
+
     private Iterable<RdfNode> findNodes(final RdfType type) {
-        return new Iterable<RdfNode>() {
+        return lock.guard(new Iterable<RdfNode>() {
             public Iterator<RdfNode> iterator() {
                 return indexer.find(Preconditions.checkNotNull(type));
             }
-        };
+        });
     }
     
     public Iterable<RdfNode> findNodes(RdfType firstType, RdfType... restTypes) {
@@ -433,13 +723,13 @@ public class ModelImpl implements Model {
         if (namespace.getLocalName().length() > 0) {
             throw new IllegalArgumentException("Uri: '" + namespace + "' is not purely a namespace; it also contains a local part");
         }
-        return new Iterable<Resource>() {
+        return lock.guard(new Iterable<Resource>() {
             public Iterator<Resource> iterator() {
                 return indexer.findInNamespace(
                             type,
                             namespace);
             }
-        };
+        });
     }
 
     public Iterable<Resource> findSchemaNodes(Uri namespace, RdfType firstType, RdfType... restTypes) {
@@ -452,13 +742,13 @@ public class ModelImpl implements Model {
     }
     
     public Iterable<Resource> namedGraphs() {
-        return new Iterable<Resource>() {
+        return lock.guard(new Iterable<Resource>() {
             @SuppressWarnings("unchecked") //only resources can be named graphs
             public Iterator<Resource> iterator() {
                 Iterator iterator = indexer.find(RdfType.NAMED_GRAPH);
                 return iterator;
             }
-        };
+        });
     }
 
     private static final Predicate<RdfNode> isActiveNode = new Predicate<RdfNode>() {
@@ -469,17 +759,17 @@ public class ModelImpl implements Model {
 
     @SuppressWarnings("unchecked") //every ResourceImpl is a Resource
     public Iterable<Resource> resources() {
-        return (Iterable)Iterables.filter(resources.values(), isActiveNode);
+        return (Iterable)lock.guard(Iterables.filter(resources.values(), isActiveNode));
     }
 
     @SuppressWarnings("unchecked") //every LiteralNodeImpl is a LiteralNode
     public Iterable<LiteralNode> literals() {
-        return (Iterable)Iterables.filter(literals.values(), isActiveNode);
+        return (Iterable)lock.guard(Iterables.filter(literals.values(), isActiveNode));
     }
 
     @SuppressWarnings("unchecked") //every BlankNodeImpl is a BlankNode
     public Iterable<BlankNode> blankNodes() {
-        return (Iterable)Iterables.filter(blankNodes.values(), isActiveNode);
+        return (Iterable)lock.guard(Iterables.filter(blankNodes.values(), isActiveNode));
     }
     
     /**
@@ -488,7 +778,15 @@ public class ModelImpl implements Model {
      * @return all available namespaces
      */
     public Set<Uri> namespaces() {
-        return indexer.namespaces();
+        if (!lock.isConcurrent()) {
+            return indexer.namespaces();
+        }
+        lock.lockRead();
+        try {
+            return Collections.unmodifiableSet(new HashSet<Uri>(indexer.namespaces()));
+        } finally {
+            lock.unlockRead();
+        }
     }
 
     public boolean isInferable(ObjectNode s, Resource p, RdfNode o) {
@@ -496,7 +794,7 @@ public class ModelImpl implements Model {
         checkOwned(p, true);
         checkOwned(o, true);
 
-        if (triples().s(s).p(p).o(o).fetch().iterator().hasNext()) {
+        if (triples().s(s).p(p).o(o).exists()) {
             return true;
         }
         if (p.is(RdfSchema.SUBCLASSOF)
@@ -679,19 +977,114 @@ public class ModelImpl implements Model {
         }
 
         public Triples fetch() {
-            return new Triples(new Iterable<Triple>() {
+            return lock.guard(new Triples(new Iterable<Triple>() {
                 public Iterator<Triple> iterator() {
                     return indexer.findTriples(namedGraph, subject, predicate, object);
                 }
+            }) {
+                @Override
+                public List<Triples> partition(int parts) {
+                    if (namedGraph != null || subject != null || predicate != null || object != null) {
+                        return super.partition(parts);
+                    }
+                    List<Triples> result = new ArrayList<Triples>();
+                    for (Iterable<Triple> part : indexer.partitionTriples(parts)) {
+                        result.add(new Triples(part));
+                    }
+                    return result;
+                }
             });
         }
+
+        public ListMultimap<ObjectNode, Triple> fetchForSubjects(Collection<? extends ObjectNode> subjects) {
+            if (hasSubject) {
+                throw new IllegalStateException("Subject has already been set");
+            }
+            checkAllOwned(subjects);
+            lock.lockRead();
+            try {
+                return indexer.findTriplesForSubjects(namedGraph, subjects, predicate, object);
+            } finally {
+                lock.unlockRead();
+            }
+        }
+
+        public ListMultimap<Resource, Triple> fetchForPredicates(Collection<? extends Resource> predicates) {
+            if (hasPredicate) {
+                throw new IllegalStateException("Predicate has already been set");
+            }
+            checkAllOwned(predicates);
+            lock.lockRead();
+            try {
+                return indexer.findTriplesForPredicates(namedGraph, subject, predicates, object);
+            } finally {
+                lock.unlockRead();
+            }
+        }
+
+        public ListMultimap<RdfNode, Triple> fetchForObjects(Collection<? extends RdfNode> objects) {
+            if (hasObject) {
+                throw new IllegalStateException("Object has already been set");
+            }
+            checkAllOwned(objects);
+            lock.lockRead();
+            try {
+                return indexer.findTriplesForObjects(namedGraph, subject, predicate, objects);
+            } finally {
+                lock.unlockRead();
+            }
+        }
+
+        private void checkAllOwned(Collection<? extends RdfNode> nodes) {
+            for (RdfNode node : nodes) {
+                checkOwned(node, true);
+            }
+        }
+
+        public boolean exists() {
+            lock.lockRead();
+            try {
+                return indexer.containsTriples(namedGraph, subject, predicate, object);
+            } finally {
+                lock.unlockRead();
+            }
+        }
+
+        public int count() {
+            lock.lockRead();
+            try {
+                return indexer.countTriples(namedGraph, subject, predicate, object);
+            } finally {
+                lock.unlockRead();
+            }
+        }
+
+        public int estimate() {
+            lock.lockRead();
+            try {
+                return indexer.estimateTriples(namedGraph, subject, predicate, object);
+            } finally {
+                lock.unlockRead();
+            }
+        }
         
         public boolean delete() {
+            lock.lockWrite();
+            try {
+                return doDelete();
+            } finally {
+                lock.unlockWrite();
+            }
+        }
+
+        private boolean doDelete() {
             final List<Triple> toDelete = new ArrayList<Triple>();
             final List<Triple> toDeleteAndNotifyIndexer = new ArrayList<Triple>();
             final boolean[] changed = new boolean[1];
             indexer.deleteTriples(namedGraph, subject, predicate, object, new TripleDeletionListener() {
                 public void tripleDeleted(Triple triple) {
+                    //the listeners of the rest of the deletions may ask for closures before deleteTriples below
+                    closures.tripleChanged(triple);
                     toDelete.add(triple);
                     //no need to fire an event here, it will be fired from deleteTriples
                     changed[0] = true;
@@ -882,7 +1275,12 @@ public class ModelImpl implements Model {
         if (labelManager.getTargetModel() != this) {
             throw new IllegalArgumentException("The specified label manager does not target this model");
         }
-        this.labelManager = labelManager;
+        lock.lockWrite();
+        try {
+            this.labelManager = labelManager;
+        } finally {
+            lock.unlockWrite();
+        }
     }
 
     LabelManager getLabelManager() {
@@ -890,11 +1288,53 @@ public class ModelImpl implements Model {
     }
 
     public void updateLabels() {
-        labelManager.updateLabels(PredefinedLabels.swkmPredefinedLabels());
+        updateLabels(PredefinedLabels.swkmPredefinedLabels());
     }
 
     public void updateLabels(PredefinedLabels predefinedLabels) {
-        labelManager.updateLabels(PredefinedLabels.swkmPredefinedLabels().merge(predefinedLabels));
+        lock.lockWrite();
+        try {
+            labelManager.updateLabels(PredefinedLabels.swkmPredefinedLabels().merge(predefinedLabels));
+        } finally {
+            lock.unlockWrite();
+        }
+    }
+
+    /**
+     * Answers an ancestry query through the labels, if they are available, or else through the
+     * {@linkplain #objectViewSupport() object view support}.
+     *
+     * <p>A label manager may update its state lazily while answering whether labels are available,
+     * so in a concurrent model it is only asked once per modification, by a single reader at a time;
+     * the labels themselves are then read by any number of readers. Everything happens under the
+     * read lock.
+     */
+    boolean isFirstAncestorOfSecond(Resource first, Resource second) {
+        if (!lock.isConcurrent()) {
+            if (labelManager.areLabelsAvailable()) {
+                return labelManager.isFirstAncestorOfSecond(first, second);
+            }
+            return objectViewSupport.isFirstAncestorOfSecond(first, second);
+        }
+        lock.lockRead();
+        try {
+            //the number of writes cannot change while the read lock is held
+            int writes = lock.writes();
+            if (labelsCheckedAt != writes) {
+                synchronized (labelsCheckLock) {
+                    if (labelsCheckedAt != writes) {
+                        labelsAvailable = labelManager.areLabelsAvailable();
+                        labelsCheckedAt = writes;
+                    }
+                }
+            }
+            if (labelsAvailable) {
+                return labelManager.isFirstAncestorOfSecond(first, second);
+            }
+            return objectViewSupport.isFirstAncestorOfSecond(first, second);
+        } finally {
+            lock.unlockRead();
+        }
     }
 
     public void addRdfNodeListener(RdfNodeListener rdfNodeListener) {
@@ -962,6 +1402,22 @@ public class ModelImpl implements Model {
             }
         }
 
+        void fireTripleAdditions(ListMultimap<Resource, Triple> additions) {
+            ListMultimap<Resource, Triple> unmodifiable = null;
+            for (TripleListener listener : listeners.keySet()) {
+                if (listener instanceof BulkTripleListener) {
+                    if (unmodifiable == null) {
+                        unmodifiable = Multimaps.unmodifiableListMultimap(additions);
+                    }
+                    ((BulkTripleListener)listener).onTriplesAddition(unmodifiable);
+                } else {
+                    for (Map.Entry<Resource, Triple> entry : additions.entries()) {
+                        listener.onTripleAddition(entry.getKey(), entry.getValue());
+                    }
+                }
+            }
+        }
+
         void fireTripleDeletion(Resource namedGraph, Triple triple) {
             for (TripleListener listener : listeners.keySet()) {
                 listener.onTripleDeletion(namedGraph, triple);
@@ -970,6 +1426,23 @@ public class ModelImpl implements Model {
     }
     
     public int tripleCount() {
-        return indexer.tripleCount();
+        lock.lockRead();
+        try {
+            return indexer.tripleCount();
+        } finally {
+            lock.unlockRead();
+        }
+    }
+
+    /**
+     * Returns the number of distinct combinations of (more than one) named graphs that triples are currently in.
+     */
+    int graphCombinationCount() {
+        lock.lockRead();
+        try {
+            return usedGraphsCombinations.size();
+        } finally {
+            lock.unlockRead();
+        }
     }
 }
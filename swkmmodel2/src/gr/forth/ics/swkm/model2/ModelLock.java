@@ -0,0 +1,324 @@
+/* 
+ *  COPYRIGHT (c) 2008-2009 by Institute of Computer Science, 
+ *  Foundation for Research and Technology - Hellas
+ *  Contact: 
+ *      POBox 1385, Heraklio Crete, GR-700 13 GREECE
+ *      Tel:+30-2810-391632
+ *      Fax: +30-2810-391638
+ *      E-mail: isl@ics.forth.gr
+ *      http://www.ics.forth.gr/isl
+ *
+ *   Authors  :  Dimitris Andreou, Nelly Vouzoukidou.
+ *
+ *   This file is part of SWKM model APIs (see also http://athena.ics.forth.gr:9090/SWKM/).
+ *
+ *    SWKM model APIs is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU Lesser General Public License as published by
+ *    the Free Software Foundation, either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *   SWKM model APIs is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Lesser General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Lesser General Public License
+ *   along with SWKM model APIs.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ *   SWKM has been partially supported by EU project KP-Lab (IP IST-27490) kp-lab.org
+ */
+
+
+package gr.forth.ics.swkm.model2;
+
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.Lists;
+import gr.forth.ics.swkm.model2.index.ObjectViewSupport;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Guards the state of a {@link ModelImpl} against concurrent access. The lock of
+ * a model without {@linkplain ModelBuilder.Builder#withConcurrency() concurrency} does nothing.
+ *
+ * <p>A concurrent model lets any number of readers proceed in parallel, while writers
+ * are exclusive. The read lock is striped, so that readers of different threads mostly
+ * acquire different locks, while a writer acquires all of them. Since the model hands out lazy
+ * iterables, these are {@linkplain #guard(Iterable) guarded}, so that each of their iterators reads
+ * all the results at once under the read lock, and then iterates that snapshot without locking.
+ * New nodes are created under the read lock and a separate lock of their own, so creating them
+ * does not exclude readers.
+ */
+abstract class ModelLock {
+    static ModelLock none() {
+        return NONE;
+    }
+
+    static ModelLock readWrite() {
+        return new ReadWriteModelLock();
+    }
+
+    static FreezableModelLock freezable() {
+        return new FreezableModelLock();
+    }
+
+    abstract boolean isConcurrent();
+
+    /**
+     * Returns whether the model is frozen, i.e. the write lock can never be acquired.
+     */
+    boolean isFrozen() {
+        return false;
+    }
+
+    abstract void lockRead();
+
+    abstract void unlockRead();
+
+    /**
+     * Returns whether the current thread can acquire the write lock, i.e. it does not hold the read lock.
+     */
+    abstract boolean canLockWrite();
+
+    abstract void lockWrite();
+
+    abstract void unlockWrite();
+
+    /**
+     * Acquires the locks needed to create a new node of the model, which can be done by readers
+     * as well as writers.
+     */
+    abstract void lockNodeCreation();
+
+    abstract void unlockNodeCreation();
+
+    /**
+     * Returns the number of times the write lock has been acquired; it can be read without locking.
+     */
+    abstract int writes();
+
+    abstract <T> Iterable<T> guard(Iterable<T> iterable);
+
+    abstract Triples guard(Triples triples);
+
+    abstract ObjectViewSupport guard(ObjectViewSupport support);
+
+    private static final ModelLock NONE = new ModelLock() {
+        boolean isConcurrent() { return false; }
+        void lockRead() { }
+        void unlockRead() { }
+        boolean canLockWrite() { return true; }
+        void lockWrite() { }
+        void unlockWrite() { }
+        void lockNodeCreation() { }
+        void unlockNodeCreation() { }
+        int writes() { return 0; }
+
+        <T> Iterable<T> guard(Iterable<T> iterable) {
+            return iterable;
+        }
+
+        Triples guard(Triples triples) {
+            return triples;
+        }
+
+        ObjectViewSupport guard(ObjectViewSupport support) {
+            return support;
+        }
+    };
+
+    /**
+     * A lock that does nothing until it is {@linkplain #freeze() frozen}; from then on, any attempt
+     * to modify the model fails. Readers of a frozen model need no locking at all.
+     */
+    static final class FreezableModelLock extends ModelLock {
+        private volatile boolean frozen;
+
+        void freeze() {
+            frozen = true;
+        }
+
+        @Override
+        boolean isFrozen() {
+            return frozen;
+        }
+
+        boolean isConcurrent() {
+            return false;
+        }
+
+        void lockRead() { }
+        void unlockRead() { }
+
+        boolean canLockWrite() {
+            return !frozen;
+        }
+
+        void lockWrite() {
+            if (frozen) {
+                throw new UnsupportedOperationException("The model is frozen and cannot be modified");
+            }
+        }
+
+        void unlockWrite() { }
+
+        //nodes of a frozen model are created without locking, and are canonicalized by the model
+        void lockNodeCreation() { }
+        void unlockNodeCreation() { }
+
+        int writes() {
+            return 0;
+        }
+
+        <T> Iterable<T> guard(Iterable<T> iterable) {
+            return iterable;
+        }
+
+        Triples guard(Triples triples) {
+            return triples;
+        }
+
+        ObjectViewSupport guard(ObjectViewSupport support) {
+            return support;
+        }
+    }
+
+    private static class ReadWriteModelLock extends ModelLock {
+        private final ReentrantReadWriteLock[] stripes;
+        private final ReentrantLock nodeCreationLock = new ReentrantLock();
+        private volatile int writes;
+
+        ReadWriteModelLock() {
+            int count = 1;
+            while (count < Runtime.getRuntime().availableProcessors() && count < 64) {
+                count <<= 1;
+            }
+            stripes = new ReentrantReadWriteLock[count];
+            for (int i = 0; i < count; i++) {
+                stripes[i] = new ReentrantReadWriteLock();
+            }
+        }
+
+        //a thread always uses the same stripe for reading
+        private ReentrantReadWriteLock stripe() {
+            return stripes[(int)Thread.currentThread().getId() & (stripes.length - 1)];
+        }
+
+        boolean isConcurrent() {
+            return true;
+        }
+
+        void lockRead() {
+            stripe().readLock().lock();
+        }
+
+        void unlockRead() {
+            stripe().readLock().unlock();
+        }
+
+        boolean canLockWrite() {
+            return stripe().getReadHoldCount() == 0;
+        }
+
+        void lockWrite() {
+            if (!canLockWrite()) {
+                //ReentrantReadWriteLock would deadlock instead
+                throw new IllegalStateException("Cannot modify the model while reading it in the same thread");
+            }
+            //stripes are always acquired in the same order, so writers cannot deadlock
+            for (ReentrantReadWriteLock stripe : stripes) {
+                stripe.writeLock().lock();
+            }
+            writes++;
+        }
+
+        void unlockWrite() {
+            for (int i = stripes.length - 1; i >= 0; i--) {
+                stripes[i].writeLock().unlock();
+            }
+        }
+
+        void lockNodeCreation() {
+            lockRead();
+            nodeCreationLock.lock();
+        }
+
+        void unlockNodeCreation() {
+            nodeCreationLock.unlock();
+            unlockRead();
+        }
+
+        int writes() {
+            return writes;
+        }
+
+        <T> Iterable<T> guard(final Iterable<T> iterable) {
+            return new Iterable<T>() {
+                public Iterator<T> iterator() {
+                    return new GuardedIterator<T>(iterable);
+                }
+            };
+        }
+
+        Triples guard(final Triples triples) {
+            return new Triples(guard((Iterable<Triple>)triples)) {
+                @Override
+                public List<Triples> partition(int parts) {
+                    lockRead();
+                    try {
+                        List<Triples> result = Lists.newArrayList();
+                        for (Triples part : triples.partition(parts)) {
+                            result.add(new Triples(guard((Iterable<Triple>)part)));
+                        }
+                        return result;
+                    } finally {
+                        unlockRead();
+                    }
+                }
+            };
+        }
+
+        ObjectViewSupport guard(ObjectViewSupport support) {
+            return new GuardedObjectViewSupport(this, support);
+        }
+
+        /**
+         * Iterates a snapshot of an iterable of the model, read as a whole under the read lock when
+         * the iteration starts. Thus the iteration reflects the state of the model at that point,
+         * and is not affected by later modifications, either by other threads or by the iterating
+         * thread itself. The lock is held only while reading the results, not while the caller
+         * processes them, at the cost of keeping all of them in memory.
+         */
+        private class GuardedIterator<T> extends AbstractIterator<T> {
+            private final Iterable<T> iterable;
+            private Iterator<T> snapshot;
+
+            GuardedIterator(Iterable<T> iterable) {
+                this.iterable = iterable;
+            }
+
+            @Override
+            protected T computeNext() {
+                if (snapshot == null) {
+                    snapshot = readSnapshot();
+                }
+                return snapshot.hasNext() ? snapshot.next() : endOfData();
+            }
+
+            private Iterator<T> readSnapshot() {
+                lockRead();
+                try {
+                    List<T> results = Lists.newArrayList();
+                    for (T result : iterable) {
+                        results.add(result);
+                    }
+                    return results.iterator();
+                } finally {
+                    unlockRead();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,501 @@
+/* 
+ *  COPYRIGHT (c) 2008-2009 by Institute of Computer Science, 
+ *  Foundation for Research and Technology - Hellas
+ *  Contact: 
+ *      POBox 1385, Heraklio Crete, GR-700 13 GREECE
+ *      Tel:+30-2810-391632
+ *      Fax: +30-2810-391638
+ *      E-mail: isl@ics.forth.gr
+ *      http://www.ics.forth.gr/isl
+ *
+ *   Authors  :  Dimitris Andreou, Nelly Vouzoukidou.
+ *
+ *   This file is part of SWKM model APIs (see also http://athena.ics.forth.gr:9090/SWKM/).
+ *
+ *    SWKM model APIs is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU Lesser General Public License as published by
+ *    the Free Software Foundation, either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *   SWKM model APIs is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Lesser General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Lesser General Public License
+ *   along with SWKM model APIs.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ *   SWKM has been partially supported by EU project KP-Lab (IP IST-27490) kp-lab.org
+ */
+
+
+package gr.forth.ics.swkm.model2;
+
+import gr.forth.ics.swkm.model2.Model.PatternQuery;
+import gr.forth.ics.swkm.model2.index.ModelIndexer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The implementation of {@link PatternQuery} for {@link ModelImpl}.
+ *
+ * <p>The patterns are ordered greedily: first the one with the lowest estimated number of matching triples,
+ * then, repeatedly, one that shares a variable with the patterns already ordered (if any), with the fewest
+ * variables still unbound, and the lowest estimate. The patterns are then joined in that order, keeping all
+ * partial solutions after each one. A pattern is joined by looking up the indexes for each
+ * partial solution (index nested loop), unless there are more partial solutions than triples estimated
+ * to match the pattern, or the pattern shares no variable with them; then the triples that match
+ * the pattern are scanned once, and joined with the partial solutions through a hash table.
+ */
+class PatternQueryImpl implements PatternQuery {
+    private static final int G = 0;
+    private static final int S = 1;
+    private static final int P = 2;
+    private static final int O = 3;
+
+    private final ModelImpl model;
+    private final ModelIndexer indexer;
+    private final ModelLock lock;
+
+    private final List<Pattern> patterns = new ArrayList<Pattern>();
+    private final Map<String, Integer> variables = new LinkedHashMap<String, Integer>();
+
+    PatternQueryImpl(ModelImpl model, ModelIndexer indexer, ModelLock lock) {
+        this.model = model;
+        this.indexer = indexer;
+        this.lock = lock;
+    }
+
+    public PatternQuery where(Object subject, Object predicate, Object object) {
+        return where(null, subject, predicate, object);
+    }
+
+    public PatternQuery where(Object namedGraph, Object subject, Object predicate, Object object) {
+        Pattern pattern = new Pattern();
+        term(pattern, G, namedGraph);
+        term(pattern, S, subject);
+        term(pattern, P, predicate);
+        term(pattern, O, object);
+        patterns.add(pattern);
+        return this;
+    }
+
+    private void term(Pattern pattern, int position, Object term) {
+        if (term instanceof String && ((String)term).startsWith("?")) {
+            String name = ((String)term).substring(1);
+            Integer var = variables.get(name);
+            if (var == null) {
+                var = variables.size();
+                variables.put(name, var);
+            }
+            pattern.vars[position] = var;
+        } else if (term != null) {
+            RdfNode node = map(position, term);
+            if (node.owner() != model) {
+                throw new IllegalArgumentException("Object [" + node + "] is not owned by this " +
+                        Model.class.getSimpleName());
+            }
+            if (!fits(position, node)) {
+                throw new IllegalArgumentException("Node [" + node + "] cannot be the " +
+                        positionName(position) + " of a triple");
+            }
+            pattern.constants[position] = node;
+        }
+    }
+
+    private RdfNode map(int position, Object term) {
+        if (term instanceof RdfNode) {
+            return (RdfNode)term;
+        } else if (term instanceof Uri) {
+            return model.mapResource((Uri)term);
+        } else if (term instanceof Literal) {
+            if (position != O) {
+                throw new IllegalArgumentException("A literal cannot be the " +
+                        positionName(position) + " of a triple");
+            }
+            return model.mapLiteral((Literal)term);
+        } else if (term instanceof String) {
+            switch (position) {
+                case S: return model.mapObjectNode((String)term);
+                case O: return model.map((String)term);
+                default: return model.mapResource((String)term);
+            }
+        }
+        throw new IllegalArgumentException("Term [" + term + "] is neither a variable nor " +
+                "an RdfNode, Uri, Literal or String");
+    }
+
+    private static String positionName(int position) {
+        switch (position) {
+            case G: return "named graph";
+            case S: return "subject";
+            case P: return "predicate";
+            default: return "object";
+        }
+    }
+
+    private static boolean fits(int position, RdfNode node) {
+        switch (position) {
+            case S: return node.isObjectNode();
+            case O: return true;
+            default: return node.isResource();
+        }
+    }
+
+    public Iterable<Bindings> fetch() {
+        return new Iterable<Bindings>() {
+            public Iterator<Bindings> iterator() {
+                final List<RdfNode[]> rows;
+                lock.lockRead();
+                try {
+                    rows = evaluate();
+                } finally {
+                    lock.unlockRead();
+                }
+                final Map<String, Integer> vars = new HashMap<String, Integer>(variables);
+                final List<String> names = Collections.unmodifiableList(
+                        new ArrayList<String>(variables.keySet()));
+                final Iterator<RdfNode[]> iterator = rows.iterator();
+                return new Iterator<Bindings>() {
+                    public boolean hasNext() {
+                        return iterator.hasNext();
+                    }
+
+                    public Bindings next() {
+                        return new BindingsImpl(names, vars, iterator.next());
+                    }
+
+                    public void remove() {
+                        throw new UnsupportedOperationException();
+                    }
+                };
+            }
+        };
+    }
+
+    public boolean exists() {
+        lock.lockRead();
+        try {
+            Pattern[] plan = plan();
+            return plan != null && exists(plan, 0, new RdfNode[variables.size()]);
+        } finally {
+            lock.unlockRead();
+        }
+    }
+
+    public int count() {
+        lock.lockRead();
+        try {
+            return evaluate().size();
+        } finally {
+            lock.unlockRead();
+        }
+    }
+
+    /**
+     * Orders the patterns, or returns {@code null} if some pattern cannot match any triple.
+     */
+    private Pattern[] plan() {
+        List<Pattern> remaining = new ArrayList<Pattern>(patterns);
+        for (Pattern pattern : remaining) {
+            pattern.estimate = indexer.estimateTriples(
+                    (Resource)pattern.constants[G], (ObjectNode)pattern.constants[S],
+                    (Resource)pattern.constants[P], pattern.constants[O]);
+            if (pattern.estimate == 0) {
+                return null;
+            }
+        }
+        Pattern[] plan = new Pattern[remaining.size()];
+        boolean[] bound = new boolean[variables.size()];
+        for (int i = 0; i < plan.length; i++) {
+            Pattern best = null;
+            for (Pattern pattern : remaining) {
+                if (best == null || (i == 0 ? pattern.estimate < best.estimate :
+                        pattern.isPreferableTo(best, bound))) {
+                    best = pattern;
+                }
+            }
+            remaining.remove(best);
+            plan[i] = best;
+            for (int var : best.vars) {
+                if (var >= 0) {
+                    bound[var] = true;
+                }
+            }
+        }
+        return plan;
+    }
+
+    private List<RdfNode[]> evaluate() {
+        Pattern[] plan = plan();
+        if (plan == null) {
+            return Collections.emptyList();
+        }
+        List<RdfNode[]> rows = new ArrayList<RdfNode[]>();
+        rows.add(new RdfNode[variables.size()]);
+        boolean[] bound = new boolean[variables.size()];
+        boolean mayRepeat = false;
+        for (Pattern pattern : plan) {
+            int[] joinVars = pattern.joinVariables(bound);
+            if (rows.size() == 1 || (joinVars.length > 0 && rows.size() <= pattern.estimate)) {
+                rows = indexNestedLoopJoin(pattern, rows);
+            } else {
+                rows = hashJoin(pattern, rows, joinVars);
+            }
+            if (rows.isEmpty()) {
+                return rows;
+            }
+            for (int var : pattern.vars) {
+                if (var >= 0) {
+                    bound[var] = true;
+                }
+            }
+            mayRepeat |= pattern.hasAnonymousTerm();
+        }
+        if (mayRepeat) {
+            //different triples may match the same named terms
+            Set<List<RdfNode>> distinct = new LinkedHashSet<List<RdfNode>>();
+            List<RdfNode[]> distinctRows = new ArrayList<RdfNode[]>();
+            for (RdfNode[] row : rows) {
+                if (distinct.add(Arrays.asList(row))) {
+                    distinctRows.add(row);
+                }
+            }
+            rows = distinctRows;
+        }
+        return rows;
+    }
+
+    private List<RdfNode[]> indexNestedLoopJoin(Pattern pattern, List<RdfNode[]> rows) {
+        List<RdfNode[]> result = new ArrayList<RdfNode[]>();
+        for (RdfNode[] row : rows) {
+            for (Iterator<Triple> i = find(pattern, row); i.hasNext(); ) {
+                pattern.extend(row, i.next(), result);
+            }
+        }
+        return result;
+    }
+
+    private List<RdfNode[]> hashJoin(Pattern pattern, List<RdfNode[]> rows, int[] joinVars) {
+        RdfNode[] empty = new RdfNode[variables.size()];
+        List<RdfNode[]> matches = new ArrayList<RdfNode[]>();
+        for (Iterator<Triple> i = find(pattern, empty); i.hasNext(); ) {
+            pattern.extend(empty, i.next(), matches);
+        }
+        Map<List<RdfNode>, List<RdfNode[]>> table = new HashMap<List<RdfNode>, List<RdfNode[]>>();
+        for (RdfNode[] match : matches) {
+            List<RdfNode> key = key(match, joinVars);
+            List<RdfNode[]> bucket = table.get(key);
+            if (bucket == null) {
+                bucket = new ArrayList<RdfNode[]>(2);
+                table.put(key, bucket);
+            }
+            bucket.add(match);
+        }
+        List<RdfNode[]> result = new ArrayList<RdfNode[]>();
+        for (RdfNode[] row : rows) {
+            List<RdfNode[]> bucket = table.get(key(row, joinVars));
+            if (bucket == null) {
+                continue;
+            }
+            for (RdfNode[] match : bucket) {
+                RdfNode[] joined = row.clone();
+                for (int var : pattern.vars) {
+                    if (var >= 0) {
+                        joined[var] = match[var];
+                    }
+                }
+                result.add(joined);
+            }
+        }
+        return result;
+    }
+
+    private static List<RdfNode> key(RdfNode[] row, int[] vars) {
+        RdfNode[] key = new RdfNode[vars.length];
+        for (int i = 0; i < vars.length; i++) {
+            key[i] = row[vars[i]];
+        }
+        return Arrays.asList(key);
+    }
+
+    private boolean exists(Pattern[] plan, int step, RdfNode[] row) {
+        if (step == plan.length) {
+            return true;
+        }
+        Pattern pattern = plan[step];
+        List<RdfNode[]> extended = new ArrayList<RdfNode[]>();
+        for (Iterator<Triple> i = find(pattern, row); i.hasNext(); ) {
+            extended.clear();
+            pattern.extend(row, i.next(), extended);
+            for (RdfNode[] next : extended) {
+                if (exists(plan, step + 1, next)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Finds the triples that match the pattern, once its variables are replaced by their
+     * values in the specified partial solution.
+     */
+    private Iterator<Triple> find(Pattern pattern, RdfNode[] row) {
+        RdfNode[] terms = new RdfNode[4];
+        for (int position = G; position <= O; position++) {
+            RdfNode term = pattern.constants[position];
+            int var = pattern.vars[position];
+            if (var >= 0 && row[var] != null) {
+                term = row[var];
+                if (!fits(position, term)) {
+                    return Collections.<Triple>emptyList().iterator();
+                }
+            }
+            terms[position] = term;
+        }
+        return indexer.findTriples((Resource)terms[G], (ObjectNode)terms[S],
+                (Resource)terms[P], terms[O]);
+    }
+
+    private static class Pattern {
+        final RdfNode[] constants = new RdfNode[4];
+        final int[] vars = { -1, -1, -1, -1 };
+        int estimate;
+
+        boolean hasAnonymousTerm() {
+            for (int position = S; position <= O; position++) {
+                if (constants[position] == null && vars[position] < 0) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        int[] joinVariables(boolean[] bound) {
+            int[] joinVars = new int[4];
+            int count = 0;
+            for (int var : vars) {
+                if (var >= 0 && bound[var] && !contains(joinVars, count, var)) {
+                    joinVars[count++] = var;
+                }
+            }
+            int[] result = new int[count];
+            System.arraycopy(joinVars, 0, result, 0, count);
+            return result;
+        }
+
+        int unboundVariables(boolean[] bound) {
+            int count = 0;
+            for (int var : vars) {
+                if (var >= 0 && !bound[var]) {
+                    count++;
+                }
+            }
+            return count;
+        }
+
+        boolean isPreferableTo(Pattern other, boolean[] bound) {
+            boolean joins = joinVariables(bound).length > 0;
+            boolean otherJoins = other.joinVariables(bound).length > 0;
+            if (joins != otherJoins) {
+                return joins;
+            }
+            int unbound = unboundVariables(bound);
+            int otherUnbound = other.unboundVariables(bound);
+            if (unbound != otherUnbound) {
+                return unbound < otherUnbound;
+            }
+            return estimate < other.estimate;
+        }
+
+        /**
+         * Adds to the result the partial solution extended with the values of the triple,
+         * once for each of its named graphs if the named graph is an unbound variable. Nothing is
+         * added if a variable occurs twice in the pattern and the triple has different values for it.
+         */
+        void extend(RdfNode[] row, Triple triple, List<RdfNode[]> result) {
+            int graphVar = vars[G];
+            if (graphVar >= 0 && row[graphVar] == null) {
+                for (Resource graph : triple.graphs()) {
+                    RdfNode[] extended = row.clone();
+                    extended[graphVar] = graph;
+                    bind(extended, triple, result);
+                }
+            } else {
+                bind(row.clone(), triple, result);
+            }
+        }
+
+        private void bind(RdfNode[] row, Triple triple, List<RdfNode[]> result) {
+            if (bind(row, vars[S], triple.subject()) && bind(row, vars[P], triple.predicate())
+                    && bind(row, vars[O], triple.object())) {
+                result.add(row);
+            }
+        }
+
+        private static boolean bind(RdfNode[] row, int var, RdfNode value) {
+            if (var < 0) {
+                return true;
+            }
+            if (row[var] == null) {
+                row[var] = value;
+                return true;
+            }
+            return row[var].equals(value);
+        }
+
+        private static boolean contains(int[] array, int length, int value) {
+            for (int i = 0; i < length; i++) {
+                if (array[i] == value) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private static class BindingsImpl implements Bindings {
+        private final List<String> names;
+        private final Map<String, Integer> variables;
+        private final RdfNode[] row;
+
+        BindingsImpl(List<String> names, Map<String, Integer> variables, RdfNode[] row) {
+            this.names = names;
+            this.variables = variables;
+            this.row = row;
+        }
+
+        public List<String> variables() {
+            return names;
+        }
+
+        public RdfNode get(String variable) {
+            Integer var = variables.get(variable.startsWith("?") ? variable.substring(1) : variable);
+            if (var == null) {
+                throw new IllegalArgumentException("Unknown variable: " + variable);
+            }
+            return row[var];
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder("{");
+            for (int i = 0; i < names.size(); i++) {
+                if (i > 0) {
+                    sb.append(", ");
+                }
+                sb.append('?').append(names.get(i)).append('=').append(row[i]);
+            }
+            return sb.append('}').toString();
+        }
+    }
+}
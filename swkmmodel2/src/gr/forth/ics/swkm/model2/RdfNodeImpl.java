@@ -35,7 +35,6 @@ import com.google.common.base.Joiner;
 import gr.forth.ics.swkm.model2.TypeInference.InternalType;
 import gr.forth.ics.swkm.model2.event.TypeChange;
 import gr.forth.ics.swkm.model2.index.Index;
-import gr.forth.ics.swkm.model2.labels.LabelManager;
 import gr.forth.ics.swkm.model2.views.ClassView;
 import gr.forth.ics.swkm.model2.views.ContainerView;
 import gr.forth.ics.swkm.model2.views.IndividualView;
@@ -208,13 +207,7 @@ abstract class RdfNodeImpl implements RdfNode,
     }
 
     public boolean isAncestorOf(RdfNode resource) {
-        LabelManager labelManager = owner.getLabelManager();
-        final Resource first = (Resource)this;
-        final Resource second = (Resource)resource;
-        if (labelManager.areLabelsAvailable()) {
-            return labelManager.isFirstAncestorOfSecond(first, second);
-        }
-        return owner.objectViewSupport().isFirstAncestorOfSecond(first, second);
+        return owner.isFirstAncestorOfSecond((Resource)this, (Resource)resource);
     }
 
     public boolean isDescendantOf(RdfNode resource) {
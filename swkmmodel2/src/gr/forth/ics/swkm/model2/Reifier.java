@@ -68,40 +68,24 @@ public class Reifier {
      */
     public static void includeReifiedTriples(Model model, Collection<Triple> reifiedStatements)
     throws IllegalReifiedStatementException {
-        for (ObjectNode node : model.triples()
-            .p(Rdf.TYPE)
-            .o(Rdf.STATEMENT)
-            .fetch().subjects()) {
+        for (Bindings bindings : model.match()
+            .where("?statement", Rdf.TYPE, Rdf.STATEMENT)
+            .where("?statement", Rdf.SUBJECT, "?subject")
+            .where("?statement", Rdf.PREDICATE, "?predicate")
+            .where("?statement", Rdf.OBJECT, "?object")
+            .fetch()) {
             
-            Iterable<RdfNode> subjects = model.triples()
-                .s(node)
-                .p(Rdf.SUBJECT)
-                .fetch().objects();
-            
-            Iterable<RdfNode> predicates = model.triples()
-                .s(node)
-                .p(Rdf.PREDICATE)
-                .fetch().objects();
-            
-            Iterable<RdfNode> objects = model.triples()
-                .s(node)
-                .p(Rdf.OBJECT)
-                .fetch().objects();
-            
-            for (RdfNode subject : subjects) {
-                for (RdfNode predicate : predicates) {
-                    for (RdfNode object : objects) {
-                        if (!subject.isObjectNode()) {
-                            throw new IllegalReifiedStatementException("Subject is not an ObjectNode", subject, predicate, object);
-                        } else if (!predicate.isResource()) {
-                            throw new IllegalReifiedStatementException("Predicate is not a Resource", subject, predicate, object);
-                        }
-                        Triple reifiedTriple = model.add(null, (ObjectNode)subject, (Resource)predicate, object);
-                        if (reifiedStatements != null) {
-                            reifiedStatements.add(reifiedTriple);
-                        }
-                    }
-                }
+            RdfNode subject = bindings.get("subject");
+            RdfNode predicate = bindings.get("predicate");
+            RdfNode object = bindings.get("object");
+            if (!subject.isObjectNode()) {
+                throw new IllegalReifiedStatementException("Subject is not an ObjectNode", subject, predicate, object);
+            } else if (!predicate.isResource()) {
+                throw new IllegalReifiedStatementException("Predicate is not a Resource", subject, predicate, object);
+            }
+            Triple reifiedTriple = model.add(null, (ObjectNode)subject, (Resource)predicate, object);
+            if (reifiedStatements != null) {
+                reifiedStatements.add(reifiedTriple);
             }
         }
     }
@@ -41,12 +41,28 @@ import com.google.common.base.Preconditions;
 final class ResourceImpl extends ObjectNodeImpl implements Resource {
     private final Uri uri;
 
+    /**
+     * The id of this resource as a named graph, or {@code -1} if it has never contained
+     * any triple. Assigned by the owner model.
+     */
+    int graphId = -1;
+
+    //the named graphs of the triples that are contained only in this named graph
+    private GraphSet singletonGraphSet;
+
     ResourceImpl(ModelImpl owner, Uri uri) {
         super(owner);
         this.uri = Preconditions.checkNotNull(uri);
         resetType();
     }
 
+    GraphSet singletonGraphSet() {
+        if (singletonGraphSet == null) {
+            singletonGraphSet = GraphSet.singleton(this);
+        }
+        return singletonGraphSet;
+    }
+
     public boolean is(Uri uri) {
         return this.uri.equals(uri);
     }
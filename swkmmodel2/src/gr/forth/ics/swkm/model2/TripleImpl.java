@@ -33,8 +33,6 @@ package gr.forth.ics.swkm.model2;
 
 import java.util.Arrays;
 import java.util.Collection;
-import java.util.Collections;
-import java.util.Set;
 import org.springframework.util.Assert;
 
 /**
@@ -47,7 +45,7 @@ final class TripleImpl implements Triple {
     private final RdfNodeImpl object;
 
     //accessed directly from ModelImpl
-    Set<ResourceImpl> namedGraphs = Collections.emptySet();
+    GraphSet namedGraphs = GraphSet.EMPTY;
 
     TripleImpl(ObjectNodeImpl subject, ResourceImpl predicate, RdfNodeImpl object) {
         Assert.notNull(subject, "subject");
@@ -60,7 +58,7 @@ final class TripleImpl implements Triple {
 
     @SuppressWarnings("unchecked") //returned collection is immutable
     public Collection<Resource> graphs() {
-        return (Collection)Collections.unmodifiableCollection(namedGraphs);
+        return (Collection)namedGraphs;
     }
 
     public Model owner() {
@@ -34,9 +34,15 @@ package gr.forth.ics.swkm.model2;
 import com.google.common.base.Function;
 import com.google.common.base.Joiner;
 import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
 import gr.forth.ics.swkm.model2.index.EmptyTriplesList;
 import java.util.Collections;
 import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 /**
  * An iterable over triples. Apart from iterating over Triple instances, it can additionally
@@ -112,6 +118,86 @@ public class Triples implements Iterable<Triple> {
         return triples.iterator();
     }
     
+    /**
+     * Splits these triples into disjoint parts of roughly equal size, which can be iterated concurrently
+     * by different threads (as long as the model is not modified meanwhile). When all triples of a
+     * model are selected, the parts are taken directly from the indexes of the model; otherwise, the
+     * triples are copied and the copy is split.
+     *
+     * @param parts the maximum number of parts
+     * @return the parts of these triples, which are fewer than requested (or none) if there are not enough triples
+     * @throws IllegalArgumentException if {@code parts} is not positive
+     */
+    public List<Triples> partition(int parts) {
+        if (parts <= 0) {
+            throw new IllegalArgumentException("Parts must be positive: " + parts);
+        }
+        List<Triple> copy = Collections.unmodifiableList(Lists.newArrayList(triples));
+        parts = Math.min(parts, copy.size());
+        List<Triples> result = Lists.newArrayListWithCapacity(parts);
+        for (int i = 0; i < parts; i++) {
+            result.add(new Triples(copy.subList(
+                    (int)((long)i * copy.size() / parts), (int)((long)(i + 1) * copy.size() / parts))));
+        }
+        return result;
+    }
+
+    /**
+     * Applies the function to each {@linkplain #partition(int) part} of these triples, in parallel
+     * by the specified executor, and returns the results once all parts are processed. The function
+     * must only read the model, which must not be modified until this method returns.
+     *
+     * <p>For example, this counts the triples that have a literal object, using all processors:
+     * <pre>{@code
+     *int parts = Runtime.getRuntime().availableProcessors();
+     *int count = 0;
+     *for (Integer partial : model.triples().fetch().scan(executor, parts, new Function<Triples, Integer>() {
+     *    public Integer apply(Triples part) {
+     *        int count = 0;
+     *        for (RdfNode object : part.objects()) {
+     *            if (object.isLiteral()) count++;
+     *        }
+     *        return count;
+     *    }
+     *})) {
+     *    count += partial;
+     *}
+     *}</pre>
+     *
+     * @param executor the executor to run the function on each part
+     * @param parts the maximum number of parts
+     * @param function the function to apply to each part
+     * @return the results of the function, in the order of the parts
+     * @throws IllegalArgumentException if {@code parts} is not positive
+     */
+    public <R> List<R> scan(ExecutorService executor, int parts, final Function<? super Triples, ? extends R> function) {
+        List<Callable<R>> tasks = Lists.newArrayList();
+        for (final Triples part : partition(parts)) {
+            tasks.add(new Callable<R>() {
+                public R call() {
+                    return function.apply(part);
+                }
+            });
+        }
+        List<R> results = Lists.newArrayListWithCapacity(tasks.size());
+        try {
+            for (Future<R> future : executor.invokeAll(tasks)) {
+                results.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException)e.getCause();
+            } else if (e.getCause() instanceof Error) {
+                throw (Error)e.getCause();
+            }
+            throw new RuntimeException(e.getCause());
+        }
+        return results;
+    }
+    
     /**
      * {@inheritDoc}
      * 
@@ -148,7 +234,8 @@ public class Triples implements Iterable<Triple> {
      */
     public boolean delete() {
         boolean changed = false;
-        for (Triple t : this) {
+        //iterators of the model are lazy, so the triples are copied before the model is modified
+        for (Triple t : Lists.newArrayList(this)) {
             changed |= t.delete();
         }
         return changed;
@@ -80,6 +80,22 @@ class TypeInference {
         new CollectingTypeChanger().executeAll(new PendingTriple(t, null), null);
     }
 
+    /**
+     * Changes the type of a node to a type that is already known to be inferable for it
+     * (e.g. it was inferred for the same triples in another model), without applying any typing rule.
+     */
+    static void applyKnownType(ObjectNodeImpl node, RdfType type) {
+        InternalType oldType = node.internalType();
+        InternalType newType = oldType.transformTo(type);
+        if (newType == oldType) {
+            return;
+        }
+        if (!node.isTypePossible(type)) {
+            throw new RdfTypeException("Attempted to change " + node + " to " + type + ", which is illegal");
+        }
+        node.setInternalType(newType, new PendingChange(null, node, oldType.getType(), type));
+    }
+
     static TypeChange initialChange(RdfNodeImpl node, RdfType oldType, RdfType newType) {
         return new PendingChange(null, node, oldType, newType);
     }
@@ -32,9 +32,6 @@
 package gr.forth.ics.swkm.model2;
 
 import java.io.IOException;
-import java.net.URI;
-import java.net.URISyntaxException;
-import java.util.regex.Pattern;
 import org.springframework.util.Assert;
 
 /**
@@ -45,7 +42,7 @@ import org.springframework.util.Assert;
  */
 public final class Uri {
     /*
-     * Note that namespace and localName strings are interned, so it is safe to
+     * Note that namespace and localName strings are canonicalized (see UriPool), so it is safe to
      * compare using "==".
      *
      * The delimiter is the last character of the namespace part.
@@ -89,9 +86,9 @@ public final class Uri {
             checkDoesNotContainSharp(newLocal, "Local part");
             localName = newLocal;
         }
-        //equals() depends on strings being interned
-        this.namespace = namespace.intern();
-        this.localName = localName.intern();
+        //equals() depends on strings being canonical
+        this.namespace = UriPool.NAMESPACES.canonicalize(namespace);
+        this.localName = UriPool.LOCAL_NAMES.canonicalize(localName);
     }
     
     /**
@@ -145,26 +142,34 @@ public final class Uri {
         if (uri == null) {
             return null;
         }
-        // if there are more than one hashes on the uri, an error will occur in
-        // the Uri object creation: no need to check now
-        int ns = uri.lastIndexOf('#');
-        
-        if (ns == -1) {
-            ns = uri.lastIndexOf('/');
+        //a single pass finds the last of each delimiter, and whether there are more than one hashes
+        int lastHash = -1;
+        int lastSlash = -1;
+        int lastColon = -1;
+        boolean manyHashes = false;
+        for (int i = 0, length = uri.length(); i < length; i++) {
+            switch (uri.charAt(i)) {
+                case '#':
+                    manyHashes |= lastHash >= 0;
+                    lastHash = i;
+                    break;
+                case '/':
+                    lastSlash = i;
+                    break;
+                case ':':
+                    lastColon = i;
+                    break;
+            }
         }
-
-        if (ns == -1) {
-            ns = uri.lastIndexOf(':');
+        if (manyHashes) {
+            return null;
         }
-        
+        int ns = lastHash >= 0 ? lastHash : (lastSlash >= 0 ? lastSlash : lastColon);
         if (ns == -1) {
             return new Uri(uri, "");
         }
-        try {
-            return new Uri(uri.substring(0, ns + 1), uri.substring(ns + 1));
-        } catch (UriFormatException e) {
-            return null;
-        }
+        //the namespace ends with a delimiter, and there is no other hash: nothing left to validate
+        return new Uri(uri.substring(0, ns + 1), uri.substring(ns + 1), false);
     }
     
     private static void checkDoesNotContainSharp(String s, String name) {
@@ -267,31 +272,25 @@ public final class Uri {
     /**
      * Returns whether this URI is valid or not. 
      * 
-     * <p>A URI is valid if it does not violate 
-     * <a href="http://www.ietf.org/rfc/rfc2396.txt">RFC&nbsp;2396</a>,
-     * as argumented by the deviations in {@link java.net.URI}.</p>
+     * <p>A URI is valid if it consists only of characters allowed by
+     * <a href="http://www.ietf.org/rfc/rfc3987.txt">RFC&nbsp;3987</a> (thus, it may be an IRI),
+     * or percent-encoded octets, and its scheme, if it has one, is well-formed.</p>
      *
      * @return true if this URI is valid; false otherwise.
      */
     public boolean isValid() {
-        try {
-            new URI(toString(Delimiter.WITH));
-            return true;
-        } catch (URISyntaxException e) {
-            return false;
-        }
+        return UriSyntax.isValid(namespace, localName);
     }
 
     /**
      * Returns whether this URI is absolute or not.
      *
-     * <p>A URI is absolute when it has a scheme component, as defined in RFC 2396</p>
+     * <p>A URI is absolute when it has a scheme component, as defined in RFC 3987</p>
      *
      * @return true if this URI is absolute; false otherwise.
      */
     public boolean isAbsolute() {
-        isValid();
-        return namespace.contains(":");
+        return UriSyntax.isAbsolute(namespace);
     }
 
     /**
@@ -314,16 +313,12 @@ public final class Uri {
         return this.namespace == other.namespace && this.localName == other.localName;
     }
     
-    private static final Pattern validNamespacePattern = Pattern.compile("\\p{Alpha}([\\w_\\-/?:.~])*[#/:]?");
-    private static final Pattern validLocalNamePattern = Pattern.compile("(\\p{Alpha}([\\w_\\-/?:.~])*)?");
-    
     /**
      * @see <a href="https://139.91.183.101/ICSTrac/wiki/RdfSuiteSpecification.txt">RdfSuiteSpecification for character restrictions</a>
      * @return true if and only if this Uri contains only valid characters
      */
     public boolean validateCharacters() {
-        return validNamespacePattern.matcher(namespace).matches()
-                && validLocalNamePattern.matcher(localName).matches();
+        return UriSyntax.hasRestrictedCharacters(namespace, localName);
     }
 
     /**
@@ -0,0 +1,222 @@
+/* 
+ *  COPYRIGHT (c) 2008-2009 by Institute of Computer Science, 
+ *  Foundation for Research and Technology - Hellas
+ *  Contact: 
+ *      POBox 1385, Heraklio Crete, GR-700 13 GREECE
+ *      Tel:+30-2810-391632
+ *      Fax: +30-2810-391638
+ *      E-mail: isl@ics.forth.gr
+ *      http://www.ics.forth.gr/isl
+ *
+ *   Authors  :  Dimitris Andreou, Nelly Vouzoukidou.
+ *
+ *   This file is part of SWKM model APIs (see also http://athena.ics.forth.gr:9090/SWKM/).
+ *
+ *    SWKM model APIs is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU Lesser General Public License as published by
+ *    the Free Software Foundation, either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *   SWKM model APIs is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Lesser General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Lesser General Public License
+ *   along with SWKM model APIs.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ *   SWKM has been partially supported by EU project KP-Lab (IP IST-27490) kp-lab.org
+ */
+
+
+package gr.forth.ics.swkm.model2;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A pool of canonical strings, used to canonicalize the parts of every {@link Uri}, so that they
+ * can be compared by reference. It is used instead of {@link String#intern()}, which is a bottleneck
+ * when many threads create Uris, and which never releases the strings.
+ *
+ * <p>Strings are weakly referenced, so that a string that is no longer used by any Uri can be
+ * garbage collected. The pool is divided into segments, selected by the hash of a string. Looking
+ * up a string that is already in the pool takes no lock; adding a string locks only its segment.
+ */
+final class UriPool {
+    /**
+     * The pool of namespaces; there are only few of them, but they are used very often.
+     */
+    static final UriPool NAMESPACES = new UriPool(4, 64);
+
+    /**
+     * The pool of local names.
+     */
+    static final UriPool LOCAL_NAMES = new UriPool(32, 1024);
+
+    private final Segment[] segments;
+    private final int segmentShift;
+    private final int segmentMask;
+
+    /**
+     * @param segmentCount the number of segments; must be a power of two
+     * @param segmentCapacity the initial capacity of each segment; must be a power of two
+     */
+    UriPool(int segmentCount, int segmentCapacity) {
+        if (Integer.bitCount(segmentCount) != 1 || Integer.bitCount(segmentCapacity) != 1) {
+            throw new IllegalArgumentException("Expected powers of two, found: " + segmentCount +
+                    ", " + segmentCapacity);
+        }
+        segments = new Segment[segmentCount];
+        for (int i = 0; i < segmentCount; i++) {
+            segments[i] = new Segment(segmentCapacity);
+        }
+        segmentMask = segmentCount - 1;
+        //(the shift is at most 31, so that a single segment is selected correctly)
+        segmentShift = Math.min(31, 32 - Integer.numberOfTrailingZeros(segmentCount));
+    }
+
+    /**
+     * Returns the canonical instance of a string; that is, a string equal to the specified one,
+     * which is the same instance for all equal strings, as long as it is used.
+     *
+     * @param s the string to canonicalize
+     * @return the canonical instance of the specified string
+     */
+    String canonicalize(String s) {
+        int hash = spread(s.hashCode());
+        //the highest bits select the segment, while the lowest ones select the bucket in it
+        Segment segment = segments[(hash >>> segmentShift) & segmentMask];
+        String canonical = segment.get(s, hash);
+        if (canonical != null) {
+            return canonical;
+        }
+        return segment.putIfAbsent(s, hash);
+    }
+
+    /**
+     * Returns the number of strings in this pool, some of which may be already garbage collected.
+     */
+    int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            size += segment.count;
+        }
+        return size;
+    }
+
+    private static int spread(int h) {
+        //same as in java.util.HashMap, so that poor hashes do not crowd in a few buckets
+        h ^= (h >>> 20) ^ (h >>> 12);
+        return h ^ (h >>> 7) ^ (h >>> 4);
+    }
+
+    /**
+     * A hash table of weakly referenced strings. Entries are never modified, apart from being
+     * cleared by the garbage collector, so buckets can be read without locking; modifications
+     * publish a new chain in the bucket.
+     */
+    private static final class Segment {
+        private final ReferenceQueue<String> queue = new ReferenceQueue<String>();
+        private volatile AtomicReferenceArray<Entry> table;
+        //guarded by this
+        private volatile int count;
+
+        Segment(int capacity) {
+            table = new AtomicReferenceArray<Entry>(capacity);
+        }
+
+        String get(String s, int hash) {
+            AtomicReferenceArray<Entry> table = this.table;
+            for (Entry e = table.get(hash & (table.length() - 1)); e != null; e = e.next) {
+                if (e.hash == hash) {
+                    String candidate = e.get();
+                    if (s.equals(candidate)) {
+                        return candidate;
+                    }
+                }
+            }
+            return null;
+        }
+
+        synchronized String putIfAbsent(String s, int hash) {
+            String existing = get(s, hash);
+            if (existing != null) {
+                return existing;
+            }
+            expungeCleared();
+            if (count >= table.length() * 3 / 4) {
+                rehash();
+            }
+            AtomicReferenceArray<Entry> table = this.table;
+            int index = hash & (table.length() - 1);
+            table.set(index, new Entry(s, hash, table.get(index), queue));
+            count++;
+            return s;
+        }
+
+        //called while holding the lock
+        private void expungeCleared() {
+            Entry cleared;
+            while ((cleared = (Entry)queue.poll()) != null) {
+                AtomicReferenceArray<Entry> table = this.table;
+                int index = cleared.hash & (table.length() - 1);
+                Entry first = table.get(index);
+                //entries are immutable, so the ones before the cleared entry are copied
+                //(an entry that is not found has been already dropped, by a rehash or a previous removal)
+                Entry chain = cleared.next;
+                int removed = 1;
+                boolean found = false;
+                for (Entry e = first; e != null; e = e.next) {
+                    if (e == cleared) {
+                        found = true;
+                        break;
+                    }
+                    String value = e.get();
+                    if (value != null) {
+                        chain = new Entry(value, e.hash, chain, queue);
+                    } else {
+                        removed++;
+                    }
+                }
+                if (found) {
+                    table.set(index, chain);
+                    count -= removed;
+                }
+            }
+        }
+
+        //called while holding the lock
+        private void rehash() {
+            AtomicReferenceArray<Entry> oldTable = table;
+            AtomicReferenceArray<Entry> newTable = new AtomicReferenceArray<Entry>(oldTable.length() * 2);
+            int mask = newTable.length() - 1;
+            int newCount = 0;
+            for (int i = 0; i < oldTable.length(); i++) {
+                for (Entry e = oldTable.get(i); e != null; e = e.next) {
+                    String value = e.get();
+                    if (value == null) {
+                        continue;
+                    }
+                    int index = e.hash & mask;
+                    newTable.set(index, new Entry(value, e.hash, newTable.get(index), queue));
+                    newCount++;
+                }
+            }
+            count = newCount;
+            table = newTable;
+        }
+    }
+
+    private static final class Entry extends WeakReference<String> {
+        final int hash;
+        final Entry next;
+
+        Entry(String value, int hash, Entry next, ReferenceQueue<String> queue) {
+            super(value, queue);
+            this.hash = hash;
+            this.next = next;
+        }
+    }
+}
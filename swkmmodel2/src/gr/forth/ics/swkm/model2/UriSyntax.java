@@ -0,0 +1,211 @@
+/* 
+ *  COPYRIGHT (c) 2008-2009 by Institute of Computer Science, 
+ *  Foundation for Research and Technology - Hellas
+ *  Contact: 
+ *      POBox 1385, Heraklio Crete, GR-700 13 GREECE
+ *      Tel:+30-2810-391632
+ *      Fax: +30-2810-391638
+ *      E-mail: isl@ics.forth.gr
+ *      http://www.ics.forth.gr/isl
+ *
+ *   Authors  :  Dimitris Andreou, Nelly Vouzoukidou.
+ *
+ *   This file is part of SWKM model APIs (see also http://athena.ics.forth.gr:9090/SWKM/).
+ *
+ *    SWKM model APIs is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU Lesser General Public License as published by
+ *    the Free Software Foundation, either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *   SWKM model APIs is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Lesser General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Lesser General Public License
+ *   along with SWKM model APIs.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ *   SWKM has been partially supported by EU project KP-Lab (IP IST-27490) kp-lab.org
+ */
+
+
+package gr.forth.ics.swkm.model2;
+
+import com.google.common.collect.MapMaker;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Hand-written syntax checks for the parts of a {@link Uri}. All checks are done in a single pass,
+ * without allocating any objects; the results for namespaces are also cached, since a namespace is
+ * typically shared by very many Uris.
+ */
+final class UriSyntax {
+    private static final int VALID = 1;
+    private static final int ABSOLUTE = 2;
+
+    /**
+     * Flags of namespaces; namespaces are canonical strings (see {@link UriPool}), so they are
+     * compared by identity, and an entry is removed when its namespace is no longer used.
+     */
+    private static final ConcurrentMap<String, Integer> namespaceFlags =
+            new MapMaker().weakKeys().makeMap();
+
+    /**
+     * The ASCII characters allowed in an IRI, except for {@code %}, which
+     * is only allowed as part of a percent-encoded octet.
+     */
+    private static final boolean[] iriAscii = new boolean[128];
+
+    /**
+     * The ASCII characters allowed by {@link Uri#validateCharacters()}, after the first one.
+     */
+    private static final boolean[] restrictedAscii = new boolean[128];
+
+    static {
+        for (char c = 'a'; c <= 'z'; c++) {
+            iriAscii[c] = iriAscii[Character.toUpperCase(c)] = true;
+        }
+        for (char c = '0'; c <= '9'; c++) {
+            iriAscii[c] = true;
+        }
+        //unreserved, gen-delims and sub-delims
+        for (char c : "-._~:/?#[]@!$&'()*+,;=".toCharArray()) {
+            iriAscii[c] = true;
+        }
+
+        for (char c = 0; c < 128; c++) {
+            restrictedAscii[c] = isAsciiLetterOrDigit(c);
+        }
+        for (char c : "_-/?:.~".toCharArray()) {
+            restrictedAscii[c] = true;
+        }
+    }
+
+    private UriSyntax() {
+    }
+
+    /**
+     * Returns whether the namespace and the local name consist only of characters allowed
+     * by <a href="http://www.ietf.org/rfc/rfc3987.txt">RFC&nbsp;3987</a> (or percent-encoded octets),
+     * and whether the scheme, if any, is well-formed.
+     */
+    static boolean isValid(String namespace, String localName) {
+        return (flags(namespace) & VALID) != 0 && hasIriCharacters(localName);
+    }
+
+    /**
+     * Returns whether the namespace starts with a scheme, as defined by
+     * <a href="http://www.ietf.org/rfc/rfc3987.txt">RFC&nbsp;3987</a>.
+     */
+    static boolean isAbsolute(String namespace) {
+        return (flags(namespace) & ABSOLUTE) != 0;
+    }
+
+    private static int flags(String namespace) {
+        Integer flags = namespaceFlags.get(namespace);
+        if (flags == null) {
+            int schemeLength = schemeLength(namespace);
+            int value = 0;
+            if (schemeLength > 0) {
+                value |= ABSOLUTE;
+            }
+            if (schemeLength >= 0 && hasIriCharacters(namespace)) {
+                value |= VALID;
+            }
+            flags = value; //small integers are cached, so this does not allocate
+            namespaceFlags.put(namespace, flags);
+        }
+        return flags;
+    }
+
+    /**
+     * Returns the length of the scheme of the string (excluding the colon), or {@code 0} if
+     * there is no colon before the first slash, question mark or hash, or {@code -1} if
+     * there is such a colon, but the characters before it do not form a valid scheme.
+     */
+    private static int schemeLength(String s) {
+        int length = s.length();
+        for (int i = 0; i < length; i++) {
+            char c = s.charAt(i);
+            if (c == ':') {
+                return i > 0 ? i : -1;
+            }
+            if (c == '/' || c == '?' || c == '#') {
+                return 0;
+            }
+            boolean allowed = i == 0 ? isAsciiLetter(c) :
+                isAsciiLetterOrDigit(c) || c == '+' || c == '-' || c == '.';
+            if (!allowed) {
+                //a relative reference, if there is no colon at all
+                return s.indexOf(':', i) < 0 ? 0 : -1;
+            }
+        }
+        return 0;
+    }
+
+    private static boolean hasIriCharacters(String s) {
+        int length = s.length();
+        for (int i = 0; i < length; i++) {
+            char c = s.charAt(i);
+            if (c < 128) {
+                if (c == '%') {
+                    if (i + 2 >= length || !isHexDigit(s.charAt(i + 1)) || !isHexDigit(s.charAt(i + 2))) {
+                        return false;
+                    }
+                    i += 2;
+                } else if (!iriAscii[c]) {
+                    return false;
+                }
+            } else if (!isUcsChar(c)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    //ucschar and iprivate, as far as they can be told from a single UTF-16 unit
+    private static boolean isUcsChar(char c) {
+        return c >= '\u00A0' && (c < '\uFDD0' || c > '\uFDEF') && c != '\uFFFE' && c != '\uFFFF';
+    }
+
+    /**
+     * Equivalent to matching the namespace against {@code \p{Alpha}([\w_\-/?:.~])*[#/:]?} and
+     * the local name against {@code (\p{Alpha}([\w_\-/?:.~])*)?}.
+     */
+    static boolean hasRestrictedCharacters(String namespace, String localName) {
+        int length = namespace.length();
+        if (length > 0 && namespace.charAt(length - 1) == '#') {
+            length--;
+        }
+        if (length == 0) {
+            return false;
+        }
+        return hasRestrictedCharacters(namespace, length)
+                && (localName.length() == 0 || hasRestrictedCharacters(localName, localName.length()));
+    }
+
+    private static boolean hasRestrictedCharacters(String s, int length) {
+        if (!isAsciiLetter(s.charAt(0))) {
+            return false;
+        }
+        for (int i = 1; i < length; i++) {
+            char c = s.charAt(i);
+            if (c >= 128 || !restrictedAscii[c]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isAsciiLetter(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    private static boolean isAsciiLetterOrDigit(char c) {
+        return isAsciiLetter(c) || (c >= '0' && c <= '9');
+    }
+
+    private static boolean isHexDigit(char c) {
+        return (c >= '0' && c <= '9') || (c >= 'a' && c <= 'f') || (c >= 'A' && c <= 'F');
+    }
+}
@@ -225,7 +225,7 @@ class ClosureDiff implements Diff{
                             triple1.object());
                     continue;
                 }
-                else if(!m2.triples().s(mappedS).p(mappedP).o(mappedO).fetch().iterator().hasNext()){
+                else if(!m2.triples().s(mappedS).p(mappedP).o(mappedO).exists()){
                     ((TripleDelta)delta).insertDeletedTriple(
                             triple1.subject(),
                             triple1.predicate(),
@@ -311,7 +311,7 @@ class ClosureDiff implements Diff{
                             triple2.object());
                     continue;
                 }
-                else if(!m1.triples().s(mappedS).p(mappedP).o(mappedO).fetch().iterator().hasNext()){
+                else if(!m1.triples().s(mappedS).p(mappedP).o(mappedO).exists()){
                     ((TripleDelta)delta).insertAddedTriple(
                             triple2.subject(),
                             triple2.predicate(),
@@ -100,7 +100,7 @@ public class DeltaUtils {
                     s(t.subject().mappedTo(m)).
                     p(t.predicate().mappedTo(m)).
                     o(t.object().mappedTo(m)).
-                    fetch().iterator().hasNext()){
+                    exists()){
                 Triple del = m.triples().
                         s(t.subject().mappedTo(m)).
                         p(t.predicate().mappedTo(m)).
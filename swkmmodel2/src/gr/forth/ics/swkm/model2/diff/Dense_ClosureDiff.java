@@ -202,7 +202,7 @@ class Dense_ClosureDiff implements Diff{
 //                }else if(m2.triples().s(mappedS).p(mappedP).o(mappedO).fetch().iterator().hasNext()){
 //                    matchedTriples.add(m2.triples().s(mappedS).p(mappedP).o(mappedO).fetch().iterator().next());
 //                }
-                    else if(!m2.triples().s(mappedS).p(mappedP).o(mappedO).fetch().iterator().hasNext()){
+                    else if(!m2.triples().s(mappedS).p(mappedP).o(mappedO).exists()){
                     ((TripleDelta)delta).insertDeletedTriple(
                             triple1.subject(),
                             triple1.predicate(),
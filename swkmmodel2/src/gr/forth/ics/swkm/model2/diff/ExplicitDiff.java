@@ -95,7 +95,7 @@ class ExplicitDiff implements Diff {
             else if(!m2.triples().s(mappedS).
                         p(mappedP).
                         o(mappedO).
-                        fetch().iterator().hasNext()){
+                        exists()){
                 ((TripleDelta)delta).insertDeletedTriple(triple1.subject(),triple1.predicate(),triple1.object());
             }
         }
@@ -126,7 +126,7 @@ class ExplicitDiff implements Diff {
             }else if(!m1.triples().s(mappedS).
                         p(mappedP).
                         o(mappedO).
-                        fetch().iterator().hasNext()){
+                        exists()){
                 ((TripleDelta)delta).insertAddedTriple(triple2.subject(),triple2.predicate(),triple2.object());
             }
         }
@@ -129,7 +129,7 @@ class Explicit_DenseDiff  implements Diff{
                         triple2.subject(),
                         triple2.predicate(),
                         triple2.object());
-            }else if(!m1.triples().s(mappedS).p(mappedP).o(mappedO).fetch().iterator().hasNext()){
+            }else if(!m1.triples().s(mappedS).p(mappedP).o(mappedO).exists()){
                 ((TripleDelta)delta).insertAddedTriple(
                         triple2.subject(),
                         triple2.predicate(),
@@ -190,22 +190,22 @@ public class TripleDelta implements Delta{
         return delta.triples().g(added).
                 s(subject.mappedTo(delta)).
                 p(predicate.mappedTo(delta)).
-                o(object.mappedTo(delta)).fetch().iterator().hasNext();
+                o(object.mappedTo(delta)).exists();
     }
 
     public boolean isDeletedTriple(ObjectNode subject, Resource predicate, RdfNode object) {
         return delta.triples().g(deleted).
                 s(subject.mappedTo(delta)).
                 p(predicate.mappedTo(delta)).
-                o(object.mappedTo(delta)).fetch().iterator().hasNext();
+                o(object.mappedTo(delta)).exists();
     }
 
     public boolean isAddedTriple(Uri subject, Uri predicate, Uri object) {
-        return delta.triples().g(added).s(subject).p(predicate).o(object).fetch().iterator().hasNext();
+        return delta.triples().g(added).s(subject).p(predicate).o(object).exists();
     }
 
     public boolean isDeletedTriple(Uri subject, Uri predicate, Uri object) {
-        return delta.triples().g(deleted).s(subject).p(predicate).o(object).fetch().iterator().hasNext();
+        return delta.triples().g(deleted).s(subject).p(predicate).o(object).exists();
     }
 
     public QueryBuilder getDeletedTriples(){
@@ -0,0 +1,61 @@
+/* 
+ *  COPYRIGHT (c) 2008-2009 by Institute of Computer Science, 
+ *  Foundation for Research and Technology - Hellas
+ *  Contact: 
+ *      POBox 1385, Heraklio Crete, GR-700 13 GREECE
+ *      Tel:+30-2810-391632
+ *      Fax: +30-2810-391638
+ *      E-mail: isl@ics.forth.gr
+ *      http://www.ics.forth.gr/isl
+ *
+ *   Authors  :  Dimitris Andreou, Nelly Vouzoukidou.
+ *
+ *   This file is part of SWKM model APIs (see also http://athena.ics.forth.gr:9090/SWKM/).
+ *
+ *    SWKM model APIs is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU Lesser General Public License as published by
+ *    the Free Software Foundation, either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *   SWKM model APIs is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Lesser General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Lesser General Public License
+ *   along with SWKM model APIs.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ *   SWKM has been partially supported by EU project KP-Lab (IP IST-27490) kp-lab.org
+ */
+
+
+
+
+package gr.forth.ics.swkm.model2.event;
+
+import com.google.common.collect.ListMultimap;
+import gr.forth.ics.swkm.model2.Model;
+import gr.forth.ics.swkm.model2.Resource;
+import gr.forth.ics.swkm.model2.Triple;
+
+/**
+ * A {@link TripleListener} that can also be notified for a whole batch of triple additions
+ * with a single event. Such batches are produced by {@linkplain Model#bulkLoad() bulk loads}.
+ *
+ * <p>Plain {@code TripleListener}s receive one {@linkplain #onTripleAddition(Resource, Triple)}
+ * event per added triple and named graph instead. In both cases, the events are fired after
+ * all the triples of the batch have been added, so {@code triple.graphs()} may already contain
+ * more named graphs than the one reported.
+ *
+ * @see Model#addTripleListener(TripleListener)
+ */
+public interface BulkTripleListener extends TripleListener {
+    /**
+     * Called when a batch of triples is added. This is called <em>instead</em> of
+     * {@linkplain #onTripleAddition(Resource, Triple)} for the triples of the batch.
+     *
+     * @param triplesByNamedGraph an unmodifiable multimap from each named graph to the triples
+     * that were added to it, in the order that they were added
+     */
+    void onTriplesAddition(ListMultimap<Resource, Triple> triplesByNamedGraph);
+}
@@ -33,6 +33,7 @@ package gr.forth.ics.swkm.model2.importer;
 
 import com.google.common.base.Function;
 import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import gr.forth.ics.swkm.model2.LiteralNode;
@@ -57,6 +58,7 @@ import gr.forth.ics.swkm.model2.ObjectNode;
 import java.text.SimpleDateFormat;
 import java.sql.PreparedStatement;
 import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
@@ -453,178 +455,235 @@ class HybridStore extends AbstractStore {
     }
     @Override
     protected void storePropertyInstances(ImportContext context) throws SQLException {
+        //depending on the domain and range of each property instance i have to insert this in the appropriate table.
+        //triples are first grouped by their target table, so that each table is checked and filled in one go
+        Map<String, PropertyInstanceBatch> batches = Maps.newLinkedHashMap();
+        for (Triple triple : context.model.triples().fetch())
+        {
+            if (triple.predicate().getUri().getNamespaceUri().equals(Rdf.NAMESPACE) ||
+                triple.predicate().getUri().getNamespaceUri().equals(RdfSchema.NAMESPACE))
+                continue;
+            if (!triple.subject().type().equals(RdfType.INDIVIDUAL)
+                    && !triple.subject().type().equals(RdfType.CLASS)
+                    && !triple.subject().type().equals(RdfType.PROPERTY))
+                throw new UnsupportedOperationException("The subject of a triple should be of type Resource, Class, or Property, subject of this triple = " + triple.subject() + ", type of the subject = " + triple.subject().type());
+
+            int subjectId = DbConstants.getTripleSubjectRQLKindId(triple.subject().type());
+            int objectId = 0;
+
+            //i have to insert this triple in one of the tp7k* or tp2k* or tp3k*
+            // 7 for Individual, 2 for Class, 3 for Property
+            // according to the kind of range
+            Iterable rangeIterable = triple.predicate().asProperty().ranges();
+            RdfNode range = (RdfNode)rangeIterable.iterator().next();
+
+            if (triple.object().type().equals(RdfType.INDIVIDUAL))
+                objectId = DbConstants.getRqlKindFor(RdfSchema.RESOURCE);
+            else
+                if (range.type().equals(RdfType.METACLASS) && triple.object().type().equals(RdfType.LITERAL))
+                    objectId = DbConstants.getRqlKindFor(XmlSchema.STRING);
+                else
+                    objectId = DbConstants.getTripleRangeRQLKindId(range);
 
-        //depending on the domain and range of each property instance i have to insert this in the appropriate table.      
-      for (Triple triple : context.model.triples().fetch())
-      {
-            if (!triple.predicate().getUri().getNamespaceUri().equals(Rdf.NAMESPACE) &&
-                !triple.predicate().getUri().getNamespaceUri().equals(RdfSchema.NAMESPACE))
-            {
-                if (triple.subject().type().equals(RdfType.INDIVIDUAL)
-                        || triple.subject().type().equals(RdfType.CLASS)
-                        || triple.subject().type().equals(RdfType.PROPERTY))
-                {
-                    boolean boolSubjectIsIndividual = false;
-                    if (triple.subject().type().equals(RdfType.INDIVIDUAL))
-                        boolSubjectIsIndividual = true;
-                    int subjectId = DbConstants.getTripleSubjectRQLKindId(triple.subject().type());
-                    int objectId = 0;
-                    
-                    //i have to insert this triple in one of the tp7k* or tp2k* or tp3k*
-                    // 7 for Individual, 2 for Class, 3 for Property
-                    // according to the kind of range
-
-                    Iterable rangeIterable = triple.predicate().asProperty().ranges();
-                    RdfNode range = (RdfNode)rangeIterable.iterator().next();
-
-                    System.out.println("storePropertyInstances: triple.subject = " + triple.subject().getIdentifier() +
-                                        ", triple.subject.type = " + triple.subject().type().name() +
-                                        ", triple.predicate = " + triple.predicate().getIdentifier() +
-                                        ", triple.range = " + range.toString() +
-                                        ", triple.range.type = " + range.type().name() +
-                                        ", triple.object = " + triple.object().toString() +
-                                        ", triple.object.class = " + triple.object().getClass().getSimpleName() +
-                                        ", triple.object.type = " + triple.object().type().name());
-
-                    if (triple.object().type().equals(RdfType.INDIVIDUAL))
-                        objectId = DbConstants.getRqlKindFor(RdfSchema.RESOURCE);
-                    else
-                        if (range.type().equals(RdfType.METACLASS) && triple.object().type().equals(RdfType.LITERAL))
-                            objectId = DbConstants.getRqlKindFor(XmlSchema.STRING);
-                        else
-                            objectId = DbConstants.getTripleRangeRQLKindId(range);
-                    //objectId = getTripleRangeRQLKindId(triple.object());
-                    // if this property instance exists in database (check the post id) we do not store this triple..
-                    // the update if this property instance has changed is job of the update process
-                    if (checkExistencePropertyInstanceDB(subjectId, objectId,
-                            context.updatedLabels.getLabel(RdfType.PROPERTY, triple.predicate().getUri()).getTreeLabel().getPost()))
-                        continue;
-
-                    PreparedStatement pstmt = Jdbc.prepared(String.format("INSERT INTO tp%dk%d (att0, att1, att2, att3) VALUES (?, ?, ?, ?)", subjectId, objectId));
-                    int newTripleId = this.commonTables.tripleIdGenerator.nextValue();
-                    
-                    if (boolSubjectIsIndividual)
-                        pstmt.setString(1, triple.subject().isResource() ? ((Resource)triple.subject()).getUri().toString() : triple.subject().toString());
-                    else
-                        pstmt.setInt(1, context.updatedLabels.getLabel(triple.subject().type(), ((Resource)triple.subject()).getUri()).getTreeLabel().getPost());
-
-                    if (objectId == DbConstants.getRqlKindFor(RdfSchema.RESOURCE) ||
-                        objectId == DbConstants.getRqlKindFor(RdfSuite.GRAPH))
-                                pstmt.setString(2, triple.object().isResource() ? ((Resource)triple.object()).getUri().toString() : triple.object().toString());
-                    else if (objectId == DbConstants.getRqlKindFor(RdfSchema.CLASS) ||
-                             objectId == DbConstants.getRqlKindFor(Rdf.PROPERTY))
-                                pstmt.setInt(2, context.updatedLabels.getLabel(triple.object().type(),((Resource)triple.object()).getUri()).getTreeLabel().getPost());
-                    else if (objectId == DbConstants.getRqlKindFor(XmlSchema.INTEGER) ||
-                             objectId == DbConstants.getRqlKindFor(XmlSchema.NON_POSITIVE_INTEGER) ||
-                             objectId == DbConstants.getRqlKindFor(XmlSchema.NEGATIVE_INTEGER) ||
-                             objectId == DbConstants.getRqlKindFor(XmlSchema.INT) ||
-                             objectId == DbConstants.getRqlKindFor(XmlSchema.NON_NEGATIVE_INTEGER) ||
-                             objectId == DbConstants.getRqlKindFor(XmlSchema.UNSIGNED_INT) ||
-                             objectId == DbConstants.getRqlKindFor(XmlSchema.POSITIVE_INTEGER))
-                                pstmt.setInt(2, Integer.parseInt(((LiteralNode)triple.object()).getLiteral().getValue()));
-                    else if (objectId == DbConstants.getRqlKindFor(XmlSchema.STRING) ||
-                             objectId == DbConstants.getRqlKindFor(XmlSchema.HEX_BINARY)||
-                             objectId == DbConstants.getRqlKindFor(XmlSchema.ANY_URI)||
-                             objectId == DbConstants.getRqlKindFor(XmlSchema.QNAME)||
-                             objectId == DbConstants.getRqlKindFor(XmlSchema.NOTATION) ||
-                             objectId == DbConstants.getRqlKindFor(XmlSchema.NORMALIZED_STRING) ||
-                             objectId == DbConstants.getRqlKindFor(XmlSchema.TOKEN) ||
-                             objectId == DbConstants.getRqlKindFor(XmlSchema.LANGUAGE) ||
-                             objectId == DbConstants.getRqlKindFor(XmlSchema.NMTOKEN) ||
-                             objectId == DbConstants.getRqlKindFor(XmlSchema.NMTOKENS) ||
-                             objectId == DbConstants.getRqlKindFor(XmlSchema.NAME) ||
-                             objectId == DbConstants.getRqlKindFor(XmlSchema.NCNAME) ||
-                             objectId == DbConstants.getRqlKindFor(XmlSchema.ID) ||
-                             objectId == DbConstants.getRqlKindFor(XmlSchema.IDREF) ||
-                             objectId == DbConstants.getRqlKindFor(XmlSchema.IDREFS) ||
-                             objectId == DbConstants.getRqlKindFor(XmlSchema.ENTITY) ||
-                             objectId == DbConstants.getRqlKindFor(XmlSchema.ENTITIES))
-                                pstmt.setString(2, ((LiteralNode)triple.object()).getLiteral().getValue());
-                    else if (objectId == DbConstants.getRqlKindFor(XmlSchema.DATE) ||
-                             objectId == DbConstants.getRqlKindFor(XmlSchema.GYEAR_MONTH) ||
-                             objectId == DbConstants.getRqlKindFor(XmlSchema.GYEAR) ||
-                             objectId == DbConstants.getRqlKindFor(XmlSchema.GMONTH_DAY) ||
-                             objectId == DbConstants.getRqlKindFor(XmlSchema.GDAY) ||
-                             objectId == DbConstants.getRqlKindFor(XmlSchema.GMONTH))
-                            {
-                                java.sql.Date sqlDate = null;
-
-                                try {
-                                    java.text.SimpleDateFormat df = new java.text.SimpleDateFormat("yyyy-MM-dd");
-                                    java.util.Date utilDate = df.parse(((LiteralNode)triple.object()).getLiteral().getValue());
-                                    sqlDate = new java.sql.Date(utilDate.getTime());
-                                }
-                                catch (java.text.ParseException e)
-                                {
-                                    throw new SQLException(e);
-                                }
-                                pstmt.setDate(2, sqlDate);
-                            }
-                    else if (objectId == DbConstants.getRqlKindFor(XmlSchema.BOOLEAN))
-                                pstmt.setBoolean(2, (((LiteralNode)triple.object()).getLiteral().getValue().equalsIgnoreCase("true") || ((LiteralNode)triple.object()).getLiteral().getValue().equals("1")) ? true : false);
-                    else if (objectId == DbConstants.getRqlKindFor(XmlSchema.DECIMAL))
-                                pstmt.setBigDecimal(2, java.math.BigDecimal.valueOf(Double.valueOf(((LiteralNode)triple.object()).getLiteral().getValue())));
-                    else if (objectId == DbConstants.getRqlKindFor(XmlSchema.FLOAT))
-                                pstmt.setFloat(2, Float.valueOf(((LiteralNode)triple.object()).getLiteral().getValue()));
-                    else if (objectId == DbConstants.getRqlKindFor(XmlSchema.DOUBLE))
-                                pstmt.setDouble(2, Double.valueOf(((LiteralNode)triple.object()).getLiteral().getValue()));
-                    else if (objectId == DbConstants.getRqlKindFor(XmlSchema.DURATION))
-                                pstmt.setObject(2, (org.postgresql.util.PGInterval)triple.object());
-                    else if (objectId == DbConstants.getRqlKindFor(XmlSchema.DATETIME))
-                            {
-                                java.util.Date utilDate = null;
-
-                                try {                      
-                                    XMLDateTime result = XMLDateTime.parse(((LiteralNode)triple.object()).getLiteral().getValue());
-                                    utilDate = result.toDate();
-                                }
-                                catch (java.text.ParseException e)
-                                {
-                                    throw new SQLException(e);
-                                }
-                                pstmt.setTimestamp(2, new java.sql.Timestamp(utilDate.getTime()));
-                            }
-                    else if (objectId == DbConstants.getRqlKindFor(XmlSchema.TIME))
-                            {
-                                java.sql.Time myTime = null;
-                                try {
-                                    SimpleDateFormat td = new SimpleDateFormat("'T'HH:mm:ss.SSS'Z'");
-                                    java.util.Date utilDate = td.parse(((LiteralNode)triple.object()).getLiteral().getValue());
-                                    myTime = new java.sql.Time(utilDate.getTime());
-                                }
-                                catch (java.text.ParseException e)
-                                {
-                                    throw new SQLException(e);
-                                }
-                                pstmt.setTime(2, myTime);
-                            }
-                    else if (objectId == DbConstants.getRqlKindFor(XmlSchema.BASE64_BINARY))
-                                pstmt.setObject(2, (org.postgresql.util.Base64)triple.object());
-                    else if (objectId == DbConstants.getRqlKindFor(XmlSchema.LONG) ||
-                             objectId == DbConstants.getRqlKindFor(XmlSchema.UNSIGNED_LONG))
-                                pstmt.setLong(2, Long.valueOf(((LiteralNode)triple.object()).getLiteral().getValue()));
-                    else if (objectId == DbConstants.getRqlKindFor(XmlSchema.SHORT) ||
-                             objectId == DbConstants.getRqlKindFor(XmlSchema.BYTE) ||
-                             objectId == DbConstants.getRqlKindFor(XmlSchema.UNSIGNED_SHORT) ||
-                             objectId == DbConstants.getRqlKindFor(XmlSchema.UNSIGNED_BYTE))
-                                pstmt.setShort(2, Short.parseShort(((LiteralNode)triple.object()).getLiteral().getValue()));
-                    else if (objectId == DbConstants.getRqlKindFor(RdfSuite.THESAURUS) ||
-                             objectId == DbConstants.getRqlKindFor(RdfSuite.ENUMERATION))
-                                throw new UnsupportedOperationException("Not supporting ranges of type 'RdfSuite.THESAURUS and 'RdfSuite.ENUMERATION'.");
-                
-                    pstmt.setInt(3, context.updatedLabels.getLabel(RdfType.PROPERTY, triple.predicate().getUri()).getTreeLabel().getPost());
-                    pstmt.setInt(4, newTripleId);
+            String tableName = String.format("tp%dk%d", subjectId, objectId);
+            PropertyInstanceBatch batch = batches.get(tableName);
+            if (batch == null) {
+                batch = new PropertyInstanceBatch(tableName, subjectId, objectId);
+                batches.put(tableName, batch);
+            }
+            batch.add(triple, context.updatedLabels.getLabel(RdfType.PROPERTY, triple.predicate().getUri()).getTreeLabel().getPost());
+        }
 
-                    pstmt.execute();
-                    pstmt.close();
+        for (PropertyInstanceBatch batch : batches.values()) {
+            storePropertyInstances(context, batch);
+        }
+    }
 
-                    //at this point i should add the triple id in the context.tripleIds
-                    context.tripleIds.put(newTripleId, triple);
-                }
+    /**
+     * The property instances that are to be stored in a single tp%dk%d table.
+     */
+    private static class PropertyInstanceBatch {
+        final String tableName;
+        final int subjectId;
+        final int objectId;
+        final List<Triple> triples = Lists.newArrayList();
+        final List<Integer> propertyPosts = Lists.newArrayList();
+
+        PropertyInstanceBatch(String tableName, int subjectId, int objectId) {
+            this.tableName = tableName;
+            this.subjectId = subjectId;
+            this.objectId = objectId;
+        }
+
+        void add(Triple triple, int propertyPost) {
+            triples.add(triple);
+            propertyPosts.add(propertyPost);
+        }
+    }
+
+    private static final int PROPERTY_INSTANCES_BATCH_SIZE = 1000;
+
+    private void storePropertyInstances(ImportContext context, PropertyInstanceBatch batch) throws SQLException {
+        // if this property instance exists in database (check the post id) we do not store this triple..
+        // the update if this property instance has changed is job of the update process
+        Set<Integer> existing = existingPropertyInstances(batch.tableName, Sets.newHashSet(batch.propertyPosts));
+        List<Integer> toInsert = newPropertyInstances(batch.propertyPosts, existing);
+        if (toInsert.isEmpty()) {
+            return;
+        }
+
+        int[] tripleIds = this.commonTables.tripleIdGenerator.nextValues(toInsert.size());
+        PreparedStatement pstmt = Jdbc.prepared("INSERT INTO " + batch.tableName + " (att0, att1, att2, att3) VALUES (?, ?, ?, ?)");
+        try {
+            int next = 0;
+            for (int i : toInsert) {
+                int propertyPost = batch.propertyPosts.get(i);
+                Triple triple = batch.triples.get(i);
+                int newTripleId = tripleIds[next++];
+
+                if (triple.subject().type().equals(RdfType.INDIVIDUAL))
+                    pstmt.setString(1, triple.subject().isResource() ? ((Resource)triple.subject()).getUri().toString() : triple.subject().toString());
                 else
-                    throw new UnsupportedOperationException("The subject of a triple should be of type Resource, Class, or Property, subject of this triple = " + triple.subject() + ", type of the subject = " + triple.subject().type());
+                    pstmt.setInt(1, context.updatedLabels.getLabel(triple.subject().type(), ((Resource)triple.subject()).getUri()).getTreeLabel().getPost());
+                setPropertyInstanceObject(context, pstmt, batch.objectId, triple);
+                pstmt.setInt(3, propertyPost);
+                pstmt.setInt(4, newTripleId);
+                pstmt.addBatch();
+                if (next % PROPERTY_INSTANCES_BATCH_SIZE == 0)
+                    pstmt.executeBatch();
+
+                //at this point i should add the triple id in the context.tripleIds
+                context.tripleIds.put(newTripleId, triple);
             }
-      }
+            if (next % PROPERTY_INSTANCES_BATCH_SIZE != 0)
+                pstmt.executeBatch();
+        } finally {
+            pstmt.close();
+        }
+    }
+
+    /**
+     * Returns the indexes of the property posts that are to be inserted: a post is inserted
+     * only if it is not already stored, and only for its first occurrence, since the first
+     * insertion makes it exist for the rest.
+     *
+     * @param propertyPosts the property posts of the triples of a table, in order
+     * @param existing the posts already stored in the table; the inserted posts are added to it
+     */
+    static List<Integer> newPropertyInstances(List<Integer> propertyPosts, Set<Integer> existing) {
+        List<Integer> indexes = Lists.newArrayList();
+        for (int i = 0; i < propertyPosts.size(); i++) {
+            if (existing.add(propertyPosts.get(i))) {
+                indexes.add(i);
+            }
+        }
+        return indexes;
+    }
+
+    private void setPropertyInstanceObject(ImportContext context, PreparedStatement pstmt, int objectId, Triple triple) throws SQLException {
+        if (objectId == DbConstants.getRqlKindFor(RdfSchema.RESOURCE) ||
+            objectId == DbConstants.getRqlKindFor(RdfSuite.GRAPH))
+                    pstmt.setString(2, triple.object().isResource() ? ((Resource)triple.object()).getUri().toString() : triple.object().toString());
+        else if (objectId == DbConstants.getRqlKindFor(RdfSchema.CLASS) ||
+                 objectId == DbConstants.getRqlKindFor(Rdf.PROPERTY))
+                    pstmt.setInt(2, context.updatedLabels.getLabel(triple.object().type(),((Resource)triple.object()).getUri()).getTreeLabel().getPost());
+        else if (objectId == DbConstants.getRqlKindFor(XmlSchema.INTEGER) ||
+                 objectId == DbConstants.getRqlKindFor(XmlSchema.NON_POSITIVE_INTEGER) ||
+                 objectId == DbConstants.getRqlKindFor(XmlSchema.NEGATIVE_INTEGER) ||
+                 objectId == DbConstants.getRqlKindFor(XmlSchema.INT) ||
+                 objectId == DbConstants.getRqlKindFor(XmlSchema.NON_NEGATIVE_INTEGER) ||
+                 objectId == DbConstants.getRqlKindFor(XmlSchema.UNSIGNED_INT) ||
+                 objectId == DbConstants.getRqlKindFor(XmlSchema.POSITIVE_INTEGER))
+                    pstmt.setInt(2, Integer.parseInt(((LiteralNode)triple.object()).getLiteral().getValue()));
+        else if (objectId == DbConstants.getRqlKindFor(XmlSchema.STRING) ||
+                 objectId == DbConstants.getRqlKindFor(XmlSchema.HEX_BINARY)||
+                 objectId == DbConstants.getRqlKindFor(XmlSchema.ANY_URI)||
+                 objectId == DbConstants.getRqlKindFor(XmlSchema.QNAME)||
+                 objectId == DbConstants.getRqlKindFor(XmlSchema.NOTATION) ||
+                 objectId == DbConstants.getRqlKindFor(XmlSchema.NORMALIZED_STRING) ||
+                 objectId == DbConstants.getRqlKindFor(XmlSchema.TOKEN) ||
+                 objectId == DbConstants.getRqlKindFor(XmlSchema.LANGUAGE) ||
+                 objectId == DbConstants.getRqlKindFor(XmlSchema.NMTOKEN) ||
+                 objectId == DbConstants.getRqlKindFor(XmlSchema.NMTOKENS) ||
+                 objectId == DbConstants.getRqlKindFor(XmlSchema.NAME) ||
+                 objectId == DbConstants.getRqlKindFor(XmlSchema.NCNAME) ||
+                 objectId == DbConstants.getRqlKindFor(XmlSchema.ID) ||
+                 objectId == DbConstants.getRqlKindFor(XmlSchema.IDREF) ||
+                 objectId == DbConstants.getRqlKindFor(XmlSchema.IDREFS) ||
+                 objectId == DbConstants.getRqlKindFor(XmlSchema.ENTITY) ||
+                 objectId == DbConstants.getRqlKindFor(XmlSchema.ENTITIES))
+                    pstmt.setString(2, ((LiteralNode)triple.object()).getLiteral().getValue());
+        else if (objectId == DbConstants.getRqlKindFor(XmlSchema.DATE) ||
+                 objectId == DbConstants.getRqlKindFor(XmlSchema.GYEAR_MONTH) ||
+                 objectId == DbConstants.getRqlKindFor(XmlSchema.GYEAR) ||
+                 objectId == DbConstants.getRqlKindFor(XmlSchema.GMONTH_DAY) ||
+                 objectId == DbConstants.getRqlKindFor(XmlSchema.GDAY) ||
+                 objectId == DbConstants.getRqlKindFor(XmlSchema.GMONTH))
+                {
+                    java.sql.Date sqlDate = null;
+
+                    try {
+                        java.text.SimpleDateFormat df = new java.text.SimpleDateFormat("yyyy-MM-dd");
+                        java.util.Date utilDate = df.parse(((LiteralNode)triple.object()).getLiteral().getValue());
+                        sqlDate = new java.sql.Date(utilDate.getTime());
+                    }
+                    catch (java.text.ParseException e)
+                    {
+                        throw new SQLException(e);
+                    }
+                    pstmt.setDate(2, sqlDate);
+                }
+        else if (objectId == DbConstants.getRqlKindFor(XmlSchema.BOOLEAN))
+                    pstmt.setBoolean(2, (((LiteralNode)triple.object()).getLiteral().getValue().equalsIgnoreCase("true") || ((LiteralNode)triple.object()).getLiteral().getValue().equals("1")) ? true : false);
+        else if (objectId == DbConstants.getRqlKindFor(XmlSchema.DECIMAL))
+                    pstmt.setBigDecimal(2, java.math.BigDecimal.valueOf(Double.valueOf(((LiteralNode)triple.object()).getLiteral().getValue())));
+        else if (objectId == DbConstants.getRqlKindFor(XmlSchema.FLOAT))
+                    pstmt.setFloat(2, Float.valueOf(((LiteralNode)triple.object()).getLiteral().getValue()));
+        else if (objectId == DbConstants.getRqlKindFor(XmlSchema.DOUBLE))
+                    pstmt.setDouble(2, Double.valueOf(((LiteralNode)triple.object()).getLiteral().getValue()));
+        else if (objectId == DbConstants.getRqlKindFor(XmlSchema.DURATION))
+                    pstmt.setObject(2, (org.postgresql.util.PGInterval)triple.object());
+        else if (objectId == DbConstants.getRqlKindFor(XmlSchema.DATETIME))
+                {
+                    java.util.Date utilDate = null;
+
+                    try {                      
+                        XMLDateTime result = XMLDateTime.parse(((LiteralNode)triple.object()).getLiteral().getValue());
+                        utilDate = result.toDate();
+                    }
+                    catch (java.text.ParseException e)
+                    {
+                        throw new SQLException(e);
+                    }
+                    pstmt.setTimestamp(2, new java.sql.Timestamp(utilDate.getTime()));
+                }
+        else if (objectId == DbConstants.getRqlKindFor(XmlSchema.TIME))
+                {
+                    java.sql.Time myTime = null;
+                    try {
+                        SimpleDateFormat td = new SimpleDateFormat("'T'HH:mm:ss.SSS'Z'");
+                        java.util.Date utilDate = td.parse(((LiteralNode)triple.object()).getLiteral().getValue());
+                        myTime = new java.sql.Time(utilDate.getTime());
+                    }
+                    catch (java.text.ParseException e)
+                    {
+                        throw new SQLException(e);
+                    }
+                    pstmt.setTime(2, myTime);
+                }
+        else if (objectId == DbConstants.getRqlKindFor(XmlSchema.BASE64_BINARY))
+                    pstmt.setObject(2, (org.postgresql.util.Base64)triple.object());
+        else if (objectId == DbConstants.getRqlKindFor(XmlSchema.LONG) ||
+                 objectId == DbConstants.getRqlKindFor(XmlSchema.UNSIGNED_LONG))
+                    pstmt.setLong(2, Long.valueOf(((LiteralNode)triple.object()).getLiteral().getValue()));
+        else if (objectId == DbConstants.getRqlKindFor(XmlSchema.SHORT) ||
+                 objectId == DbConstants.getRqlKindFor(XmlSchema.BYTE) ||
+                 objectId == DbConstants.getRqlKindFor(XmlSchema.UNSIGNED_SHORT) ||
+                 objectId == DbConstants.getRqlKindFor(XmlSchema.UNSIGNED_BYTE))
+                    pstmt.setShort(2, Short.parseShort(((LiteralNode)triple.object()).getLiteral().getValue()));
+        else if (objectId == DbConstants.getRqlKindFor(RdfSuite.THESAURUS) ||
+                 objectId == DbConstants.getRqlKindFor(RdfSuite.ENUMERATION))
+                    throw new UnsupportedOperationException("Not supporting ranges of type 'RdfSuite.THESAURUS and 'RdfSuite.ENUMERATION'.");
     }
 
     @Override
@@ -642,7 +701,6 @@ class HybridStore extends AbstractStore {
                 if (!checkExistenceResourceDB(individualName, classId))
                 {
                     int newTripleId = this.commonTables.tripleIdGenerator.nextValue();
-                    System.out.println("storeResources: resource Uri = " + individualName);
                     this.hybridTables.resource.insert(this.hybridTables.resource.uri,
                                                       this.hybridTables.resource.classId,
                                                       this.hybridTables.resource.tripleId)
@@ -657,16 +715,30 @@ class HybridStore extends AbstractStore {
         }
     }
 
-    private boolean checkExistencePropertyInstanceDB(int subjectTableId, int rangeTableId, int postId) throws SQLException
+    /**
+     * Returns which of the specified property posts already appear (as att3) in the specified
+     * property instances table, using a single query.
+     */
+    private Set<Integer> existingPropertyInstances(String tableName, Set<Integer> propertyPosts) throws SQLException
     {
-        ResultSet rs = Jdbc.query(String.format("SELECT 1 FROM tp%dk%d WHERE att3 = %d", subjectTableId, rangeTableId, postId));
+        PreparedStatement ps = Jdbc.prepared(String.format("SELECT DISTINCT att3 FROM %s WHERE att3 = ANY(?)", tableName),
+                Jdbc.connection().createArrayOf("int", propertyPosts.toArray()));
+        Set<Integer> existing = Sets.newHashSet();
         try {
-            return rs.next();
+            ResultSet rs = ps.executeQuery();
+            try {
+                while (rs.next()) {
+                    existing.add(rs.getInt(1));
+                }
+            } finally {
+                rs.close();
+            }
         }
         finally
         {
-            rs.close();
+            ps.close();
         }
+        return existing;
     }
 
     private boolean checkExistenceResourceDB(String uri, int classId) throws SQLException
@@ -31,54 +31,88 @@
 
 package gr.forth.ics.swkm.model2.importer;
 
-import java.sql.PreparedStatement;
-import java.sql.SQLException;
 import java.sql.ResultSet;
+import java.sql.SQLException;
+import org.springframework.util.Assert;
 
 /**
+ * A database sequence. Values are reserved from the database in blocks, and handed out from
+ * memory, so that most calls to {@link #nextValue()} do not need a roundtrip. Instances are
+ * safe to be shared between threads (each of which must run a {@link ConnectionTask}).
+ *
+ * <p>Values reserved but never handed out are simply lost, as is the case with any
+ * {@code nextval} of a rolled back transaction.
  *
  * @author Andreou Dimitris, email: jim.andreou (at) gmail (dot) com
  */
 class SequenceTable extends Table {
+    private static final int DEFAULT_BLOCK_SIZE = 64;
+
     private final int startIndex;
+    private final int blockSize;
+
+    //guarded by this
+    private int[] block = new int[0];
+    private int position;
     
     public SequenceTable(String name, int startIndex) {
+        this(name, startIndex, DEFAULT_BLOCK_SIZE);
+    }
+
+    public SequenceTable(String name, int startIndex, int blockSize) {
         super(name);
+        Assert.isTrue(blockSize > 0, "Block size must be positive");
         this.startIndex = startIndex;
+        this.blockSize = blockSize;
     }
     
     @Override
     public SequenceTable createTable() throws SQLException {
         Jdbc.execute(String.format("CREATE SEQUENCE %s START %d", getName(), startIndex));
+        synchronized (this) {
+            //any reserved values belong to a previous incarnation of the sequence
+            block = new int[0];
+            position = 0;
+        }
         return this;
     }
 
-    public int nextValue() throws SQLException {
-        ResultSet rs = Jdbc.query(String.format("SELECT nextval('%s')", getName()));
+    public synchronized int nextValue() throws SQLException {
+        if (position == block.length) {
+            block = nextValues(blockSize);
+            position = 0;
+        }
+        return block[position++];
+    }
+
+    /**
+     * Returns the specified number of new values of this sequence, fetched in a single roundtrip.
+     * The values are not necessarily consecutive.
+     *
+     * @param count how many values to fetch
+     * @return an array of {@code count} new values
+     * @throws SQLException if an error occurs while accessing the sequence
+     */
+    public int[] nextValues(int count) throws SQLException {
+        int[] values = new int[count];
+        if (count == 0) {
+            return values;
+        }
+        ResultSet rs = Jdbc.query(String.format("SELECT nextval('%s') FROM generate_series(1, %d)", getName(), count));
         try {
-            rs.next();
-            return rs.getInt(1);
+            for (int i = 0; i < count; i++) {
+                rs.next();
+                values[i] = rs.getInt(1);
+            }
+            return values;
         } finally {
             rs.close();
         }
     }
 
-
     class SequenceHelper {
-        private final PreparedStatement ps;
-
-        SequenceHelper() throws SQLException {
-            ps = Jdbc.prepared("SELECT nextval('" + getName() + "')");
-        }
-
         int next() throws SQLException {
-            ResultSet rs = ps.executeQuery();
-            try {
-                rs.next();
-                return rs.getInt(1);
-            } finally {
-                rs.close();
-            }
+            return nextValue();
         }
     }
 }
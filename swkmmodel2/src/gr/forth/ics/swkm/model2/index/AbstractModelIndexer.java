@@ -32,6 +32,9 @@
 
 package gr.forth.ics.swkm.model2.index;
 
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.ListMultimap;
 import gr.forth.ics.swkm.model2.LiteralNode;
 import gr.forth.ics.swkm.model2.Model;
 import gr.forth.ics.swkm.model2.ObjectNode;
@@ -43,10 +46,15 @@ import gr.forth.ics.swkm.model2.Uri;
 import gr.forth.ics.swkm.model2.index.common.IteratorChooser;
 import gr.forth.ics.swkm.model2.index.common.IteratorSpecializationChooser;
 import gr.forth.ics.swkm.model2.index.common.SuperClassIterator;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import gr.forth.ics.swkm.model2.event.TypeChange;
 import gr.forth.ics.swkm.model2.index.common.EmptyIndex;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -137,6 +145,142 @@ abstract class AbstractModelIndexer implements ModelIndexer {
         return namespaceIndexer.findInNamespace(type, namespace);
     }
     
+    /**
+     * Checks whether {@code findTriples} reports any triple. Subclasses should
+     * override this where their indexes allow a cheaper way.
+     */
+    public boolean containsTriples(Resource g, ObjectNode s, Resource p, RdfNode o) {
+        return findTriples(g, s, p, o).hasNext();
+    }
+
+    /**
+     * Counts the triples that are reported by {@code findTriples}. Subclasses should
+     * override this where their indexes allow a cheaper way.
+     */
+    public int countTriples(Resource g, ObjectNode s, Resource p, RdfNode o) {
+        return count(findTriples(g, s, p, o));
+    }
+
+    /**
+     * Returns the exact {@linkplain #countTriples(Resource, ObjectNode, Resource, RdfNode) count}.
+     * Subclasses should override this where their indexes allow a cheaper way.
+     */
+    public int estimateTriples(Resource g, ObjectNode s, Resource p, RdfNode o) {
+        return countTriples(g, s, p, o);
+    }
+
+    public ListMultimap<ObjectNode, Triple> findTriplesForSubjects(Resource g,
+            Collection<? extends ObjectNode> subjects, Resource p, RdfNode o) {
+        ListMultimap<ObjectNode, Triple> result = ArrayListMultimap.create();
+        for (ObjectNode s : probeOrder(subjects)) {
+            for (Iterator<Triple> i = findTriples(g, s, p, o); i.hasNext(); ) {
+                result.put(s, i.next());
+            }
+        }
+        return result;
+    }
+
+    public ListMultimap<Resource, Triple> findTriplesForPredicates(Resource g,
+            ObjectNode s, Collection<? extends Resource> predicates, RdfNode o) {
+        ListMultimap<Resource, Triple> result = ArrayListMultimap.create();
+        for (Resource p : probeOrder(predicates)) {
+            for (Iterator<Triple> i = findTriples(g, s, p, o); i.hasNext(); ) {
+                result.put(p, i.next());
+            }
+        }
+        return result;
+    }
+
+    public ListMultimap<RdfNode, Triple> findTriplesForObjects(Resource g,
+            ObjectNode s, Resource p, Collection<? extends RdfNode> objects) {
+        ListMultimap<RdfNode, Triple> result = ArrayListMultimap.create();
+        for (RdfNode o : probeOrder(objects)) {
+            for (Iterator<Triple> i = findTriples(g, s, p, o); i.hasNext(); ) {
+                result.put(o, i.next());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the distinct nodes of a batched lookup, in the order they are to be looked up.
+     * Subclasses should override this to sort them in the order of their indexes.
+     */
+    protected <N extends RdfNode> Collection<N> probeOrder(Collection<? extends N> probes) {
+        return new LinkedHashSet<N>(probes);
+    }
+
+    /**
+     * Copies the triples reported by {@code findTriples} and splits the copy. Subclasses should
+     * override this where their structures can be split directly.
+     */
+    public List<Iterable<Triple>> partitionTriples(int parts) {
+        List<Triple> triples = new ArrayList<Triple>(tripleCount());
+        Iterators.addAll(triples, findTriples((Resource)null, null, null, null));
+        return partition(triples, parts);
+    }
+
+    /**
+     * Splits the list into at most the specified number of consecutive sublists, of sizes that
+     * differ by one at most.
+     */
+    protected static List<Iterable<Triple>> partition(List<Triple> triples, int parts) {
+        List<Iterable<Triple>> result = new ArrayList<Iterable<Triple>>();
+        for (int i = 0, count = partitionCount(triples.size(), parts); i < count; i++) {
+            result.add(triples.subList(partitionStart(i, triples.size(), count),
+                    partitionStart(i + 1, triples.size(), count)));
+        }
+        return result;
+    }
+
+    /**
+     * Returns the number of parts to split the specified number of elements into, so that no part is empty.
+     */
+    protected static int partitionCount(int size, int parts) {
+        if (parts <= 0) {
+            throw new IllegalArgumentException("Parts must be positive: " + parts);
+        }
+        return Math.min(size, parts);
+    }
+
+    /**
+     * Returns the (inclusive) start of the specified part, which is also the (exclusive) end of the previous part.
+     */
+    protected static int partitionStart(int part, int size, int parts) {
+        return (int)((long)part * size / parts);
+    }
+
+    protected static int count(Iterator<Triple> triples) {
+        int count = 0;
+        while (triples.hasNext()) {
+            triples.next();
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Returns the triples of the given named graph that match the given subject, predicate
+     * and object (any of which may be null), using the indexes of the named graph.
+     */
+    protected Iterator<Triple> findTriplesInNamedGraph(Resource g,
+            ObjectNode s, Resource p, RdfNode o) {
+        return findTriples(graphIndexer.get(g, s, p, o), s, p, o);
+    }
+
+    /**
+     * Counts the triples of the given named graph that match the given subject, predicate
+     * and object (any of which may be null), using the indexes of the named graph.
+     */
+    protected int countTriplesInNamedGraph(Resource g, ObjectNode s, Resource p, RdfNode o) {
+        Collection<Triple> triples = graphIndexer.get(g, s, p, o);
+        if (s == null || o == null) {
+            //exact
+            return triples.size();
+        }
+        return count(findTriples(triples, s, p, o));
+    }
+
     protected static Iterator<Triple> findTriples(final Collection<Triple> matchingSPO,
             final Collection<Triple> matchingNG, final Resource g,
             final ObjectNode s, final Resource p, final RdfNode o) {
@@ -182,14 +326,23 @@ abstract class AbstractModelIndexer implements ModelIndexer {
      */
     protected void deleteFromNamedGraph(Resource g, ObjectNode s,
             Resource p, RdfNode o, TripleDeletionListener l) {
-        for (Iterator<Triple> iterator = graphIndexer.get(g).iterator(); 
-                iterator.hasNext(); ) {
-            Triple triple = iterator.next();
+        List<Triple> removed = new ArrayList<Triple>();
+        for (Triple triple : graphIndexer.get(g, s, p, o)) {
             if (match(s, p, o, triple)) {
-                iterator.remove();
-                l.tripleRemovedFromNamedGraph(g, triple);
+                removed.add(triple);
             }
         }
+        if (removed.isEmpty()) {
+            return;
+        }
+        Map<Triple, Boolean> toRemove = new IdentityHashMap<Triple, Boolean>();
+        for (Triple triple : removed) {
+            toRemove.put(triple, Boolean.TRUE);
+        }
+        graphIndexer.removeTriples(g, toRemove.keySet());
+        for (Triple triple : removed) {
+            l.tripleRemovedFromNamedGraph(g, triple);
+        }
     }
     
     protected static boolean match(ObjectNode s, Resource p, RdfNode o, Triple triple) {
@@ -0,0 +1,206 @@
+/* 
+ *  COPYRIGHT (c) 2008-2009 by Institute of Computer Science, 
+ *  Foundation for Research and Technology - Hellas
+ *  Contact: 
+ *      POBox 1385, Heraklio Crete, GR-700 13 GREECE
+ *      Tel:+30-2810-391632
+ *      Fax: +30-2810-391638
+ *      E-mail: isl@ics.forth.gr
+ *      http://www.ics.forth.gr/isl
+ *
+ *   Authors  :  Dimitris Andreou, Nelly Vouzoukidou.
+ *
+ *   This file is part of SWKM model APIs (see also http://athena.ics.forth.gr:9090/SWKM/).
+ *
+ *    SWKM model APIs is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU Lesser General Public License as published by
+ *    the Free Software Foundation, either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *   SWKM model APIs is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Lesser General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Lesser General Public License
+ *   along with SWKM model APIs.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ *   SWKM has been partially supported by EU project KP-Lab (IP IST-27490) kp-lab.org
+ */
+
+
+package gr.forth.ics.swkm.model2.index;
+
+import com.google.common.collect.Iterators;
+import com.google.common.collect.ListMultimap;
+import gr.forth.ics.swkm.model2.Model;
+import gr.forth.ics.swkm.model2.ObjectNode;
+import gr.forth.ics.swkm.model2.RdfNode;
+import gr.forth.ics.swkm.model2.RdfType;
+import gr.forth.ics.swkm.model2.Resource;
+import gr.forth.ics.swkm.model2.Triple;
+import gr.forth.ics.swkm.model2.Uri;
+import gr.forth.ics.swkm.model2.event.TypeChange;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A ModelIndexer that answers {@code findTriples} from a {@link QueryCache} where possible, and
+ * delegates everything else to another ModelIndexer.
+ *
+ * <p>The cache is invalidated by the modifications that reach the indexer, not by the triple
+ * listeners of the model: these are notified after the model has already queried the new state
+ * (e.g. for type inference), and after other listeners, which may query it as well.
+ */
+class CachingModelIndexer implements ModelIndexer {
+    private final ModelIndexer delegate;
+    private final QueryCache cache;
+
+    CachingModelIndexer(ModelIndexer delegate, QueryCache cache) {
+        this.delegate = delegate;
+        this.cache = cache;
+        cache.attach();
+    }
+
+    ModelIndexer delegate() {
+        return delegate;
+    }
+
+    public Iterator<Triple> findTriples(Resource g, ObjectNode s, Resource p, RdfNode o) {
+        Triple[] cached = cache.get(g, s, p, o);
+        if (cached != null) {
+            return Iterators.forArray(cached);
+        }
+        Iterator<Triple> iterator = delegate.findTriples(g, s, p, o);
+        List<Triple> result = new ArrayList<Triple>();
+        while (iterator.hasNext()) {
+            if (result.size() == QueryCache.MAX_RESULT_SIZE) {
+                //too large to cache; report what is read so far, and then the rest
+                return Iterators.concat(Collections.unmodifiableList(result).iterator(), iterator);
+            }
+            result.add(iterator.next());
+        }
+        Triple[] triples = result.toArray(new Triple[result.size()]);
+        cache.put(g, s, p, o, triples);
+        return Iterators.forArray(triples);
+    }
+
+    public boolean containsTriples(Resource g, ObjectNode s, Resource p, RdfNode o) {
+        return delegate.containsTriples(g, s, p, o);
+    }
+
+    public int countTriples(Resource g, ObjectNode s, Resource p, RdfNode o) {
+        return delegate.countTriples(g, s, p, o);
+    }
+
+    public int estimateTriples(Resource g, ObjectNode s, Resource p, RdfNode o) {
+        return delegate.estimateTriples(g, s, p, o);
+    }
+
+    public ListMultimap<ObjectNode, Triple> findTriplesForSubjects(Resource g,
+            Collection<? extends ObjectNode> subjects, Resource p, RdfNode o) {
+        return delegate.findTriplesForSubjects(g, subjects, p, o);
+    }
+
+    public ListMultimap<Resource, Triple> findTriplesForPredicates(Resource g,
+            ObjectNode s, Collection<? extends Resource> predicates, RdfNode o) {
+        return delegate.findTriplesForPredicates(g, s, predicates, o);
+    }
+
+    public ListMultimap<RdfNode, Triple> findTriplesForObjects(Resource g,
+            ObjectNode s, Resource p, Collection<? extends RdfNode> objects) {
+        return delegate.findTriplesForObjects(g, s, p, objects);
+    }
+
+    public List<Iterable<Triple>> partitionTriples(int parts) {
+        return delegate.partitionTriples(parts);
+    }
+
+    public void deleteTriples(Resource g, ObjectNode s, Resource p, RdfNode o,
+            final TripleDeletionListener listener) {
+        final List<Triple> deleted = new ArrayList<Triple>();
+        final List<Resource> removedFrom = new ArrayList<Resource>();
+        final List<Triple> removed = new ArrayList<Triple>();
+        delegate.deleteTriples(g, s, p, o, new TripleDeletionListener() {
+            public void tripleDeleted(Triple triple) {
+                cache.invalidate(triple, triple.graphs());
+                deleted.add(triple);
+                listener.tripleDeleted(triple);
+            }
+
+            public void tripleRemovedFromNamedGraph(Resource namedGraph, Triple triple) {
+                cache.invalidate(triple, Collections.singleton(namedGraph));
+                removedFrom.add(namedGraph);
+                removed.add(triple);
+                listener.tripleRemovedFromNamedGraph(namedGraph, triple);
+            }
+        });
+        //the listener may have queried the model before the indexer was done
+        for (Triple triple : deleted) {
+            cache.invalidate(triple, triple.graphs());
+        }
+        for (int i = 0; i < removed.size(); i++) {
+            cache.invalidate(removed.get(i), Collections.singleton(removedFrom.get(i)));
+        }
+    }
+
+    public Iterator<RdfNode> find(RdfType type) {
+        return delegate.find(type);
+    }
+
+    public Iterator<Resource> findInNamespace(RdfType type, Uri namespace) {
+        return delegate.findInNamespace(type, namespace);
+    }
+
+    public Set<Uri> namespaces() {
+        return delegate.namespaces();
+    }
+
+    public void setModelView(ModelView modelView) {
+        delegate.setModelView(modelView);
+    }
+
+    public void setModel(Model model) {
+        delegate.setModel(model);
+    }
+
+    public void add(Resource namedGraph, Triple triple) {
+        delegate.add(namedGraph, triple);
+        cache.invalidate(triple, Collections.singleton(namedGraph));
+    }
+
+    public void addInNamedGraph(Resource namedGraph, Triple triple) {
+        delegate.addInNamedGraph(namedGraph, triple);
+        cache.invalidate(triple, Collections.singleton(namedGraph));
+    }
+
+    public Index indexFor(RdfNode node, TypeChange typeChange) {
+        return delegate.indexFor(node, typeChange);
+    }
+
+    public void removeTripleFromNamedGraph(Resource namedGraph, Triple triple) {
+        delegate.removeTripleFromNamedGraph(namedGraph, triple);
+        cache.invalidate(triple, Collections.singleton(namedGraph));
+    }
+
+    public void delete(Triple triple) {
+        delegate.delete(triple);
+        cache.invalidate(triple, triple.graphs());
+    }
+
+    public ObjectViewSupport objectViewSupport() {
+        return delegate.objectViewSupport();
+    }
+
+    public boolean containsTriple(Triple triple) {
+        return delegate.containsTriple(triple);
+    }
+
+    public int tripleCount() {
+        return delegate.tripleCount();
+    }
+}
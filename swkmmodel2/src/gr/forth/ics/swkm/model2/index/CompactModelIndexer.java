@@ -0,0 +1,841 @@
+/* 
+ *  COPYRIGHT (c) 2008-2009 by Institute of Computer Science, 
+ *  Foundation for Research and Technology - Hellas
+ *  Contact: 
+ *      POBox 1385, Heraklio Crete, GR-700 13 GREECE
+ *      Tel:+30-2810-391632
+ *      Fax: +30-2810-391638
+ *      E-mail: isl@ics.forth.gr
+ *      http://www.ics.forth.gr/isl
+ *
+ *   Authors  :  Dimitris Andreou, Nelly Vouzoukidou.
+ *
+ *   This file is part of SWKM model APIs (see also http://athena.ics.forth.gr:9090/SWKM/).
+ *
+ *    SWKM model APIs is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU Lesser General Public License as published by
+ *    the Free Software Foundation, either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *   SWKM model APIs is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Lesser General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Lesser General Public License
+ *   along with SWKM model APIs.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ *   SWKM has been partially supported by EU project KP-Lab (IP IST-27490) kp-lab.org
+ */
+
+
+
+
+package gr.forth.ics.swkm.model2.index;
+
+import com.google.common.collect.AbstractIterator;
+import gr.forth.ics.swkm.model2.ObjectNode;
+import gr.forth.ics.swkm.model2.RdfNode;
+import gr.forth.ics.swkm.model2.Resource;
+import gr.forth.ics.swkm.model2.Triple;
+import gr.forth.ics.swkm.model2.event.TypeChange;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * An implementation of ModelIndexer storing triples in a dictionary-encoded, columnar
+ * layout.
+ *
+ * <p>Every node that takes part in a triple is assigned a dense {@code int} id, which
+ * is kept in its {@code Index}. Triples are stored as three parallel {@code int[]} columns
+ * (subject, predicate and object ids), and are reached through three sorted permutations
+ * of triple ids (SPO, POS and OSP). Each triple pattern is answered by a range walk
+ * over one of the permutations.</p>
+ *
+ * <p>Compared to {@code MultimapsModelIndexer}, no map entries or keys are allocated per
+ * triple, so memory requirements are much lower, while triple queries remain fast.</p>
+ *
+ * <p>Deleted triples are only marked as such, and are physically removed when their
+ * number exceeds the number of the remaining triples.</p>
+ *
+ * <p>Named graphs are handled using {@code NamedGraphIndexerImpl}, which indexes the
+ * triples of each named graph separately; triple patterns in a named graph are answered
+ * by the latter alone.</p>
+ */
+class CompactModelIndexer extends AbstractModelIndexer {
+    static final int SUBJECT = 0;
+    static final int PREDICATE = 1;
+    static final int OBJECT = 2;
+
+    private static final int INITIAL_CAPACITY = 64;
+    private static final int MIN_DELETED_FOR_COMPACTION = 1024;
+
+    private RdfNode[] nodes;
+    private int nodeCount;
+
+    // triples[id] == null means that the triple with that id is deleted
+    private Triple[] triples;
+    private int[][] columns;
+    private int tripleSlots;
+    private int liveTriples;
+
+    private TriplePermutation spo;
+    private TriplePermutation pos;
+    private TriplePermutation osp;
+
+    public CompactModelIndexer() {
+        super(new NamedGraphIndexerImpl());
+        nodes = new RdfNode[INITIAL_CAPACITY];
+        triples = new Triple[INITIAL_CAPACITY];
+        columns = new int[3][INITIAL_CAPACITY];
+        createPermutations();
+    }
+
+    private void createPermutations() {
+        spo = new TriplePermutation(this, SUBJECT, PREDICATE, OBJECT);
+        pos = new TriplePermutation(this, PREDICATE, OBJECT, SUBJECT);
+        osp = new TriplePermutation(this, OBJECT, SUBJECT, PREDICATE);
+    }
+
+    Triple[] triples() {
+        return triples;
+    }
+
+    int[][] columns() {
+        return columns;
+    }
+
+    @Override
+    public Index indexFor(RdfNode node, TypeChange typeChange) {
+        Index current = node.getIndex();
+        if (current instanceof NodeId) {
+            return current;
+        }
+        return new NodeId(node);
+    }
+
+    private static int idOf(RdfNode node) {
+        return ((NodeId) node.getIndex()).id;
+    }
+
+    private int assignId(RdfNode node) {
+        NodeId index = (NodeId) node.getIndex();
+        if (index.id < 0) {
+            if (nodeCount == nodes.length) {
+                RdfNode[] newNodes = new RdfNode[nodeCount * 2];
+                System.arraycopy(nodes, 0, newNodes, 0, nodeCount);
+                nodes = newNodes;
+            }
+            index.id = nodeCount;
+            nodes[nodeCount++] = node;
+        }
+        return index.id;
+    }
+
+    public void add(Resource namedGraph, Triple triple) {
+        graphIndexer.add(namedGraph, triple);
+
+        int s = assignId(triple.subject());
+        int p = assignId(triple.predicate());
+        int o = assignId(triple.object());
+
+        if (tripleSlots == triples.length) {
+            growTriples(tripleSlots * 2);
+        }
+        int id = tripleSlots++;
+        triples[id] = triple;
+        columns[SUBJECT][id] = s;
+        columns[PREDICATE][id] = p;
+        columns[OBJECT][id] = o;
+        liveTriples++;
+
+        spo.add(id);
+        pos.add(id);
+        osp.add(id);
+    }
+
+    private void growTriples(int capacity) {
+        Triple[] newTriples = new Triple[capacity];
+        System.arraycopy(triples, 0, newTriples, 0, tripleSlots);
+        int[][] newColumns = new int[3][capacity];
+        for (int i = 0; i < 3; i++) {
+            System.arraycopy(columns[i], 0, newColumns[i], 0, tripleSlots);
+        }
+        triples = newTriples;
+        columns = newColumns;
+    }
+
+    public void addInNamedGraph(Resource namedGraph, Triple triple) {
+        graphIndexer.add(namedGraph, triple);
+    }
+
+    public Iterator<Triple> findTriples(Resource g, ObjectNode s, Resource p, RdfNode o) {
+        if (g == null) {
+            return findTriples(s, p, o);
+        }
+        // g != null
+        if ((s != null || p != null || o != null) &&
+                countTriples(s, p, o, false) < graphIndexer.get(g, s, p, o).size()) {
+            //the model-wide permutation has fewer candidates than the named graph
+            return AbstractModelIndexer.findTriples(iterable(findTriples(s, p, o)), g);
+        }
+        return findTriplesInNamedGraph(g, s, p, o);
+    }
+
+    private static Iterable<Triple> iterable(final Iterator<Triple> iterator) {
+        return new Iterable<Triple>() {
+            public Iterator<Triple> iterator() {
+                return iterator;
+            }
+        };
+    }
+
+    @Override
+    public boolean containsTriples(Resource g, ObjectNode s, Resource p, RdfNode o) {
+        if (s != null && p != null && o != null) {
+            int sid = idOf(s);
+            int pid = idOf(p);
+            int oid = idOf(o);
+            if (sid < 0 || pid < 0 || oid < 0) {
+                return false;
+            }
+            int id = spo.findId(sid, pid, oid);
+            return id >= 0 && (g == null || triples[id].graphs().contains(g));
+        }
+        return super.containsTriples(g, s, p, o);
+    }
+
+    @Override
+    public int countTriples(Resource g, ObjectNode s, Resource p, RdfNode o) {
+        if (g == null) {
+            return countTriples(s, p, o, true);
+        }
+        if (s == null || o == null) {
+            return countTriplesInNamedGraph(g, s, p, o);
+        }
+        return count(findTriples(g, s, p, o));
+    }
+
+    @Override
+    public int estimateTriples(Resource g, ObjectNode s, Resource p, RdfNode o) {
+        int estimate = countTriples(s, p, o, false);
+        if (g != null) {
+            estimate = Math.min(estimate, graphIndexer.get(g, s, p, o).size());
+        }
+        return estimate;
+    }
+
+    /**
+     * Counts the triples matching the given pattern (without a named graph) from the ranges of
+     * the permutations. If not exact, deleted triples that are still in the permutations are counted too.
+     */
+    private int countTriples(ObjectNode subject, Resource predicate, RdfNode object, boolean exact) {
+        int s = subject == null ? -1 : idOf(subject);
+        int p = predicate == null ? -1 : idOf(predicate);
+        int o = object == null ? -1 : idOf(object);
+        if ((subject != null && s < 0) || (predicate != null && p < 0) ||
+                (object != null && o < 0)) {
+            return 0;
+        }
+        //if no triple is deleted, ranges are exact anyway
+        boolean skipDeleted = exact && liveTriples < tripleSlots;
+
+        int count = 0;
+        if (subject != null) {
+            count |= 4;
+        }
+        if (predicate != null) {
+            count |= 2;
+        }
+        if (object != null) {
+            count |= 1;
+        }
+
+        switch (count) {
+            case 0: // s?, p?, o?
+                return liveTriples;
+            case 1: // s?, p?, o
+                return osp.count(skipDeleted, 1, o, 0, 0);
+            case 2: // s?, p,  o?
+                return pos.count(skipDeleted, 1, p, 0, 0);
+            case 3: // s?, p,  o
+                return pos.count(skipDeleted, 2, p, o, 0);
+            case 4: // s,  p?, o?
+                return spo.count(skipDeleted, 1, s, 0, 0);
+            case 5: // s,  p?, o
+                return osp.count(skipDeleted, 2, o, s, 0);
+            case 6: // s,  p,  o?
+                return spo.count(skipDeleted, 2, s, p, 0);
+            default: //case 7: // s,  p,  o
+                return spo.count(skipDeleted, 3, s, p, o);
+        }
+    }
+
+    private Iterator<Triple> findTriples(ObjectNode subject, Resource predicate, RdfNode object) {
+        int s = subject == null ? -1 : idOf(subject);
+        int p = predicate == null ? -1 : idOf(predicate);
+        int o = object == null ? -1 : idOf(object);
+        if ((subject != null && s < 0) || (predicate != null && p < 0) ||
+                (object != null && o < 0)) {
+            // some of the given nodes is not contained in any triple
+            return EmptyTriplesList.instance().iterator();
+        }
+
+        int count = 0;
+        if (subject != null) {
+            count |= 4;
+        }
+        if (predicate != null) {
+            count |= 2;
+        }
+        if (object != null) {
+            count |= 1;
+        }
+
+        switch (count) {
+            case 0: // s?, p?, o?
+                return allTriples();
+            case 1: // s?, p?, o
+                return osp.find(o);
+            case 2: // s?, p,  o?
+                return pos.find(p);
+            case 3: // s?, p,  o
+                return pos.find(p, o);
+            case 4: // s,  p?, o?
+                return spo.find(s);
+            case 5: // s,  p?, o
+                return osp.find(o, s);
+            case 6: // s,  p,  o?
+                return spo.find(s, p);
+            default: //case 7: // s,  p,  o
+                return spo.find(s, p, o);
+        }
+    }
+
+    /**
+     * Sorts the nodes by id, so that the lookups in each run of a permutation are made
+     * in ascending positions.
+     */
+    @Override
+    protected <N extends RdfNode> Collection<N> probeOrder(Collection<? extends N> probes) {
+        List<N> sorted = new ArrayList<N>(new HashSet<N>(probes));
+        Collections.sort(sorted, new Comparator<N>() {
+            public int compare(N node1, N node2) {
+                int id1 = idOf(node1);
+                int id2 = idOf(node2);
+                return id1 < id2 ? -1 : (id1 == id2 ? 0 : 1);
+            }
+        });
+        return sorted;
+    }
+
+    private Iterator<Triple> allTriples() {
+        return triplesInSlots(0, tripleSlots);
+    }
+
+    /**
+     * Splits the slots of the triples into ranges, which are balanced as long as deleted
+     * triples are spread evenly.
+     */
+    @Override
+    public List<Iterable<Triple>> partitionTriples(int parts) {
+        final int slots = tripleSlots;
+        int count = partitionCount(liveTriples, parts);
+        List<Iterable<Triple>> result = new ArrayList<Iterable<Triple>>(count);
+        for (int i = 0; i < count; i++) {
+            final int from = partitionStart(i, slots, count);
+            final int to = partitionStart(i + 1, slots, count);
+            result.add(new Iterable<Triple>() {
+                public Iterator<Triple> iterator() {
+                    return triplesInSlots(from, to);
+                }
+            });
+        }
+        return result;
+    }
+
+    private Iterator<Triple> triplesInSlots(final int from, final int to) {
+        final Triple[] triples = this.triples;
+        return new AbstractIterator<Triple>() {
+            private int next = from;
+
+            @Override
+            protected Triple computeNext() {
+                while (next < to) {
+                    Triple triple = triples[next++];
+                    if (triple != null) {
+                        return triple;
+                    }
+                }
+                return endOfData();
+            }
+        };
+    }
+
+    public boolean containsTriple(Triple triple) {
+        return idOfTriple(triple) >= 0;
+    }
+
+    private int idOfTriple(Triple triple) {
+        int s = idOf(triple.subject());
+        int p = idOf(triple.predicate());
+        int o = idOf(triple.object());
+        if (s < 0 || p < 0 || o < 0) {
+            return -1;
+        }
+        return spo.findId(s, p, o);
+    }
+
+    public void delete(Triple triple) {
+        int id = idOfTriple(triple);
+        if (id < 0) {
+            return;
+        }
+        delete(id);
+        graphIndexer.removeTriple(triple);
+        compactIfNeeded();
+    }
+
+    private void delete(int id) {
+        triples[id] = null;
+        liveTriples--;
+    }
+
+    public void deleteTriples(Resource g, ObjectNode s, Resource p, RdfNode o,
+            TripleDeletionListener listener) {
+        if (g != null) {
+            deleteFromNamedGraph(g, s, p, o, listener);
+            return;
+        }
+        // g == null
+        List<Triple> matching = new ArrayList<Triple>();
+        for (Iterator<Triple> i = findTriples(s, p, o); i.hasNext(); ) {
+            matching.add(i.next());
+        }
+        for (Triple triple : matching) {
+            delete(idOfTriple(triple));
+            graphIndexer.removeTriple(triple);
+            listener.tripleDeleted(triple);
+        }
+        compactIfNeeded();
+    }
+
+    private void compactIfNeeded() {
+        int deleted = tripleSlots - liveTriples;
+        if (deleted >= MIN_DELETED_FOR_COMPACTION && deleted > liveTriples) {
+            compact(Math.max(INITIAL_CAPACITY, liveTriples * 2), Math.max(INITIAL_CAPACITY, nodeCount));
+        }
+    }
+
+    /**
+     * Physically removes deleted triples, releases all spare capacity, and merges each
+     * permutation into a single sorted run. Meant for an indexer that will not be
+     * modified anymore; it can still be modified, though, at the cost of growing its arrays again.
+     */
+    void trimToSize() {
+        compact(Math.max(1, liveTriples), Math.max(1, nodeCount));
+    }
+
+    /**
+     * Physically removes deleted triples and reassigns dense ids to triples and nodes.
+     * New arrays are always allocated, so that iterators created before the compaction
+     * keep working on the old ones.
+     */
+    private void compact(int tripleCapacity, int nodeCapacity) {
+        Triple[] oldTriples = triples;
+        int[][] oldColumns = columns;
+        int oldSlots = tripleSlots;
+        RdfNode[] oldNodes = nodes;
+        int oldNodeCount = nodeCount;
+
+        for (int i = 0; i < oldNodeCount; i++) {
+            ((NodeId) oldNodes[i].getIndex()).id = -1;
+        }
+        nodes = new RdfNode[nodeCapacity];
+        nodeCount = 0;
+        triples = new Triple[tripleCapacity];
+        columns = new int[3][triples.length];
+        tripleSlots = 0;
+
+        for (int i = 0; i < oldSlots; i++) {
+            Triple triple = oldTriples[i];
+            if (triple == null) {
+                continue;
+            }
+            int id = tripleSlots++;
+            triples[id] = triple;
+            columns[SUBJECT][id] = assignId(oldNodes[oldColumns[SUBJECT][i]]);
+            columns[PREDICATE][id] = assignId(oldNodes[oldColumns[PREDICATE][i]]);
+            columns[OBJECT][id] = assignId(oldNodes[oldColumns[OBJECT][i]]);
+        }
+        createPermutations();
+        spo.rebuild(tripleSlots);
+        pos.rebuild(tripleSlots);
+        osp.rebuild(tripleSlots);
+    }
+
+    public int tripleCount() {
+        return liveTriples;
+    }
+
+    /**
+     * The {@code Index} of each node, holding the dense id of the node, or {@code -1}
+     * if the node is not part of any triple of this indexer.
+     */
+    private static final class NodeId implements Index {
+        private final RdfNode node;
+        int id = -1;
+
+        NodeId(RdfNode node) {
+            this.node = node;
+        }
+
+        public RdfNode getNode() {
+            return node;
+        }
+    }
+}
+
+/**
+ * A permutation of the triple ids of a {@code CompactModelIndexer}, sorted by the ids of
+ * three triple positions (e.g., predicate, object, subject).
+ *
+ * <p>It is maintained with the logarithmic method: new triple ids are appended to a small
+ * unsorted buffer; a full buffer is sorted and then repeatedly merged with the sorted run
+ * of equal size, if any. Thus, there are at most a logarithmic number of sorted runs, and
+ * each addition costs amortized logarithmic time. Deleted triples are dropped during
+ * merges.</p>
+ *
+ * <p>Runs and buffers are never modified after they are replaced, so iterators keep
+ * iterating the state at the moment of their creation (except for deletions).</p>
+ */
+class TriplePermutation {
+    private static final int BUFFER_CAPACITY = 32;
+    private static final int INSERTION_SORT_THRESHOLD = 8;
+
+    private final CompactModelIndexer indexer;
+    private final int first;
+    private final int second;
+    private final int third;
+
+    // runs[i] is either null or a sorted run of approximately BUFFER_CAPACITY * 2^i ids
+    private int[][] runs = new int[4][];
+    private int[] buffer = new int[BUFFER_CAPACITY];
+    private int bufferSize;
+
+    TriplePermutation(CompactModelIndexer indexer, int first, int second, int third) {
+        this.indexer = indexer;
+        this.first = first;
+        this.second = second;
+        this.third = third;
+    }
+
+    void add(int id) {
+        buffer[bufferSize++] = id;
+        if (bufferSize < BUFFER_CAPACITY) {
+            return;
+        }
+        //the full buffer may still be read by iterators, so a copy of it is sorted
+        int[] run = new int[BUFFER_CAPACITY];
+        System.arraycopy(buffer, 0, run, 0, BUFFER_CAPACITY);
+        sort(run, indexer.columns());
+        buffer = new int[BUFFER_CAPACITY];
+        bufferSize = 0;
+
+        Triple[] triples = indexer.triples();
+        int[][] columns = indexer.columns();
+        int level = 0;
+        while (true) {
+            if (level == runs.length) {
+                int[][] newRuns = new int[runs.length * 2][];
+                System.arraycopy(runs, 0, newRuns, 0, runs.length);
+                runs = newRuns;
+            }
+            if (runs[level] == null) {
+                runs[level] = run;
+                return;
+            }
+            run = merge(runs[level], run, triples, columns);
+            runs[level] = null;
+            level++;
+        }
+    }
+
+    /**
+     * Replaces the contents of this permutation with the ids from {@code 0} to
+     * {@code count - 1}, where no triple is deleted.
+     */
+    void rebuild(int count) {
+        int[] all = new int[count];
+        for (int i = 0; i < count; i++) {
+            all[i] = i;
+        }
+        sort(all, indexer.columns());
+        runs = new int[4][];
+        int level = 0;
+        while ((BUFFER_CAPACITY << level) < count) {
+            level++;
+        }
+        if (level >= runs.length) {
+            runs = new int[level + 1][];
+        }
+        runs[level] = all;
+        buffer = new int[BUFFER_CAPACITY];
+        bufferSize = 0;
+    }
+
+    /**
+     * Returns the id of the (non-deleted) triple with the given keys, or {@code -1}.
+     */
+    int findId(int key1, int key2, int key3) {
+        RangeIterator iterator = new RangeIterator(3, key1, key2, key3);
+        if (!iterator.hasNext()) {
+            return -1;
+        }
+        iterator.next();
+        return iterator.lastId;
+    }
+
+    /**
+     * Returns the number of ids matching a key prefix, computed by a binary search per sorted run.
+     * Unless {@code skipDeleted} is true, ids of deleted triples that are not yet dropped are counted too.
+     */
+    int count(boolean skipDeleted, int keyCount, int key1, int key2, int key3) {
+        Triple[] triples = indexer.triples();
+        int[][] columns = indexer.columns();
+        int count = 0;
+        for (int[] run : runs) {
+            if (run == null) {
+                continue;
+            }
+            int position = search(run, columns, false, keyCount, key1, key2, key3);
+            int end = search(run, columns, true, keyCount, key1, key2, key3);
+            if (!skipDeleted) {
+                count += end - position;
+                continue;
+            }
+            for (; position < end; position++) {
+                if (triples[run[position]] != null) {
+                    count++;
+                }
+            }
+        }
+        for (int i = 0; i < bufferSize; i++) {
+            int id = buffer[i];
+            if (triples[id] != null &&
+                    compareToKeys(columns, id, keyCount, key1, key2, key3) == 0) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    Iterator<Triple> find(int key1) {
+        return find(1, key1, 0, 0);
+    }
+
+    Iterator<Triple> find(int key1, int key2) {
+        return find(2, key1, key2, 0);
+    }
+
+    Iterator<Triple> find(int key1, int key2, int key3) {
+        return find(3, key1, key2, key3);
+    }
+
+    private Iterator<Triple> find(int keyCount, int key1, int key2, int key3) {
+        return new RangeIterator(keyCount, key1, key2, key3);
+    }
+
+    private int compareToKeys(int[][] columns, int id, int keyCount,
+            int key1, int key2, int key3) {
+        int dif = compare(columns[first][id], key1);
+        if (dif != 0 || keyCount == 1) {
+            return dif;
+        }
+        dif = compare(columns[second][id], key2);
+        if (dif != 0 || keyCount == 2) {
+            return dif;
+        }
+        return compare(columns[third][id], key3);
+    }
+
+    private int compare(int[][] columns, int id1, int id2) {
+        int dif = compare(columns[first][id1], columns[first][id2]);
+        if (dif != 0) {
+            return dif;
+        }
+        dif = compare(columns[second][id1], columns[second][id2]);
+        if (dif != 0) {
+            return dif;
+        }
+        dif = compare(columns[third][id1], columns[third][id2]);
+        if (dif != 0) {
+            return dif;
+        }
+        return compare(id1, id2);
+    }
+
+    private static int compare(int a, int b) {
+        return a < b ? -1 : (a == b ? 0 : 1);
+    }
+
+    /**
+     * Returns the first position of the run which does not precede the keys (if
+     * {@code upper} is false), or which follows the keys (if {@code upper} is true).
+     */
+    private int search(int[] run, int[][] columns, boolean upper, int keyCount,
+            int key1, int key2, int key3) {
+        int low = 0;
+        int high = run.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            int dif = compareToKeys(columns, run[mid], keyCount, key1, key2, key3);
+            if (dif < 0 || (upper && dif == 0)) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private int[] merge(int[] a, int[] b, Triple[] triples, int[][] columns) {
+        int[] result = new int[a.length + b.length];
+        int i = 0, j = 0, k = 0;
+        while (i < a.length && j < b.length) {
+            int id = compare(columns, a[i], b[j]) <= 0 ? a[i++] : b[j++];
+            if (triples[id] != null) {
+                result[k++] = id;
+            }
+        }
+        while (i < a.length) {
+            int id = a[i++];
+            if (triples[id] != null) {
+                result[k++] = id;
+            }
+        }
+        while (j < b.length) {
+            int id = b[j++];
+            if (triples[id] != null) {
+                result[k++] = id;
+            }
+        }
+        if (k == result.length) {
+            return result;
+        }
+        int[] trimmed = new int[k];
+        System.arraycopy(result, 0, trimmed, 0, k);
+        return trimmed;
+    }
+
+    private void sort(int[] ids, int[][] columns) {
+        mergeSort(ids.clone(), ids, 0, ids.length, columns);
+    }
+
+    private void mergeSort(int[] src, int[] dest, int low, int high, int[][] columns) {
+        if (high - low <= INSERTION_SORT_THRESHOLD) {
+            for (int i = low + 1; i < high; i++) {
+                int id = dest[i];
+                int j = i;
+                while (j > low && compare(columns, dest[j - 1], id) > 0) {
+                    dest[j] = dest[j - 1];
+                    j--;
+                }
+                dest[j] = id;
+            }
+            return;
+        }
+        int mid = (low + high) >>> 1;
+        mergeSort(dest, src, low, mid, columns);
+        mergeSort(dest, src, mid, high, columns);
+        for (int i = low, p = low, q = mid; i < high; i++) {
+            if (q >= high || (p < mid && compare(columns, src[p], src[q]) <= 0)) {
+                dest[i] = src[p++];
+            } else {
+                dest[i] = src[q++];
+            }
+        }
+    }
+
+    /**
+     * Iterates the triples matching a key prefix, walking one range per sorted run,
+     * and then scanning the unsorted buffer.
+     */
+    private class RangeIterator extends AbstractIterator<Triple> {
+        private final int keyCount;
+        private final int key1;
+        private final int key2;
+        private final int key3;
+
+        private final Triple[] triples;
+        private final int[][] columns;
+        private final int[][] runs;
+        private final int[] buffer;
+        private final int bufferSize;
+
+        private int run = -1;
+        private boolean inBuffer;
+        private int position;
+        private int end;
+        private int lastId = -1;
+
+        RangeIterator(int keyCount, int key1, int key2, int key3) {
+            this.keyCount = keyCount;
+            this.key1 = key1;
+            this.key2 = key2;
+            this.key3 = key3;
+            this.triples = indexer.triples();
+            this.columns = indexer.columns();
+            this.runs = TriplePermutation.this.runs.clone();
+            this.buffer = TriplePermutation.this.buffer;
+            this.bufferSize = TriplePermutation.this.bufferSize;
+        }
+
+        @Override
+        protected Triple computeNext() {
+            while (!inBuffer) {
+                while (position < end) {
+                    int id = runs[run][position++];
+                    Triple triple = triples[id];
+                    if (triple != null) {
+                        lastId = id;
+                        return triple;
+                    }
+                }
+                nextRun();
+            }
+            while (position < bufferSize) {
+                int id = buffer[position++];
+                Triple triple = triples[id];
+                if (triple != null &&
+                        compareToKeys(columns, id, keyCount, key1, key2, key3) == 0) {
+                    lastId = id;
+                    return triple;
+                }
+            }
+            return endOfData();
+        }
+
+        private void nextRun() {
+            while (++run < runs.length) {
+                int[] ids = runs[run];
+                if (ids == null) {
+                    continue;
+                }
+                position = search(ids, columns, false, keyCount, key1, key2, key3);
+                end = search(ids, columns, true, keyCount, key1, key2, key3);
+                if (position < end) {
+                    return;
+                }
+            }
+            // continue with the buffer
+            inBuffer = true;
+            position = 0;
+        }
+    }
+}
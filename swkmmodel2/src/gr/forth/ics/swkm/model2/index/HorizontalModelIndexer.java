@@ -33,13 +33,17 @@ package gr.forth.ics.swkm.model2.index;
 
 import com.google.common.base.Function;
 import com.google.common.base.Predicate;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Iterators;
 import gr.forth.ics.swkm.model2.*;
+import com.google.common.collect.ListMultimap;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
 import gr.forth.ics.swkm.model2.RdfType;
 import gr.forth.ics.swkm.model2.event.TypeChange;
+import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
@@ -81,17 +85,79 @@ public class HorizontalModelIndexer implements ModelIndexer {
         return triples.contains(triple);
     }
     
-    public Iterator<Triple> findTriples(Resource g, ObjectNode s, Resource p, RdfNode o) {
-        List<Triple> results = Lists.newArrayList();
+    public Iterator<Triple> findTriples(final Resource g, final ObjectNode s, final Resource p, final RdfNode o) {
+        return Iterators.filter(triples.iterator(), new Predicate<Triple>() {
+            public boolean apply(Triple triple) {
+                return (g == null || triple.graphs().contains(g))
+                    && (s == null || s == triple.subject())
+                    && (p == null || p == triple.predicate())
+                    && (o == null || o == triple.object());
+            }
+        });
+    }
+
+    public boolean containsTriples(Resource g, ObjectNode s, Resource p, RdfNode o) {
+        return findTriples(g, s, p, o).hasNext();
+    }
+
+    public int countTriples(Resource g, ObjectNode s, Resource p, RdfNode o) {
+        int count = 0;
         for (Triple triple : triples) {
             if ((g == null || triple.graphs().contains(g))
                     && (s == null || s == triple.subject())
                     && (p == null || p == triple.predicate())
                     && (o == null || o == triple.object())) {
-                results.add(triple);
+                count++;
+            }
+        }
+        return count;
+    }
+
+    public int estimateTriples(Resource g, ObjectNode s, Resource p, RdfNode o) {
+        return countTriples(g, s, p, o);
+    }
+
+    public ListMultimap<ObjectNode, Triple> findTriplesForSubjects(Resource g,
+            Collection<? extends ObjectNode> subjects, Resource p, RdfNode o) {
+        Set<ObjectNode> probes = Sets.newHashSet(subjects);
+        ListMultimap<ObjectNode, Triple> result = ArrayListMultimap.create();
+        for (Iterator<Triple> i = findTriples(g, null, p, o); i.hasNext(); ) {
+            Triple triple = i.next();
+            if (probes.contains(triple.subject())) {
+                result.put(triple.subject(), triple);
+            }
+        }
+        return result;
+    }
+
+    public ListMultimap<Resource, Triple> findTriplesForPredicates(Resource g,
+            ObjectNode s, Collection<? extends Resource> predicates, RdfNode o) {
+        Set<Resource> probes = Sets.newHashSet(predicates);
+        ListMultimap<Resource, Triple> result = ArrayListMultimap.create();
+        for (Iterator<Triple> i = findTriples(g, s, null, o); i.hasNext(); ) {
+            Triple triple = i.next();
+            if (probes.contains(triple.predicate())) {
+                result.put(triple.predicate(), triple);
             }
         }
-        return results.iterator();
+        return result;
+    }
+
+    public ListMultimap<RdfNode, Triple> findTriplesForObjects(Resource g,
+            ObjectNode s, Resource p, Collection<? extends RdfNode> objects) {
+        Set<RdfNode> probes = Sets.newHashSet(objects);
+        ListMultimap<RdfNode, Triple> result = ArrayListMultimap.create();
+        for (Iterator<Triple> i = findTriples(g, s, p, null); i.hasNext(); ) {
+            Triple triple = i.next();
+            if (probes.contains(triple.object())) {
+                result.put(triple.object(), triple);
+            }
+        }
+        return result;
+    }
+
+    public List<Iterable<Triple>> partitionTriples(int parts) {
+        return AbstractModelIndexer.partition(Lists.newArrayList(triples), parts);
     }
 
     public void deleteTriples(Resource g, ObjectNode s, Resource p, RdfNode o, TripleDeletionListener listener) {
@@ -111,23 +177,35 @@ public class HorizontalModelIndexer implements ModelIndexer {
         }
     }
 
-    public Iterator<RdfNode> find(RdfType type) {
-        Set<RdfNode> results = Sets.newHashSet();
-        for (Triple triple : triples) {
-            if (triple.subject().type() == type) {
-                results.add(triple.subject());
-            }
-            if (triple.predicate().type() == type) {
-                results.add(triple.predicate());
-            }
-            if (triple.object().type() == type) {
-                results.add(triple.object());
+    public Iterator<RdfNode> find(final RdfType type) {
+        final Iterator<RdfNode> nodes = Iterators.concat(Iterators.transform(triples.iterator(),
+                new Function<Triple, Iterator<RdfNode>>() {
+            public Iterator<RdfNode> apply(Triple triple) {
+                Iterator<RdfNode> nodes = Iterators.filter(triple.nodes().iterator(), new Predicate<RdfNode>() {
+                    public boolean apply(RdfNode node) {
+                        return node.type() == type;
+                    }
+                });
+                if (type == RdfType.NAMED_GRAPH) {
+                    return Iterators.<RdfNode>concat(nodes, triple.graphs().iterator());
+                }
+                return nodes;
             }
-            if (type == RdfType.NAMED_GRAPH) {
-                results.addAll(triple.graphs());
+        }));
+        return new AbstractIterator<RdfNode>() {
+            private final Set<RdfNode> reported = Sets.newHashSet();
+
+            @Override
+            protected RdfNode computeNext() {
+                while (nodes.hasNext()) {
+                    RdfNode node = nodes.next();
+                    if (reported.add(node)) {
+                        return node;
+                    }
+                }
+                return endOfData();
             }
-        }
-        return results.iterator();
+        };
     }
 
     public void setModelView(ModelView modelView) {
@@ -31,6 +31,7 @@
 
 package gr.forth.ics.swkm.model2.index;
 
+import com.google.common.collect.ListMultimap;
 import gr.forth.ics.swkm.model2.Model;
 import gr.forth.ics.swkm.model2.RdfType;
 import gr.forth.ics.swkm.model2.RdfNode;
@@ -39,7 +40,9 @@ import gr.forth.ics.swkm.model2.ObjectNode;
 import gr.forth.ics.swkm.model2.Triple;
 import gr.forth.ics.swkm.model2.Uri;
 import gr.forth.ics.swkm.model2.event.TypeChange;
+import java.util.Collection;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Set;
 
 /**
@@ -66,6 +69,102 @@ public interface ModelIndexer {
      */
     Iterator<Triple> findTriples(Resource namedGraph, ObjectNode subject, Resource predicate, RdfNode object);
 
+    /**
+     * Returns whether any triple matches the given triple pattern. Implementations stop
+     * at the first matching triple, and answer patterns where all of subject, predicate
+     * and object are given by a direct lookup.
+     *
+     * @param namedGraph the named graph to match, or {@code null} to match any
+     * @param subject the subject to match, or {@code null} to match any
+     * @param predicate the predicate to match, or {@code null} to match any
+     * @param object the object to match, or {@code null} to match any
+     * @return whether any triple matches the given triple pattern
+     */
+    boolean containsTriples(Resource namedGraph, ObjectNode subject, Resource predicate, RdfNode object);
+
+    /**
+     * Returns the number of triples that match the given triple pattern, i.e. the number of
+     * triples that {@link #findTriples(Resource, ObjectNode, Resource, RdfNode)} would report,
+     * without creating a collection of them. Implementations compute it from the sizes of their
+     * indexes where possible.
+     *
+     * @param namedGraph the named graph to match, or {@code null} to match any
+     * @param subject the subject to match, or {@code null} to match any
+     * @param predicate the predicate to match, or {@code null} to match any
+     * @param object the object to match, or {@code null} to match any
+     * @return the number of triples that match the given triple pattern
+     */
+    int countTriples(Resource namedGraph, ObjectNode subject, Resource predicate, RdfNode object);
+
+    /**
+     * Returns an estimation of the number of triples that match the given triple pattern,
+     * which is never less than the actual number. Unlike {@link #countTriples(Resource, ObjectNode, Resource, RdfNode)},
+     * the estimation is computed from the sizes of the indexes, without visiting matching triples,
+     * so it is cheap enough to compare alternative ways to evaluate a query.
+     *
+     * @param namedGraph the named graph to match, or {@code null} to match any
+     * @param subject the subject to match, or {@code null} to match any
+     * @param predicate the predicate to match, or {@code null} to match any
+     * @param object the object to match, or {@code null} to match any
+     * @return an upper bound of the number of triples that match the given triple pattern
+     */
+    int estimateTriples(Resource namedGraph, ObjectNode subject, Resource predicate, RdfNode object);
+
+    /**
+     * Finds, for each of the given subjects, the triples that have that subject and match
+     * the rest of the given triple pattern. This is equivalent to calling
+     * {@link #findTriples(Resource, ObjectNode, Resource, RdfNode)} once for each subject, but
+     * implementations can order the lookups to visit their indexes sequentially, or answer all
+     * of them in a single pass.
+     *
+     * @param namedGraph the named graph to match, or {@code null} to match any
+     * @param subjects the subjects to find triples for; duplicates are ignored
+     * @param predicate the predicate to match, or {@code null} to match any
+     * @param object the object to match, or {@code null} to match any
+     * @return the matching triples, grouped by subject; subjects without matching triples are not contained
+     */
+    ListMultimap<ObjectNode, Triple> findTriplesForSubjects(Resource namedGraph,
+            Collection<? extends ObjectNode> subjects, Resource predicate, RdfNode object);
+
+    /**
+     * Finds, for each of the given predicates, the triples that have that predicate and match
+     * the rest of the given triple pattern. See {@link #findTriplesForSubjects(Resource, Collection, Resource, RdfNode)}.
+     *
+     * @param namedGraph the named graph to match, or {@code null} to match any
+     * @param subject the subject to match, or {@code null} to match any
+     * @param predicates the predicates to find triples for; duplicates are ignored
+     * @param object the object to match, or {@code null} to match any
+     * @return the matching triples, grouped by predicate; predicates without matching triples are not contained
+     */
+    ListMultimap<Resource, Triple> findTriplesForPredicates(Resource namedGraph,
+            ObjectNode subject, Collection<? extends Resource> predicates, RdfNode object);
+
+    /**
+     * Finds, for each of the given objects, the triples that have that object and match
+     * the rest of the given triple pattern. See {@link #findTriplesForSubjects(Resource, Collection, Resource, RdfNode)}.
+     *
+     * @param namedGraph the named graph to match, or {@code null} to match any
+     * @param subject the subject to match, or {@code null} to match any
+     * @param predicate the predicate to match, or {@code null} to match any
+     * @param objects the objects to find triples for; duplicates are ignored
+     * @return the matching triples, grouped by object; objects without matching triples are not contained
+     */
+    ListMultimap<RdfNode, Triple> findTriplesForObjects(Resource namedGraph,
+            ObjectNode subject, Resource predicate, Collection<? extends RdfNode> objects);
+
+    /**
+     * Splits all the triples of this indexer into disjoint parts of roughly equal size, so that each triple
+     * is contained in exactly one part. Implementations split their own structures where possible,
+     * instead of copying the triples. The parts can be iterated concurrently by different threads, as long
+     * as the indexer is not modified meanwhile.
+     *
+     * @param parts the maximum number of parts
+     * @return the parts of the triples of this indexer, which are fewer than requested (or none)
+     * if there are not enough triples
+     * @throws IllegalArgumentException if {@code parts} is not positive
+     */
+    List<Iterable<Triple>> partitionTriples(int parts);
+
     /**
      * Deletes from this indexer all the triples that match the given triple
      * pattern. If any of the subject, predicate or object are {@code null}, then the value
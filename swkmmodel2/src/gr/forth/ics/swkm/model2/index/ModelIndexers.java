@@ -72,4 +72,42 @@ public class ModelIndexers {
     public static ModelIndexer createTreeMapModelIndexer() {
         return new TreeMapModelIndexer();
     }
+
+    /**
+     * Returns an instance of CompactModelIndexer, a ModelIndexer where nodes are
+     * encoded as integers and triples are stored in sorted integer arrays.
+     *
+     * @return an instance of CompactModelIndexer, a ModelIndexer where nodes are
+     * encoded as integers and triples are stored in sorted integer arrays
+     */
+    public static ModelIndexer createCompactModelIndexer() {
+        return new CompactModelIndexer();
+    }
+
+    /**
+     * Returns a ModelIndexer that caches the results of {@code findTriples} of another ModelIndexer
+     * in the specified QueryCache, which cannot be used by any other ModelIndexer.
+     *
+     * @param indexer the ModelIndexer whose results are cached; it must not be used directly anymore
+     * @param cache the cache of the results
+     * @return a ModelIndexer that caches the results of {@code findTriples} of another ModelIndexer
+     * @throws IllegalStateException if the cache is already used by another ModelIndexer
+     */
+    public static ModelIndexer createCachingModelIndexer(ModelIndexer indexer, QueryCache cache) {
+        return new CachingModelIndexer(indexer, cache);
+    }
+
+    /**
+     * Releases any spare capacity of a ModelIndexer that is not going to be modified anymore,
+     * and reorganizes it for faster queries, if it supports it. Otherwise, it does nothing.
+     *
+     * @param indexer the ModelIndexer to trim
+     */
+    public static void trimToSize(ModelIndexer indexer) {
+        if (indexer instanceof CachingModelIndexer) {
+            trimToSize(((CachingModelIndexer)indexer).delegate());
+        } else if (indexer instanceof CompactModelIndexer) {
+            ((CompactModelIndexer)indexer).trimToSize();
+        }
+    }
 }
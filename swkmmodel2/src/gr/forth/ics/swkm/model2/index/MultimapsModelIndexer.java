@@ -57,7 +57,9 @@ import java.util.NoSuchElementException;
  * this implementation offers a very fast SPO queries response. However, it also has
  * high memory requirements.</p>
  * 
- * <p>Named graphs are handled using {@code NamedGraphIndexerImpl}.</p>
+ * <p>Named graphs are handled using {@code NamedGraphIndexerImpl}, which indexes the
+ * triples of each named graph separately, so that triple patterns in a named graph
+ * are answered by the smaller of the model-wide and the graph's index entries.</p>
  * 
  * @author Vouzoukidou Nelly, email: vuzukid (at) csd (dot) uoc (dot) gr
  */
@@ -99,10 +101,39 @@ class MultimapsModelIndexer extends AbstractModelIndexer {
             return triples.iterator();
         }
         // g != null
-        final Collection<Triple> ngTriples = graphIndexer.get(g);
+        final Collection<Triple> ngTriples = graphIndexer.get(g, s, p, o);
         return AbstractModelIndexer.findTriples(triples, ngTriples, g, s, p, o);
     }
     
+    @Override
+    public boolean containsTriples(Resource g, ObjectNode s, Resource p, RdfNode o) {
+        if (s != null && p != null && o != null) {
+            Triple triple = subjectPredicateObjects.get(new Multikey(s, p, o));
+            return triple != null && (g == null || triple.graphs().contains(g));
+        }
+        return super.containsTriples(g, s, p, o);
+    }
+
+    @Override
+    public int countTriples(Resource g, ObjectNode s, Resource p, RdfNode o) {
+        if (g == null) {
+            return findTriples(s, p, o).size();
+        }
+        if (s == null || o == null) {
+            return countTriplesInNamedGraph(g, s, p, o);
+        }
+        return count(findTriples(g, s, p, o));
+    }
+
+    @Override
+    public int estimateTriples(Resource g, ObjectNode s, Resource p, RdfNode o) {
+        int estimate = findTriples(s, p, o).size();
+        if (g != null) {
+            estimate = Math.min(estimate, graphIndexer.get(g, s, p, o).size());
+        }
+        return estimate;
+    }
+
     private Collection<Triple> findTriples(ObjectNode subject, Resource predicate, RdfNode object) {
         int count = 0;
         if (subject != null) {
@@ -31,9 +31,12 @@
 
 package gr.forth.ics.swkm.model2.index;
 
+import gr.forth.ics.swkm.model2.ObjectNode;
+import gr.forth.ics.swkm.model2.RdfNode;
 import gr.forth.ics.swkm.model2.Resource;
 import gr.forth.ics.swkm.model2.Triple;
 import java.util.Collection;
+import java.util.Set;
 
 /**
  * An indexer for triples in named graphs. Adding or removing named graphs is not
@@ -58,6 +61,21 @@ interface NamedGraphIndexer extends Iterable<Resource> {
      */
     Collection<Triple> get(Resource namedGraph);
 
+    /**
+     * Returns a {@code Collection} of triples of the given named graph, that contains (at least)
+     * all the triples of the named graph that match the given subject, predicate and object, as
+     * found by an index lookup. Any of subject, predicate and object may be null, meaning any value.
+     * The returned collection may contain non-matching triples, which callers must filter out;
+     * it is exact unless both the subject and the object are given.
+     *
+     * @param namedGraph returned triples will belong in this named graph
+     * @param subject the subject of the triples, or null if indifferent
+     * @param predicate the predicate of the triples, or null if indifferent
+     * @param object the object of the triples, or null if indifferent
+     * @return a {@code Collection} of triples of the named graph, containing all the matching ones
+     */
+    Collection<Triple> get(Resource namedGraph, ObjectNode subject, Resource predicate, RdfNode object);
+
     /**
      * Removes the given triple from all named graphs.
      * @param triple the triple to be removed
@@ -70,4 +88,11 @@ interface NamedGraphIndexer extends Iterable<Resource> {
      * @param triple the triple to be removed
      */
     void removeTriple(Resource namedGraph, Triple triple);
+
+    /**
+     * Removes the given triples from the given named graph.
+     * @param namedGraph the named graph the triples will be removed from
+     * @param triples the triples to be removed
+     */
+    void removeTriples(Resource namedGraph, Set<Triple> triples);
 }
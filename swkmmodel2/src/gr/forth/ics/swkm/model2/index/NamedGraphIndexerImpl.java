@@ -31,26 +31,28 @@
 
 package gr.forth.ics.swkm.model2.index;
 
+import gr.forth.ics.swkm.model2.ObjectNode;
+import gr.forth.ics.swkm.model2.RdfNode;
 import gr.forth.ics.swkm.model2.Resource;
 import gr.forth.ics.swkm.model2.Triple;
-import java.util.ArrayList;
 import java.util.Collection;
 import java.util.IdentityHashMap;
 import java.util.Iterator;
-import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * An implementation of the {@code NamedGraphIndexer} using a Map to store
- * information about which triples belong to existing named graphs.
+ * information about which triples belong to existing named graphs. The triples
+ * of each named graph are indexed in a {@link NamedGraphTriples}.
  * 
  * @author Vouzoukidou Nelly, email: vuzukid (at) csd (dot) uoc (dot) gr
  */
 class NamedGraphIndexerImpl implements NamedGraphIndexer {
-    private final Map<Resource, List<Triple>> graphToTriples;
+    private final Map<Resource, NamedGraphTriples> graphToTriples;
 
     public NamedGraphIndexerImpl() {
-        graphToTriples = new IdentityHashMap<Resource, List<Triple>>();
+        graphToTriples = new IdentityHashMap<Resource, NamedGraphTriples>();
     }
 
     public Iterator<Resource> iterator() {
@@ -58,17 +60,22 @@ class NamedGraphIndexerImpl implements NamedGraphIndexer {
     }
     
     public void add(Resource namedGraph, Triple triple) {
-        List<Triple> triples = graphToTriples.get(namedGraph);
+        NamedGraphTriples triples = graphToTriples.get(namedGraph);
         if (triples == null) {
-            triples = new ArrayList<Triple>();
+            triples = new NamedGraphTriples();
             graphToTriples.put(namedGraph, triples);
         }
         triples.add(triple);
     }
     
     public Collection<Triple> get(Resource namedGraph) {
-        Collection<Triple> triples = graphToTriples.get(namedGraph);
-        return triples == null ? EmptyTriplesList.instance() : triples;
+        NamedGraphTriples triples = graphToTriples.get(namedGraph);
+        return triples == null ? EmptyTriplesList.instance() : triples.all();
+    }
+
+    public Collection<Triple> get(Resource namedGraph, ObjectNode subject, Resource predicate, RdfNode object) {
+        NamedGraphTriples triples = graphToTriples.get(namedGraph);
+        return triples == null ? EmptyTriplesList.instance() : triples.find(subject, predicate, object);
     }
 
     public void removeTriple(Triple triple) {
@@ -78,10 +85,18 @@ class NamedGraphIndexerImpl implements NamedGraphIndexer {
     }
 
     public void removeTriple(Resource namedGraph, Triple triple) {
-        List<Triple> triples = graphToTriples.get(namedGraph);
+        NamedGraphTriples triples = graphToTriples.get(namedGraph);
         if (triples == null) {
             return;
         }
         triples.remove(triple);
     }
+
+    public void removeTriples(Resource namedGraph, Set<Triple> triples) {
+        NamedGraphTriples graphTriples = graphToTriples.get(namedGraph);
+        if (graphTriples == null) {
+            return;
+        }
+        graphTriples.removeAll(triples);
+    }
 }
@@ -0,0 +1,245 @@
+/* 
+ *  COPYRIGHT (c) 2008-2009 by Institute of Computer Science, 
+ *  Foundation for Research and Technology - Hellas
+ *  Contact: 
+ *      POBox 1385, Heraklio Crete, GR-700 13 GREECE
+ *      Tel:+30-2810-391632
+ *      Fax: +30-2810-391638
+ *      E-mail: isl@ics.forth.gr
+ *      http://www.ics.forth.gr/isl
+ *
+ *   Authors  :  Dimitris Andreou, Nelly Vouzoukidou.
+ *
+ *   This file is part of SWKM model APIs (see also http://athena.ics.forth.gr:9090/SWKM/).
+ *
+ *    SWKM model APIs is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU Lesser General Public License as published by
+ *    the Free Software Foundation, either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *   SWKM model APIs is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Lesser General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Lesser General Public License
+ *   along with SWKM model APIs.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ *   SWKM has been partially supported by EU project KP-Lab (IP IST-27490) kp-lab.org
+ */
+
+
+package gr.forth.ics.swkm.model2.index;
+
+import gr.forth.ics.swkm.model2.ObjectNode;
+import gr.forth.ics.swkm.model2.RdfNode;
+import gr.forth.ics.swkm.model2.Resource;
+import gr.forth.ics.swkm.model2.Triple;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The triples of a single named graph, indexed by subject, subject-predicate, predicate,
+ * predicate-object and object (i.e. the GSPO, GPOS and GOS permutations of the quads
+ * of the graph). This way, any triple pattern scoped in a named graph is answered by a
+ * lookup in the graph, instead of filtering either all the triples of the graph, or
+ * all the triples of the model that match the rest of the pattern.
+ * <p>
+ * The subject-predicate lists are nested under the subject they belong to, and the
+ * predicate-object lists under their predicate, so adding a triple only looks up
+ * three maps, and no composite keys are created.
+ */
+class NamedGraphTriples {
+    private final List<Triple> triples = new ArrayList<Triple>();
+
+    private final Map<ObjectNode, Group<Resource>> subjects = new HashMap<ObjectNode, Group<Resource>>();
+    private final Map<Resource, Group<RdfNode>> predicates = new HashMap<Resource, Group<RdfNode>>();
+    private final Map<RdfNode, List<Triple>> objects = new HashMap<RdfNode, List<Triple>>();
+
+    /**
+     * The triples that share a node, along with the same triples grouped by a second node.
+     */
+    private static class Group<K> {
+        final List<Triple> all = new ArrayList<Triple>(2);
+        final Map<K, List<Triple>> byNext = new HashMap<K, List<Triple>>(4);
+
+        void add(K next, Triple triple) {
+            all.add(triple);
+            put(byNext, next, triple);
+        }
+
+        List<Triple> get(K next) {
+            return NamedGraphTriples.get(byNext, next);
+        }
+
+        /**
+         * Returns whether the group is empty after the removal.
+         */
+        boolean remove(K next, Triple triple) {
+            if (all.remove(triple)) {
+                NamedGraphTriples.remove(byNext, next, triple);
+            }
+            return all.isEmpty();
+        }
+
+        /**
+         * Returns whether the group is empty after the removal.
+         */
+        boolean removeAll(Set<Triple> toRemove) {
+            TripleLists.removeAll(all, toRemove);
+            for (Iterator<List<Triple>> i = byNext.values().iterator(); i.hasNext(); ) {
+                List<Triple> list = i.next();
+                TripleLists.removeAll(list, toRemove);
+                if (list.isEmpty()) {
+                    i.remove();
+                }
+            }
+            return all.isEmpty();
+        }
+    }
+
+    /**
+     * Returns all the triples of the named graph, in insertion order.
+     */
+    List<Triple> all() {
+        return triples;
+    }
+
+    int size() {
+        return triples.size();
+    }
+
+    void add(Triple triple) {
+        triples.add(triple);
+        Group<Resource> subjectGroup = subjects.get(triple.subject());
+        if (subjectGroup == null) {
+            subjectGroup = new Group<Resource>();
+            subjects.put(triple.subject(), subjectGroup);
+        }
+        subjectGroup.add(triple.predicate(), triple);
+        Group<RdfNode> predicateGroup = predicates.get(triple.predicate());
+        if (predicateGroup == null) {
+            predicateGroup = new Group<RdfNode>();
+            predicates.put(triple.predicate(), predicateGroup);
+        }
+        predicateGroup.add(triple.object(), triple);
+        put(objects, triple.object(), triple);
+    }
+
+    private static <K> void put(Map<K, List<Triple>> map, K key, Triple triple) {
+        List<Triple> list = map.get(key);
+        if (list == null) {
+            list = new ArrayList<Triple>(2);
+            map.put(key, list);
+        }
+        list.add(triple);
+    }
+
+    /**
+     * Returns the smallest indexed collection of triples of the named graph that contains
+     * all the triples that match the given subject, predicate and object. Any of them may be
+     * null, meaning any value. The returned collection is exact unless all three are given,
+     * or only the subject and the object, in which case it needs to be filtered.
+     */
+    Collection<Triple> find(ObjectNode s, Resource p, RdfNode o) {
+        if (s != null) {
+            Group<Resource> subjectGroup = subjects.get(s);
+            if (subjectGroup == null) {
+                return EmptyTriplesList.instance();
+            }
+            if (p != null) {
+                return subjectGroup.get(p);
+            }
+            if (o != null) {
+                return smallest(subjectGroup.all, get(objects, o));
+            }
+            return subjectGroup.all;
+        }
+        if (p != null) {
+            Group<RdfNode> predicateGroup = predicates.get(p);
+            if (predicateGroup == null) {
+                return EmptyTriplesList.instance();
+            }
+            return o != null ? predicateGroup.get(o) : predicateGroup.all;
+        }
+        return o != null ? get(objects, o) : triples;
+    }
+
+    private static <K> List<Triple> get(Map<K, List<Triple>> map, K key) {
+        List<Triple> list = map.get(key);
+        return list == null ? EmptyTriplesList.instance() : list;
+    }
+
+    private static List<Triple> smallest(List<Triple> l1, List<Triple> l2) {
+        return l1.size() <= l2.size() ? l1 : l2;
+    }
+
+    void remove(Triple triple) {
+        if (!triples.remove(triple)) {
+            return;
+        }
+        Group<Resource> subjectGroup = subjects.get(triple.subject());
+        if (subjectGroup != null && subjectGroup.remove(triple.predicate(), triple)) {
+            subjects.remove(triple.subject());
+        }
+        Group<RdfNode> predicateGroup = predicates.get(triple.predicate());
+        if (predicateGroup != null && predicateGroup.remove(triple.object(), triple)) {
+            predicates.remove(triple.predicate());
+        }
+        remove(objects, triple.object(), triple);
+    }
+
+    private static <K> void remove(Map<K, List<Triple>> map, K key, Triple triple) {
+        List<Triple> list = map.get(key);
+        if (list != null && list.remove(triple) && list.isEmpty()) {
+            map.remove(key);
+        }
+    }
+
+    /**
+     * Removes all the specified triples, in a single pass over each affected list.
+     *
+     * @param toRemove the triples to remove; its {@code contains} method should be fast
+     */
+    void removeAll(Set<Triple> toRemove) {
+        if (toRemove.isEmpty() || triples.isEmpty()) {
+            return;
+        }
+        List<Triple> removed = new ArrayList<Triple>();
+        for (Triple triple : triples) {
+            if (toRemove.contains(triple)) {
+                removed.add(triple);
+            }
+        }
+        if (removed.isEmpty()) {
+            return;
+        }
+        TripleLists.removeAll(triples, toRemove);
+        Map<Object, Boolean> visited = new IdentityHashMap<Object, Boolean>();
+        for (Triple triple : removed) {
+            Group<Resource> subjectGroup = subjects.get(triple.subject());
+            if (subjectGroup != null && visited.put(subjectGroup, Boolean.TRUE) == null
+                    && subjectGroup.removeAll(toRemove)) {
+                subjects.remove(triple.subject());
+            }
+            Group<RdfNode> predicateGroup = predicates.get(triple.predicate());
+            if (predicateGroup != null && visited.put(predicateGroup, Boolean.TRUE) == null
+                    && predicateGroup.removeAll(toRemove)) {
+                predicates.remove(triple.predicate());
+            }
+            List<Triple> list = objects.get(triple.object());
+            if (list != null && visited.put(list, Boolean.TRUE) == null) {
+                TripleLists.removeAll(list, toRemove);
+                if (list.isEmpty()) {
+                    objects.remove(triple.object());
+                }
+            }
+        }
+    }
+}
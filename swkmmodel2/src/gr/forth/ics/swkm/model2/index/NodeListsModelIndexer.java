@@ -45,8 +45,10 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -63,11 +65,20 @@ import java.util.Set;
  * nodes, information about ancestors and descendants of {@code Resource}s are kept
  * and thus, can be easily retrieved.</p>
  *
+ * <p>Deleted triples are not removed from the lists right away, which would cost time
+ * linear to the size of the lists. Instead, they are marked as deleted and skipped by
+ * queries, and they are removed from all lists in a single pass when their number
+ * becomes a considerable fraction of the remaining triples. Thus, deleting a triple
+ * takes amortized constant time.</p>
+ *
  * @author Vouzoukidou Nelly, email: vuzukid (at) csd (dot) uoc (dot) gr
  */
 class NodeListsModelIndexer extends AbstractModelIndexer implements ModelIndexer {
     private final List<Triple> allTriples;
 
+    // triples that are deleted, but not yet removed from the lists
+    private final Map<Triple, Boolean> deleted = new IdentityHashMap<Triple, Boolean>();
+
     private static final TripleDeletionListener doNothingDeletionListener =
             new TripleDeletionListener() {
         public void tripleDeleted(Triple triple) {}
@@ -157,6 +168,53 @@ class NodeListsModelIndexer extends AbstractModelIndexer implements ModelIndexer
         return findTriples(g, s, p, o, doNothingDeletionListener);
     }
 
+    /**
+     * Returns the smallest of the lists that {@code findTriples} would choose from; apart from
+     * the matching triples, it may contain non-matching or deleted ones.
+     */
+    private Collection<Triple> smallestList(Resource g, ObjectNode s, Resource p, RdfNode o) {
+        Collection<Triple> triples = allTriples;
+        if (s != null) {
+            triples = smallestList(NodeIndex.getIndex(s).subjects(), triples);
+        }
+        if (p != null) {
+            triples = smallestList(NodeIndex.getIndex(p).predicates(), triples);
+        }
+        if (o != null) {
+            triples = smallestList(NodeIndex.getIndex(o).objects(), triples);
+        }
+        if (g != null) {
+            triples = smallestList(graphIndexer.get(g, s, p, o), triples);
+        }
+        return triples;
+    }
+
+    @Override
+    public int countTriples(Resource g, ObjectNode s, Resource p, RdfNode o) {
+        if (deleted.isEmpty()) {
+            if (g == null && s == null && p == null && o == null) {
+                return allTriples.size();
+            }
+            if (g != null && (s == null || o == null)) {
+                //the lists of the named graph are exact
+                return graphIndexer.get(g, s, p, o).size();
+            }
+            if (g == null && ((s != null ? 1 : 0) + (p != null ? 1 : 0) + (o != null ? 1 : 0)) == 1) {
+                return smallestList(g, s, p, o).size();
+            }
+        }
+        return count(findTriples(g, s, p, o));
+    }
+
+    @Override
+    public int estimateTriples(Resource g, ObjectNode s, Resource p, RdfNode o) {
+        int estimate = smallestList(g, s, p, o).size();
+        if (s != null && p != null && o != null) {
+            estimate = Math.min(estimate, 1);
+        }
+        return Math.min(estimate, tripleCount());
+    }
+
     private Collection<Triple> smallestList(Collection<Triple> c1, Collection<Triple> c2) {
         return c1.size() < c2.size() ? c1 : c2;
     }
@@ -172,7 +230,8 @@ class NodeListsModelIndexer extends AbstractModelIndexer implements ModelIndexer
         for (Triple t : triples) {
             if (t.subject() == s &&
                     t.predicate() == p &&
-                    t.object() == o) {
+                    t.object() == o &&
+                    !isDeleted(t)) {
                 triple = t;
                 break;
             }
@@ -192,78 +251,113 @@ class NodeListsModelIndexer extends AbstractModelIndexer implements ModelIndexer
             public void removeAll() {
                 delete(t, true);
                 listener.tripleDeleted(t);
+                compactIfNeeded();
             }
         };
     }
 
     private IteratorChooser<Triple> findTriples(final Resource g, final ObjectNode s,
             final Resource p, final RdfNode o, final TripleDeletionListener listener) {
-        Collection<Triple> triples = allTriples;
-
-        if (s != null) {
-            if (p != null && o != null) {
-                return findTriple(g, s, p, o, listener);
-            }
-            triples = smallestList(NodeIndex.getIndex(s).subjects(), triples);
-        }
-        if (p != null) {
-            triples = smallestList(NodeIndex.getIndex(p).predicates(), triples);
-        }
-        if (o != null) {
-            triples = smallestList(NodeIndex.getIndex(o).objects(), triples);
-        }
-        if (g != null) {
-            triples = smallestList(graphIndexer.get(g), triples);
+        if (s != null && p != null && o != null) {
+            return findTriple(g, s, p, o, listener);
         }
+        Collection<Triple> triples = smallestList(g, s, p, o);
         return new IteratorChooser<Triple>(triples.iterator()) {
             @Override
             protected boolean accept(Triple t) {
                 return (g == null || t.graphs().contains(g)) &&
                         (s == null || s == t.subject()) &&
                         (p == null || p == t.predicate()) &&
-                        (o == null || o == t.object());
+                        (o == null || o == t.object()) &&
+                        !isDeleted(t);
             }
 
             @Override
             public void removeAll() {
+                //triples are only marked as deleted, so the iterated list is not modified
                 if (next != null) {
-                    iterator.remove();
                     delete(next, true);
                     listener.tripleDeleted(next);
                 }
                 while (iterator.hasNext()) {
                     Triple t = iterator.next();
                     if (accept(t)) {
-                        iterator.remove();
                         delete(t, true);
                         listener.tripleDeleted(t);
                     }
                 }
+                compactIfNeeded();
             }
         };
     }
 
+    /**
+     * Splits the list of all triples into sublists, skipping the triples marked as deleted.
+     */
+    @Override
+    public List<Iterable<Triple>> partitionTriples(int parts) {
+        List<Iterable<Triple>> result = new ArrayList<Iterable<Triple>>();
+        for (final Iterable<Triple> part : partition(allTriples, parts)) {
+            result.add(new Iterable<Triple>() {
+                public Iterator<Triple> iterator() {
+                    return new IteratorChooser<Triple>(part.iterator()) {
+                        @Override
+                        protected boolean accept(Triple t) {
+                            return !isDeleted(t);
+                        }
+                    };
+                }
+            });
+        }
+        return result;
+    }
+
+    private boolean isDeleted(Triple triple) {
+        return !deleted.isEmpty() && deleted.containsKey(triple);
+    }
+
     @Override
     public void delete(Triple triple) {
         delete(triple, false);
+        compactIfNeeded();
     }
 
     private void delete(Triple triple, boolean tryDeleteFromAll) {
         if (!tryDeleteFromAll && !containsTriple(triple)) {
             return;
         }
-        allTriples.remove(triple);
-
-        NodeIndex index = NodeIndex.getIndex(triple.subject());
-        index.removeFrom(index.subjects(), triple);
-
-        index = NodeIndex.getIndex(triple.predicate());
-        index.removeFrom(index.predicates(), triple);
-
-        index = NodeIndex.getIndex(triple.object());
-        index.removeFrom(index.objects(), triple);
+        deleted.put(triple, Boolean.TRUE);
+    }
 
-        graphIndexer.removeTriple(triple);
+    /**
+     * Removes the deleted triples from all lists, if they are at least a quarter of the
+     * remaining triples. The cost of the removal is proportional to the total size of
+     * the lists that contain deleted triples, which is thus amortized over the deletions.
+     */
+    private void compactIfNeeded() {
+        if (deleted.isEmpty() || deleted.size() * 4 < tripleCount()) {
+            return;
+        }
+        //a node may appear in several positions, so the visited lists are tracked, not the nodes
+        Map<List<Triple>, Boolean> visited = new IdentityHashMap<List<Triple>, Boolean>();
+        Set<Triple> toRemove = deleted.keySet();
+        for (Triple triple : toRemove) {
+            NodeIndex index = NodeIndex.getIndex(triple.subject());
+            if (visited.put(index.subjects(), Boolean.TRUE) == null) {
+                index.removeAllFrom(index.subjects(), toRemove);
+            }
+            index = NodeIndex.getIndex(triple.predicate());
+            if (visited.put(index.predicates(), Boolean.TRUE) == null) {
+                index.removeAllFrom(index.predicates(), toRemove);
+            }
+            index = NodeIndex.getIndex(triple.object());
+            if (visited.put(index.objects(), Boolean.TRUE) == null) {
+                index.removeAllFrom(index.objects(), toRemove);
+            }
+        }
+        TripleLists.removeAll(allTriples, deleted.keySet());
+        ((NodeListsNamedGraphIndexer) graphIndexer).removeAll(toRemove);
+        deleted.clear();
     }
 
     public void deleteTriples(Resource g, ObjectNode s,
@@ -276,8 +370,35 @@ class NodeListsModelIndexer extends AbstractModelIndexer implements ModelIndexer
         findTriples(g, s, p, o, listener).removeAll();
     }
 
+    /**
+     * Removes the matching triples from the named graph in a single pass over
+     * its lists, instead of removing them one by one.
+     */
+    @Override
+    protected void deleteFromNamedGraph(Resource g, ObjectNode s,
+            Resource p, RdfNode o, TripleDeletionListener l) {
+        NodeIndex index = NodeIndex.getIndex(g);
+        List<Triple> removed = new ArrayList<Triple>();
+        for (Triple triple : index.namedGraphs(s, p, o)) {
+            if (match(s, p, o, triple) && !isDeleted(triple)) {
+                removed.add(triple);
+            }
+        }
+        if (removed.isEmpty()) {
+            return;
+        }
+        Map<Triple, Boolean> toRemove = new IdentityHashMap<Triple, Boolean>();
+        for (Triple triple : removed) {
+            toRemove.put(triple, Boolean.TRUE);
+        }
+        index.removeAllFromNamedGraphs(toRemove.keySet());
+        for (Triple triple : removed) {
+            l.tripleRemovedFromNamedGraph(g, triple);
+        }
+    }
+
     public int tripleCount() {
-        return allTriples.size();
+        return allTriples.size() - deleted.size();
     }
 }
 
@@ -325,6 +446,10 @@ abstract class NodeIndex implements Index {
         return EmptyTriplesList.instance();
     }
 
+    Collection<Triple> namedGraphs(ObjectNode s, Resource p, RdfNode o) {
+        return EmptyTriplesList.instance();
+    }
+
 
     /* Adding Triples */
 
@@ -356,6 +481,15 @@ abstract class NodeIndex implements Index {
                 " is not a named graph.");
     }
 
+    void clearNamedGraphs() {
+    }
+
+    void removeFromNamedGraphs(Triple triple) {
+    }
+
+    void removeAllFromNamedGraphs(Set<Triple> triples) {
+    }
+
 
     /* Removing Triples */
 
@@ -365,6 +499,12 @@ abstract class NodeIndex implements Index {
         }
     }
 
+    void removeAllFrom(List<Triple> list, Set<Triple> triples) {
+        if (list != null) {
+            TripleLists.removeAll(list, triples);
+        }
+    }
+
     public RdfNode getNode() {
         return node;
     }
@@ -445,7 +585,7 @@ class ResourceIndex extends BlankNodeIndex {
 }
 
 class NamedGraphIndex extends ResourceIndex {
-    private List<Triple> namedGraphs;
+    private NamedGraphTriples namedGraphs;
 
     NamedGraphIndex(RdfNode node) {
         super(node);
@@ -457,12 +597,39 @@ class NamedGraphIndex extends ResourceIndex {
 
     @Override
     List<Triple> namedGraphs() {
-        return getList(namedGraphs);
+        return namedGraphs == null ? EmptyTriplesList.instance() : namedGraphs.all();
+    }
+
+    @Override
+    Collection<Triple> namedGraphs(ObjectNode s, Resource p, RdfNode o) {
+        return namedGraphs == null ? EmptyTriplesList.instance() : namedGraphs.find(s, p, o);
     }
 
     @Override
     void addToNamedGraphs(Triple triple) {
-        namedGraphs = addTo(namedGraphs, triple);
+        if (namedGraphs == null) {
+            namedGraphs = new NamedGraphTriples();
+        }
+        namedGraphs.add(triple);
+    }
+
+    @Override
+    void clearNamedGraphs() {
+        namedGraphs = null;
+    }
+
+    @Override
+    void removeFromNamedGraphs(Triple triple) {
+        if (namedGraphs != null) {
+            namedGraphs.remove(triple);
+        }
+    }
+
+    @Override
+    void removeAllFromNamedGraphs(Set<Triple> triples) {
+        if (namedGraphs != null) {
+            namedGraphs.removeAll(triples);
+        }
     }
 }
 
@@ -489,6 +656,10 @@ class NodeListsNamedGraphIndexer implements NamedGraphIndexer, RdfNodeListener {
         return NodeIndex.getIndex(namedGraph).namedGraphs();
     }
 
+    public Collection<Triple> get(Resource namedGraph, ObjectNode subject, Resource predicate, RdfNode object) {
+        return NodeIndex.getIndex(namedGraph).namedGraphs(subject, predicate, object);
+    }
+
     public void removeTriple(Triple triple) {
         for (Resource ng : triple.graphs()) {
             removeTriple(ng, triple);
@@ -496,8 +667,17 @@ class NodeListsNamedGraphIndexer implements NamedGraphIndexer, RdfNodeListener {
     }
 
     public void removeTriple(Resource namedGraph, Triple triple) {
-        NodeIndex index = NodeIndex.getIndex(namedGraph);
-        index.removeFrom(index.namedGraphs(), triple);
+        NodeIndex.getIndex(namedGraph).removeFromNamedGraphs(triple);
+    }
+
+    public void removeTriples(Resource namedGraph, Set<Triple> triples) {
+        NodeIndex.getIndex(namedGraph).removeAllFromNamedGraphs(triples);
+    }
+
+    void removeAll(Set<Triple> triples) {
+        for (Resource namedGraph : namedGraphs) {
+            NodeIndex.getIndex(namedGraph).removeAllFromNamedGraphs(triples);
+        }
     }
 
     public Iterator<Resource> iterator() {
@@ -522,6 +702,8 @@ class NodeListsNamedGraphIndexer implements NamedGraphIndexer, RdfNodeListener {
     public void onNodeDeletion(RdfNode node) {
         if (node.type().isNamedGraph()) {
             namedGraphs.remove(node);
+            //no triple remains in this named graph, only triples marked as deleted
+            NodeIndex.getIndex(node).clearNamedGraphs();
         }
     }
 }
@@ -0,0 +1,257 @@
+/* 
+ *  COPYRIGHT (c) 2008-2009 by Institute of Computer Science, 
+ *  Foundation for Research and Technology - Hellas
+ *  Contact: 
+ *      POBox 1385, Heraklio Crete, GR-700 13 GREECE
+ *      Tel:+30-2810-391632
+ *      Fax: +30-2810-391638
+ *      E-mail: isl@ics.forth.gr
+ *      http://www.ics.forth.gr/isl
+ *
+ *   Authors  :  Dimitris Andreou, Nelly Vouzoukidou.
+ *
+ *   This file is part of SWKM model APIs (see also http://athena.ics.forth.gr:9090/SWKM/).
+ *
+ *    SWKM model APIs is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU Lesser General Public License as published by
+ *    the Free Software Foundation, either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *   SWKM model APIs is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Lesser General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Lesser General Public License
+ *   along with SWKM model APIs.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ *   SWKM has been partially supported by EU project KP-Lab (IP IST-27490) kp-lab.org
+ */
+
+
+package gr.forth.ics.swkm.model2.index;
+
+import gr.forth.ics.swkm.model2.ObjectNode;
+import gr.forth.ics.swkm.model2.RdfNode;
+import gr.forth.ics.swkm.model2.Resource;
+import gr.forth.ics.swkm.model2.Triple;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A size-bounded cache of the results of triple patterns, which is placed in front of the
+ * {@linkplain ModelIndexer#findTriples(Resource, ObjectNode, Resource, RdfNode) lookups} of a model
+ * (see {@link gr.forth.ics.swkm.model2.ModelBuilder.Builder#withQueryCache(QueryCache)}).
+ * When the cache is full, the least recently used result is evicted.
+ *
+ * <p>Each result is invalidated as soon as a triple that matches its pattern is added to or deleted
+ * from the model (or from the named graph of the pattern), so the model never reports stale results.
+ * Only results of up to {@link #MAX_RESULT_SIZE} triples are cached.
+ *
+ * <p>A cache can only be used by a single model. It counts its hits, misses, evictions and
+ * invalidations, so that its size can be tuned for a specific workload. It is safe to be used
+ * by multiple threads.
+ */
+public final class QueryCache {
+    /**
+     * The maximum number of triples of a cached result.
+     */
+    public static final int MAX_RESULT_SIZE = 256;
+
+    private static final int G = 8;
+    private static final int S = 4;
+    private static final int P = 2;
+    private static final int O = 1;
+
+    private final int maxEntries;
+    private final Map<Pattern, Triple[]> results;
+    //the number of cached patterns for each combination of specified positions
+    private final int[] patternsPerMask = new int[16];
+
+    private boolean attached;
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long invalidations;
+
+    /**
+     * Creates a cache that holds up to the specified number of results.
+     *
+     * @param maxEntries the maximum number of results to cache
+     * @throws IllegalArgumentException if {@code maxEntries} is not positive
+     */
+    public QueryCache(final int maxEntries) {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("Max entries must be positive: " + maxEntries);
+        }
+        this.maxEntries = maxEntries;
+        this.results = new LinkedHashMap<Pattern, Triple[]>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Pattern, Triple[]> eldest) {
+                if (size() <= maxEntries) {
+                    return false;
+                }
+                patternsPerMask[eldest.getKey().mask]--;
+                evictions++;
+                return true;
+            }
+        };
+    }
+
+    synchronized void attach() {
+        if (attached) {
+            throw new IllegalStateException("The cache is already used by another model");
+        }
+        attached = true;
+    }
+
+    /**
+     * Returns the maximum number of results that this cache holds.
+     *
+     * @return the maximum number of results that this cache holds
+     */
+    public int maxEntries() {
+        return maxEntries;
+    }
+
+    /**
+     * Returns the number of results that this cache currently holds.
+     *
+     * @return the number of results that this cache currently holds
+     */
+    public synchronized int size() {
+        return results.size();
+    }
+
+    /**
+     * Returns how many lookups were answered by this cache.
+     *
+     * @return how many lookups were answered by this cache
+     */
+    public synchronized long hits() {
+        return hits;
+    }
+
+    /**
+     * Returns how many lookups were not answered by this cache, and were passed to the indexes of the model.
+     *
+     * @return how many lookups were not answered by this cache
+     */
+    public synchronized long misses() {
+        return misses;
+    }
+
+    /**
+     * Returns how many results were removed because the cache was full.
+     *
+     * @return how many results were removed because the cache was full
+     */
+    public synchronized long evictions() {
+        return evictions;
+    }
+
+    /**
+     * Returns how many results were removed because the model was modified.
+     *
+     * @return how many results were removed because the model was modified
+     */
+    public synchronized long invalidations() {
+        return invalidations;
+    }
+
+    /**
+     * Removes all results, without resetting the counters.
+     */
+    public synchronized void clear() {
+        results.clear();
+        Arrays.fill(patternsPerMask, 0);
+    }
+
+    synchronized Triple[] get(Resource g, ObjectNode s, Resource p, RdfNode o) {
+        Triple[] result = results.get(new Pattern(g, s, p, o));
+        if (result == null) {
+            misses++;
+        } else {
+            hits++;
+        }
+        return result;
+    }
+
+    synchronized void put(Resource g, ObjectNode s, Resource p, RdfNode o, Triple[] result) {
+        Pattern pattern = new Pattern(g, s, p, o);
+        if (results.put(pattern, result) == null) {
+            patternsPerMask[pattern.mask]++;
+        }
+    }
+
+    /**
+     * Removes the results of all patterns that the triple matches, either in any named graph
+     * or in one of the specified named graphs.
+     */
+    synchronized void invalidate(Triple triple, Collection<? extends Resource> namedGraphs) {
+        if (results.isEmpty()) {
+            return;
+        }
+        for (int mask = 0; mask < patternsPerMask.length; mask++) {
+            if (patternsPerMask[mask] == 0) {
+                continue;
+            }
+            if ((mask & G) == 0) {
+                invalidate(mask, null, triple);
+            } else {
+                for (Resource namedGraph : namedGraphs) {
+                    invalidate(mask, namedGraph, triple);
+                }
+            }
+        }
+    }
+
+    private void invalidate(int mask, Resource namedGraph, Triple triple) {
+        Pattern pattern = new Pattern(namedGraph,
+                (mask & S) == 0 ? null : triple.subject(),
+                (mask & P) == 0 ? null : triple.predicate(),
+                (mask & O) == 0 ? null : triple.object());
+        if (results.remove(pattern) != null) {
+            patternsPerMask[mask]--;
+            invalidations++;
+        }
+    }
+
+    private static final class Pattern {
+        final Resource g;
+        final ObjectNode s;
+        final Resource p;
+        final RdfNode o;
+        final int mask;
+        private final int hashCode;
+
+        Pattern(Resource g, ObjectNode s, Resource p, RdfNode o) {
+            this.g = g;
+            this.s = s;
+            this.p = p;
+            this.o = o;
+            this.mask = (g == null ? 0 : G) | (s == null ? 0 : S) | (p == null ? 0 : P) | (o == null ? 0 : O);
+            this.hashCode = ((hash(g) * 31 + hash(s)) * 31 + hash(p)) * 31 + hash(o);
+        }
+
+        private static int hash(RdfNode node) {
+            return System.identityHashCode(node);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Pattern)) {
+                return false;
+            }
+            Pattern other = (Pattern)obj;
+            return g == other.g && s == other.s && p == other.p && o == other.o;
+        }
+    }
+}
@@ -51,8 +51,10 @@ import gr.forth.ics.swkm.model2.views.MetapropertyView;
 import gr.forth.ics.swkm.model2.views.PropertyView;
 import java.util.Collection;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.TreeSet;
@@ -65,6 +67,9 @@ class TreeMapModelIndexer extends AbstractModelIndexer {
     private TreeSet<Triple> spo;
     private TreeMultiMap po;
     private TreeMultiMap os;
+
+    //the size of a range of a tree is not known without iterating it, so triples are also counted per predicate
+    private final Map<Resource, int[]> predicateCounts = new HashMap<Resource, int[]>();
     
     public TreeMapModelIndexer() {
         super(new NamedGraphIndexerImpl());
@@ -152,19 +157,55 @@ class TreeMapModelIndexer extends AbstractModelIndexer {
     
     public Iterator<Triple> findTriples(Resource namedGraph, ObjectNode subject,
             Resource predicate, RdfNode object) {
+        if (namedGraph != null) {
+            if (subject != null && predicate != null && object != null) {
+                //at most one triple, found in logarithmic time
+                return AbstractModelIndexer.findTriples(findTriplesFromSPO(subject, predicate, object), namedGraph);
+            }
+            return findTriplesInNamedGraph(namedGraph, subject, predicate, object);
+        }
         Iterable<Triple> triples = findTriples(subject, predicate, object);
         if (triples == null) {
             return Iterators.emptyIterator();
         }
-        if (namedGraph == null) {
-            return triples.iterator();
+        return triples.iterator();
+    }
+
+    @Override
+    public int countTriples(Resource g, ObjectNode s, Resource p, RdfNode o) {
+        if (s == null && p == null && o == null) {
+            return g == null ? spo.size() : graphIndexer.get(g).size();
         }
-        // namedGraph != null
-        if (triples == spo) {
-            // all the triples are selected
-            return graphIndexer.get(namedGraph).iterator();
+        if (g != null && (s == null || o == null)) {
+            return countTriplesInNamedGraph(g, s, p, o);
         }
-        return AbstractModelIndexer.findTriples(triples, namedGraph);
+        if (g == null && s == null && o == null) {
+            return predicateCount(p);
+        }
+        return super.countTriples(g, s, p, o);
+    }
+
+    /**
+     * Only patterns in a named graph, with a predicate, or with all positions given, are
+     * actually estimated; the rest are counted.
+     */
+    @Override
+    public int estimateTriples(Resource g, ObjectNode s, Resource p, RdfNode o) {
+        if (s != null && p != null && o != null) {
+            return 1;
+        }
+        if (g != null) {
+            return graphIndexer.get(g, s, p, o).size();
+        }
+        if (p != null) {
+            return predicateCount(p);
+        }
+        return countTriples(g, s, p, o);
+    }
+
+    private int predicateCount(Resource p) {
+        int[] count = predicateCounts.get(p);
+        return count == null ? 0 : count[0];
     }
 
     public boolean containsTriple(Triple triple) {
@@ -177,6 +218,13 @@ class TreeMapModelIndexer extends AbstractModelIndexer {
         spo.add(triple);
         po.put(poQueryTriple(triple.predicate(), triple.object()), triple);
         os.put(osQueryTriple(triple.object(), triple.subject()), triple);
+
+        int[] count = predicateCounts.get(triple.predicate());
+        if (count == null) {
+            count = new int[1];
+            predicateCounts.put(triple.predicate(), count);
+        }
+        count[0]++;
     }
 
     public void addInNamedGraph(Resource namedGraph, Triple triple) {
@@ -202,6 +250,11 @@ class TreeMapModelIndexer extends AbstractModelIndexer {
         po.remove(poQueryTriple(triple.predicate(), triple.object()), triple);
         os.remove(osQueryTriple(triple.object(), triple.subject()), triple);
 
+        int[] count = predicateCounts.get(triple.predicate());
+        if (count != null && --count[0] == 0) {
+            predicateCounts.remove(triple.predicate());
+        }
+
         graphIndexer.removeTriple(triple);
     }
     
@@ -0,0 +1,77 @@
+/* 
+ *  COPYRIGHT (c) 2008-2009 by Institute of Computer Science, 
+ *  Foundation for Research and Technology - Hellas
+ *  Contact: 
+ *      POBox 1385, Heraklio Crete, GR-700 13 GREECE
+ *      Tel:+30-2810-391632
+ *      Fax: +30-2810-391638
+ *      E-mail: isl@ics.forth.gr
+ *      http://www.ics.forth.gr/isl
+ *
+ *   Authors  :  Dimitris Andreou, Nelly Vouzoukidou.
+ *
+ *   This file is part of SWKM model APIs (see also http://athena.ics.forth.gr:9090/SWKM/).
+ *
+ *    SWKM model APIs is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU Lesser General Public License as published by
+ *    the Free Software Foundation, either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *   SWKM model APIs is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Lesser General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Lesser General Public License
+ *   along with SWKM model APIs.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ *   SWKM has been partially supported by EU project KP-Lab (IP IST-27490) kp-lab.org
+ */
+
+
+package gr.forth.ics.swkm.model2.index;
+
+import gr.forth.ics.swkm.model2.Triple;
+import java.util.Iterator;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.Set;
+
+/**
+ * Operations on the lists of triples that the indexers of this package keep.
+ */
+final class TripleLists {
+    private TripleLists() { }
+
+    /**
+     * Removes from the list all the triples contained in the specified set, in a
+     * single pass.
+     *
+     * @param list the list to remove the triples from
+     * @param triples the triples to remove; its {@code contains} method should be fast
+     */
+    static void removeAll(List<Triple> list, Set<Triple> triples) {
+        if (list.isEmpty()) {
+            return;
+        }
+        if (!(list instanceof RandomAccess)) {
+            for (Iterator<Triple> i = list.iterator(); i.hasNext(); ) {
+                if (triples.contains(i.next())) {
+                    i.remove();
+                }
+            }
+            return;
+        }
+        int size = list.size();
+        int kept = 0;
+        for (int i = 0; i < size; i++) {
+            Triple triple = list.get(i);
+            if (!triples.contains(triple)) {
+                list.set(kept++, triple);
+            }
+        }
+        if (kept < size) {
+            list.subList(kept, size).clear();
+        }
+    }
+}
@@ -47,20 +47,31 @@ import org.openrdf.rio.RDFHandler;
 import org.openrdf.rio.RDFHandlerException;
 
 /**
- * An RDFHandler that feeds input triples to a {@link Model}.
+ * An RDFHandler that feeds input triples to a {@link Model}. Triples are buffered in a
+ * {@linkplain Model#bulkLoad() bulk load} session, which is committed every
+ * {@link #BATCH_SIZE} triples and at the end of the input, so that large inputs
+ * are never buffered as a whole.
  * 
  * @author Andreou Dimitris, email: jim.andreou (at) gmail (dot) com
  */
 class ModelFeeder implements RDFHandler {
+    /**
+     * The number of distinct triples that are buffered by loaders of this package before
+     * committing them to the model.
+     */
+    static final int BATCH_SIZE = 10000;
+
     private final Model target;
     private final Resource defaultNamedGraph;
     private final Predicate<? super Statement> statementFilter;
+    private final Model.BulkLoad bulkLoad;
     
     ModelFeeder(Model target, Uri defaultNamedGraph, Predicate<? super Statement> statementFilter) {
         this.target = target;
         this.statementFilter = statementFilter;
         if (defaultNamedGraph == null) defaultNamedGraph = RdfSuite.DEFAULT_GRAPH_URI;
         this.defaultNamedGraph = target.mapResource(defaultNamedGraph);
+        this.bulkLoad = target.bulkLoad();
     }
     
     public void startRDF() throws RDFHandlerException {
@@ -81,28 +92,52 @@ class ModelFeeder implements RDFHandler {
         RdfNode object = map(statement.getObject());
         Resource namedGraph = statement.getContext() == null ?
             defaultNamedGraph : (Resource)map(statement.getContext());
-        target.add(namedGraph, subject, predicate, object);
+        bulkLoad.add(namedGraph, subject, predicate, object);
+        if (bulkLoad.size() >= BATCH_SIZE) {
+            bulkLoad.commit();
+        }
     }
     
     public void endRDF() throws RDFHandlerException {
+        bulkLoad.commit();
+    }
+
+    private RdfNode map(Value value) {
+        return map(target, toValue(value));
     }
 
-    private RdfNode map(Value object) {
+    /**
+     * Converts a Sesame value to a value of this library, i.e. a {@link Uri}, a
+     * {@link gr.forth.ics.swkm.model2.Literal}, or a {@code String} for a blank node identifier.
+     * This does not access any model, so it may be invoked concurrently.
+     */
+    static Object toValue(Value object) {
         if (object instanceof URI) {
             URI uri = (URI)object;
-            return target.mapResource(new Uri(uri.getNamespace(), uri.getLocalName()));
+            return new Uri(uri.getNamespace(), uri.getLocalName());
         } else if (object instanceof BNode) {
             BNode bNode = (BNode)object;
-            return target.mapBlankNode(bNode.getID());
+            return bNode.getID();
         } else {
             Literal literal = (Literal)object;
-            gr.forth.ics.swkm.model2.Literal swkmLiteral = null;
             if (literal.getDatatype() != null) {
-                swkmLiteral = gr.forth.ics.swkm.model2.Literal.createWithType(literal.getLabel(), Uri.parse(literal.getDatatype().toString()));
+                return gr.forth.ics.swkm.model2.Literal.createWithType(literal.getLabel(), Uri.parse(literal.getDatatype().toString()));
             } else {
-                swkmLiteral = gr.forth.ics.swkm.model2.Literal.createWithLanguage(literal.getLabel(), literal.getLanguage());
+                return gr.forth.ics.swkm.model2.Literal.createWithLanguage(literal.getLabel(), literal.getLanguage());
             }
-            return target.mapLiteral(swkmLiteral);
+        }
+    }
+
+    /**
+     * Maps a value created by {@link #toValue(Value)} to the respective node of the specified model.
+     */
+    static RdfNode map(Model target, Object value) {
+        if (value instanceof Uri) {
+            return target.mapResource((Uri)value);
+        } else if (value instanceof String) {
+            return target.mapBlankNode((String)value);
+        } else {
+            return target.mapLiteral((gr.forth.ics.swkm.model2.Literal)value);
         }
     }
 }
@@ -0,0 +1,482 @@
+/* 
+ *  COPYRIGHT (c) 2008-2009 by Institute of Computer Science, 
+ *  Foundation for Research and Technology - Hellas
+ *  Contact: 
+ *      POBox 1385, Heraklio Crete, GR-700 13 GREECE
+ *      Tel:+30-2810-391632
+ *      Fax: +30-2810-391638
+ *      E-mail: isl@ics.forth.gr
+ *      http://www.ics.forth.gr/isl
+ *
+ *   Authors  :  Dimitris Andreou, Nelly Vouzoukidou.
+ *
+ *   This file is part of SWKM model APIs (see also http://athena.ics.forth.gr:9090/SWKM/).
+ *
+ *    SWKM model APIs is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU Lesser General Public License as published by
+ *    the Free Software Foundation, either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *   SWKM model APIs is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Lesser General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Lesser General Public License
+ *   along with SWKM model APIs.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ *   SWKM has been partially supported by EU project KP-Lab (IP IST-27490) kp-lab.org
+ */
+
+
+
+
+package gr.forth.ics.swkm.model2.io;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import gr.forth.ics.swkm.model2.BlankNode;
+import gr.forth.ics.swkm.model2.Literal;
+import gr.forth.ics.swkm.model2.LiteralNode;
+import gr.forth.ics.swkm.model2.Model;
+import gr.forth.ics.swkm.model2.ObjectNode;
+import gr.forth.ics.swkm.model2.RdfNode;
+import gr.forth.ics.swkm.model2.RdfType;
+import gr.forth.ics.swkm.model2.Resource;
+import gr.forth.ics.swkm.model2.Triple;
+import gr.forth.ics.swkm.model2.Uri;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+import org.springframework.util.Assert;
+
+/**
+ * Writes and reads whole models in a compact binary format, which is much faster to load
+ * than any RDF serialization {@linkplain Format format}.
+ *
+ * <p>A snapshot contains a dictionary of the namespaces, local names, literals and blank node
+ * identifiers of the model, followed by its triples encoded as integers, plus the
+ * {@linkplain RdfType type} of every node, so node typing has nothing to infer when the
+ * snapshot is loaded. Snapshots are versioned and checksummed; a snapshot of an unsupported
+ * version, or a corrupted one, is rejected with an {@link IOException}. Snapshot files are
+ * memory-mapped when read.
+ *
+ * <p>Example of saving a model and loading it to another one:
+ *<pre>{@code
+ *ModelSnapshot.write(model, new File("model.snapshot"));
+ *Model model2 = ModelBuilder.newSparse().build();
+ *ModelSnapshot.read(new File("model.snapshot"), model2);
+ *}</pre>
+ *
+ * <p>All methods of this class throw {@linkplain NullPointerException} for null arguments.
+ */
+public class ModelSnapshot {
+    private ModelSnapshot() { }
+
+    private static final byte[] MAGIC = { 'S', 'W', 'K', 'M', 'S', 'N', 'A', 'P' };
+    private static final int VERSION = 1;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    //node kinds
+    private static final byte RESOURCE = 0;
+    private static final byte BLANK_NODE = 1;
+    private static final byte LITERAL = 2;
+
+    //literal kinds
+    private static final byte PLAIN = 0;
+    private static final byte WITH_LANGUAGE = 1;
+    private static final byte WITH_TYPE = 2;
+
+    /**
+     * Writes a snapshot of the specified model to the specified file.
+     *
+     * @param model the model to write
+     * @param file the file to write the snapshot to (which is overwritten)
+     * @throws IOException if this exception is thrown while writing
+     */
+    public static void write(Model model, File file) throws IOException {
+        Assert.notNull(file, "File");
+        OutputStream out = new FileOutputStream(file);
+        try {
+            write(model, out);
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Writes a snapshot of the specified model to the specified stream. The stream
+     * is not closed afterwards. The model must not be modified while it is being written.
+     *
+     * @param model the model to write
+     * @param out the stream to write the snapshot to
+     * @throws IOException if this exception is thrown while writing
+     */
+    public static void write(Model model, OutputStream out) throws IOException {
+        Assert.notNull(model, "Model");
+        Assert.notNull(out, "OutputStream");
+        new Writer().write(model, out);
+    }
+
+    /**
+     * Reads a snapshot from the specified file, adding its triples to the specified model.
+     * Blank nodes are given {@linkplain BlankNodesPolicy#globallyUnique() globally unique}
+     * identifiers, so they are never merged with blank nodes already in the model.
+     *
+     * @param file the snapshot file
+     * @param model the model to add the triples of the snapshot to
+     * @throws IOException if the file cannot be read, or it is not a valid snapshot
+     */
+    public static void read(File file, Model model) throws IOException {
+        read(file, model, BlankNodesPolicy.globallyUnique());
+    }
+
+    /**
+     * Reads a snapshot from the specified file, adding its triples to the specified model.
+     * The triples are committed to the model every {@link ModelFeeder#BATCH_SIZE} triples,
+     * so the snapshot is never buffered as a whole; if reading fails, the batches that
+     * were already committed remain in the model.
+     *
+     * @param file the snapshot file
+     * @param model the model to add the triples of the snapshot to
+     * @param blankNodesPolicy the policy that maps the blank node identifiers of the snapshot
+     * to those of the model
+     * @throws IOException if the file cannot be read, or it is not a valid snapshot
+     */
+    public static void read(File file, Model model, BlankNodesPolicy blankNodesPolicy) throws IOException {
+        Assert.notNull(file, "File");
+        Assert.notNull(model, "Model");
+        Assert.notNull(blankNodesPolicy, "BlankNodesPolicy");
+        FileInputStream in = new FileInputStream(file);
+        try {
+            FileChannel channel = in.getChannel();
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Snapshot is too large to be mapped: " + file);
+            }
+            new Reader(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), blankNodesPolicy).read(model);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Reads a snapshot from the specified stream, adding its triples to the specified model.
+     * The stream is not closed afterwards. Blank nodes are given
+     * {@linkplain BlankNodesPolicy#globallyUnique() globally unique} identifiers, so they are
+     * never merged with blank nodes already in the model.
+     *
+     * @param in the stream to read the snapshot from
+     * @param model the model to add the triples of the snapshot to
+     * @throws IOException if the stream cannot be read, or it does not contain a valid snapshot
+     */
+    public static void read(InputStream in, Model model) throws IOException {
+        read(in, model, BlankNodesPolicy.globallyUnique());
+    }
+
+    /**
+     * Reads a snapshot from the specified stream, adding its triples to the specified model.
+     * The stream is not closed afterwards. The triples are committed to the model as in
+     * {@link #read(File, Model, BlankNodesPolicy)}.
+     *
+     * @param in the stream to read the snapshot from
+     * @param model the model to add the triples of the snapshot to
+     * @param blankNodesPolicy the policy that maps the blank node identifiers of the snapshot
+     * to those of the model
+     * @throws IOException if the stream cannot be read, or it does not contain a valid snapshot
+     */
+    public static void read(InputStream in, Model model, BlankNodesPolicy blankNodesPolicy) throws IOException {
+        Assert.notNull(in, "InputStream");
+        Assert.notNull(model, "Model");
+        Assert.notNull(blankNodesPolicy, "BlankNodesPolicy");
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int count;
+        while ((count = in.read(buffer)) != -1) {
+            bytes.write(buffer, 0, count);
+        }
+        new Reader(ByteBuffer.wrap(bytes.toByteArray()), blankNodesPolicy).read(model);
+    }
+
+    /**
+     * Writes a snapshot in two passes over the triples of the model: the first collects the
+     * dictionary, which is written before the triples, and the second writes the triples
+     * themselves. So only the dictionary is kept in memory, not the triples.
+     */
+    private static class Writer {
+        private final Map<String, Integer> namespaces = Maps.newLinkedHashMap();
+        private final Map<RdfNode, Integer> nodes = new IdentityHashMap<RdfNode, Integer>();
+        private final List<RdfNode> nodeList = Lists.newArrayList();
+        private final Map<Set<Resource>, Integer> graphSets = Maps.newLinkedHashMap();
+
+        void write(Model model, OutputStream out) throws IOException {
+            int tripleCount = 0;
+            for (Triple t : model.triples().fetch()) {
+                graphSet(t.graphs());
+                id(t.subject());
+                id(t.predicate());
+                id(t.object());
+                tripleCount++;
+            }
+
+            CheckedOutputStream checked = new CheckedOutputStream(new BufferedOutputStream(out), new CRC32());
+            DataOutputStream data = new DataOutputStream(checked);
+            data.write(MAGIC);
+            data.writeInt(VERSION);
+
+            data.writeInt(namespaces.size());
+            for (String namespace : namespaces.keySet()) {
+                writeString(data, namespace);
+            }
+
+            data.writeInt(nodeList.size());
+            for (RdfNode node : nodeList) {
+                if (node.isResource()) {
+                    data.writeByte(RESOURCE);
+                    writeUri(data, ((Resource)node).getUri());
+                    data.writeByte(node.type().ordinal());
+                } else if (node.isBlankNode()) {
+                    data.writeByte(BLANK_NODE);
+                    writeString(data, ((BlankNode)node).getId());
+                    data.writeByte(node.type().ordinal());
+                } else {
+                    Literal literal = ((LiteralNode)node).getLiteral();
+                    data.writeByte(LITERAL);
+                    writeString(data, literal.getValue());
+                    if (literal.hasType()) {
+                        data.writeByte(WITH_TYPE);
+                        writeUri(data, literal.getType());
+                    } else if (literal.hasLanguage()) {
+                        data.writeByte(WITH_LANGUAGE);
+                        writeString(data, literal.getLanguage());
+                    } else {
+                        data.writeByte(PLAIN);
+                    }
+                }
+            }
+
+            data.writeInt(graphSets.size());
+            for (Set<Resource> graphs : graphSets.keySet()) {
+                data.writeInt(graphs.size());
+                for (Resource graph : graphs) {
+                    data.writeInt(nodes.get(graph));
+                }
+            }
+
+            data.writeInt(tripleCount);
+            for (Triple t : model.triples().fetch()) {
+                data.writeInt(nodes.get(t.subject()));
+                data.writeInt(nodes.get(t.predicate()));
+                data.writeInt(nodes.get(t.object()));
+                data.writeInt(graphSet(t.graphs()));
+                tripleCount--;
+            }
+            if (tripleCount != 0) {
+                throw new ConcurrentModificationException("Model was modified while being written");
+            }
+            data.flush();
+            //the checksum itself is written past the checked stream
+            new DataOutputStream(out).writeLong(checked.getChecksum().getValue());
+            out.flush();
+        }
+
+        private int graphSet(Collection<Resource> graphs) {
+            //the graphs of a triple are normally a set already, so they are looked up as they are
+            //and only copied if they are not found
+            Integer graphSet = graphSets.get(graphs instanceof Set ? graphs : new HashSet<Resource>(graphs));
+            if (graphSet == null) {
+                for (Resource graph : graphs) {
+                    id(graph);
+                }
+                graphSet = graphSets.size();
+                graphSets.put(new HashSet<Resource>(graphs), graphSet);
+            }
+            return graphSet;
+        }
+
+        private int id(RdfNode node) {
+            Integer id = nodes.get(node);
+            if (id == null) {
+                id = nodeList.size();
+                nodes.put(node, id);
+                nodeList.add(node);
+                if (node.isResource()) {
+                    namespace(((Resource)node).getUri());
+                } else if (node.isLiteral() && ((LiteralNode)node).getLiteral().hasType()) {
+                    namespace(((LiteralNode)node).getLiteral().getType());
+                }
+            }
+            return id;
+        }
+
+        private void namespace(Uri uri) {
+            if (!namespaces.containsKey(uri.getNamespace())) {
+                namespaces.put(uri.getNamespace(), namespaces.size());
+            }
+        }
+
+        private void writeUri(DataOutputStream data, Uri uri) throws IOException {
+            data.writeInt(namespaces.get(uri.getNamespace()));
+            writeString(data, uri.getLocalName());
+        }
+
+        private static void writeString(DataOutputStream data, String string) throws IOException {
+            byte[] bytes = string.getBytes(UTF8);
+            data.writeInt(bytes.length);
+            data.write(bytes);
+        }
+    }
+
+    private static class Reader {
+        private final ByteBuffer buffer;
+        private final BlankNodesPolicy blankNodesPolicy;
+        private byte[] scratch = new byte[256];
+        private String[] namespaces;
+
+        Reader(ByteBuffer buffer, BlankNodesPolicy blankNodesPolicy) {
+            this.buffer = buffer;
+            this.blankNodesPolicy = blankNodesPolicy;
+        }
+
+        void read(Model model) throws IOException {
+            try {
+                checkHeader();
+                readInto(model);
+            } catch (BufferUnderflowException e) {
+                throw (IOException)new IOException("Truncated snapshot").initCause(e);
+            } catch (IndexOutOfBoundsException e) {
+                throw (IOException)new IOException("Corrupted snapshot").initCause(e);
+            }
+        }
+
+        private void checkHeader() throws IOException {
+            if (buffer.limit() < MAGIC.length + 4 + 8) {
+                throw new IOException("Not a model snapshot");
+            }
+            for (byte b : MAGIC) {
+                if (buffer.get() != b) {
+                    throw new IOException("Not a model snapshot");
+                }
+            }
+            int version = buffer.getInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported snapshot version: " + version + " (expected " + VERSION + ")");
+            }
+            int end = buffer.limit() - 8;
+            CRC32 crc = new CRC32();
+            byte[] chunk = new byte[8192];
+            ByteBuffer content = buffer.duplicate();
+            content.position(0);
+            content.limit(end);
+            while (content.hasRemaining()) {
+                int count = Math.min(chunk.length, content.remaining());
+                content.get(chunk, 0, count);
+                crc.update(chunk, 0, count);
+            }
+            if (crc.getValue() != buffer.getLong(end)) {
+                throw new IOException("Corrupted snapshot: checksum mismatch");
+            }
+            buffer.limit(end);
+        }
+
+        private void readInto(Model model) throws IOException {
+            namespaces = new String[buffer.getInt()];
+            for (int i = 0; i < namespaces.length; i++) {
+                namespaces[i] = readString();
+            }
+
+            Model.BulkLoad bulkLoad = model.bulkLoad();
+            RdfType[] rdfTypes = RdfType.values();
+            RdfNode[] nodes = new RdfNode[buffer.getInt()];
+            for (int i = 0; i < nodes.length; i++) {
+                byte kind = buffer.get();
+                switch (kind) {
+                    case RESOURCE:
+                        nodes[i] = model.mapResource(readUri());
+                        bulkLoad.withType((ObjectNode)nodes[i], rdfTypes[buffer.get()]);
+                        break;
+                    case BLANK_NODE:
+                        //each blank node appears once in the dictionary, so it is mapped once
+                        nodes[i] = model.mapBlankNode(blankNodesPolicy.createIdentifier(readString()));
+                        bulkLoad.withType((ObjectNode)nodes[i], rdfTypes[buffer.get()]);
+                        break;
+                    case LITERAL:
+                        String value = readString();
+                        byte literalKind = buffer.get();
+                        Literal literal;
+                        if (literalKind == WITH_TYPE) {
+                            literal = Literal.createWithType(value, readUri());
+                        } else if (literalKind == WITH_LANGUAGE) {
+                            literal = Literal.createWithLanguage(value, readString());
+                        } else if (literalKind == PLAIN) {
+                            literal = Literal.create(value);
+                        } else {
+                            throw new IOException("Corrupted snapshot: unknown literal kind " + literalKind);
+                        }
+                        nodes[i] = model.mapLiteral(literal);
+                        break;
+                    default:
+                        throw new IOException("Corrupted snapshot: unknown node kind " + kind);
+                }
+            }
+
+            Resource[][] graphSets = new Resource[buffer.getInt()][];
+            for (int i = 0; i < graphSets.length; i++) {
+                graphSets[i] = new Resource[buffer.getInt()];
+                for (int j = 0; j < graphSets[i].length; j++) {
+                    graphSets[i][j] = (Resource)nodes[buffer.getInt()];
+                }
+            }
+
+            //the declared types are assigned by the first commit, before any triple is added
+            int tripleCount = buffer.getInt();
+            for (int i = 0; i < tripleCount; i++) {
+                ObjectNode subject = (ObjectNode)nodes[buffer.getInt()];
+                Resource predicate = (Resource)nodes[buffer.getInt()];
+                RdfNode object = nodes[buffer.getInt()];
+                for (Resource graph : graphSets[buffer.getInt()]) {
+                    bulkLoad.add(graph, subject, predicate, object);
+                }
+                if (bulkLoad.size() >= ModelFeeder.BATCH_SIZE) {
+                    bulkLoad.commit();
+                }
+            }
+            if (buffer.hasRemaining()) {
+                throw new IOException("Corrupted snapshot: trailing bytes");
+            }
+            bulkLoad.commit();
+        }
+
+        private Uri readUri() {
+            return new Uri(namespaces[buffer.getInt()], readString());
+        }
+
+        private String readString() {
+            int length = buffer.getInt();
+            if (length > scratch.length) {
+                scratch = new byte[Math.max(length, 2 * scratch.length)];
+            }
+            buffer.get(scratch, 0, length);
+            return new String(scratch, 0, length, UTF8);
+        }
+    }
+}
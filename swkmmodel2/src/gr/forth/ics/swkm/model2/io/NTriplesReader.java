@@ -0,0 +1,429 @@
+/* 
+ *  COPYRIGHT (c) 2008-2009 by Institute of Computer Science, 
+ *  Foundation for Research and Technology - Hellas
+ *  Contact: 
+ *      POBox 1385, Heraklio Crete, GR-700 13 GREECE
+ *      Tel:+30-2810-391632
+ *      Fax: +30-2810-391638
+ *      E-mail: isl@ics.forth.gr
+ *      http://www.ics.forth.gr/isl
+ *
+ *   Authors  :  Dimitris Andreou, Nelly Vouzoukidou.
+ *
+ *   This file is part of SWKM model APIs (see also http://athena.ics.forth.gr:9090/SWKM/).
+ *
+ *    SWKM model APIs is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU Lesser General Public License as published by
+ *    the Free Software Foundation, either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *   SWKM model APIs is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Lesser General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Lesser General Public License
+ *   along with SWKM model APIs.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ *   SWKM has been partially supported by EU project KP-Lab (IP IST-27490) kp-lab.org
+ */
+
+
+
+
+package gr.forth.ics.swkm.model2.io;
+
+import com.google.common.collect.Maps;
+import gr.forth.ics.swkm.model2.BlankNode;
+import gr.forth.ics.swkm.model2.Literal;
+import gr.forth.ics.swkm.model2.Model;
+import gr.forth.ics.swkm.model2.ObjectNode;
+import gr.forth.ics.swkm.model2.RdfNode;
+import gr.forth.ics.swkm.model2.Resource;
+import gr.forth.ics.swkm.model2.Uri;
+import gr.forth.ics.swkm.model2.vocabulary.RdfSuite;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Locale;
+import java.util.Map;
+import org.openrdf.rio.RDFParseException;
+
+/**
+ * A reader of <a href="http://www.w3.org/TR/rdf-testcases/#ntriples">N-Triples</a> files, which
+ * memory-maps the file and scans its bytes directly, without creating any intermediate Sesame
+ * objects. The input is decoded as UTF-8 (a superset of the US-ASCII that the format requires).
+ *
+ * <p>Terms are looked up in a fixed-size cache, keyed by their bytes, before creating any
+ * strings or values for them; so frequently occurring terms (predicates, types, popular
+ * subjects) are mapped to their model nodes without any allocation. URIs are split into a
+ * namespace and a local name at the last {@code #}, {@code /} or {@code :}, exactly as
+ * {@link Uri#parse(String)} does.
+ *
+ * <p>Each blank node label of the file is mapped to a single blank node, whose identifier
+ * is given by the {@link BlankNodesPolicy}.
+ *
+ * <p>Triples are added through a {@linkplain Model#bulkLoad() bulk load}, which is committed
+ * every {@link ModelFeeder#BATCH_SIZE} triples and at the end of the file. If the file is
+ * malformed, the batches that precede the error remain in the model.
+ */
+class NTriplesReader {
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    //number of bytes mapped at a time; files can be larger than a single mapping can be
+    private static final int DEFAULT_WINDOW_SIZE = 64 << 20;
+
+    //number of entries of the (direct mapped) term cache; must be a power of two
+    private static final int CACHE_SIZE = 1 << 16;
+
+    private final Model target;
+    private final Resource namedGraph;
+    private final BlankNodesPolicy blankNodesPolicy;
+    private final int windowSize;
+
+    private final Map<String, BlankNode> blankNodes = Maps.newHashMap();
+    private final byte[][] cachedTerms = new byte[CACHE_SIZE][];
+    private final RdfNode[] cachedNodes = new RdfNode[CACHE_SIZE];
+
+    private ByteBuffer buffer;
+    private int pos;
+    private int limit;
+    private long line;
+
+    NTriplesReader(Model target, Uri namedGraph, BlankNodesPolicy blankNodesPolicy) {
+        this(target, namedGraph, blankNodesPolicy, DEFAULT_WINDOW_SIZE);
+    }
+
+    NTriplesReader(Model target, Uri namedGraph, BlankNodesPolicy blankNodesPolicy, int windowSize) {
+        this.target = target;
+        if (namedGraph == null) namedGraph = RdfSuite.DEFAULT_GRAPH_URI;
+        this.namedGraph = target.mapResource(namedGraph);
+        this.blankNodesPolicy = blankNodesPolicy;
+        this.windowSize = windowSize;
+    }
+
+    void read(File file) throws IOException {
+        FileInputStream in = new FileInputStream(file);
+        try {
+            FileChannel channel = in.getChannel();
+            long size = channel.size();
+            Model.BulkLoad bulkLoad = target.bulkLoad();
+            line = 1;
+            long offset = 0;
+            while (offset < size) {
+                int length = (int)Math.min(windowSize, size - offset);
+                buffer = channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+                //only parse whole lines; the rest is parsed with the next window
+                limit = offset + length == size ? length : afterLastLineEnd(length);
+                pos = 0;
+                while (pos < limit) {
+                    parseLine(bulkLoad);
+                    if (bulkLoad.size() >= ModelFeeder.BATCH_SIZE) {
+                        bulkLoad.commit();
+                    }
+                }
+                offset += limit;
+            }
+            bulkLoad.commit();
+        } catch (RDFParseException e) {
+            throw (IOException)new IOException(e.getMessage()).initCause(e);
+        } finally {
+            buffer = null;
+            in.close();
+        }
+    }
+
+    private int afterLastLineEnd(int length) throws RDFParseException {
+        for (int i = length - 1; i >= 0; i--) {
+            byte b = buffer.get(i);
+            if (b == '\n' || b == '\r') {
+                return i + 1;
+            }
+        }
+        throw error("Line longer than " + windowSize + " bytes");
+    }
+
+    private void parseLine(Model.BulkLoad bulkLoad) throws RDFParseException {
+        skipSpaces();
+        if (pos == limit) {
+            return;
+        }
+        byte b = buffer.get(pos);
+        if (b == '#') {
+            while (pos < limit && !isLineEnd(buffer.get(pos))) {
+                pos++;
+            }
+        } else if (!isLineEnd(b)) {
+            RdfNode subject = parseTerm();
+            if (!subject.isObjectNode()) {
+                throw error("Subject must be a URI or a blank node");
+            }
+            skipSpaces();
+            RdfNode predicate = parseTerm();
+            if (!predicate.isResource()) {
+                throw error("Predicate must be a URI");
+            }
+            skipSpaces();
+            RdfNode object = parseTerm();
+            skipSpaces();
+            expect('.');
+            skipSpaces();
+            bulkLoad.add(namedGraph, (ObjectNode)subject, (Resource)predicate, object);
+        }
+        if (pos < limit) {
+            b = buffer.get(pos++);
+            if (!isLineEnd(b)) {
+                throw error("Expected end of line, found '" + (char)b + "'");
+            }
+            if (b == '\r' && pos < limit && buffer.get(pos) == '\n') {
+                pos++;
+            }
+            line++;
+        }
+    }
+
+    private RdfNode parseTerm() throws RDFParseException {
+        if (pos == limit) {
+            throw error("Unexpected end of line");
+        }
+        int start = pos;
+        switch (buffer.get(pos)) {
+            case '<':
+                skipUri();
+                break;
+            case '_':
+                pos++;
+                expect(':');
+                while (pos < limit && !isSpace(buffer.get(pos)) && !isLineEnd(buffer.get(pos))
+                        && buffer.get(pos) != '.') {
+                    pos++;
+                }
+                if (pos == start + 2) {
+                    throw error("Empty blank node label");
+                }
+                break;
+            case '"':
+                skipQuoted();
+                if (pos < limit && buffer.get(pos) == '@') {
+                    pos++;
+                    while (pos < limit && (isLetterOrDigit(buffer.get(pos)) || buffer.get(pos) == '-')) {
+                        pos++;
+                    }
+                } else if (pos < limit && buffer.get(pos) == '^') {
+                    pos++;
+                    expect('^');
+                    if (pos == limit || buffer.get(pos) != '<') {
+                        throw error("Expected datatype URI");
+                    }
+                    skipUri();
+                }
+                break;
+            default:
+                throw error("Expected a URI, a blank node or a literal, found '" + (char)buffer.get(pos) + "'");
+        }
+        int hash = hash(start, pos);
+        int slot = (hash ^ (hash >>> 16)) & (CACHE_SIZE - 1);
+        byte[] cached = cachedTerms[slot];
+        if (cached != null && matches(cached, start)) {
+            return cachedNodes[slot];
+        }
+        byte[] term = new byte[pos - start];
+        for (int i = 0; i < term.length; i++) {
+            term[i] = buffer.get(start + i);
+        }
+        RdfNode node = createNode(term);
+        cachedTerms[slot] = term;
+        cachedNodes[slot] = node;
+        return node;
+    }
+
+    private RdfNode createNode(byte[] term) throws RDFParseException {
+        switch (term[0]) {
+            case '<':
+                return target.mapResource(toUri(term, 0, term.length));
+            case '_': {
+                String label = new String(term, 2, term.length - 2, UTF8);
+                BlankNode blankNode = blankNodes.get(label);
+                if (blankNode == null) {
+                    blankNode = target.mapBlankNode(blankNodesPolicy.createIdentifier(label));
+                    blankNodes.put(label, blankNode);
+                }
+                return blankNode;
+            }
+            default: {
+                int close = term.length - 1;
+                while (term[close] != '"') {
+                    close--;
+                }
+                String label = decode(term, 1, close);
+                Literal literal;
+                if (close == term.length - 1) {
+                    literal = Literal.createWithLanguage(label, null);
+                } else if (term[close + 1] == '@') {
+                    //language tags are case insensitive; Sesame lowercases them as well
+                    literal = Literal.createWithLanguage(label,
+                            new String(term, close + 2, term.length - close - 2, UTF8)
+                            .toLowerCase(Locale.ENGLISH));
+                } else {
+                    literal = Literal.createWithType(label, toUri(term, close + 3, term.length));
+                }
+                return target.mapLiteral(literal);
+            }
+        }
+    }
+
+    /**
+     * Creates the Uri of the term bytes {@code <...>} between {@code from} (inclusive)
+     * and {@code to} (exclusive).
+     */
+    private static Uri toUri(byte[] term, int from, int to) {
+        int split = -1;
+        boolean escaped = false;
+        for (int i = from + 1; i < to - 1; i++) {
+            if (term[i] == '\\') {
+                escaped = true;
+                break;
+            }
+        }
+        if (escaped) {
+            return Uri.parse(decode(term, from + 1, to - 1));
+        }
+        for (int i = to - 2; i > from && split == -1; i--) {
+            if (term[i] == '#') split = i;
+        }
+        for (int i = to - 2; i > from && split == -1; i--) {
+            if (term[i] == '/') split = i;
+        }
+        for (int i = to - 2; i > from && split == -1; i--) {
+            if (term[i] == ':') split = i;
+        }
+        if (split == -1) {
+            return new Uri(new String(term, from + 1, to - from - 2, UTF8), "");
+        }
+        return new Uri(new String(term, from + 1, split - from, UTF8),
+                new String(term, split + 1, to - split - 2, UTF8));
+    }
+
+    /**
+     * Decodes the bytes between {@code from} (inclusive) and {@code to} (exclusive),
+     * resolving any N-Triples escape sequences.
+     */
+    private static String decode(byte[] term, int from, int to) {
+        String s = new String(term, from, to - from, UTF8);
+        int backslash = s.indexOf('\\');
+        if (backslash == -1) {
+            return s;
+        }
+        StringBuilder sb = new StringBuilder(s.length());
+        sb.append(s, 0, backslash);
+        for (int i = backslash; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c != '\\' || i == s.length() - 1) {
+                sb.append(c);
+                continue;
+            }
+            c = s.charAt(++i);
+            switch (c) {
+                case 't': sb.append('\t'); break;
+                case 'b': sb.append('\b'); break;
+                case 'n': sb.append('\n'); break;
+                case 'r': sb.append('\r'); break;
+                case 'f': sb.append('\f'); break;
+                case 'u':
+                    sb.append((char)Integer.parseInt(s.substring(i + 1, i + 5), 16));
+                    i += 4;
+                    break;
+                case 'U':
+                    sb.appendCodePoint(Integer.parseInt(s.substring(i + 1, i + 9), 16));
+                    i += 8;
+                    break;
+                default:
+                    sb.append(c); //covers \" \' and \\
+            }
+        }
+        return sb.toString();
+    }
+
+    private void skipUri() throws RDFParseException {
+        pos++;
+        while (pos < limit && buffer.get(pos) != '>') {
+            if (isLineEnd(buffer.get(pos))) {
+                break;
+            }
+            pos++;
+        }
+        if (pos == limit || buffer.get(pos) != '>') {
+            throw error("Unterminated URI");
+        }
+        pos++;
+    }
+
+    private void skipQuoted() throws RDFParseException {
+        pos++;
+        while (pos < limit) {
+            byte b = buffer.get(pos);
+            if (b == '"') {
+                pos++;
+                return;
+            } else if (b == '\\') {
+                pos++;
+            } else if (isLineEnd(b)) {
+                break;
+            }
+            pos++;
+        }
+        throw error("Unterminated literal");
+    }
+
+    private boolean matches(byte[] term, int start) {
+        if (term.length != pos - start) {
+            return false;
+        }
+        for (int i = 0; i < term.length; i++) {
+            if (term[i] != buffer.get(start + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int hash(int from, int to) {
+        int hash = 7;
+        for (int i = from; i < to; i++) {
+            hash = 31 * hash + buffer.get(i);
+        }
+        return hash;
+    }
+
+    private void expect(char c) throws RDFParseException {
+        if (pos == limit || buffer.get(pos) != c) {
+            throw error("Expected '" + c + "'");
+        }
+        pos++;
+    }
+
+    private void skipSpaces() {
+        while (pos < limit && isSpace(buffer.get(pos))) {
+            pos++;
+        }
+    }
+
+    private static boolean isSpace(byte b) {
+        return b == ' ' || b == '\t';
+    }
+
+    private static boolean isLineEnd(byte b) {
+        return b == '\n' || b == '\r';
+    }
+
+    private static boolean isLetterOrDigit(byte b) {
+        return (b >= 'a' && b <= 'z') || (b >= 'A' && b <= 'Z') || (b >= '0' && b <= '9');
+    }
+
+    private RDFParseException error(String message) {
+        return new RDFParseException(message, (int)line, -1);
+    }
+}
@@ -0,0 +1,430 @@
+/* 
+ *  COPYRIGHT (c) 2008-2009 by Institute of Computer Science, 
+ *  Foundation for Research and Technology - Hellas
+ *  Contact: 
+ *      POBox 1385, Heraklio Crete, GR-700 13 GREECE
+ *      Tel:+30-2810-391632
+ *      Fax: +30-2810-391638
+ *      E-mail: isl@ics.forth.gr
+ *      http://www.ics.forth.gr/isl
+ *
+ *   Authors  :  Dimitris Andreou, Nelly Vouzoukidou.
+ *
+ *   This file is part of SWKM model APIs (see also http://athena.ics.forth.gr:9090/SWKM/).
+ *
+ *    SWKM model APIs is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU Lesser General Public License as published by
+ *    the Free Software Foundation, either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *   SWKM model APIs is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Lesser General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Lesser General Public License
+ *   along with SWKM model APIs.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ *   SWKM has been partially supported by EU project KP-Lab (IP IST-27490) kp-lab.org
+ */
+
+
+
+
+package gr.forth.ics.swkm.model2.io;
+
+import com.google.common.base.Predicate;
+import gr.forth.ics.swkm.model2.Model;
+import gr.forth.ics.swkm.model2.ObjectNode;
+import gr.forth.ics.swkm.model2.RdfNode;
+import gr.forth.ics.swkm.model2.Resource;
+import gr.forth.ics.swkm.model2.Uri;
+import gr.forth.ics.swkm.model2.vocabulary.RdfSuite;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import org.openrdf.model.Statement;
+import org.openrdf.rio.RDFHandler;
+import org.openrdf.rio.RDFHandlerException;
+import org.openrdf.rio.RDFParseException;
+import org.openrdf.rio.RDFParser;
+import org.openrdf.rio.RDFParserRegistry;
+
+/**
+ * Loads RDF input into a {@link Model} through a pipeline of two stages, connected by a bounded
+ * queue that hands off batches of statements:
+ * <ol>
+ * <li>parsing, which also converts the parsed Sesame values to {@link Uri}s, literals and blank node
+ * identifiers. Line-based input ({@link Format#NTRIPLES}) is split into chunks of lines that
+ * are parsed by several threads in parallel; any other format is parsed by a single thread
+ * <li>insertion, where the calling thread maps the values to the nodes of the model and adds the
+ * triples to a {@linkplain Model#bulkLoad() bulk load} session, which is committed every
+ * {@link ModelFeeder#BATCH_SIZE} triples and at the end
+ * </ol>
+ * Since each chunk is parsed by a separate parser, chunk parsers keep the blank node identifiers
+ * of the input, and the inserting thread applies the {@link BlankNodesPolicy} to them, once per
+ * identifier of the whole input. Parse errors in a chunk report their line in the whole input.
+ * The parsing threads never access the model, so it need not be thread-safe.
+ * If loading fails or is interrupted, the parsing threads are stopped, and the triples of
+ * the batches that have already been committed remain in the model.
+ */
+class PipelinedLoader {
+    //number of statements of a batch handed off between stages
+    private static final int BATCH_SIZE = 1024;
+
+    //number of lines of a chunk of line-based input
+    static final int CHUNK_LINES = 8 * BATCH_SIZE;
+
+    //end-of-input markers, compared by identity
+    private static final Object[] NO_VALUES = new Object[0];
+    private static final Chunk NO_CHUNK = new Chunk("", 0);
+
+    private final Model target;
+    private final Resource defaultNamedGraph;
+    private final Predicate<? super Statement> statementFilter;
+    private final Format format;
+    private final String baseUri;
+    private final BlankNodesPolicy blankNodesPolicy;
+    private final int parallelism;
+
+    private final BlockingQueue<Object[]> values;
+    private final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+
+    //the identifiers that the blank nodes policy gave to the local blank node identifiers of the
+    //input, or null if the policy is applied by the (single) parser; accessed only by the inserting thread
+    private Map<String, String> blankNodeIds;
+
+    PipelinedLoader(Model target, Uri defaultNamedGraph, Predicate<? super Statement> statementFilter,
+            Format format, String baseUri, BlankNodesPolicy blankNodesPolicy, int parallelism) {
+        this.target = target;
+        this.statementFilter = statementFilter;
+        if (defaultNamedGraph == null) defaultNamedGraph = RdfSuite.DEFAULT_GRAPH_URI;
+        this.defaultNamedGraph = target.mapResource(defaultNamedGraph);
+        this.format = format;
+        this.baseUri = baseUri;
+        this.blankNodesPolicy = blankNodesPolicy;
+        this.parallelism = parallelism;
+        this.values = new ArrayBlockingQueue<Object[]>(2 * parallelism);
+    }
+
+    void load(Reader in) throws IOException {
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism + 1, new PipelineThreadFactory());
+        try {
+            if (format == Format.NTRIPLES && parallelism > 1) {
+                blankNodeIds = new HashMap<String, String>();
+                BlockingQueue<Chunk> chunks = new ArrayBlockingQueue<Chunk>(2 * parallelism);
+                executor.execute(new Splitter(in, chunks));
+                AtomicInteger runningParsers = new AtomicInteger(parallelism);
+                for (int i = 0; i < parallelism; i++) {
+                    executor.execute(new ChunkParser(chunks, runningParsers));
+                }
+            } else {
+                executor.execute(new WholeParser(in));
+            }
+            insertAll();
+        } finally {
+            //stops the parsing threads, if they are still running (after a failure or an interrupt);
+            //closing the input unblocks any thread that is reading it
+            executor.shutdownNow();
+            in.close();
+        }
+        try {
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+        Throwable t = failure.get();
+        if (t instanceof IOException) {
+            throw (IOException)t;
+        } else if (t instanceof RuntimeException) {
+            throw (RuntimeException)t;
+        } else if (t instanceof Error) {
+            throw (Error)t;
+        } else if (t != null) {
+            throw (IOException)new IOException(t.getMessage()).initCause(t);
+        }
+    }
+
+    private void insertAll() throws InterruptedIOException {
+        Model.BulkLoad bulkLoad = target.bulkLoad();
+        try {
+            while (true) {
+                Object[] batch = values.take();
+                if (batch == NO_VALUES) {
+                    break;
+                }
+                if (failure.get() != null) {
+                    continue; //keep draining, so that the parsers do not block
+                }
+                for (int i = 0; i < batch.length; i += 4) {
+                    Resource namedGraph = batch[i] == null ?
+                        defaultNamedGraph : (Resource)map(batch[i]);
+                    bulkLoad.add(namedGraph,
+                            (ObjectNode)map(batch[i + 1]),
+                            (Resource)map(batch[i + 2]),
+                            map(batch[i + 3]));
+                }
+                if (bulkLoad.size() >= ModelFeeder.BATCH_SIZE) {
+                    bulkLoad.commit();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+        if (failure.get() == null) {
+            bulkLoad.commit();
+        }
+    }
+
+    private RdfNode map(Object value) {
+        if (blankNodeIds != null && value instanceof String) {
+            String localId = (String)value;
+            String id = blankNodeIds.get(localId);
+            if (id == null) {
+                id = blankNodesPolicy.createIdentifier(localId);
+                blankNodeIds.put(localId, id);
+            }
+            value = id;
+        }
+        return ModelFeeder.map(target, value);
+    }
+
+    private void fail(Throwable t) {
+        failure.compareAndSet(null, t);
+    }
+
+    private RDFParser newParser(BlankNodesPolicy policy) {
+        RDFParser parser = RDFParserRegistry.getInstance().get(format.toSesameFormat()).getParser();
+        parser.setPreserveBNodeIDs(true); //we do our own blank node identifier handling
+        parser.setValueFactory(policy.valueFactory());
+        return parser;
+    }
+
+    /**
+     * Parses the whole input with a single parser.
+     */
+    private class WholeParser implements Runnable {
+        private final Reader in;
+
+        WholeParser(Reader in) {
+            this.in = in;
+        }
+
+        public void run() {
+            try {
+                RDFParser parser = newParser(blankNodesPolicy);
+                parser.setRDFHandler(new ValueCollector());
+                parser.parse(in, baseUri);
+            } catch (Throwable t) {
+                fail(t);
+            } finally {
+                putQuietly(values, NO_VALUES);
+            }
+        }
+    }
+
+    /**
+     * A chunk of whole lines of line-based input.
+     */
+    private static class Chunk {
+        final String text;
+        //the number of the first line of the chunk in the whole input, starting from 1
+        final int firstLine;
+
+        Chunk(String text, int firstLine) {
+            this.text = text;
+            this.firstLine = firstLine;
+        }
+    }
+
+    /**
+     * Splits line-based input into chunks of whole lines.
+     */
+    private class Splitter implements Runnable {
+        private final Reader in;
+        private final BlockingQueue<Chunk> chunks;
+
+        Splitter(Reader in, BlockingQueue<Chunk> chunks) {
+            this.in = in;
+            this.chunks = chunks;
+        }
+
+        public void run() {
+            try {
+                BufferedReader reader = new BufferedReader(in);
+                StringBuilder chunk = new StringBuilder();
+                int firstLine = 1;
+                int lines = 0;
+                String line;
+                while ((line = reader.readLine()) != null && failure.get() == null) {
+                    chunk.append(line).append('\n');
+                    if (++lines == CHUNK_LINES) {
+                        chunks.put(new Chunk(chunk.toString(), firstLine));
+                        chunk.setLength(0);
+                        firstLine += lines;
+                        lines = 0;
+                    }
+                }
+                if (lines > 0) {
+                    chunks.put(new Chunk(chunk.toString(), firstLine));
+                }
+            } catch (InterruptedException e) {
+                return;
+            } catch (Throwable t) {
+                fail(t);
+            }
+            for (int i = 0; i < parallelism; i++) {
+                if (!putQuietly(chunks, NO_CHUNK)) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Parses chunks of line-based input, each with a new parser that keeps the local blank
+     * node identifiers.
+     */
+    private class ChunkParser implements Runnable {
+        private final BlockingQueue<Chunk> chunks;
+        private final AtomicInteger runningParsers;
+
+        ChunkParser(BlockingQueue<Chunk> chunks, AtomicInteger runningParsers) {
+            this.chunks = chunks;
+            this.runningParsers = runningParsers;
+        }
+
+        public void run() {
+            try {
+                ValueCollector collector = new ValueCollector();
+                while (true) {
+                    Chunk chunk = chunks.take();
+                    if (chunk == NO_CHUNK || failure.get() != null) {
+                        break;
+                    }
+                    RDFParser parser = newParser(BlankNodesPolicy.asDeclared());
+                    parser.setRDFHandler(collector);
+                    try {
+                        parser.parse(new StringReader(chunk.text), baseUri);
+                    } catch (RDFParseException e) {
+                        throw inWholeInput(e, chunk);
+                    }
+                }
+            } catch (InterruptedException e) {
+                return;
+            } catch (Throwable t) {
+                fail(t);
+            } finally {
+                if (runningParsers.decrementAndGet() == 0) {
+                    putQuietly(values, NO_VALUES);
+                }
+            }
+        }
+    }
+
+    //translates the line of a parse error in a chunk to the line in the whole input
+    private static RDFParseException inWholeInput(RDFParseException e, Chunk chunk) {
+        if (e.getLineNumber() < 1) {
+            return e;
+        }
+        String message = e.getMessage();
+        String location = RDFParseException.getLocationString(e.getLineNumber(), e.getColumnNumber());
+        if (message.endsWith(location)) {
+            message = message.substring(0, message.length() - location.length());
+        }
+        RDFParseException translated = new RDFParseException(message,
+                chunk.firstLine + e.getLineNumber() - 1, e.getColumnNumber());
+        translated.initCause(e);
+        return translated;
+    }
+
+    /**
+     * Converts parsed statements to batches of values, four per statement
+     * (named graph, subject, predicate, object). A {@code null} named graph stands for the
+     * default named graph.
+     */
+    private class ValueCollector implements RDFHandler {
+        private Object[] batch = new Object[4 * BATCH_SIZE];
+        private int size;
+
+        public void startRDF() throws RDFHandlerException {
+        }
+
+        public void handleComment(String comment) throws RDFHandlerException {
+        }
+
+        public void handleNamespace(String prefix, String namespace) throws RDFHandlerException {
+        }
+
+        public void handleStatement(Statement statement) throws RDFHandlerException {
+            if (failure.get() != null) {
+                throw new RDFHandlerException("Loading has failed");
+            }
+            if (!statementFilter.apply(statement)) {
+                return;
+            }
+            batch[size++] = statement.getContext() == null ? null : ModelFeeder.toValue(statement.getContext());
+            batch[size++] = ModelFeeder.toValue(statement.getSubject());
+            batch[size++] = ModelFeeder.toValue(statement.getPredicate());
+            batch[size++] = ModelFeeder.toValue(statement.getObject());
+            if (size == batch.length) {
+                flush(batch);
+                batch = new Object[batch.length];
+                size = 0;
+            }
+        }
+
+        public void endRDF() throws RDFHandlerException {
+            if (size > 0) {
+                Object[] last = new Object[size];
+                System.arraycopy(batch, 0, last, 0, size);
+                flush(last);
+                size = 0;
+            }
+        }
+
+        private void flush(Object[] values) throws RDFHandlerException {
+            try {
+                PipelinedLoader.this.values.put(values);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RDFHandlerException(e);
+            }
+        }
+    }
+
+    //returns false if interrupted
+    private static <T> boolean putQuietly(BlockingQueue<T> queue, T element) {
+        try {
+            queue.put(element);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private static class PipelineThreadFactory implements ThreadFactory {
+        private final AtomicInteger threadCount = new AtomicInteger();
+
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "RdfIO-pipeline-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -186,7 +186,7 @@ public class RdfIO {
     public static InputWithoutBase read(Reader in, Format format) {
         Assert.notNull(in, "Reader");
         Assert.notNull(format, "Format");
-        return new InputWithoutBase(in, format);
+        return new InputWithoutBase(in, format, null);
     }
 
     /**
@@ -203,7 +203,7 @@ public class RdfIO {
         Assert.notNull(format, "Format");
         return new InputWithoutBase(
                 new InputStreamReader(new BufferedInputStream(new FileInputStream(file))),
-                format);
+                format, file);
     }
 
     /**
@@ -221,7 +221,7 @@ public class RdfIO {
         Assert.notNull(format, "Format");
         return new InputWithoutBase(
                 new InputStreamReader(new BufferedInputStream(url.openStream())),
-                format);
+                format, null);
     }
 
     /**
@@ -243,10 +243,12 @@ public class RdfIO {
     public static class InputWithoutBase {
         final Reader in;
         final Format format;
+        final File file; //null if not reading a file
 
-        private InputWithoutBase(Reader in, Format format) {
+        private InputWithoutBase(Reader in, Format format, File file) {
             this.in = in;
             this.format = format;
+            this.file = file;
         }
 
         /**
@@ -276,7 +278,7 @@ public class RdfIO {
          */
         public InputWithBase withBase(Uri baseUri) {
             Assert.notNull(baseUri, "Base URI");
-            return new InputWithBase(in, format, baseUri);
+            return new InputWithBase(in, format, file, baseUri);
         }
     }
 
@@ -286,19 +288,41 @@ public class RdfIO {
     public static class InputWithBase {
         private final Reader in;
         private final Format format;
+        private final File file;
         private final Uri baseUri;
 
         private Uri targetNamedGraph;
 
         private BlankNodesPolicy blankNodesPolicy;
 
-        private InputWithBase(Reader in, Format format, Uri baseUri) {
+        private int parallelism;
+
+        private InputWithBase(Reader in, Format format, File file, Uri baseUri) {
             this.in = in;
             this.format = format;
+            this.file = file;
             this.baseUri = baseUri;
         }
 
+        /**
+         * Parses the prepared input into triples that are added to the specified model.
+         *
+         * <p>{@link Format#NTRIPLES} files (read through {@link RdfIO#read(File, Format)}) are
+         * memory-mapped and parsed directly, without the use of Sesame, unless
+         * {@linkplain #withParallelism(int) parallelism} has been set.
+         *
+         * @param model the model that the produced triples will be added to
+         * @throws IOException if this exception is thrown during the parsing
+         */
         public void into(Model model) throws IOException {
+            if (file != null && format == Format.NTRIPLES && parallelism == 0) {
+                Preconditions.checkNotNull(model);
+                in.close();
+                BlankNodesPolicy policy = this.blankNodesPolicy;
+                if (policy == null) policy = BlankNodesPolicy.globallyUnique();
+                new NTriplesReader(model, targetNamedGraph, policy).read(file);
+                return;
+            }
             into(model, Predicates.alwaysTrue());
         }
 
@@ -314,14 +338,19 @@ public class RdfIO {
         public void into(Model model, Predicate<? super Statement> statementFilter) throws IOException {
             Preconditions.checkNotNull(model);
             Preconditions.checkNotNull(statementFilter);
+            BlankNodesPolicy policy = this.blankNodesPolicy;
+            if (policy == null) policy = BlankNodesPolicy.globallyUnique();
+            if (parallelism > 0) {
+                new PipelinedLoader(model, targetNamedGraph, statementFilter, format,
+                        baseUri.toString(Delimiter.WITHOUT), policy, parallelism).load(in);
+                return;
+            }
             RDFParser parser = RDFParserRegistry.getInstance().get(format.toSesameFormat()).getParser();
 //            parser.setParseLocationListener(new ParseLocationListener() {
 //                public void parseLocationUpdate(int line, int column) {
 //                    System.out.println(line + " " + column);
 //                }
 //            });
-            BlankNodesPolicy policy = this.blankNodesPolicy;
-            if (policy == null) policy = BlankNodesPolicy.globallyUnique();
             parser.setPreserveBNodeIDs(true); //we do our own blank node identifier handling
             parser.setValueFactory(policy.valueFactory());
             parser.setRDFHandler(new ModelFeeder(model, targetNamedGraph, statementFilter));
@@ -353,6 +382,32 @@ public class RdfIO {
             return this;
         }
 
+        /**
+         * Makes the parsing run in separate threads, while the calling thread maps the parsed
+         * values to model nodes and inserts the triples into the model. {@link Format#NTRIPLES} input
+         * is additionally split into chunks of lines, which are parsed by {@code parallelism} threads
+         * in parallel. Input of any other format is parsed by a single thread.
+         *
+         * <p>The triples are added to the model in batches, through a {@linkplain Model#bulkLoad()
+         * bulk load}. The order in which parallel parsed triples are added is unspecified.
+         * The statement filter given in {@link #into(Model, Predicate)}, if any, will be invoked
+         * concurrently from the parsing threads. The model is only accessed by the calling thread.
+         *
+         * <p>If this method is not called, the input is parsed and added to the model by
+         * the calling thread alone.
+         *
+         * @param parallelism the number of threads that parse line-based input (must be positive)
+         * @return this
+         */
+        public InputWithBase withParallelism(int parallelism) {
+            Preconditions.checkArgument(parallelism > 0, "Non-positive parallelism: %s", parallelism);
+            if (this.parallelism != 0) {
+                throw new IllegalStateException("Parallelism has already been set");
+            }
+            this.parallelism = parallelism;
+            return this;
+        }
+
         /**
          * Adds a target named graph where all the parsed triples will be added.
          * If no target named graph
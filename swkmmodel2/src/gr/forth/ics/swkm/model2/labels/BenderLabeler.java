@@ -41,6 +41,9 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
 import java.util.Stack;
 import java.util.TreeMap;
 import java.util.TreeSet;
@@ -114,10 +117,12 @@ class BenderLabeler implements Labeler {
 //                hierarchy.exploreNodesIncludedIn(parentTreeLabels);
 
                 hierarchy.exploreAncestors(curRootOfNewHierarchy);
-                HashSet<Node> relabeledClasses = relabelClasses(curRootOfNewHierarchy, properAnc, hierarchy);
-                modifyPropagatedLabels(relabeledClasses, hierarchy);
+                Map<Node, Interval> previousTreeLabels = relabelClasses(curRootOfNewHierarchy, properAnc, hierarchy);
+                modifyPropagatedLabels(previousTreeLabels, hierarchy);
                 Interval freeRange = findMaxAvailableInterval(properAnc, hierarchy);
-                estimatedIntervalSize = estimateIntervalSize(curRootOfNewHierarchy, T, hierarchy, true);
+                //the gap may have been made just for the dense size
+                estimatedIntervalSize = Math.min(freeRange.length(),
+                        estimateIntervalSize(curRootOfNewHierarchy, T, hierarchy, true));
                 Interval label = getProperSubInterval(freeRange, estimatedIntervalSize);
                 labelHierarchy(curRootOfNewHierarchy, label, hierarchy);
             }
@@ -133,47 +138,49 @@ class BenderLabeler implements Labeler {
     }
 
     private Interval getProperSubInterval(Interval curAncMaxInterval, int estimatedIntervalSize) {
-        return new Interval(curAncMaxInterval.getIndex(), curAncMaxInterval.getIndex() + estimatedIntervalSize);
+        //estimatedIntervalSize points, so that it does not exceed an interval that fits it
+        return new Interval(curAncMaxInterval.getIndex(), curAncMaxInterval.getIndex() + estimatedIntervalSize - 1);
     }
 
-    private void changeNodeTreeLabel(Hierarchy hierarchy, Node n, int lengthOfNewHier) {
+    private void changeNodeTreeLabel(Hierarchy hierarchy, Node n, int lengthOfNewHier,
+            Map<Node, Interval> previousTreeLabels) {
         Label nLabel = hierarchy.getLabelOf(n);
         Interval oldTreeLabel = nLabel.getTreeLabel();
         Interval newTreeLabel = new Interval(oldTreeLabel.getIndex(), oldTreeLabel.getPost() + lengthOfNewHier);
+        recordPreviousTreeLabel(n, oldTreeLabel, previousTreeLabels);
         nLabel.setTreeLabel(newTreeLabel);
     }
 
+    private void recordPreviousTreeLabel(Node n, Interval oldTreeLabel, Map<Node, Interval> previousTreeLabels) {
+        if (!previousTreeLabels.containsKey(n)) {
+            previousTreeLabels.put(n, oldTreeLabel);
+        }
+    }
+
+    /**
+     * Replaces the previous tree labels of the relabeled and moved classes by the current ones,
+     * wherever they were propagated. All previous labels are removed before any current one is added,
+     * since a class may have moved to the previous label of another.
+     */
     private void modifyPropagatedLabels(
-            HashSet<Node> relabeledClasses,
+            Map<Node, Interval> previousTreeLabels,
             Hierarchy hierarchy) {
-        for (Node n : relabeledClasses) {
-            Interval oldTreeLabel = hierarchy.getExistingLabelOf(n).getTreeLabel();
+        List<PropagatedLabelChange> changes = new ArrayList<PropagatedLabelChange>();
+        for (Map.Entry<Node, Interval> entry : previousTreeLabels.entrySet()) {
+            Node n = entry.getKey();
+            Interval oldTreeLabel = entry.getValue();
             Interval newTreeLabel = hierarchy.getLabelOf(n).getTreeLabel();
-            Collection<Node> directAncs = getDirectAncestorsInMem(hierarchy, n);
-//                    hierarchy.exploreDirectAncestors(n);
-            for (Node directAnc : directAncs) {
-                Interval directAncTreeLabel = hierarchy.getLabelOf(directAnc).getTreeLabel();
-                if (!directAncTreeLabel.contains(oldTreeLabel)) {
-                    changePropagatedLabel(directAnc, oldTreeLabel, newTreeLabel, hierarchy, true);
+            for (Node anc : getAncestorsInMem(hierarchy, n)) {
+                Label label = hierarchy.getLabelOf(anc);
+                for (boolean direct : new boolean[] { true, false }) {
+                    if (label.removePropagatedLabel(oldTreeLabel, direct)) {
+                        changes.add(new PropagatedLabelChange(label, newTreeLabel, direct));
+                    }
                 }
             }
         }
-    }
-
-    private void changePropagatedLabel(
-            Node n,
-            Interval oldTreeLabel,
-            Interval newTreeLabel,
-            Hierarchy hierarchy,
-            boolean direct) {
-        Label label = hierarchy.getLabelOf(n);
-        boolean existed = label.removePropagatedLabel(oldTreeLabel, direct);
-        if (existed) {
-            label.addPropagatedLabel(newTreeLabel, direct);
-        }
-        for (Node anc : getAncestorsInMem(hierarchy, n) //            hierarchy.exploreAncestors(n)
-                ) {
-            changePropagatedLabel(anc, oldTreeLabel, newTreeLabel, hierarchy, false);
+        for (PropagatedLabelChange change : changes) {
+            change.label.addPropagatedLabel(change.newTreeLabel, change.direct);
         }
     }
 
@@ -200,11 +207,11 @@ class BenderLabeler implements Labeler {
      * @param root, the root of the new hierarchy
      * @param parent, the old node under which root is inserted
      */
-    private HashSet<Node> relabelClasses(
+    private Map<Node, Interval> relabelClasses(
             Node root,
             Node parent,
             Hierarchy hierarchy) {
-        HashSet<Node> relabeledClasses = new HashSet<Node>();
+        Map<Node, Interval> previousTreeLabels = new HashMap<Node, Interval>();
         Node wholeRoot = hierarchy.getRoot();
         Collection<Node> directDescsOfWholeHierarchy = getDirectDescendantsInMem(hierarchy, wholeRoot);
 //                hierarchy.exploreDirectDescendants(wholeRoot);
@@ -220,28 +227,31 @@ class BenderLabeler implements Labeler {
         } else {
             properGapNeeded = freeGapNeededSparse;
         }
-        relabelClass(parent, hierarchy, properGapNeeded, relabeledClasses, ancWithProperFreeGap);
-        return relabeledClasses;
+        relabelClass(parent, hierarchy, properGapNeeded, previousTreeLabels, ancWithProperFreeGap);
+        return previousTreeLabels;
     }
 
+    /**
+     * Grows the tree label of n, and of its ancestors in the spanning tree up to (excluding)
+     * ancWithProperFreeGap, moving to the right the siblings that follow each of them. The current
+     * labels are used throughout, since an earlier new hierarchy may have already changed them.
+     */
     private void relabelClass(
             Node n,
             Hierarchy hierarchy,
             int lengthOfNewHier,
-            HashSet<Node> relabeledClasses,
+            Map<Node, Interval> previousTreeLabels,
             Node ancWithProperFreeGap) {
-        relabeledClasses.add(n);
-        changeNodeTreeLabel(hierarchy, n, lengthOfNewHier);
-
+        //found while the tree label of n is still contained in the one of its parent
         Node directAnc = findSpanTreeDirectAnc(n, hierarchy);
         Collection<Node> siblings = findSiblingsNext(n, directAnc, hierarchy);
-        moveSiblings(n, siblings, hierarchy, lengthOfNewHier);
-        Node spanTreeDirectAnc = findSpanTreeDirectAnc(n, hierarchy);
+        changeNodeTreeLabel(hierarchy, n, lengthOfNewHier, previousTreeLabels);
+        moveSiblings(n, siblings, hierarchy, lengthOfNewHier, previousTreeLabels);
         if (
-                (spanTreeDirectAnc != hierarchy.getRoot()) &&
-                (spanTreeDirectAnc != ancWithProperFreeGap)
+                (directAnc != hierarchy.getRoot()) &&
+                (directAnc != ancWithProperFreeGap)
                 ) {
-            relabelClass(spanTreeDirectAnc, hierarchy, lengthOfNewHier, relabeledClasses, ancWithProperFreeGap);
+            relabelClass(directAnc, hierarchy, lengthOfNewHier, previousTreeLabels, ancWithProperFreeGap);
         }
     }
 
@@ -249,33 +259,44 @@ class BenderLabeler implements Labeler {
             Node n,
             Collection<Node> siblings,
             Hierarchy hierarchy,
-            int lengthOfNewHier) {
+            int lengthOfNewHier,
+            Map<Node, Interval> previousTreeLabels) {
+        //through a transitive edge, a sibling may also be a descendant of another sibling,
+        //so the nodes to move are collected first, and each is moved once. A node relabeled
+        //at a lower level now lies within n, and is not moved again even if its current
+        //label happens to follow n, or to fall in the (not yet moved) label of a sibling
+        Collection<Node> toMove = new HashSet<Node>();
         for (Node sibling : siblings) {
-            if (sibling == n) {
+            if (sibling == n || previousTreeLabels.containsKey(sibling)) {
                 continue;
             }
-            moveLabelRight(sibling, hierarchy, lengthOfNewHier);
+            toMove.add(sibling);
+            Interval siblingTreeLabel = hierarchy.getLabelOf(sibling).getTreeLabel();
             Collection<Node> descs = getDescendantsInMem(hierarchy, sibling);
 //                    hierarchy.exploreDescendants(sibling);
-            Interval siblingTreeLabel = hierarchy.getExistingLabelOf(sibling).getTreeLabel();
             for (Node desc : descs) {
-                Interval descTreeLabel = hierarchy.getExistingLabelOf(desc).getTreeLabel();
-                if (siblingTreeLabel.contains(descTreeLabel)) {
-                    moveLabelRight(desc, hierarchy, lengthOfNewHier);
+                Interval descTreeLabel = hierarchy.getLabelOf(desc).getTreeLabel();
+                if (siblingTreeLabel.contains(descTreeLabel) && !previousTreeLabels.containsKey(desc)) {
+                    toMove.add(desc);
                 }
             }
         }
+        for (Node node : toMove) {
+            moveLabelRight(node, hierarchy, lengthOfNewHier, previousTreeLabels);
+        }
     }
 
     private void moveLabelRight(
             Node n,
             Hierarchy hierarchy,
-            int lengthOfNewHier) {
+            int lengthOfNewHier,
+            Map<Node, Interval> previousTreeLabels) {
         Label label = hierarchy.getLabelOf(n);
         Interval oldTreeLabel = label.getTreeLabel();
         Interval newTreeLabel = new Interval(
                 oldTreeLabel.getIndex() + lengthOfNewHier,
                 oldTreeLabel.getPost() + lengthOfNewHier);
+        recordPreviousTreeLabel(n, oldTreeLabel, previousTreeLabels);
         label.setTreeLabel(newTreeLabel);
     }
 
@@ -283,19 +304,18 @@ class BenderLabeler implements Labeler {
         Collection<Node> siblingsNextN = new HashSet<Node>();
         Collection<Node> siblings = getDirectDescendantsInMem(hierarchy, directAnc);
 //                hierarchy.exploreDirectDescendants(directAnc);
-        Interval nTreeInterval = hierarchy.getExistingLabelOf(n).getTreeLabel();
-        Interval directAncTreeInterval = hierarchy.getExistingLabelOf(directAnc).getTreeLabel();
+        Interval nTreeInterval = hierarchy.getLabelOf(n).getTreeLabel();
+        Interval directAncTreeInterval = hierarchy.getLabelOf(directAnc).getTreeLabel();
         for (Node sibling : siblings) {
             if (sibling == n) {
                 continue;
             }
-            Label existingLabelOfSibling = hierarchy.getExistingLabelOf(sibling);
-            if (existingLabelOfSibling == null) {
+            Interval siblingTreeInterval = hierarchy.getLabelOf(sibling).getTreeLabel();
+            if (siblingTreeInterval.isEmpty()) {
                 continue;
             }
-            Interval siblingTreeInterval = existingLabelOfSibling.getTreeLabel();
             if ((directAncTreeInterval.contains(siblingTreeInterval)) &&
-                    (nTreeInterval.getPost() < siblingTreeInterval.getPost())) {
+                    (nTreeInterval.getPost() < siblingTreeInterval.getIndex())) {
                 siblingsNextN.add(sibling);
             }
         }
@@ -315,7 +335,8 @@ class BenderLabeler implements Labeler {
         } else {
             spanTreeDirectAnc = findSpanTreeDirectAnc(n, hierarchy);
         }
-        int freeGap = findMaxAvailableInterval(spanTreeDirectAnc, hierarchy).length();
+        //the siblings that follow are moved to the right, so the gap must be after the right-most child
+        int freeGap = findTrailingFreeGap(spanTreeDirectAnc, hierarchy);
         int properGapNeeded = 0;
 
         //Flouris has asked to try to avoid changing the label of a root 
@@ -331,17 +352,34 @@ class BenderLabeler implements Labeler {
         return findAncestorWithProperFreeGap(spanTreeDirectAnc, null, hierarchy, freeGapNeededSparse, freeGapNeededDense, directDescsOfWholeHierarchy);
     }
 
+    private int findTrailingFreeGap(Node anc, Hierarchy hierarchy) {
+        Interval ancTreeInterval = hierarchy.getLabelOf(anc).getTreeLabel();
+        int lastPost = ancTreeInterval.getIndex() - 1;
+        for (Node desc : hierarchy.exploreDirectDescendants(anc)) {
+            Interval descTreeInterval = hierarchy.getLabelOf(desc).getTreeLabel();
+            if (ancTreeInterval.contains(descTreeInterval)) {
+                lastPost = Math.max(lastPost, descTreeInterval.getPost());
+            }
+        }
+        return (ancTreeInterval.getPost() - 1) - lastPost;
+    }
+
     private Node findSpanTreeDirectAnc(Node n, Hierarchy hierarchy) {
         Collection<Node> directAncs = getDirectAncestorsInMem(hierarchy, n);
 //                hierarchy.exploreDirectAncestors(n);
-        Interval nTreeInterval = hierarchy.getExistingLabelOf(n).getTreeLabel();
+        Interval nTreeInterval = hierarchy.getLabelOf(n).getTreeLabel();
+        //through a transitive edge, an ancestor of the parent may be a direct ancestor as well
+        Node spanTreeDirectAnc = null;
+        Interval spanTreeDirectAncInterval = null;
         for (Node directAnc : directAncs) {
-            Interval directAncTreeInterval = hierarchy.getExistingLabelOf(directAnc).getTreeLabel();
-            if (directAncTreeInterval.contains(nTreeInterval)) {
-                return directAnc;
+            Interval directAncTreeInterval = hierarchy.getLabelOf(directAnc).getTreeLabel();
+            if (directAncTreeInterval.contains(nTreeInterval) &&
+                    (spanTreeDirectAnc == null || spanTreeDirectAncInterval.contains(directAncTreeInterval))) {
+                spanTreeDirectAnc = directAnc;
+                spanTreeDirectAncInterval = directAncTreeInterval;
             }
         }
-        return null;
+        return spanTreeDirectAnc;
     }
 
     private Collection<Interval> findParentTreeLabels(Node curRootOfNewHierarchy, Hierarchy hierarchy) {
@@ -377,13 +415,20 @@ class BenderLabeler implements Labeler {
         return ordered;
     }
 
+    /**
+     * Returns the descendants of n that are not labeled yet, and are reachable from n through
+     * such descendants only; labelClass does not go below a labeled (e.g.&nbsp;old) class, so these
+     * are exactly the descendants that will be labeled within the tree label of n.
+     */
     private Collection<Node> notVisitedDescs(Node n, Hierarchy hierarchy) {
-        Collection<Node> notVisitedDescs = new ArrayList<Node>();
-        Collection<Node> descs = getDescendantsInMem(hierarchy, n);
-//                hierarchy.exploreDescendants(n);
-        for (Node d : descs) {
-            if (hierarchy.getLabelOf(d).getTreeLabel().isEmpty()) {
-                notVisitedDescs.add(d);
+        Collection<Node> notVisitedDescs = new HashSet<Node>();
+        LinkedList<Node> toVisit = new LinkedList<Node>();
+        toVisit.add(n);
+        while (!toVisit.isEmpty()) {
+            for (Node d : hierarchy.exploreDirectDescendants(toVisit.removeFirst())) {
+                if (hierarchy.getLabelOf(d).getTreeLabel().isEmpty() && notVisitedDescs.add(d)) {
+                    toVisit.add(d);
+                }
             }
         }
         return notVisitedDescs;
@@ -516,8 +561,12 @@ class BenderLabeler implements Labeler {
             Node anc,
             Hierarchy hierarchy) {
         Collection<Node> directDescs = hierarchy.exploreDirectDescendants(anc);
+        boolean labeled = !hierarchy.getLabelOf(desc).getTreeLabel().isEmpty();
         for (Node n : directDescs) {
-            Collection<Node> nDescs = hierarchy.exploreDescendants(n);
+            //an unlabeled desc is left to another kid only if labeling that kid will reach it
+            Collection<Node> nDescs = labeled ? hierarchy.exploreDescendants(n) :
+                hierarchy.getLabelOf(n).getTreeLabel().isEmpty() ? notVisitedDescs(n, hierarchy) :
+                Collections.<Node>emptySet();
             if (nDescs.contains(desc)) {
                 return true;
             }
@@ -622,14 +671,29 @@ class BenderLabeler implements Labeler {
         Collection<Node> descs = hierarchy.exploreDirectDescendants(curAnc);
         TreeSet<Interval> orderedDescTreeIntervals = new TreeSet<Interval>(intervalComparator);
 
+        List<Interval> descTreeIntervals = new ArrayList<Interval>(descs.size());
         for (Node desc : descs) {
             Interval curDescTreeInterval = hierarchy.getLabelOf(desc).getTreeLabel();
             if (!curDescTreeInterval.isEmpty()) {
                 if (curAncTreeInterval.contains(curDescTreeInterval)) {
-                    orderedDescTreeIntervals.add(curDescTreeInterval);
+                    descTreeIntervals.add(curDescTreeInterval);
                 }
             }
         }
+        //through a transitive edge, a direct descendant may lie within the tree label of another;
+        //only the outermost ones delimit the free subintervals
+        for (Interval curDescTreeInterval : descTreeIntervals) {
+            boolean outermost = true;
+            for (Interval other : descTreeIntervals) {
+                if (!other.equals(curDescTreeInterval) && other.contains(curDescTreeInterval)) {
+                    outermost = false;
+                    break;
+                }
+            }
+            if (outermost) {
+                orderedDescTreeIntervals.add(curDescTreeInterval);
+            }
+        }
 
         Interval prev = null;
         for (Interval cur : orderedDescTreeIntervals) {
@@ -756,6 +820,19 @@ class RelabelClassesInfo {
     }
 }
 
+class PropagatedLabelChange {
+
+    final Label label;
+    final Interval newTreeLabel;
+    final boolean direct;
+
+    PropagatedLabelChange(Label label, Interval newTreeLabel, boolean direct) {
+        this.label = label;
+        this.newTreeLabel = newTreeLabel;
+        this.direct = direct;
+    }
+}
+
 class ProperAncInfo {
 
     private final Node properAnc;
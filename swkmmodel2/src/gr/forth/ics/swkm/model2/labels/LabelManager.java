@@ -40,7 +40,7 @@ import gr.forth.ics.swkm.model2.Triple;
  * services to a {@linkplain Model}.
  *
  * <p>This interface also defines triple event callbacks ({@linkplain #tripleAdded(Triple)},
- * {@linkplain #tripleDeleted(Triple)})
+ * {@linkplain #triplesAdded(Iterable)}, {@linkplain #tripleDeleted(Triple)})
  *
  * @author Andreou Dimitris, email: jim.andreou (at) gmail (dot) com
  */
@@ -54,6 +54,15 @@ public interface LabelManager {
      */
     void tripleAdded(Triple triple);
 
+    /**
+     * Notifies this LabelManager that a batch of triples was added to the model this LabelManager
+     * provides services for, in a single step (e.g. at the end of a {@linkplain Model#bulkLoad() bulk load}).
+     * This is equivalent to invoking {@linkplain #tripleAdded(Triple)} for each triple.
+     *
+     * @param triples the triples that were added to the model this LabelManager provides services for
+     */
+    void triplesAdded(Iterable<? extends Triple> triples);
+
     /**
      * Notifies this LabelManager that a triple is deleted from the model this LabelManager provides services for
      * (updates to the triple named graphs are irrelevant).
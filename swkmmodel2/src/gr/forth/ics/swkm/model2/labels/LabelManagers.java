@@ -32,15 +32,35 @@
 package gr.forth.ics.swkm.model2.labels;
 
 import com.google.common.base.Preconditions;
+import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import gr.forth.ics.graph.Direction;
+import gr.forth.ics.graph.Edge;
+import gr.forth.ics.graph.Graph;
 import gr.forth.ics.graph.Node;
+import gr.forth.ics.graph.PrimaryGraph;
 import gr.forth.ics.swkm.model2.Model;
+import gr.forth.ics.swkm.model2.RdfNode;
+import gr.forth.ics.swkm.model2.RdfType;
 import gr.forth.ics.swkm.model2.Resource;
 import gr.forth.ics.swkm.model2.Triple;
+import gr.forth.ics.swkm.model2.Uri;
+import gr.forth.ics.swkm.model2.vocabulary.Rdf;
+import gr.forth.ics.swkm.model2.vocabulary.RdfSchema;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 /**
  * A collection of {@linkplain LabelManager} implementations.
@@ -61,10 +81,30 @@ public class LabelManagers {
         private PredefinedLabels predefinedLabels;
 
         private Map<Resource, Label> resourcesToLabels = null;
+
+        //null means labeling on the calling thread
+        private final ExecutorService executor;
+
+        private Map<RdfType, Long> lastLabelingTimes = Collections.emptyMap();
         
         public NonIncrementalMainMemoryManager(Model model, Labeler labeler) {
+            this(model, labeler, null);
+        }
+
+        /**
+         * Creates a manager that labels the four {@code is-a} hierarchies concurrently, using the
+         * specified executor. The labeler must then be safe to be used concurrently
+         * (the {@linkplain Labelers#newDefault() default} one is).
+         *
+         * @param model the model to provide labeling services for
+         * @param labeler the labeler to use
+         * @param executor the executor to run the labeling of each hierarchy, or {@code null} to label
+         * them one after another on the calling thread
+         */
+        public NonIncrementalMainMemoryManager(Model model, Labeler labeler, ExecutorService executor) {
             this.model = Preconditions.checkNotNull(model);
             this.labeler = Preconditions.checkNotNull(labeler);
+            this.executor = executor;
         }
 
         private void clearLabels() {
@@ -84,6 +124,15 @@ public class LabelManagers {
             clearLabels();
         }
 
+        /**
+         * Invalidates any existing labeling.
+         *
+         * @param triples triples that were added
+         */
+        public void triplesAdded(Iterable<? extends Triple> triples) {
+            clearLabels();
+        }
+
         /**
          * Invalidates any existing labeling.
          *
@@ -105,6 +154,11 @@ public class LabelManagers {
         /**
          * Recalculates the labels for all {@code is-a} relations, specifically for classes,
          * metaclasses, properties and metaproperties.
+         *
+         * <p>If the hierarchies are labeled by an executor and the calling thread is interrupted
+         * while waiting for them, the labelings are cancelled and a {@code RuntimeException} is
+         * thrown, with the {@code InterruptedException} as its cause; the interrupt status of
+         * the thread is restored, and no labels are made available.
          */
         public void updateLabels(PredefinedLabels predefinedLabels) {
             /**
@@ -118,37 +172,95 @@ public class LabelManagers {
              * After this call, hierarchies and map from Resource to Node must be consistent
              * and ready to be used.
              */
-            Collection<Callable<Hierarchy>> hierarchyFactories = Lists.newArrayListWithExpectedSize(4);
-            hierarchyFactories.add(new Callable<Hierarchy>() { public Hierarchy call() {
-                return MainMemoryHierarchy.newClassHierarchy(model);
-            } });
-            hierarchyFactories.add(new Callable<Hierarchy>() { public Hierarchy call() {
-                return MainMemoryHierarchy.newMetaclassHierarchy(model);
-            } });
-            hierarchyFactories.add(new Callable<Hierarchy>() { public Hierarchy call() {
-                return MainMemoryHierarchy.newPropertyHierarchy(model);
-            } });
-            hierarchyFactories.add(new Callable<Hierarchy>() { public Hierarchy call() {
-                return MainMemoryHierarchy.newMetapropertyHierarchy(model);
-            } });
+            //the hierarchies are built out of the model on the calling thread, since that may map
+            //nodes of the model, which is not safe concurrently; only the labeling of each (which
+            //reads just the hierarchy) is left to the executor
+            List<HierarchyLabeling> labelings = Lists.newArrayListWithExpectedSize(4);
+            for (RdfType type : EnumSet.of(RdfType.CLASS, RdfType.METACLASS, RdfType.PROPERTY, RdfType.METAPROPERTY)) {
+                labelings.add(new HierarchyLabeling(type));
+            }
 
-            resourcesToLabels = Maps.newHashMapWithExpectedSize(128);
-            for (Callable<Hierarchy> hierarchyFactory : hierarchyFactories) {
+            List<Hierarchy> hierarchies = Lists.newArrayListWithExpectedSize(4);
+            if (executor == null) {
+                for (HierarchyLabeling labeling : labelings) {
+                    hierarchies.add(labeling.call());
+                }
+            } else {
                 try {
-                    Hierarchy hierarchy = hierarchyFactory.call();
-                    if (hierarchy == null) {
-                        continue;
+                    for (Future<Hierarchy> future : executor.invokeAll(labelings)) {
+                        hierarchies.add(future.get());
                     }
-                    labeler.assignLabels(hierarchy, null);
-                    for (Node n : hierarchy.exploredGraph().nodes()) {
-                        resourcesToLabels.put((Resource)n.getValue(), hierarchy.getLabelOf(n));
+                } catch (InterruptedException e) {
+                    //invokeAll() has cancelled any unfinished labeling; no partial labels are kept
+                    Thread.currentThread().interrupt();
+                    throw new RuntimeException("Interrupted while labeling", e);
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof RuntimeException) {
+                        throw (RuntimeException)e.getCause();
+                    } else if (e.getCause() instanceof Error) {
+                        throw (Error)e.getCause();
                     }
-                } catch (RuntimeException e) {
-                    throw e;
-                } catch (Exception e) {
-                    throw new RuntimeException(e);
+                    throw new RuntimeException(e.getCause());
                 }
             }
+
+            Map<RdfType, Long> times = new EnumMap<RdfType, Long>(RdfType.class);
+            for (HierarchyLabeling labeling : labelings) {
+                times.put(labeling.type, labeling.elapsedNanos);
+            }
+            lastLabelingTimes = Collections.unmodifiableMap(times);
+
+            resourcesToLabels = Maps.newHashMapWithExpectedSize(128);
+            for (Hierarchy hierarchy : hierarchies) {
+                if (hierarchy == null) {
+                    continue;
+                }
+                for (Node n : hierarchy.exploredGraph().nodes()) {
+                    resourcesToLabels.put((Resource)n.getValue(), hierarchy.getLabelOf(n));
+                }
+            }
+        }
+
+        /**
+         * Returns how long the last {@linkplain #updateLabels(PredefinedLabels) labeling} took for
+         * each hierarchy (building it out of the model and labeling it), in nanoseconds. The hierarchies
+         * are identified by the type of their nodes.
+         *
+         * @return the duration of the last labeling of each hierarchy, or an empty map if no labeling took place yet
+         */
+        public Map<RdfType, Long> getLastLabelingTimes() {
+            return lastLabelingTimes;
+        }
+
+        /**
+         * Labels a single hierarchy, which is built out of the model when this is created.
+         */
+        private class HierarchyLabeling implements Callable<Hierarchy> {
+            final RdfType type;
+            private final Hierarchy hierarchy;
+            volatile long elapsedNanos;
+
+            HierarchyLabeling(RdfType type) {
+                long start = System.nanoTime();
+                this.type = type;
+                switch (type) {
+                    case CLASS: hierarchy = MainMemoryHierarchy.newClassHierarchy(model); break;
+                    case METACLASS: hierarchy = MainMemoryHierarchy.newMetaclassHierarchy(model); break;
+                    case PROPERTY: hierarchy = MainMemoryHierarchy.newPropertyHierarchy(model); break;
+                    case METAPROPERTY: hierarchy = MainMemoryHierarchy.newMetapropertyHierarchy(model); break;
+                    default: throw new AssertionError(type);
+                }
+                elapsedNanos = System.nanoTime() - start;
+            }
+
+            public Hierarchy call() {
+                long start = System.nanoTime();
+                if (hierarchy != null) {
+                    labeler.assignLabels(hierarchy, null);
+                }
+                elapsedNanos += System.nanoTime() - start;
+                return hierarchy;
+            }
         }
 
         public boolean isFirstAncestorOfSecond(Resource maybeAncestor, Resource maybeDescendant) {
@@ -165,4 +277,422 @@ public class LabelManagers {
             return ancestorLabel.contains(descendantLabel);
         }
     }
+
+    /**
+     * A main-memory LabelManager that maintains its labels incrementally. It keeps the graph of
+     * each {@code is-a} hierarchy (class, metaclass, property, metaproperty) along with its labels,
+     * and applies the changes of the model to them, so that only the affected labels change:
+     * <ul>
+     * <li>Triples that add no schema node and no {@code rdfs:subClassOf}/{@code rdfs:subPropertyOf}
+     * edge (e.g. plain instance triples) leave the labels intact.
+     * <li>New schema nodes and new {@code is-a} edges are given to the {@linkplain Labeler labeler}
+     * along with the existing labels; it labels the new sub-hierarchies in the free gaps of their
+     * parents, moving the siblings of their ancestors only if there is no room, and propagates the
+     * labels of old nodes over the new edges.
+     * <li>Deleting an {@code is-a} edge removes the propagated labels it induced from the ancestors
+     * of the parent, and, if the parent's tree label contained the child's, relabels the subtree of
+     * the child (in the spanning tree of the labeling) under the rest of its parents.
+     * </ul>
+     * A hierarchy is labeled from scratch only the first time, or if a schema node changes hierarchy
+     * (e.g. a class becoming a metaclass). The graphs are kept in sync through the triple
+     * notifications only, so this manager must be {@linkplain Model#setLabelManager(LabelManager) set}
+     * to a model before it is modified.
+     *
+     * <p>Changes are examined lazily (when labels are next needed), so that the types of
+     * the involved nodes are already inferred.
+     */
+    public static class IncrementalMainMemoryManager implements LabelManager {
+        private static final EnumSet<RdfType> hierarchyTypes = EnumSet.of(
+                RdfType.CLASS, RdfType.METACLASS, RdfType.PROPERTY, RdfType.METAPROPERTY);
+
+        //beyond this many unapplied changes, relabeling everything is just as cheap
+        private static final int MAX_PENDING = 1 << 14;
+
+        private final Model model;
+        private final Labeler labeler;
+
+        private final Map<RdfType, IncrementalHierarchy> hierarchies =
+                new EnumMap<RdfType, IncrementalHierarchy>(RdfType.class);
+
+        //hierarchies that must be labeled from scratch
+        private final EnumSet<RdfType> invalid = EnumSet.copyOf(hierarchyTypes);
+
+        //triples added or deleted since the last examination
+        private List<Change> pending = Lists.newArrayList();
+
+        //examined changes that affect some hierarchy, in the order they happened
+        private List<Change> changes = Lists.newArrayList();
+
+        public IncrementalMainMemoryManager(Model model, Labeler labeler) {
+            this.model = Preconditions.checkNotNull(model);
+            this.labeler = Preconditions.checkNotNull(labeler);
+            for (RdfType type : hierarchyTypes) {
+                hierarchies.put(type, new IncrementalHierarchy(type));
+            }
+        }
+
+        public Model getTargetModel() {
+            return model;
+        }
+
+        public void tripleAdded(Triple triple) {
+            if (!invalid.containsAll(hierarchyTypes)) {
+                pending.add(new Change(triple, true));
+                checkPending();
+            }
+        }
+
+        public void triplesAdded(Iterable<? extends Triple> triples) {
+            if (!invalid.containsAll(hierarchyTypes)) {
+                for (Triple triple : triples) {
+                    pending.add(new Change(triple, true));
+                }
+                checkPending();
+            }
+        }
+
+        public void tripleDeleted(Triple triple) {
+            if (!invalid.containsAll(hierarchyTypes) && hierarchyOfEdge(triple) != null) {
+                pending.add(new Change(triple, false));
+                checkPending();
+            }
+        }
+
+        private void checkPending() {
+            if (pending.size() + changes.size() > MAX_PENDING) {
+                invalid.addAll(hierarchyTypes);
+                pending = Lists.newArrayList();
+                changes = Lists.newArrayList();
+            }
+        }
+
+        /**
+         * Returns the hierarchy in which the specified triple is an edge, or {@code null} if it
+         * is not an {@code is-a} triple. As when building a hierarchy out of a model, the type of the
+         * subject decides among the hierarchies of {@code rdfs:subClassOf} triples.
+         */
+        private static RdfType hierarchyOfEdge(Triple triple) {
+            Resource predicate = triple.predicate();
+            if (predicate.is(RdfSchema.SUBPROPERTYOF)) {
+                return RdfType.PROPERTY;
+            }
+            if (predicate.is(RdfSchema.SUBCLASSOF)) {
+                RdfType type = triple.subject().type();
+                if (type == RdfType.CLASS || type == RdfType.METACLASS || type == RdfType.METAPROPERTY) {
+                    return type;
+                }
+            }
+            return null;
+        }
+
+        private void examinePending() {
+            if (pending.isEmpty()) {
+                return;
+            }
+            for (Change change : pending) {
+                Triple triple = change.triple;
+                if (hierarchyOfEdge(triple) != null || isNewNode(triple.subject())
+                        || isNewNode(triple.predicate()) || isNewNode(triple.object())) {
+                    changes.add(change);
+                }
+            }
+            pending = Lists.newArrayList();
+        }
+
+        //whether the node belongs to a hierarchy that does not contain it yet
+        private boolean isNewNode(RdfNode node) {
+            RdfType type = node.type();
+            return hierarchyTypes.contains(type) && !invalid.contains(type)
+                    && !hierarchies.get(type).nodes.containsKey(node);
+        }
+
+        /**
+         * {@inheritDoc}
+         *
+         * @return {@inheritDoc}
+         */
+        public boolean areLabelsAvailable() {
+            examinePending();
+            return invalid.isEmpty() && changes.isEmpty();
+        }
+
+        /**
+         * Applies the changes of the model to the {@code is-a} hierarchies and relabels the
+         * affected parts of them.
+         */
+        public void updateLabels(PredefinedLabels predefinedLabels) {
+            examinePending();
+            for (Change change : changes) {
+                apply(change);
+            }
+            changes = Lists.newArrayList();
+            for (RdfType type : hierarchyTypes) {
+                IncrementalHierarchy hierarchy = hierarchies.get(type);
+                if (invalid.contains(type)) {
+                    hierarchy.rebuild();
+                } else if (!hierarchy.changed) {
+                    continue;
+                }
+                //if labeling fails, the hierarchy is labeled from scratch the next time
+                invalid.add(type);
+                hierarchy.assignLabels();
+                invalid.remove(type);
+            }
+        }
+
+        private void apply(Change change) {
+            Triple triple = change.triple;
+            for (RdfNode node : new RdfNode[] { triple.subject(), triple.predicate(), triple.object() }) {
+                place(node);
+            }
+            RdfType type = hierarchyOfEdge(triple);
+            if (type == null || invalid.contains(type)) {
+                return;
+            }
+            IncrementalHierarchy hierarchy = hierarchies.get(type);
+            if (change.added) {
+                hierarchy.addEdge(triple);
+            } else {
+                hierarchy.removeEdge(triple);
+            }
+        }
+
+        private void place(RdfNode node) {
+            RdfType type = node.type();
+            if (!hierarchyTypes.contains(type) || invalid.contains(type)
+                    || hierarchies.get(type).nodes.containsKey(node)) {
+                return;
+            }
+            //a new node of this hierarchy; if it is in another one, it moved
+            for (RdfType other : hierarchyTypes) {
+                if (other != type && hierarchies.get(other).nodes.containsKey(node)) {
+                    invalid.add(other);
+                    invalid.add(type);
+                    return;
+                }
+            }
+            hierarchies.get(type).addNode(node);
+        }
+
+        /**
+         * Returns the current label of a node, or {@code null} if it has none.
+         */
+        Label getLabelOf(Resource resource) {
+            IncrementalHierarchy hierarchy = hierarchies.get(resource.type());
+            return hierarchy == null ? null : hierarchy.labels.get(resource);
+        }
+
+        public boolean isFirstAncestorOfSecond(Resource maybeAncestor, Resource maybeDescendant) {
+            if (!areLabelsAvailable()) {
+                updateLabels(null);
+            }
+            if (maybeAncestor.type() != maybeDescendant.type()) {
+                //different type means by definition incomparable labels
+                return false;
+            }
+            Label ancestorLabel = getLabelOf(maybeAncestor);
+            Label descendantLabel = getLabelOf(maybeDescendant);
+            if (ancestorLabel == null || descendantLabel == null) {
+                return false;
+            }
+            return ancestorLabel.contains(descendantLabel);
+        }
+
+        private static class Change {
+            final Triple triple;
+            final boolean added;
+
+            Change(Triple triple, boolean added) {
+                this.triple = triple;
+                this.added = added;
+            }
+        }
+
+        /**
+         * The graph and the labels of one hierarchy. Kids point to (Direction.OUT) parents; edges
+         * have as value their triple, except for the edges that connect the nodes without a parent
+         * to the root of the hierarchy, which have none. The property hierarchy has no predefined
+         * root, so it is given one without a value; otherwise the top-level properties would be
+         * labeled as separate hierarchies, and one of them gaining a parent would no longer reserve
+         * its interval.
+         */
+        private class IncrementalHierarchy {
+            final RdfType type;
+            Graph graph = new PrimaryGraph();
+            final Map<RdfNode, Node> nodes = Maps.newHashMap();
+            final Map<RdfNode, Label> labels = Maps.newHashMap();
+            Node root;
+            //whether the graph changed since it was last labeled
+            boolean changed;
+
+            IncrementalHierarchy(RdfType type) {
+                this.type = type;
+            }
+
+            void rebuild() {
+                Graph newGraph = newHierarchyGraph(type);
+                graph = newGraph != null ? newGraph : new PrimaryGraph();
+                nodes.clear();
+                labels.clear();
+                root = null;
+                for (Node n : graph.nodes()) {
+                    nodes.put((RdfNode)n.getValue(), n);
+                }
+                if (type == RdfType.PROPERTY && !nodes.isEmpty()) {
+                    root = graph.newNode();
+                    for (Node n : nodes.values()) {
+                        if (graph.outDegree(n) == 0) {
+                            graph.newEdge(n, root);
+                        }
+                    }
+                } else if (!nodes.isEmpty()) {
+                    root = nodes.get(model.mapResource(rootUri()));
+                }
+                changed = true;
+            }
+
+            private Graph newHierarchyGraph(RdfType type) {
+                switch (type) {
+                    case CLASS: return AbstractHierarchy.newClassHierarchyGraph(model);
+                    case METACLASS: return AbstractHierarchy.newMetaclassHierarchyGraph(model);
+                    case PROPERTY: return AbstractHierarchy.newPropertyHierarchyGraph(model);
+                    case METAPROPERTY: return AbstractHierarchy.newMetapropertyHierarchyGraph(model);
+                    default: throw new AssertionError(type);
+                }
+            }
+
+            private Uri rootUri() {
+                switch (type) {
+                    case CLASS: return RdfSchema.RESOURCE;
+                    case METACLASS: return RdfSchema.CLASS;
+                    case METAPROPERTY: return Rdf.PROPERTY;
+                    default: throw new AssertionError(type);
+                }
+            }
+
+            Node addNode(RdfNode value) {
+                Node n = nodes.get(value);
+                if (n != null) {
+                    return n;
+                }
+                changed = true;
+                if (root == null) {
+                    RdfNode rootValue = type == RdfType.PROPERTY ? null : model.mapResource(rootUri());
+                    root = graph.newNode(rootValue);
+                    if (rootValue != null) {
+                        nodes.put(rootValue, root);
+                        if (rootValue.equals(value)) {
+                            return root;
+                        }
+                    }
+                }
+                n = graph.newNode(value);
+                nodes.put(value, n);
+                graph.newEdge(n, root);
+                return n;
+            }
+
+            void addEdge(Triple triple) {
+                Node kid = addNode(triple.subject());
+                Node parent = addNode(triple.object());
+                if (findEdge(kid, parent, true) != null) {
+                    return;
+                }
+                //a new node is to be labeled under its actual parents; an old one keeps its
+                //tree label under the root, and the parent gets it as a propagated label
+                Edge rootEdge = findEdge(kid, root, false);
+                if (rootEdge != null && (parent == root || !labels.containsKey(triple.subject()))) {
+                    graph.removeEdge(rootEdge);
+                }
+                graph.newEdge(kid, parent, triple);
+                changed = true;
+            }
+
+            //the edge from kid to parent that either has a triple, or is an edge to the root
+            private Edge findEdge(Node kid, Node parent, boolean withTriple) {
+                for (Edge e : graph.edges(kid, parent, Direction.OUT)) {
+                    if ((e.getValue() != null) == withTriple) {
+                        return e;
+                    }
+                }
+                return null;
+            }
+
+            void removeEdge(Triple triple) {
+                Node kid = nodes.get(triple.subject());
+                Node parent = nodes.get(triple.object());
+                if (kid == null || parent == null) {
+                    return;
+                }
+                Edge edge = findEdge(kid, parent, true);
+                if (edge == null) {
+                    return;
+                }
+                Label kidLabel = labels.get(triple.subject());
+                Label parentLabel = labels.get(triple.object());
+                if (kidLabel != null && parentLabel != null) {
+                    Collection<Node> descendants = collect(Collections.singleton(kid), Direction.IN);
+                    List<Node> affected = Lists.newArrayList();
+                    affected.add(parent);
+                    if (parentLabel.getTreeLabel().contains(kidLabel.getTreeLabel())) {
+                        //the subtree of the kid would still be contained in the parent: relabel it
+                        Interval subtree = kidLabel.getTreeLabel();
+                        for (Node n : descendants) {
+                            Label label = labels.get((RdfNode)n.getValue());
+                            if (label != null && subtree.contains(label.getTreeLabel())) {
+                                affected.add(n);
+                            }
+                        }
+                    }
+                    //propagated labels of the descendants that reached the affected nodes' ancestors
+                    //are removed; the labeler propagates again those that still hold
+                    for (Node n : collect(affected, Direction.OUT)) {
+                        Label label = labels.get((RdfNode)n.getValue());
+                        for (Node descendant : descendants) {
+                            Label descendantLabel = labels.get((RdfNode)descendant.getValue());
+                            if (label != null && descendantLabel != null && label != descendantLabel) {
+                                label.removePropagatedLabel(descendantLabel.getTreeLabel(), true);
+                                label.removePropagatedLabel(descendantLabel.getTreeLabel(), false);
+                            }
+                        }
+                    }
+                    for (Node n : affected.subList(1, affected.size())) {
+                        labels.remove((RdfNode)n.getValue());
+                    }
+                }
+                graph.removeEdge(edge);
+                if (kid != root && graph.outDegree(kid) == 0) {
+                    graph.newEdge(kid, root);
+                }
+                changed = true;
+            }
+
+            //the specified nodes and all nodes reachable from them in the specified direction
+            private Collection<Node> collect(Collection<Node> from, Direction direction) {
+                Set<Node> visited = Sets.newHashSet(from);
+                LinkedList<Node> stack = Lists.newLinkedList(from);
+                while (!stack.isEmpty()) {
+                    for (Node next : graph.adjacentNodes(stack.removeLast(), direction)) {
+                        if (visited.add(next)) {
+                            stack.addLast(next);
+                        }
+                    }
+                }
+                return visited;
+            }
+
+            void assignLabels() {
+                changed = false;
+                if (graph.nodeCount() == 0) {
+                    labels.clear();
+                    return;
+                }
+                Hierarchy hierarchy = new MainMemoryHierarchy(graph, labels);
+                labeler.assignLabels(hierarchy, null);
+                for (Node n : graph.nodes()) {
+                    labels.put((RdfNode)n.getValue(), hierarchy.getLabelOf(n));
+                }
+            }
+        }
+    }
 }
@@ -42,7 +42,9 @@ import gr.forth.ics.graph.algo.Orders;
 import gr.forth.ics.graph.Filters;
 import gr.forth.ics.swkm.model2.Model;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -57,7 +59,26 @@ public class MainMemoryHierarchy extends AbstractHierarchy {
     private int nextIndex;
 
     public MainMemoryHierarchy(Graph graph) {
+        this(graph, Collections.<Object, Label>emptyMap());
+    }
+
+    /**
+     * Creates a hierarchy in which the nodes whose values are mapped by {@code existingLabels}
+     * already have (a copy of) the respective label as their existing label; all other nodes are new.
+     *
+     * @param graph the graph of the hierarchy
+     * @param existingLabels the existing labels, keyed by node value
+     */
+    public MainMemoryHierarchy(Graph graph, Map<?, Label> existingLabels) {
         super(graph);
+        if (!existingLabels.isEmpty()) {
+            for (Node n : graph.nodes()) {
+                Label label = existingLabels.get(n.getValue());
+                if (label != null) {
+                    n.putWeakly(existingLabelKey, label.copy());
+                }
+            }
+        }
         List<Node> roots = findRoots(graph);
         if (roots.isEmpty()) {
             throw new IllegalArgumentException("No root node found for graph: " + graph);
@@ -65,7 +86,9 @@ public class MainMemoryHierarchy extends AbstractHierarchy {
             root = null; //multiple roots means no single root
         } else {
             root = roots.get(0);
-            root.putWeakly(existingLabelKey, new Label(new Interval(0, Integer.MAX_VALUE)));
+            if (!root.has(existingLabelKey)) {
+                root.putWeakly(existingLabelKey, new Label(new Interval(0, Integer.MAX_VALUE)));
+            }
         }
         recalculateIndexForNewHierarchy();
     }
@@ -32,7 +32,9 @@
 package gr.forth.ics.swkm.model2.validation;
 
 import com.google.common.collect.Iterables;
+import com.google.common.collect.ListMultimap;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import gr.forth.ics.graph.Graph;
 import gr.forth.ics.graph.path.Cycles;
@@ -53,11 +55,12 @@ import gr.forth.ics.swkm.model2.vocabulary.Rdf;
 import gr.forth.ics.swkm.model2.vocabulary.RdfSchema;
 import gr.forth.ics.swkm.model2.vocabulary.RdfSuite;
 import gr.forth.ics.swkm.model2.vocabulary.XmlSchema;
-import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.EnumSet;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -435,8 +438,22 @@ public abstract class Validator {
             final boolean domainIsRdfSuiteClass = domainResource.is(RdfSuite.CLASS);
             final boolean rangeIsRdfSuiteClass = rangeResource.is(RdfSuite.CLASS);
             
-            for (Triple pi : model.triples().p(property).fetch()) {
-                Resource rdfType = model.mapResource(Rdf.TYPE);
+            //the types of all subjects and objects, and of their ancestors, are found at once
+            List<Triple> propertyInstances = Lists.newArrayList(model.triples().p(property).fetch());
+            Map<ObjectNode, List<ObjectNode>> typedNodes = Maps.newHashMap();
+            for (Triple pi : propertyInstances) {
+                addTypedNodes(pi.subject(), typedNodes);
+                if (pi.object().isObjectNode()) {
+                    addTypedNodes((ObjectNode)pi.object(), typedNodes);
+                }
+            }
+            Set<ObjectNode> allTypedNodes = Sets.newHashSet();
+            for (List<ObjectNode> nodes : typedNodes.values()) {
+                allTypedNodes.addAll(nodes);
+            }
+            ListMultimap<ObjectNode, Triple> types = model.triples().p(Rdf.TYPE).fetchForSubjects(allTypedNodes);
+
+            for (Triple pi : propertyInstances) {
                 do { //check that subject has at least one compatible type-of
                     ObjectNode subj = pi.subject();
                     if (domainIsRdfSuiteClass && EnumSet.of(RdfType.METACLASS,
@@ -444,24 +461,7 @@ public abstract class Validator {
                         break; //RdfSuite#CLASS allows both metaclasses and metaproperties
                     }
 
-                    //something might be a subclass/subproperty etc of something with the desired type
-                    @SuppressWarnings("unchecked") //all inheritable are ObjectNodes
-                    Iterable<ObjectNode> subjects = Iterables.concat(
-                            Arrays.asList(subj),
-                            !subj.type().isSchema() ? Collections.emptyList() :
-                                (Iterable)subj.asInheritable().ancestors(Transitively.YES));
-
-                    boolean found = false;
-                    for (ObjectNode s : subjects) {
-                        for (RdfNode type :  model.triples().s(s).p(rdfType).fetch().objects()) {
-                            Inheritable inheritable = type.asInheritable();
-                            if (domain.isAncestorOf(inheritable)) {
-                                found = true;
-                                break;
-                            }
-                        }
-                    }
-                    if (!found) {
+                    if (!hasTypeUnder(domain, typedNodes.get(subj), types)) {
                         ErrorCode.wronglyTypedSubject(pi, domainResource).handledBy(handler);
                     }
                 } while (false); //this while is simply to allow an early break
@@ -474,24 +474,8 @@ public abstract class Validator {
                                 RdfType.METAPROPERTY).contains(obj.type())) {
                             break; //RdfSuite#CLASS allows both metaclasses and metaproperties
                         }
-                    //something might be a subclass/subproperty etc of something with the desired type
-                    @SuppressWarnings("unchecked") //all inheritable are ObjectNodes
-                    Iterable<ObjectNode> objects = Iterables.concat(
-                            Arrays.asList(obj),
-                            !obj.type().isSchema() ? Collections.emptyList() :
-                                (Iterable)obj.asInheritable().ancestors(Transitively.YES));
 
-                        boolean found = false;
-                        for (ObjectNode o : objects) {
-                            for (RdfNode type :  model.triples().s(o).p(rdfType).fetch().objects()) {
-                                Inheritable inheritable = type.asInheritable();
-                                if (range.isAncestorOf(inheritable)) {
-                                    found = true;
-                                    break;
-                                }
-                            }
-                        }
-                        if (!found) {
+                        if (!hasTypeUnder(range, typedNodes.get(obj), types)) {
                             ErrorCode.wronglyTypedObject(pi, rangeResource).handledBy(handler);
                         }
                     } else {
@@ -509,6 +493,35 @@ public abstract class Validator {
         }
     }
 
+    /**
+     * Maps the node to the nodes whose types are its types as well, i.e. itself and,
+     * since something might be a subclass/subproperty etc of something with the desired type, its ancestors.
+     */
+    private static void addTypedNodes(ObjectNode node, Map<ObjectNode, List<ObjectNode>> typedNodes) {
+        if (typedNodes.containsKey(node)) {
+            return;
+        }
+        List<ObjectNode> nodes = Lists.newArrayList(node);
+        if (node.type().isSchema()) {
+            @SuppressWarnings("unchecked") //all inheritable are ObjectNodes
+            Iterable<ObjectNode> ancestors = (Iterable)node.asInheritable().ancestors(Transitively.YES);
+            Iterables.addAll(nodes, ancestors);
+        }
+        typedNodes.put(node, nodes);
+    }
+
+    private static boolean hasTypeUnder(Inheritable domainOrRange, List<ObjectNode> typedNodes,
+            ListMultimap<ObjectNode, Triple> types) {
+        for (ObjectNode node : typedNodes) {
+            for (Triple type : types.get(node)) {
+                if (domainOrRange.isAncestorOf(type.object().asInheritable())) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
     /**
      *
      * @param model the model to validate
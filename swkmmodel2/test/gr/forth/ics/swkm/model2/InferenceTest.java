@@ -163,6 +163,19 @@ public class InferenceTest extends TestCase {
         Inference.closure(model);
         assert model.triples().s(ns + "a").p(ns + "P").o(ns + "b").fetch().iterator().hasNext();
     }
+
+    public void testClosureOnHorizontalModel() {
+        Model model = ModelBuilder.newHorizontal().build();
+        model.add().s(ns + "A").p(RdfSchema.SUBCLASSOF).o(ns + "B");
+        model.add().s(ns + "a").p(Rdf.TYPE).o(ns + "A");
+        model.add().s(ns + "Q").p(RdfSchema.SUBPROPERTYOF).o(ns + "P");
+        model.add().s(ns + "a").p(ns + "Q").o(ns + "b");
+        maybeCreateLabels(model);
+
+        Inference.closure(model);
+        assert model.triples().s(ns + "a").p(Rdf.TYPE).o(ns + "B").fetch().iterator().hasNext();
+        assert model.triples().s(ns + "a").p(ns + "P").o(ns + "b").fetch().iterator().hasNext();
+    }
     
     private static boolean contains(Model model, Triple triple) {
         Triples t = model.triples()
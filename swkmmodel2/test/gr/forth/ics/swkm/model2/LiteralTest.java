@@ -77,6 +77,27 @@ public class LiteralTest extends TestCase {
         assertExpected("value1\nvalue2", "en", null, Literal.parse("  \"value1\nvalue2\"@en"));
     }
 
+    public void testTryParse() {
+        assertExpected("value", "lang", null, Literal.tryParse("\"value\"@lang"));
+        assertExpected("value", null, "type", Literal.tryParse("\"value\"^^type"));
+        assertExpected("value", null, null, Literal.tryParse(" \t\"value\""));
+        assertExpected("value1\nvalue2", "en", null, Literal.tryParse("\"value1\nvalue2\"@en"));
+        //inner quotes that are not followed by a language or a type are part of the value
+        assertExpected("a\"b", null, null, Literal.tryParse("\"a\"b\""));
+        assertExpected("a\"b", "en", null, Literal.tryParse("\"a\"b\"@en"));
+        assertExpected("a\"^b", null, "type", Literal.tryParse("\"a\"^b\"^^type"));
+        assertExpected("", null, null, Literal.tryParse("\"\""));
+
+        assertNull(Literal.tryParse(null));
+        assertNull(Literal.tryParse(""));
+        assertNull(Literal.tryParse("  "));
+        assertNull(Literal.tryParse("value"));
+        assertNull(Literal.tryParse("http://ns#\"value\""));
+        assertNull(Literal.tryParse("\"value"));
+        assertNull(Literal.tryParse("\"value\"x"));
+        assertNull(Literal.tryParse("\"value\"^"));
+    }
+
     private static void assertExpected(String literal, String lang, String type, Literal actual) {
         assertEquals(literal, actual.getValue());
         assertEquals(lang, actual.getLanguage());
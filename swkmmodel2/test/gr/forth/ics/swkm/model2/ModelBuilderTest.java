@@ -32,8 +32,16 @@
 
 package gr.forth.ics.swkm.model2;
 
+import com.google.common.collect.Iterables;
+import gr.forth.ics.swkm.model2.index.QueryCache;
+import gr.forth.ics.swkm.model2.labels.LabelManagers;
 import gr.forth.ics.swkm.model2.vocabulary.Rdf;
 import gr.forth.ics.swkm.model2.vocabulary.RdfSchema;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
 import junit.framework.TestCase;
 import junit.framework.TestSuite;
 
@@ -44,11 +52,17 @@ import junit.framework.TestSuite;
 public class ModelBuilderTest extends TestCase {
     private static String ns = "http://myDomain#";
     private final Model model;
+    private final QueryCache cache;
     private static Uri ngUri = new Uri("http://ng", "");
 
     public ModelBuilderTest(String testName, Model model) {
+        this(testName, model, null);
+    }
+
+    public ModelBuilderTest(String testName, Model model, QueryCache cache) {
         super(testName);
         this.model = model;
+        this.cache = cache;
     }
 
     public static TestSuite suite() {
@@ -57,15 +71,20 @@ public class ModelBuilderTest extends TestCase {
             ModelBuilder.newSparse().build(),
             ModelBuilder.newFull().build(),
             ModelBuilder.newTrees().build(),
+            ModelBuilder.newCompact().build(),
             ModelBuilder.newSparse().withTypeInference().build(),
             ModelBuilder.newFull().withTypeInference().build(),
             ModelBuilder.newTrees().withTypeInference().build(),
+            ModelBuilder.newCompact().withTypeInference().build(),
+            ModelBuilder.newSparse().withConcurrency().build(),
+            ModelBuilder.newCompact().withQueryCache(new QueryCache(16)).build(),
         };
 
         Model[] modelsWithoutTyping = {
             ModelBuilder.newSparse().withoutTypeInference().build(),
             ModelBuilder.newFull().withoutTypeInference().build(),
             ModelBuilder.newTrees().withoutTypeInference().build(),
+            ModelBuilder.newCompact().withoutTypeInference().build(),
             ModelBuilder.newHorizontal().build(),
         };
 
@@ -85,6 +104,31 @@ public class ModelBuilderTest extends TestCase {
                 ModelBuilder.newSparse().build()));
         suite.addTest(new ModelBuilderTest("testWithoutUriValidation",
                 ModelBuilder.newSparse().withoutUriValidation().build()));
+        suite.addTest(new ModelBuilderTest("testConcurrentReadersAndWriter",
+                ModelBuilder.newSparse().withConcurrency().build()));
+        suite.addTest(new ModelBuilderTest("testConcurrentReadersAndWriter",
+                ModelBuilder.newCompact().withConcurrency().build()));
+        suite.addTest(new ModelBuilderTest("testConcurrentReadersAndWriter",
+                ModelBuilder.newSparse().withConcurrency().withQueryCache(new QueryCache(16)).build()));
+        ModelBuilder.Builder[] builders = {
+            ModelBuilder.newSparse(),
+            ModelBuilder.newFull(),
+            ModelBuilder.newTrees(),
+            ModelBuilder.newCompact(),
+            ModelBuilder.newHorizontal(),
+        };
+        for (ModelBuilder.Builder builder : builders) {
+            QueryCache cache = new QueryCache(32);
+            suite.addTest(new ModelBuilderTest("testQueryCache", builder.withQueryCache(cache).build(), cache));
+        }
+        suite.addTest(new ModelBuilderTest("testPartitionConcurrentModel",
+                ModelBuilder.newCompact().withConcurrency().build()));
+        suite.addTest(new ModelBuilderTest("testConcurrentIterationIsSnapshot",
+                ModelBuilder.newSparse().withConcurrency().build()));
+        suite.addTest(new ModelBuilderTest("testWithIncrementalLabeling",
+                ModelBuilder.newSparse().withIncrementalLabeling().build()));
+        suite.addTest(new ModelBuilderTest("testWithIncrementalLabeling",
+                ModelBuilder.newCompact().withIncrementalLabeling().build()));
         return suite;
     }
 
@@ -118,6 +162,173 @@ public class ModelBuilderTest extends TestCase {
         }
         fail();
     }
+    public void testQueryCache() {
+        model.add().s(ns + "s1").p(ns + "p").o(ns + "o");
+        model.add().s(ns + "s2").p(ns + "p").o(ns + "o");
+        assertCachedQuery(2, false, model.triples().p(ns + "p").o(ns + "o"));
+        assertCachedQuery(2, true, model.triples().p(ns + "p").o(ns + "o"));
+
+        //only the results matching a new triple are invalidated
+        model.add().s(ns + "s1").p(ns + "q").o(ns + "o2");
+        assertCachedQuery(2, true, model.triples().p(ns + "p").o(ns + "o"));
+        model.add().g(ns + "ng").s(ns + "s3").p(ns + "p").o(ns + "o");
+        assertCachedQuery(3, false, model.triples().p(ns + "p").o(ns + "o"));
+
+        //results of other named graphs are not invalidated
+        assertCachedQuery(1, false, model.triples().g(ns + "ng").p(ns + "p"));
+        model.add().s(ns + "s4").p(ns + "p").o(ns + "o");
+        assertCachedQuery(1, true, model.triples().g(ns + "ng").p(ns + "p"));
+        model.add().g(ns + "ng").s(ns + "s4").p(ns + "p").o(ns + "o2");
+        assertCachedQuery(2, false, model.triples().g(ns + "ng").p(ns + "p"));
+
+        assertCachedQuery(4, false, model.triples().p(ns + "p").o(ns + "o"));
+        model.triples().s(ns + "s1").p(ns + "p").delete();
+        assertCachedQuery(3, false, model.triples().p(ns + "p").o(ns + "o"));
+        model.triples().g(ns + "ng").s(ns + "s4").delete();
+        assertCachedQuery(1, false, model.triples().g(ns + "ng").p(ns + "p"));
+        assertTrue(cache.invalidations() > 0);
+
+        for (int i = 0; i < cache.maxEntries(); i++) {
+            model.add().s(ns + "x" + i).p(ns + "p").o(ns + "o");
+        }
+        long evictions = cache.evictions();
+        for (int i = 0; i < cache.maxEntries(); i++) {
+            assertCachedQuery(1, false, model.triples().s(ns + "x" + i));
+        }
+        assertTrue(cache.evictions() > evictions);
+        assertTrue(cache.size() <= cache.maxEntries());
+    }
+
+    private void assertCachedQuery(int expectedSize, boolean expectedHit, Model.QueryBuilder query) {
+        long hits = cache.hits();
+        long misses = cache.misses();
+        assertEquals(expectedSize, Iterables.size(query.fetch()));
+        assertEquals(expectedHit ? hits + 1 : hits, cache.hits());
+        assertEquals(expectedHit ? misses : misses + 1, cache.misses());
+    }
+
+    public void testPartitionConcurrentModel() throws InterruptedException {
+        for (int i = 0; i < 50; i++) {
+            model.add().s(ns + "s" + i).p(ns + "p").o(ns + "o" + (i % 5));
+        }
+        List<Triples> parts = model.triples().p(ns + "p").fetch().partition(4);
+        assertEquals(4, parts.size());
+        final AtomicInteger count = new AtomicInteger();
+        List<Thread> threads = new ArrayList<Thread>();
+        for (final Triples part : parts) {
+            threads.add(new Thread() {
+                @Override
+                public void run() {
+                    count.addAndGet(Iterables.size(part));
+                }
+            });
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(50, count.get());
+    }
+
+    public void testConcurrentReadersAndWriter() throws Exception {
+        final Resource root = model.add().newClass(ns + "Root");
+        //more subclasses than a guarded iterator reads at a time
+        final int classes = 600;
+        final List<Throwable> failures = Collections.synchronizedList(new ArrayList<Throwable>());
+        final CountDownLatch done = new CountDownLatch(1);
+        List<Thread> readers = new ArrayList<Thread>();
+        for (int i = 0; i < 4; i++) {
+            final int reader = i;
+            readers.add(new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        int lastSubclasses = 0;
+                        for (int n = 0; done.getCount() > 0; n++) {
+                            //readers create nodes too
+                            assertEquals(RdfType.UNKNOWN, model.mapResource(ns + "R" + reader + "_" + n).type());
+                            //the writer keeps adding subclasses while results are iterated
+                            int subclasses = 0;
+                            for (Triple t : model.triples().p(RdfSchema.SUBCLASSOF).o(root).fetch()) {
+                                assertTrue(root.asInheritable().isAncestorOf(t.subject()));
+                                subclasses++;
+                                if (subclasses % 100 == 0) {
+                                    Thread.yield();
+                                }
+                            }
+                            assertTrue(subclasses <= classes);
+                            assertTrue(subclasses >= lastSubclasses);
+                            lastSubclasses = subclasses;
+                            for (RdfNode node : model.findNodes(RdfType.CLASS)) {
+                                assertEquals(RdfType.CLASS, node.type());
+                            }
+                            model.namespaces();
+                        }
+                    } catch (Throwable e) {
+                        failures.add(e);
+                    }
+                }
+            });
+        }
+        for (Thread reader : readers) {
+            reader.start();
+        }
+        try {
+            for (int i = 0; i < classes; i++) {
+                Resource c = (Resource)model.add().s(ns + "C" + i).p(RdfSchema.SUBCLASSOF).o(root).subject();
+                if (i % 10 == 0) {
+                    model.add().s(ns + "D" + i).p(RdfSchema.SUBCLASSOF).o(c);
+                    model.triples().s(ns + "D" + i).delete();
+                }
+                if (i % 50 == 0) {
+                    model.updateLabels();
+                }
+            }
+        } finally {
+            done.countDown();
+        }
+        for (Thread reader : readers) {
+            reader.join();
+        }
+        if (!failures.isEmpty()) {
+            throw new AssertionError(failures.get(0));
+        }
+        assertEquals(classes, Iterables.size(model.triples().p(RdfSchema.SUBCLASSOF).o(root).fetch()));
+        assertTrue(root.asInheritable().isAncestorOf(model.mapResource(ns + "C" + (classes - 1))));
+    }
+
+    public void testConcurrentIterationIsSnapshot() {
+        Resource root = model.add().newClass(ns + "Root");
+        for (int i = 0; i < 600; i++) {
+            model.add().s(ns + "C" + i).p(RdfSchema.SUBCLASSOF).o(root);
+        }
+        int subclasses = 0;
+        for (Triple t : model.triples().p(RdfSchema.SUBCLASSOF).o(root).fetch()) {
+            //modifications of the iterating thread do not affect the iteration either
+            model.add().s(ns + "D" + subclasses).p(RdfSchema.SUBCLASSOF).o(root);
+            t.delete();
+            subclasses++;
+        }
+        assertEquals(600, subclasses);
+        assertEquals(600, Iterables.size(model.triples().p(RdfSchema.SUBCLASSOF).o(root).fetch()));
+        assertTrue(Iterables.isEmpty(model.triples().s(ns + "C0").p(RdfSchema.SUBCLASSOF).o(root).fetch()));
+    }
+
+    public void testWithIncrementalLabeling() {
+        assertTrue(((ModelImpl)model).getLabelManager() instanceof LabelManagers.IncrementalMainMemoryManager);
+        model.add().s(ns + "A").p(Rdf.TYPE).o(RdfSchema.CLASS);
+        model.add().s(ns + "B").p(RdfSchema.SUBCLASSOF).o(ns + "A");
+        model.updateLabels();
+        Resource a = model.mapResource(ns + "A");
+        Resource b = model.mapResource(ns + "B");
+        assertTrue(a.asInheritable().isAncestorOf(b));
+
+        model.triples().s(b).p(RdfSchema.SUBCLASSOF).o(a).fetch().delete();
+        assertFalse(a.asInheritable().isAncestorOf(b));
+    }
+
     public void testWithoutUriValidation() {
         try {
             model.mapResource("a");
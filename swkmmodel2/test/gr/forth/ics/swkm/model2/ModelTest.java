@@ -31,26 +31,37 @@
 
 package gr.forth.ics.swkm.model2;
 
+import com.google.common.base.Function;
 import com.google.common.collect.ImmutableSet;
 import gr.forth.ics.swkm.model2.util.RandomTripleGenerator;
 import com.google.common.collect.Iterables;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.ListMultimap;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
+import gr.forth.ics.swkm.model2.event.BulkTripleListener;
 import gr.forth.ics.swkm.model2.event.EmptyRdfNodeListener;
 import gr.forth.ics.swkm.model2.event.TripleListener;
 import gr.forth.ics.swkm.model2.event.TypeChange;
 import gr.forth.ics.swkm.model2.index.ModelIndexer;
 import gr.forth.ics.swkm.model2.index.ModelIndexers;
+import gr.forth.ics.swkm.model2.index.ObjectViewSupport;
+import gr.forth.ics.swkm.model2.index.QueryCache;
 import gr.forth.ics.swkm.model2.vocabulary.Rdf;
 import gr.forth.ics.swkm.model2.vocabulary.RdfSchema;
 import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import junit.framework.TestCase;
 import junit.framework.TestSuite;
 
@@ -71,6 +82,8 @@ public abstract class ModelTest extends TestCase {
         suite.addTestSuite(NodeListIndexerTest.class);
         suite.addTestSuite(MultimapsIndexerTest.class);
         suite.addTestSuite(TreeMapIndexerTest.class);
+        suite.addTestSuite(CompactIndexerTest.class);
+        suite.addTestSuite(CachingIndexerTest.class);
         return suite;
     }
 
@@ -310,10 +323,85 @@ public abstract class ModelTest extends TestCase {
         assert model.triples().fetch().iterator().hasNext() == false;
     }
 
+    public void testFreeze() {
+        for (int i = 0; i < 100; i++) {
+            importTriple(tripleGenerator.next());
+        }
+        Resource c1 = model.add().newClass(ns + "C1");
+        Resource c2 = (Resource)model.add().s(ns + "C2").p(RdfSchema.SUBCLASSOF).o(c1).subject();
+        Model frozen = model.freeze();
+        assertSame(frozen, frozen.freeze());
+        assertEquals(model.triples().fetch(), frozen.triples().fetch());
+        for (Triple t : model.triples().fetch()) {
+            assertEquals(t.subject().type(), t.subject().mappedTo(frozen).type());
+            assertEquals(t.object().type(), t.object().mappedTo(frozen).type());
+        }
+        assertTrue(c1.mappedTo(frozen).asInheritable().isAncestorOf(c2.mappedTo(frozen)));
+        assertFalse(c2.mappedTo(frozen).asInheritable().isAncestorOf(c1.mappedTo(frozen)));
+
+        try {
+            frozen.add().newClass(ns + "C3");
+            fail();
+        } catch (UnsupportedOperationException e) {
+            //ok
+        }
+        try {
+            frozen.triples().delete();
+            fail();
+        } catch (UnsupportedOperationException e) {
+            //ok
+        }
+        try {
+            frozen.updateLabels();
+            fail();
+        } catch (UnsupportedOperationException e) {
+            //ok
+        }
+
+        //the original is still modifiable, and does not affect the frozen model
+        model.triples().delete();
+        assertFalse(model.triples().fetch().iterator().hasNext());
+        assertTrue(frozen.triples().s(c2.mappedTo(frozen)).fetch().iterator().hasNext());
+    }
+
     public void testDeleteNonExistingTriples() {
         model.triples().s(ns + "s").p(ns + "p").o(ns + "o").delete();
     }
 
+    public void testManyDeletionsKeepQueriesConsistent() {
+        //enough deletions to let an indexer reorganize itself, with nodes in several positions
+        Resource p = model.mapResource(ns + "p");
+        List<Resource> nodes = Lists.newArrayList();
+        for (int i = 0; i < 20; i++) {
+            nodes.add(model.mapResource(ns + "n" + i));
+        }
+        for (Resource s : nodes) {
+            for (Resource o : nodes) {
+                model.add().s(s).p(p).o(o);
+            }
+        }
+        for (int i = 0; i < nodes.size(); i++) {
+            Resource node = nodes.get(i);
+            model.triples().s(node).p(p).o(node).delete();
+            if (i % 2 == 0) {
+                model.triples().s(node).delete();
+            }
+        }
+        for (int i = 0; i < nodes.size(); i++) {
+            Resource node = nodes.get(i);
+            for (Triple t : model.triples().o(node).fetch()) {
+                assertTrue(t.subject() != node);
+                assertTrue(nodes.indexOf(t.subject()) % 2 == 1);
+            }
+            for (Triple t : model.triples().s(node).fetch()) {
+                assertTrue(t.object() != node);
+                assertTrue(i % 2 == 1);
+            }
+            assertEquals(i % 2 == 0 ? nodes.size() / 2 : nodes.size() / 2 - 1, Iterables.size(model.triples().o(node).fetch()));
+        }
+        assertEquals(nodes.size() / 2 * (nodes.size() - 1), Iterables.size(model.triples().p(p).fetch()));
+    }
+
     public void testDoesNotReportTriplesTwice() {
         ObjectNode s = model.mapResource(ns + "s");
         Resource p = model.mapResource(ns + "p");
@@ -503,6 +591,376 @@ public abstract class ModelTest extends TestCase {
         assert count == 1;
     }
 
+    public void testNamedGraphSetsAreShared() {
+        Triple t1 = model.add().g(ns + "g1").s(ns + "s1").p(ns + "p").o(ns + "o");
+        Triple t2 = model.add().g(ns + "g1").s(ns + "s2").p(ns + "p").o(ns + "o");
+        assert t1.graphs() == t2.graphs();
+
+        model.add().g(ns + "g2").s(ns + "s1").p(ns + "p").o(ns + "o");
+        model.add().g(ns + "g2").s(ns + "s2").p(ns + "p").o(ns + "o");
+        model.add().g(ns + "g3").s(ns + "s2").p(ns + "p").o(ns + "o");
+        Resource g1 = model.mapResource(Uri.parse(ns + "g1"));
+        Resource g2 = model.mapResource(Uri.parse(ns + "g2"));
+        Resource g3 = model.mapResource(Uri.parse(ns + "g3"));
+        assert t1.graphs().equals(ImmutableSet.of(g1, g2));
+        assert t2.graphs().equals(ImmutableSet.of(g1, g2, g3));
+        assert t2.graphs().contains(g3) && !t1.graphs().contains(g3);
+        assert ((ModelImpl)model).graphCombinationCount() == 2;
+
+        model.triples().g(ns + "g3").s(ns + "s2").delete();
+        assert t1.graphs() == t2.graphs();
+        assert ((ModelImpl)model).graphCombinationCount() == 1;
+
+        model.triples().g(ns + "g2").delete();
+        assert t1.graphs() == t2.graphs();
+        assert t1.graphs().equals(ImmutableSet.of(g1));
+        assert ((ModelImpl)model).graphCombinationCount() == 0;
+    }
+
+    public void testNamedGraphPatterns() {
+        String[] graphs = { ns + "g1", ns + "g2" };
+        String[] nodes = { ns + "a", ns + "b", ns + "c" };
+        for (int g = 0; g < graphs.length; g++) {
+            for (int s = 0; s < nodes.length; s++) {
+                for (int p = 0; p < nodes.length; p++) {
+                    for (int o = 0; o < nodes.length; o++) {
+                        if ((g + s + p + o) % 2 == 0 || s == p) {
+                            model.add().g(graphs[g]).s(nodes[s]).p(nodes[p]).o(nodes[o]);
+                        }
+                    }
+                }
+            }
+        }
+        assertNamedGraphPatterns(graphs, nodes);
+
+        model.triples().g(graphs[0]).s(nodes[0]).delete();
+        model.triples().g(graphs[1]).p(nodes[1]).o(nodes[2]).delete();
+        assertNamedGraphPatterns(graphs, nodes);
+
+        Triple triple = model.triples().g(graphs[0]).s(nodes[1]).p(nodes[1]).o(nodes[1]).fetch().iterator().next();
+        model.delete(triple);
+        assert !Iterables.contains(model.triples().g(graphs[0]).fetch(), triple);
+        assert !Iterables.contains(model.triples().g(graphs[1]).s(nodes[1]).fetch(), triple);
+        assertNamedGraphPatterns(graphs, nodes);
+    }
+
+    private void assertNamedGraphPatterns(String[] graphs, String[] nodes) {
+        Resource[] resources = new Resource[nodes.length + 1];
+        for (int i = 0; i < nodes.length; i++) {
+            resources[i] = model.mapResource(Uri.parse(nodes[i]));
+        }
+        for (int i = 0; i <= graphs.length; i++) {
+            Resource g = i < graphs.length ? model.mapResource(Uri.parse(graphs[i])) : null;
+            for (Resource s : resources) {
+                for (Resource p : resources) {
+                    for (Resource o : resources) {
+                        Set<Triple> expected = Sets.newHashSet();
+                        for (Triple t : model.triples().fetch()) {
+                            if ((g == null || t.graphs().contains(g)) &&
+                                    (s == null || s == t.subject()) &&
+                                    (p == null || p == t.predicate()) &&
+                                    (o == null || o == t.object())) {
+                                expected.add(t);
+                            }
+                        }
+                        Model.QueryBuilder query = model.triples();
+                        if (g != null) {
+                            query.g(g);
+                        }
+                        if (s != null) {
+                            query.s(s);
+                        }
+                        if (p != null) {
+                            query.p(p);
+                        }
+                        if (o != null) {
+                            query.o(o);
+                        }
+                        List<Triple> found = Lists.newArrayList(query.fetch());
+                        assertEquals(expected.size(), found.size());
+                        assertEquals(expected, Sets.newHashSet(found));
+                        assertEquals(expected.size(), query.count());
+                        assertEquals(!expected.isEmpty(), query.exists());
+                        assertTrue(query.estimate() >= expected.size());
+                    }
+                }
+            }
+        }
+    }
+
+    public void testPatternQuery() {
+        Resource knows = model.mapResource(ns + "knows");
+        Resource age = model.mapResource(ns + "age");
+        Resource[] graphs = { model.mapResource(ns + "g0"), model.mapResource(ns + "g1") };
+        Resource[] classes = { model.mapResource(ns + "C0"), model.mapResource(ns + "C1"), model.mapResource(ns + "C2") };
+        for (int i = 0; i < 12; i++) {
+            Resource node = model.mapResource(ns + "n" + i);
+            model.add().g(graphs[i % 2]).s(node).p(Rdf.TYPE).o(classes[i % 3]);
+            model.add().g(graphs[(i / 2) % 2]).s(node).p(age).o(Literal.parse("\"" + i + "\""));
+            for (int j = 0; j < 12; j++) {
+                if ((i * j) % 5 == 1 || i == j + 1) {
+                    model.add().g(graphs[(i + j) % 2]).s(node).p(knows).o(ns + "n" + j);
+                    if (i % 4 == 0) {
+                        model.add().g(graphs[(i + j + 1) % 2]).s(node).p(knows).o(ns + "n" + j);
+                    }
+                }
+            }
+        }
+        Resource type = model.mapResource(Rdf.TYPE);
+        assertPatternQuery(new Object[][] { { null, "?x", knows, "?y" }, { null, "?y", knows, "?z" } });
+        assertPatternQuery(new Object[][] { { null, "?x", type, "?c" }, { null, "?y", type, "?c" }, { null, "?x", knows, "?y" } });
+        assertPatternQuery(new Object[][] { { null, "?x", knows, "?x" } });
+        assertPatternQuery(new Object[][] { { null, "?x", knows, null } });
+        assertPatternQuery(new Object[][] { { null, "?x", type, classes[0] }, { null, "?y", type, classes[1] } });
+        assertPatternQuery(new Object[][] { { "?g", "?x", knows, "?y" }, { "?g", "?y", knows, "?x" } });
+        assertPatternQuery(new Object[][] { { graphs[1], "?x", knows, "?y" }, { null, "?y", "?p", "?z" } });
+        assertPatternQuery(new Object[][] { { null, "?x", age, "?a" }, { null, "?a", knows, "?y" } });
+        assertPatternQuery(new Object[][] { { null, "?x", knows, "?y" }, { null, "?y", knows, "?z" }, { null, "?z", type, classes[2] }, { "?g", "?z", age, null } });
+        assertPatternQuery(new Object[][] { { null, "?x", type, model.mapResource(ns + "C3") }, { null, "?x", knows, "?y" } });
+    }
+
+    public void testPatternQueryTerms() {
+        model.add().s(ns + "a").p(ns + "p").o("\"lit\"");
+        Bindings bindings = Iterables.getOnlyElement(model.match()
+                .where(ns + "a", Uri.parse(ns + "p"), "?o")
+                .where("?s", "?p", Literal.parse("\"lit\""))
+                .fetch());
+        assertEquals(Lists.newArrayList("o", "s", "p"), bindings.variables());
+        assertEquals(model.mapLiteral(Literal.parse("\"lit\"")), bindings.get("?o"));
+        assertEquals(model.mapResource(ns + "a"), bindings.get("s"));
+        try {
+            bindings.get("x");
+            fail();
+        } catch (IllegalArgumentException ok) { }
+        try {
+            model.match().where(Literal.parse("\"lit\""), "?p", "?o");
+            fail();
+        } catch (IllegalArgumentException ok) { }
+        try {
+            model.match().where("?s", new Object(), "?o");
+            fail();
+        } catch (IllegalArgumentException ok) { }
+    }
+
+    /**
+     * Compares the solutions of the query to these found by trying all combinations of triples.
+     */
+    private void assertPatternQuery(Object[][] patterns) {
+        Model.PatternQuery query = model.match();
+        for (Object[] pattern : patterns) {
+            query.where(pattern[0], pattern[1], pattern[2], pattern[3]);
+        }
+        Set<Map<String, RdfNode>> expected = Sets.newHashSet();
+        solvePatterns(patterns, 0, Maps.<String, RdfNode>newHashMap(), expected);
+        Set<Map<String, RdfNode>> found = Sets.newHashSet();
+        for (Bindings bindings : query.fetch()) {
+            Map<String, RdfNode> solution = Maps.newHashMap();
+            for (String variable : bindings.variables()) {
+                solution.put(variable, bindings.get(variable));
+            }
+            assertTrue(found.add(solution));
+        }
+        assertEquals(expected, found);
+        assertEquals(expected.size(), query.count());
+        assertEquals(!expected.isEmpty(), query.exists());
+    }
+
+    private void solvePatterns(Object[][] patterns, int index, Map<String, RdfNode> bindings,
+            Set<Map<String, RdfNode>> solutions) {
+        if (index == patterns.length) {
+            solutions.add(bindings);
+            return;
+        }
+        for (Triple triple : model.triples().fetch()) {
+            for (Resource graph : triple.graphs()) {
+                RdfNode[] values = { graph, triple.subject(), triple.predicate(), triple.object() };
+                Map<String, RdfNode> extended = Maps.newHashMap(bindings);
+                boolean matches = true;
+                for (int i = 0; i < values.length && matches; i++) {
+                    Object term = patterns[index][i];
+                    if (term instanceof String) {
+                        RdfNode previous = extended.put(((String)term).substring(1), values[i]);
+                        matches = previous == null || previous.equals(values[i]);
+                    } else {
+                        matches = term == null || term.equals(values[i]);
+                    }
+                }
+                if (matches) {
+                    solvePatterns(patterns, index + 1, extended, solutions);
+                }
+            }
+        }
+    }
+
+    public void testHierarchyClosures() {
+        Resource a = model.add().newClass(ns + "A");
+        Resource b = model.add().newClass(ns + "B");
+        Resource c = model.add().newClass(ns + "C");
+        Resource d = model.add().newClass(ns + "D");
+        model.add().s(b).p(RdfSchema.SUBCLASSOF).o(a);
+        model.add().s(c).p(RdfSchema.SUBCLASSOF).o(b);
+        assertTrue(Sets.newHashSet(c.asInheritable().ancestors(Transitively.YES)).containsAll(ImmutableSet.of(a, b)));
+        assertEquals(ImmutableSet.of(b, c), Sets.newHashSet(a.asInheritable().descendants(Transitively.YES)));
+
+        //cached closures follow the modifications of the hierarchy
+        model.add().s(d).p(RdfSchema.SUBCLASSOF).o(c);
+        assertEquals(ImmutableSet.of(b, c, d), Sets.newHashSet(a.asInheritable().descendants(Transitively.YES)));
+        assertTrue(Sets.newHashSet(d.asInheritable().ancestors(Transitively.YES)).containsAll(ImmutableSet.of(a, b, c)));
+        assertTrue(a.asInheritable().isAncestorOf(d));
+        model.triples().s(b).p(RdfSchema.SUBCLASSOF).delete();
+        assertEquals(ImmutableSet.of(), Sets.newHashSet(a.asInheritable().descendants(Transitively.YES)));
+        Set<Object> ancestorsOfD = Sets.<Object>newHashSet(d.asInheritable().ancestors(Transitively.YES));
+        assertTrue(ancestorsOfD.containsAll(ImmutableSet.of(b, c)));
+        assertFalse(ancestorsOfD.contains(a));
+        assertFalse(a.asInheritable().isAncestorOf(d));
+
+        Resource p = model.add().newProperty(ns + "p");
+        Resource q = model.add().newProperty(ns + "q");
+        model.add().s(q).p(RdfSchema.SUBPROPERTYOF).o(p);
+        assertEquals(ImmutableSet.of(q), Sets.newHashSet(p.asInheritable().descendants(Transitively.YES)));
+        model.add().s(c).p(RdfSchema.SUBCLASSOF).o(a);
+        assertEquals(ImmutableSet.of(q), Sets.newHashSet(p.asInheritable().descendants(Transitively.YES)));
+
+        //random hierarchies, with cycles, checked against uncached traversals
+        Random random = new Random(7);
+        List<Resource> classes = Lists.newArrayList();
+        for (int i = 0; i < 30; i++) {
+            classes.add(model.add().newClass(ns + "R" + i));
+        }
+        ObjectViewSupport support = ((ModelImpl)model).objectViewSupport();
+        for (int round = 0; round < 10; round++) {
+            for (int i = 0; i < 10; i++) {
+                Resource sub = classes.get(random.nextInt(classes.size()));
+                Resource sup = classes.get(random.nextInt(classes.size()));
+                if (random.nextInt(4) == 0) {
+                    model.triples().s(sub).p(RdfSchema.SUBCLASSOF).delete();
+                } else if (sub != sup) {
+                    model.add().s(sub).p(RdfSchema.SUBCLASSOF).o(sup);
+                }
+            }
+            for (Resource first : classes) {
+                Set<RdfNode> ancestors = collectRelatives(first, true);
+                Set<RdfNode> descendants = collectRelatives(first, false);
+                if (random.nextBoolean()) {
+                    assertEquals(ancestors, Sets.newHashSet(support.findAncestors(first, Transitively.YES)));
+                    assertEquals(descendants, Sets.newHashSet(support.findDescendants(first, Transitively.YES)));
+                }
+                for (Resource second : classes) {
+                    assertEquals(first == second || descendants.contains(second),
+                            support.isFirstAncestorOfSecond(first, second));
+                }
+            }
+        }
+    }
+
+    private Set<RdfNode> collectRelatives(Resource resource, final boolean upward) {
+        return Transitively.YES.collect((RdfNode)resource, new Function<RdfNode, Iterable<RdfNode>>() {
+            public Iterable<RdfNode> apply(RdfNode node) {
+                Triples triples = upward ?
+                    model.triples().s((Resource)node).p(RdfSchema.SUBCLASSOF).fetch() :
+                    model.triples().p(RdfSchema.SUBCLASSOF).o(node).fetch();
+                return upward ? Lists.<RdfNode>newArrayList(triples.objects()) : Lists.<RdfNode>newArrayList(triples.subjects());
+            }
+        });
+    }
+
+    public void testPartitionTriples() {
+        assertTrue(model.triples().fetch().partition(4).isEmpty());
+        for (int i = 0; i < 100; i++) {
+            model.add().s(ns + "s" + (i % 7)).p(ns + "p" + (i % 3)).o(ns + "o" + i);
+        }
+        model.triples().s(ns + "s3").delete();
+        assertPartitions(model.triples().fetch());
+        assertPartitions(model.triples().p(ns + "p1").fetch());
+        try {
+            model.triples().fetch().partition(0);
+            fail();
+        } catch (IllegalArgumentException ok) { }
+    }
+
+    private void assertPartitions(Triples triples) {
+        Set<Triple> expected = Sets.newHashSet(triples);
+        for (int parts : new int[] { 1, 2, 3, 7, 1000 }) {
+            List<Triples> partition = triples.partition(parts);
+            assertTrue(partition.size() <= parts);
+            List<Triple> found = Lists.newArrayList();
+            for (Triples part : partition) {
+                Iterables.addAll(found, part);
+            }
+            assertEquals(expected.size(), found.size());
+            assertEquals(expected, Sets.newHashSet(found));
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            int count = 0;
+            for (Integer partial : triples.scan(executor, 5, new Function<Triples, Integer>() {
+                public Integer apply(Triples part) {
+                    return Iterables.size(part);
+                }
+            })) {
+                count += partial;
+            }
+            assertEquals(expected.size(), count);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    public void testBatchedLookups() {
+        List<Resource> nodes = Lists.newArrayList();
+        for (int i = 0; i < 6; i++) {
+            nodes.add(model.mapResource(ns + "n" + i));
+        }
+        Resource g = model.mapResource(ns + "g");
+        for (int i = 0; i < 40; i++) {
+            if (i % 3 == 0) {
+                model.add().g(g).s(nodes.get(i % 5)).p(nodes.get(i % 3)).o(nodes.get(i % 4));
+            } else {
+                model.add().s(nodes.get(i % 5)).p(nodes.get(i % 3)).o(nodes.get(i % 4));
+            }
+        }
+        nodes.add(nodes.get(0));
+        for (Resource graph : Arrays.asList(null, g)) {
+            for (Resource node : Arrays.asList(null, nodes.get(1))) {
+                ListMultimap<ObjectNode, Triple> bySubject = query(graph, null, node, null).fetchForSubjects(nodes);
+                ListMultimap<Resource, Triple> byPredicate = query(graph, null, null, node).fetchForPredicates(nodes);
+                ListMultimap<RdfNode, Triple> byObject = query(graph, node, null, null).fetchForObjects(nodes);
+                for (Resource n : Sets.newHashSet(nodes)) {
+                    assertEquals(Lists.newArrayList(query(graph, n, node, null).fetch()).size(), bySubject.get(n).size());
+                    assertEquals(Sets.newHashSet(query(graph, n, node, null).fetch()), Sets.newHashSet(bySubject.get(n)));
+                    assertEquals(Sets.newHashSet(query(graph, null, n, node).fetch()), Sets.newHashSet(byPredicate.get(n)));
+                    assertEquals(Sets.newHashSet(query(graph, node, null, n).fetch()), Sets.newHashSet(byObject.get(n)));
+                }
+            }
+        }
+        assertFalse(model.triples().fetchForSubjects(Collections.singleton(nodes.get(5))).containsKey(nodes.get(5)));
+        try {
+            model.triples().s(nodes.get(0)).fetchForSubjects(nodes);
+            fail();
+        } catch (IllegalStateException ok) { }
+        try {
+            model.triples().fetchForObjects(Collections.singleton(new ModelImpl(createIndex()).mapResource(ns + "n0")));
+            fail();
+        } catch (IllegalArgumentException ok) { }
+    }
+
+    private Model.QueryBuilder query(Resource g, Resource s, Resource p, Resource o) {
+        Model.QueryBuilder query = model.triples();
+        if (g != null) {
+            query.g(g);
+        }
+        if (s != null) {
+            query.s(s);
+        }
+        if (p != null) {
+            query.p(p);
+        }
+        if (o != null) {
+            query.o(o);
+        }
+        return query;
+    }
+
     public void testSimpleTripleDeletion() {
         model.add().s(ns + "s").p(ns + "p").o(ns + "o");
 
@@ -562,6 +1020,102 @@ public abstract class ModelTest extends TestCase {
         assert addedHolder[0] == false;
     }
 
+    public void testBulkLoad() {
+        //the same triples, added one by one, to compare typing against
+        Model sequentialModel = new ModelImpl(createIndex());
+        Model.BulkLoad bulkLoad = model.bulkLoad();
+        for (int i = 0; i < TRIPLES; i++) {
+            Triple triple = tripleGenerator.next();
+            for (Resource g : triple.graphs()) {
+                bulkLoad.add(g.mappedTo(model),
+                        triple.subject().mappedTo(model),
+                        triple.predicate().mappedTo(model),
+                        triple.object().mappedTo(model));
+                sequentialModel.add(g.mappedTo(sequentialModel),
+                        triple.subject().mappedTo(sequentialModel),
+                        triple.predicate().mappedTo(sequentialModel),
+                        triple.object().mappedTo(sequentialModel));
+            }
+        }
+        assert model.tripleCount() == 0;
+        assert bulkLoad.commit() == referenceModel.tripleCount();
+        assert bulkLoad.size() == 0;
+        assertEquals(referenceModel.triples().fetch(), model.triples().fetch());
+        for (Triple t : sequentialModel.triples().fetch()) {
+            for (RdfNode node : t.nodes()) {
+                assertEquals(node.type(), node.mappedTo(model).type());
+            }
+        }
+    }
+
+    public void testBulkLoadEvents() {
+        final Triple existing = model.add().s(ns + "s").p(ns + "p").o(ns + "o");
+        final List<Triple> added = Lists.newArrayList();
+        final List<ListMultimap<Resource, Triple>> batches = Lists.newArrayList();
+        model.addTripleListener(new TripleListener() {
+            public void onTripleAddition(Resource namedGraph, Triple triple) {
+                added.add(triple);
+            }
+
+            public void onTripleDeletion(Resource namedGraph, Triple triple) { }
+        });
+        model.addTripleListener(new BulkTripleListener() {
+            public void onTriplesAddition(ListMultimap<Resource, Triple> triplesByNamedGraph) {
+                batches.add(triplesByNamedGraph);
+            }
+
+            public void onTripleAddition(Resource namedGraph, Triple triple) {
+                fail();
+            }
+
+            public void onTripleDeletion(Resource namedGraph, Triple triple) { }
+        });
+
+        Resource g = model.mapResource(ns + "g");
+        Model.BulkLoad bulkLoad = model.bulkLoad()
+                .add(g, existing.subject(), existing.predicate(), existing.object())
+                .add(null, existing.subject(), existing.predicate(), existing.object())
+                .add(g, model.mapObjectNode(ns + "s2"), model.mapResource(ns + "p"), model.map(ns + "o"))
+                .add(g, model.mapObjectNode(ns + "s2"), model.mapResource(ns + "p"), model.map(ns + "o"));
+        assert bulkLoad.size() == 2;
+        assert added.isEmpty() && batches.isEmpty();
+
+        assert bulkLoad.commit() == 1;
+        assert model.tripleCount() == 2;
+        assert existing.graphs().size() == 2;
+        assert added.size() == 2;
+        assert added.get(0) == existing;
+        assert Iterables.getOnlyElement(batches).get(g).equals(added);
+        assert model.mapObjectNode(ns + "s2").type() == RdfType.INDIVIDUAL;
+
+        assert bulkLoad.commit() == 0;
+        assert batches.size() == 1;
+    }
+
+    public void testBulkLoadEventsInAdditionOrder() {
+        final List<Triple> added = Lists.newArrayList();
+        model.addTripleListener(new TripleListener() {
+            public void onTripleAddition(Resource namedGraph, Triple triple) {
+                added.add(triple);
+            }
+
+            public void onTripleDeletion(Resource namedGraph, Triple triple) { }
+        });
+        Resource g1 = model.mapResource(ns + "g1");
+        Resource g2 = model.mapResource(ns + "g2");
+        Resource p = model.mapResource(ns + "p");
+        List<Triple> expected = Lists.newArrayList();
+        Model.BulkLoad bulkLoad = model.bulkLoad();
+        for (int i = 0; i < 10; i++) {
+            bulkLoad.add(i % 2 == 0 ? g1 : g2, model.mapObjectNode(ns + "s" + i), p, model.map(ns + "o"));
+        }
+        bulkLoad.commit();
+        for (int i = 0; i < 10; i++) {
+            expected.add(Iterables.getOnlyElement(model.triples().s(ns + "s" + i).fetch()));
+        }
+        assertEquals(expected, added);
+    }
+
     public void testInferable1() {
         model.add().s(ns + "s").p(ns + "p").o(ns + "o");
         assert model.isInferable(
@@ -683,4 +1237,50 @@ public abstract class ModelTest extends TestCase {
             return ModelIndexers.createTreeMapModelIndexer();
         }
     }
+
+    public static class CompactIndexerTest extends ModelTest {
+        public CompactIndexerTest(String testName) {
+            super(testName);
+        }
+
+        @Override
+        protected ModelIndexer createIndex() {
+            return ModelIndexers.createCompactModelIndexer();
+        }
+
+        public void testIteratorUnaffectedByFullBuffer() {
+            Model model = ModelBuilder.newCompact().build();
+            Resource p = model.mapResource(ns + "p");
+            List<Resource> objects = Lists.newArrayList();
+            for (int i = 0; i < 20; i++) {
+                objects.add(model.mapResource(ns + "o" + i));
+            }
+            //added in reverse order, so that sorting moves them
+            Set<Triple> expected = Sets.newHashSet();
+            for (int i = objects.size() - 1; i >= 0; i--) {
+                expected.add(model.add().s(ns + "s").p(p).o(objects.get(i)));
+            }
+            Iterator<Triple> iterator = model.triples().p(p).fetch().iterator();
+            List<Triple> found = Lists.newArrayList(iterator.next());
+            //enough additions to fill the buffer of the permutations several times
+            for (int i = 0; i < 100; i++) {
+                model.add().s(ns + "s" + i).p(p).o(objects.get(i % objects.size()));
+            }
+            Iterators.addAll(found, iterator);
+            assertEquals(expected.size(), found.size());
+            assertEquals(expected, Sets.newHashSet(found));
+        }
+    }
+
+    public static class CachingIndexerTest extends ModelTest {
+        public CachingIndexerTest(String testName) {
+            super(testName);
+        }
+
+        @Override
+        protected ModelIndexer createIndex() {
+            return ModelIndexers.createCachingModelIndexer(
+                    ModelIndexers.createNodeListsModelIndexer(), new QueryCache(64));
+        }
+    }
 }
@@ -0,0 +1,132 @@
+/* 
+ *  COPYRIGHT (c) 2008-2009 by Institute of Computer Science, 
+ *  Foundation for Research and Technology - Hellas
+ *  Contact: 
+ *      POBox 1385, Heraklio Crete, GR-700 13 GREECE
+ *      Tel:+30-2810-391632
+ *      Fax: +30-2810-391638
+ *      E-mail: isl@ics.forth.gr
+ *      http://www.ics.forth.gr/isl
+ *
+ *   Authors  :  Dimitris Andreou, Nelly Vouzoukidou.
+ *
+ *   This file is part of SWKM model APIs (see also http://athena.ics.forth.gr:9090/SWKM/).
+ *
+ *    SWKM model APIs is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU Lesser General Public License as published by
+ *    the Free Software Foundation, either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *   SWKM model APIs is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Lesser General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Lesser General Public License
+ *   along with SWKM model APIs.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ *   SWKM has been partially supported by EU project KP-Lab (IP IST-27490) kp-lab.org
+ */
+
+
+package gr.forth.ics.swkm.model2;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import junit.framework.TestCase;
+
+public class UriPoolTest extends TestCase {
+    public UriPoolTest(String testName) {
+        super(testName);
+    }
+
+    public void testCanonicalInstances() {
+        UriPool pool = new UriPool(4, 2);
+        String first = new String("http://a#");
+        assertSame(first, pool.canonicalize(first));
+        assertSame(first, pool.canonicalize(new String("http://a#")));
+        for (int i = 0; i < 1000; i++) {
+            String s = "s" + i;
+            assertSame(s, pool.canonicalize(s));
+        }
+        for (int i = 0; i < 1000; i++) {
+            assertEquals("s" + i, pool.canonicalize("s" + i));
+        }
+        assertSame(first, pool.canonicalize("http://a#"));
+    }
+
+    public void testSingleSegment() {
+        UriPool pool = new UriPool(1, 1);
+        String s = new String("x");
+        assertSame(s, pool.canonicalize(s));
+        assertSame(s, pool.canonicalize(new String("x")));
+    }
+
+    public void testUrisAreCanonical() {
+        Uri uri1 = new Uri(new String("http://a#"), new String("b"));
+        Uri uri2 = Uri.parse("http://a#b");
+        assertEquals(uri1, uri2);
+        assertSame(uri1.getNamespace(), uri2.getNamespace());
+        assertSame(uri1.getLocalName(), uri2.getLocalName());
+    }
+
+    public void testUnusedStringsAreReleased() {
+        UriPool pool = new UriPool(2, 4);
+        List<WeakReference<String>> refs = new ArrayList<WeakReference<String>>();
+        for (int i = 0; i < 100; i++) {
+            refs.add(new WeakReference<String>(pool.canonicalize(new String("s" + i))));
+        }
+        for (int i = 0; i < 100; i++) {
+            System.gc();
+        }
+        for (WeakReference<String> ref : refs) {
+            assertNull(ref.get());
+        }
+        //cleared entries are removed on subsequent insertions
+        String s = new String("t");
+        assertSame(s, pool.canonicalize(s));
+        assertTrue(pool.size() < 100);
+    }
+
+    public void testConcurrentCanonicalization() throws Exception {
+        final UriPool pool = new UriPool(4, 2);
+        final int threads = 4;
+        final int strings = 10000;
+        final String[][] results = new String[threads][strings];
+        final List<Throwable> failures = Collections.synchronizedList(new ArrayList<Throwable>());
+        final CountDownLatch start = new CountDownLatch(1);
+        List<Thread> workers = new ArrayList<Thread>();
+        for (int t = 0; t < threads; t++) {
+            final int thread = t;
+            workers.add(new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        for (int i = 0; i < strings; i++) {
+                            results[thread][i] = pool.canonicalize(new String("s" + i));
+                        }
+                    } catch (Throwable e) {
+                        failures.add(e);
+                    }
+                }
+            });
+        }
+        for (Thread worker : workers) {
+            worker.start();
+        }
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        assertTrue(failures.toString(), failures.isEmpty());
+        for (int i = 0; i < strings; i++) {
+            for (int t = 1; t < threads; t++) {
+                assertSame(results[0][i], results[t][i]);
+            }
+        }
+    }
+}
@@ -61,7 +61,11 @@ public class UriTest extends TestCase {
             new UriStub("/local", "/", "local", true),
             new UriStub("_#id", "_#", "id", true),
             new UriStub("_/id", "_/", "id", true),
-            new UriStub("base#base2#local", "", "", false)
+            new UriStub("base#base2#local", "", "", false),
+            new UriStub("base#base2/local", "base#", "base2/local", true),
+            new UriStub("http://ns.org/base", "http://ns.org/", "base", true),
+            new UriStub("urn:isbn:123", "urn:isbn:", "123", true),
+            new UriStub("http://ns.org/a#b:c/d", "http://ns.org/a#", "b:c/d", true)
         };
         for (UriStub uri : uris) {
             suite.addTest(new UriTest("testParse", uri));
@@ -78,6 +82,8 @@ public class UriTest extends TestCase {
         }
         suite.addTest(new UriTest("testHasEqualNamespaceAndLocalName", null));
         suite.addTest(new UriTest("testValidateCharacters", null));
+        suite.addTest(new UriTest("testIsValid", null));
+        suite.addTest(new UriTest("testIsAbsolute", null));
         return suite;
     }
 
@@ -177,6 +183,33 @@ public class UriTest extends TestCase {
         }
     }
     
+    public void testIsValid() {
+        assertTrue(Uri.parse("http://ns.org/a#b").isValid());
+        assertTrue(Uri.parse("http://ns.org/a?x=1&y=%C3%A9#b").isValid());
+        assertTrue(Uri.parse("http://\u03b5\u03bb.org/\u03b1#\u03b2").isValid());
+        assertTrue(Uri.parse("relative/path#b").isValid());
+        assertTrue(Uri.parse("urn:isbn:123").isValid());
+        assertFalse(Uri.parse("http://ns.org/a b").isValid());
+        assertFalse(Uri.parse("http://ns.org/a#b<c").isValid());
+        assertFalse(Uri.parse("http://ns.org/a%2").isValid());
+        assertFalse(Uri.parse("http://ns.org/a%zz#b").isValid());
+        assertFalse(Uri.parse("4http://ns.org/a#b").isValid());
+        assertFalse(Uri.parse("http://ns.org/a{b}").isValid());
+    }
+
+    public void testIsAbsolute() {
+        assertTrue(Uri.parse("http://ns.org/a#b").isAbsolute());
+        assertTrue(Uri.parse("urn:isbn:123").isAbsolute());
+        assertTrue(Uri.parse("svn+ssh://host/a").isAbsolute());
+        assertTrue(Uri.parse("http:").isAbsolute());
+        assertFalse(Uri.parse("base#local").isAbsolute());
+        assertFalse(Uri.parse("relative/path:x").isAbsolute());
+        assertFalse(Uri.parse(":local").isAbsolute());
+        assertFalse(Uri.parse("4http://ns.org/a#b").isAbsolute());
+        //the cached result of a namespace is reused
+        assertTrue(Uri.parse("http://ns.org/a#c").isAbsolute());
+    }
+
     private static class UriStub {
         final String full;
         final String base;
@@ -0,0 +1,57 @@
+/* 
+ *  COPYRIGHT (c) 2008-2009 by Institute of Computer Science, 
+ *  Foundation for Research and Technology - Hellas
+ *  Contact: 
+ *      POBox 1385, Heraklio Crete, GR-700 13 GREECE
+ *      Tel:+30-2810-391632
+ *      Fax: +30-2810-391638
+ *      E-mail: isl@ics.forth.gr
+ *      http://www.ics.forth.gr/isl
+ *
+ *   Authors  :  Dimitris Andreou, Nelly Vouzoukidou.
+ *
+ *   This file is part of SWKM model APIs (see also http://athena.ics.forth.gr:9090/SWKM/).
+ *
+ *    SWKM model APIs is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU Lesser General Public License as published by
+ *    the Free Software Foundation, either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *   SWKM model APIs is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Lesser General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Lesser General Public License
+ *   along with SWKM model APIs.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ *   SWKM has been partially supported by EU project KP-Lab (IP IST-27490) kp-lab.org
+ */
+
+
+package gr.forth.ics.swkm.model2.importer;
+
+import com.google.common.collect.Sets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Set;
+import junit.framework.TestCase;
+
+public class HybridStoreTest extends TestCase {
+    public HybridStoreTest(String testName) {
+        super(testName);
+    }
+
+    public void testOnlyFirstInstanceOfEachPostIsInserted() {
+        Set<Integer> existing = Sets.newHashSet(7);
+        assertEquals(Arrays.asList(0, 2, 4),
+                HybridStore.newPropertyInstances(Arrays.asList(3, 7, 5, 3, 9, 5), existing));
+        assertEquals(Sets.newHashSet(3, 5, 7, 9), existing);
+    }
+
+    public void testNothingInsertedWhenAllPostsExist() {
+        Set<Integer> existing = Sets.newHashSet(1, 2);
+        assertEquals(Collections.emptyList(),
+                HybridStore.newPropertyInstances(Arrays.asList(2, 1, 2), existing));
+    }
+}
@@ -0,0 +1,173 @@
+/* 
+ *  COPYRIGHT (c) 2008-2009 by Institute of Computer Science, 
+ *  Foundation for Research and Technology - Hellas
+ *  Contact: 
+ *      POBox 1385, Heraklio Crete, GR-700 13 GREECE
+ *      Tel:+30-2810-391632
+ *      Fax: +30-2810-391638
+ *      E-mail: isl@ics.forth.gr
+ *      http://www.ics.forth.gr/isl
+ *
+ *   Authors  :  Dimitris Andreou, Nelly Vouzoukidou.
+ *
+ *   This file is part of SWKM model APIs (see also http://athena.ics.forth.gr:9090/SWKM/).
+ *
+ *    SWKM model APIs is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU Lesser General Public License as published by
+ *    the Free Software Foundation, either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *   SWKM model APIs is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Lesser General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Lesser General Public License
+ *   along with SWKM model APIs.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ *   SWKM has been partially supported by EU project KP-Lab (IP IST-27490) kp-lab.org
+ */
+
+
+
+
+package gr.forth.ics.swkm.model2.io;
+
+import com.google.common.collect.ListMultimap;
+import gr.forth.ics.swkm.model2.Model;
+import gr.forth.ics.swkm.model2.ModelBuilder;
+import gr.forth.ics.swkm.model2.ModelDiff;
+import gr.forth.ics.swkm.model2.RdfNode;
+import gr.forth.ics.swkm.model2.Resource;
+import gr.forth.ics.swkm.model2.Triple;
+import gr.forth.ics.swkm.model2.event.BulkTripleListener;
+import gr.forth.ics.swkm.model2.util.RandomTripleGenerator;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import junit.framework.TestCase;
+
+public class ModelSnapshotTest extends TestCase {
+    public ModelSnapshotTest(String testName) {
+        super(testName);
+    }
+
+    private static Model randomModel(int triples) {
+        Model model = ModelBuilder.newSparse().build();
+        Iterator<Triple> generator = RandomTripleGenerator.newDefault().triplesFor(model);
+        for (int i = 0; i < triples; i++) {
+            generator.next();
+        }
+        return model;
+    }
+
+    private static Model emptyModelLike(Model model) {
+        return ModelBuilder.newSparse().withDefaultNamedGraphUri(
+                model.defaultNamedGraph().getUri()).build();
+    }
+
+    private static void checkSameTypes(Model expected, Model actual) {
+        for (Triple t : expected.triples().fetch()) {
+            for (RdfNode node : new RdfNode[] { t.subject(), t.predicate(), t.object() }) {
+                assertEquals(String.valueOf(node), node.type(), node.mappedTo(actual).type());
+            }
+        }
+    }
+
+    public void testFileRoundtrip() throws IOException {
+        Model model1 = randomModel(2000);
+        File file = File.createTempFile("model", ".snapshot");
+        try {
+            ModelSnapshot.write(model1, file);
+            Model model2 = emptyModelLike(model1);
+            ModelSnapshot.read(file, model2, BlankNodesPolicy.asDeclared());
+
+            ModelDiff.checkEqual(model1, model2);
+            checkSameTypes(model1, model2);
+        } finally {
+            file.delete();
+        }
+    }
+
+    public void testStreamRoundtrip() throws IOException {
+        Model model1 = randomModel(2000);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ModelSnapshot.write(model1, out);
+        Model model2 = emptyModelLike(model1);
+        ModelSnapshot.read(new ByteArrayInputStream(out.toByteArray()), model2, BlankNodesPolicy.asDeclared());
+
+        ModelDiff.checkEqual(model1, model2);
+        checkSameTypes(model1, model2);
+    }
+
+    public void testLargeSnapshotIsCommittedInBatches() throws IOException {
+        Model model1 = ModelBuilder.newSparse().build();
+        int count = 2 * ModelFeeder.BATCH_SIZE + 10;
+        for (int i = 0; i < count; i++) {
+            model1.add().s("http://ex.org/s" + i).p("http://ex.org/p").o("http://ex.org/o" + (i % 7));
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ModelSnapshot.write(model1, out);
+
+        Model model2 = emptyModelLike(model1);
+        final int[] batches = { 0 };
+        model2.addTripleListener(new BulkTripleListener() {
+            public void onTriplesAddition(ListMultimap<Resource, Triple> triplesByNamedGraph) {
+                batches[0]++;
+            }
+
+            public void onTripleAddition(Resource namedGraph, Triple triple) { }
+
+            public void onTripleDeletion(Resource namedGraph, Triple triple) { }
+        });
+        ModelSnapshot.read(new ByteArrayInputStream(out.toByteArray()), model2);
+        assertEquals(3, batches[0]);
+        ModelDiff.checkEqual(model1, model2);
+        checkSameTypes(model1, model2);
+    }
+
+    public void testBlankNodesAreNotMergedByDefault() throws IOException {
+        Model model1 = ModelBuilder.newSparse().build();
+        model1.add().s(model1.mapBlankNode("b")).p("http://ex.org/p").o("http://ex.org/o");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ModelSnapshot.write(model1, out);
+        byte[] bytes = out.toByteArray();
+
+        Model model2 = emptyModelLike(model1);
+        ModelSnapshot.read(new ByteArrayInputStream(bytes), model2);
+        ModelSnapshot.read(new ByteArrayInputStream(bytes), model2);
+        assertEquals(2, model2.tripleCount());
+        for (Triple t : model2.triples().fetch()) {
+            assertTrue(t.subject().isBlankNode());
+        }
+
+        Model model3 = emptyModelLike(model1);
+        ModelSnapshot.read(new ByteArrayInputStream(bytes), model3, BlankNodesPolicy.asDeclared());
+        ModelSnapshot.read(new ByteArrayInputStream(bytes), model3, BlankNodesPolicy.asDeclared());
+        assertEquals(1, model3.tripleCount());
+    }
+
+    public void testDetectsCorruption() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ModelSnapshot.write(randomModel(100), out);
+        byte[] bytes = out.toByteArray();
+        bytes[bytes.length / 2] ^= 1;
+        try {
+            ModelSnapshot.read(new ByteArrayInputStream(bytes), ModelBuilder.newSparse().build());
+            fail();
+        } catch (IOException ok) { }
+    }
+
+    public void testRejectsOtherVersions() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ModelSnapshot.write(randomModel(10), out);
+        byte[] bytes = out.toByteArray();
+        bytes[11]++; //last byte of the version
+        try {
+            ModelSnapshot.read(new ByteArrayInputStream(bytes), ModelBuilder.newSparse().build());
+            fail();
+        } catch (IOException ok) { }
+    }
+}
@@ -32,19 +32,29 @@
 package gr.forth.ics.swkm.model2.io;
 
 import com.google.common.collect.Iterables;
+import com.google.common.collect.ListMultimap;
 import com.google.common.collect.Sets;
 import gr.forth.ics.swkm.model2.Model;
 import gr.forth.ics.swkm.model2.ModelBuilder;
 import gr.forth.ics.swkm.model2.ModelDiff;
+import gr.forth.ics.swkm.model2.ObjectNode;
 import gr.forth.ics.swkm.model2.Triple;
 import gr.forth.ics.swkm.model2.util.RandomTripleGenerator;
 import gr.forth.ics.swkm.model2.Resource;
 import gr.forth.ics.swkm.model2.Uri;
+import gr.forth.ics.swkm.model2.event.BulkTripleListener;
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.Writer;
 import java.util.Iterator;
 import java.util.Set;
 import junit.framework.TestCase;
 import junit.framework.TestSuite;
+import org.openrdf.rio.RDFParseException;
 
 /**
  *
@@ -63,7 +73,17 @@ public class RdfIOTest extends TestCase {
         for (Format format : Format.values()) {
             suite.addTest(new RdfIOTest("testWriteReadRoundtrip", format));
             suite.addTest(new RdfIOTest("testUsesBaseUriAsDefaultNamedGraph", format));
+            suite.addTest(new RdfIOTest("testParallelWriteReadRoundtrip", format));
+            suite.addTest(new RdfIOTest("testLargeInputIsCommittedInBatches", format));
+            suite.addTest(new RdfIOTest("testParallelLargeInputIsCommittedInBatches", format));
         }
+        suite.addTest(new RdfIOTest("testNTriplesFileRoundtrip", Format.NTRIPLES));
+        suite.addTest(new RdfIOTest("testNTriplesReaderAgreesWithSesame", Format.NTRIPLES));
+        suite.addTest(new RdfIOTest("testNTriplesFileIsCommittedInBatches", Format.NTRIPLES));
+        suite.addTest(new RdfIOTest("testMalformedNTriplesFileKeepsMessage", Format.NTRIPLES));
+        suite.addTest(new RdfIOTest("testParallelReadClosesInputOnFailure", Format.NTRIPLES));
+        suite.addTest(new RdfIOTest("testParallelReadKeepsBlankNodesAcrossChunks", Format.NTRIPLES));
+        suite.addTest(new RdfIOTest("testParallelReadReportsLineInWholeInput", Format.NTRIPLES));
         return suite;
     }
 
@@ -89,6 +109,234 @@ public class RdfIOTest extends TestCase {
         ModelDiff.checkEqual(model1, model2);
     }
     
+    public void testLargeInputIsCommittedInBatches() throws IOException {
+        setName(getName() + "_" + format);
+        checkCommittedInBatches(false);
+    }
+
+    public void testParallelLargeInputIsCommittedInBatches() throws IOException {
+        setName(getName() + "_" + format);
+        checkCommittedInBatches(true);
+    }
+
+    private void checkCommittedInBatches(boolean parallel) throws IOException {
+        Model model1 = ModelBuilder.newSparse().build();
+        int count = 3 * ModelFeeder.BATCH_SIZE;
+        for (int i = 0; i < count; i++) {
+            model1.add().s("http://ex.org/s" + i).p("http://ex.org/p").o("http://ex.org/o");
+        }
+        String text = RdfIO.write(model1, format)
+                .withBase(model1.defaultNamedGraph().getUri()).toString();
+        Model model2 = ModelBuilder.newSparse().build();
+        BatchCounter counter = new BatchCounter();
+        model2.addTripleListener(counter);
+        RdfIO.InputWithBase input = RdfIO.read(text, format).withBase(model2.defaultNamedGraph().getUri());
+        if (parallel) {
+            input.withParallelism(4);
+        }
+        input.into(model2);
+
+        assertEquals(count, model2.triples().p("http://ex.org/p").count());
+        assertTrue(counter.batches >= 3);
+    }
+
+    public void testParallelReadClosesInputOnFailure() throws IOException {
+        final boolean[] closed = new boolean[1];
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            text.append("<http://ex.org/s").append(i).append("> <http://ex.org/p> <http://ex.org/o> .\n");
+        }
+        text.append("this is not a triple\n");
+        Reader in = new StringReader(text.toString()) {
+            @Override
+            public void close() {
+                closed[0] = true;
+                super.close();
+            }
+        };
+        Model model = ModelBuilder.newSparse().build();
+        try {
+            RdfIO.read(in, format).withBase(model.defaultNamedGraph().getUri())
+                    .withParallelism(4).into(model);
+            fail();
+        } catch (IOException expected) {
+        }
+        assertTrue(closed[0]);
+    }
+
+    public void testParallelReadKeepsBlankNodesAcrossChunks() throws IOException {
+        //the same blank node on the first line of the input, and on the first line of the second chunk
+        StringBuilder text = new StringBuilder();
+        text.append("_:x <http://ex.org/p> <http://ex.org/o> .\n");
+        for (int i = 1; i < PipelinedLoader.CHUNK_LINES; i++) {
+            text.append("<http://ex.org/s").append(i).append("> <http://ex.org/q> <http://ex.org/o> .\n");
+        }
+        text.append("_:x <http://ex.org/p> <http://ex.org/o2> .\n");
+
+        for (boolean parallel : new boolean[] { false, true }) {
+            Model model = ModelBuilder.newSparse().build();
+            RdfIO.InputWithBase input = RdfIO.read(text.toString(), format)
+                    .withBase(model.defaultNamedGraph().getUri());
+            if (parallel) {
+                input.withParallelism(4);
+            }
+            input.into(model);
+            Set<ObjectNode> subjects = Sets.newHashSet(model.triples().p("http://ex.org/p").fetch().subjects());
+            assertEquals(1, subjects.size());
+            assertTrue(subjects.iterator().next().isBlankNode());
+        }
+    }
+
+    public void testParallelReadReportsLineInWholeInput() throws IOException {
+        int badLine = PipelinedLoader.CHUNK_LINES + 5;
+        StringBuilder text = new StringBuilder();
+        for (int i = 1; i < badLine; i++) {
+            text.append("<http://ex.org/s").append(i).append("> <http://ex.org/p> <http://ex.org/o> .\n");
+        }
+        text.append("<http://ex.org/s> <http://ex.org/p>\n");
+        Model model = ModelBuilder.newSparse().build();
+        try {
+            RdfIO.read(text.toString(), format).withBase(model.defaultNamedGraph().getUri())
+                    .withParallelism(4).into(model);
+            fail();
+        } catch (IOException e) {
+            assertEquals(badLine, ((RDFParseException)e.getCause()).getLineNumber());
+            assertTrue(e.getMessage(), e.getMessage().contains("line " + badLine));
+        }
+    }
+
+    private static class BatchCounter implements BulkTripleListener {
+        int batches;
+
+        public void onTriplesAddition(ListMultimap<Resource, Triple> triplesByNamedGraph) {
+            batches++;
+        }
+
+        public void onTripleAddition(Resource namedGraph, Triple triple) {
+        }
+
+        public void onTripleDeletion(Resource namedGraph, Triple triple) {
+        }
+    }
+
+    public void testParallelWriteReadRoundtrip() throws IOException {
+        setName(getName() + "_" + format);
+        Model model1 = ModelBuilder.newSparse().build();
+        RandomTripleGenerator generator = RandomTripleGenerator.newDefault();
+        if (!format.supportsNamedGraphs()) {
+            generator.setProb(RandomTripleGenerator.Event.NEW_NAMED_GRAPH, 0.0);
+        }
+        disableBlankNodes(generator);
+
+        //enough triples for line-based input to be split among several parsers
+        Iterator<Triple> triplesGenerator = generator.triplesFor(model1);
+        for (int i = 0; i < 20000; i++) {
+            triplesGenerator.next();
+        }
+
+        String text = RdfIO.write(model1, format)
+                .withBase(model1.defaultNamedGraph().getUri()).toString();
+        Model model2 = ModelBuilder.newSparse().build();
+        RdfIO.read(text, format).withBase(model2.defaultNamedGraph().getUri())
+                .withParallelism(4).into(model2);
+
+        ModelDiff.checkEqual(model1, model2);
+    }
+
+    public void testNTriplesFileRoundtrip() throws IOException {
+        Model model1 = ModelBuilder.newSparse().build();
+        RandomTripleGenerator generator = RandomTripleGenerator.newDefault();
+        generator.setProb(RandomTripleGenerator.Event.NEW_NAMED_GRAPH, 0.0);
+        disableBlankNodes(generator);
+
+        Iterator<Triple> triplesGenerator = generator.triplesFor(model1);
+        for (int i = 0; i < 1000; i++) {
+            triplesGenerator.next();
+        }
+
+        File file = File.createTempFile("rdfio", ".nt");
+        try {
+            RdfIO.write(model1, format).toFile(file);
+            Model model2 = ModelBuilder.newSparse().build();
+            RdfIO.read(file, format).withBase(model2.defaultNamedGraph().getUri()).into(model2);
+
+            ModelDiff.checkEqual(model1, model2);
+        } finally {
+            file.delete();
+        }
+    }
+
+    public void testNTriplesFileIsCommittedInBatches() throws IOException {
+        File file = File.createTempFile("rdfio", ".nt");
+        try {
+            Writer out = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+            int count = 3 * ModelFeeder.BATCH_SIZE;
+            for (int i = 0; i < count; i++) {
+                out.write("<http://ex.org/s" + i + "> <http://ex.org/p> <http://ex.org/o> .\n");
+            }
+            out.close();
+            Model model = ModelBuilder.newSparse().build();
+            BatchCounter counter = new BatchCounter();
+            model.addTripleListener(counter);
+            RdfIO.read(file, format).withBase(model.defaultNamedGraph().getUri()).into(model);
+
+            assertEquals(count, model.triples().p("http://ex.org/p").count());
+            assertTrue(counter.batches >= 3);
+        } finally {
+            file.delete();
+        }
+    }
+
+    public void testMalformedNTriplesFileKeepsMessage() throws IOException {
+        File file = File.createTempFile("rdfio", ".nt");
+        try {
+            Writer out = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+            out.write("<http://ex.org/s> <http://ex.org/p> <http://ex.org/o> .\n");
+            out.write("<http://ex.org/s> <http://ex.org/p>\n");
+            out.close();
+            Model model = ModelBuilder.newSparse().build();
+            try {
+                RdfIO.read(file, format).withBase(model.defaultNamedGraph().getUri()).into(model);
+                fail();
+            } catch (IOException e) {
+                assertNotNull(e.getMessage());
+                assertEquals(e.getCause().getMessage(), e.getMessage());
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    public void testNTriplesReaderAgreesWithSesame() throws IOException {
+        String text =
+                "# a comment\r\n" +
+                "<http://ex.org/a#s> <http://ex.org/a#p> <http://ex.org/b/o> .\r\n" +
+                "\n" +
+                "  _:b1\t<http://ex.org/a#p> \"plain \\\"quoted\\\" \\u00e9\\n\" .\n" +
+                "_:b1 <http://ex.org/a#p> \"hello\"@en .\n" +
+                "_:b1 <http://ex.org/a#p> \"color\"@en-US .\n" +
+                "<http://ex.org/a#s> <urn:p> \"5\"^^<http://www.w3.org/2001/XMLSchema#int>.\n" +
+                "<http://ex.org/a#s> <http://ex.org/a#p> _:b1 .";
+        Model expected = ModelBuilder.newSparse().build();
+        RdfIO.read(text, format).withBase("http://ex.org/")
+                .withBlankNodesPolicy(BlankNodesPolicy.asDeclared()).into(expected);
+
+        File file = File.createTempFile("rdfio", ".nt");
+        try {
+            Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+            writer.write(text);
+            writer.close();
+            //a tiny window, so that lines are split across several mappings
+            Model actual = ModelBuilder.newSparse().build();
+            new NTriplesReader(actual, null, BlankNodesPolicy.asDeclared(), 96).read(file);
+
+            assertEquals(6, actual.tripleCount());
+            ModelDiff.checkEqual(expected, actual);
+        } finally {
+            file.delete();
+        }
+    }
+
     public void testUsesBaseUriAsDefaultNamedGraph() throws IOException {
         setName(getName() + "_" + format);
         Model model1 = ModelBuilder.newSparse().build();
@@ -31,6 +31,9 @@
 
 package gr.forth.ics.swkm.model2.labels;
 
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 import gr.forth.ics.swkm.model2.Model;
 import gr.forth.ics.swkm.model2.ModelBuilder;
 import gr.forth.ics.swkm.model2.RdfNode;
@@ -39,6 +42,13 @@ import gr.forth.ics.swkm.model2.views.Inheritable;
 import gr.forth.ics.swkm.model2.vocabulary.Rdf;
 import gr.forth.ics.swkm.model2.vocabulary.RdfSchema;
 import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import junit.framework.TestCase;
 import junit.framework.TestSuite;
 
@@ -58,10 +68,12 @@ public abstract class LabelManagerTest extends TestCase {
     public static TestSuite suite() {
         TestSuite suite = new TestSuite();
         suite.addTestSuite(NonIncrementalMainMemoryManagerTest.class);
+        suite.addTestSuite(ParallelNonIncrementalMainMemoryManagerTest.class);
+        suite.addTestSuite(IncrementalMainMemoryManagerTest.class);
         return suite;
     }
 
-    private void prepareModel(Model model) {
+    void prepareModel(Model model) {
         model.add().newClass(ns + "A");
         model.add().newClass(ns + "A1");
         model.add().newClass(ns + "A11");
@@ -187,4 +199,234 @@ public abstract class LabelManagerTest extends TestCase {
             return new LabelManagers.NonIncrementalMainMemoryManager(model, labeler);
         }
     }
+
+    public static class ParallelNonIncrementalMainMemoryManagerTest extends LabelManagerTest {
+        private final ExecutorService executor = Executors.newFixedThreadPool(4);
+
+        public ParallelNonIncrementalMainMemoryManagerTest(String testName) {
+            super(testName);
+        }
+
+        @Override
+        protected void tearDown() throws Exception {
+            executor.shutdown();
+            super.tearDown();
+        }
+
+        @Override
+        protected LabelManager newLabelManager(Model model, Labeler labeler) {
+            return new LabelManagers.NonIncrementalMainMemoryManager(model, labeler, executor);
+        }
+
+        public void testReportsLabelingTimes() {
+            Model model = ModelBuilder.newSparse().build();
+            LabelManagers.NonIncrementalMainMemoryManager labelManager =
+                    (LabelManagers.NonIncrementalMainMemoryManager)newLabelManager(model, Labelers.newDefault());
+            model.setLabelManager(labelManager);
+            assertTrue(labelManager.getLastLabelingTimes().isEmpty());
+
+            prepareModel(model);
+            model.updateLabels();
+            assertEquals(EnumSet.of(RdfType.CLASS, RdfType.PROPERTY, RdfType.METACLASS, RdfType.METAPROPERTY),
+                    labelManager.getLastLabelingTimes().keySet());
+        }
+
+        public void testInterruptAbortsLabeling() throws InterruptedException {
+            Model model = ModelBuilder.newSparse().build();
+            prepareModel(model);
+            final CountDownLatch started = new CountDownLatch(1);
+            //a labeler that blocks until it is interrupted
+            Labeler labeler = new Labeler() {
+                public void assignLabels(Hierarchy hierarchy, TreeBuilder treeBuilder) {
+                    started.countDown();
+                    try {
+                        new CountDownLatch(1).await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+            };
+            LabelManagers.NonIncrementalMainMemoryManager labelManager =
+                    (LabelManagers.NonIncrementalMainMemoryManager)newLabelManager(model, labeler);
+            final Thread labelingThread = Thread.currentThread();
+            Thread interrupter = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        started.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    labelingThread.interrupt();
+                }
+            };
+            interrupter.start();
+            try {
+                labelManager.updateLabels(null);
+                fail();
+            } catch (RuntimeException e) {
+                assertTrue(e.getCause() instanceof InterruptedException);
+            } finally {
+                interrupter.join();
+            }
+            assertTrue(Thread.interrupted());
+            assertFalse(labelManager.areLabelsAvailable());
+            assertTrue(labelManager.getLastLabelingTimes().isEmpty());
+        }
+    }
+
+    public static class IncrementalMainMemoryManagerTest extends LabelManagerTest {
+        public IncrementalMainMemoryManagerTest(String testName) {
+            super(testName);
+        }
+
+        @Override
+        protected LabelManager newLabelManager(Model model, Labeler labeler) {
+            return new LabelManagers.IncrementalMainMemoryManager(model, labeler);
+        }
+
+        public void testInstanceTriplesKeepLabels() {
+            Model model = ModelBuilder.newSparse().build();
+            LabelManager labelManager = newLabelManager(model, Labelers.newDefault());
+            model.setLabelManager(labelManager);
+            prepareModel(model);
+            model.updateLabels();
+            assertTrue(labelManager.areLabelsAvailable());
+
+            model.add().s(ns + "X").p(Rdf.TYPE).o(ns + "A11");
+            model.add().s(ns + "X").p(ns + "P1").o(ns + "Z");
+            model.add().s(ns + "X").p(ns + "P3").o("\"a literal\"");
+            assertTrue(labelManager.areLabelsAvailable());
+
+            model.add().newClass(ns + "A3");
+            assertFalse(labelManager.areLabelsAvailable());
+        }
+
+        public void testAgreesWithHierarchyUnderUpdates() {
+            Model model = ModelBuilder.newSparse().build();
+            LabelManager labelManager = newLabelManager(model, Labelers.newDefault());
+            model.setLabelManager(labelManager);
+            Random random = new Random(17);
+
+            //parents of each class, as created
+            List<Set<Integer>> parents = Lists.newArrayList();
+            for (int i = 0; i < 60; i++) {
+                model.add().newClass(ns + "C" + i);
+                Set<Integer> classParents = Sets.newHashSet();
+                for (int j = 0; i > 0 && j < 1 + random.nextInt(2); j++) {
+                    int parent = random.nextInt(i);
+                    classParents.add(parent);
+                    model.add().s(ns + "C" + i).p(RdfSchema.SUBCLASSOF).o(ns + "C" + parent);
+                }
+                parents.add(classParents);
+                model.add().s(ns + "I" + i).p(Rdf.TYPE).o(ns + "C" + i);
+
+                if (i % 4 == 0) {
+                    //remove an is-a edge of some class, which relabels its subtree
+                    int kid = random.nextInt(i + 1);
+                    if (!parents.get(kid).isEmpty()) {
+                        int parent = parents.get(kid).iterator().next();
+                        model.triples().s(ns + "C" + kid).p(RdfSchema.SUBCLASSOF).o(ns + "C" + parent).fetch().delete();
+                        parents.get(kid).remove(parent);
+                    }
+                }
+                if (i % 5 == 0 || i % 4 == 0) {
+                    for (int a = 0; a <= i; a++) {
+                        for (int d = 0; d <= i; d++) {
+                            assertEquals("C" + a + " ancestor of C" + d + "?",
+                                    isAncestor(parents, a, d),
+                                    labelManager.isFirstAncestorOfSecond(
+                                        model.mapResource(ns + "C" + a), model.mapResource(ns + "C" + d)));
+                        }
+                    }
+                }
+            }
+        }
+
+        public void testRelabelsOnlyAffectedSubtree() {
+            Model model = ModelBuilder.newSparse().build();
+            LabelManagers.IncrementalMainMemoryManager labelManager =
+                    (LabelManagers.IncrementalMainMemoryManager)newLabelManager(model, Labelers.newDefault());
+            model.setLabelManager(labelManager);
+            prepareModel(model);
+            model.updateLabels();
+            Map<String, Interval> treeLabels = treeLabels(labelManager, model, "A", "A1", "A11", "A2", "A21");
+
+            //a new class under A1 fits in its free gap
+            model.add().newClass(ns + "A12");
+            model.add().s(ns + "A12").p(RdfSchema.SUBCLASSOF).o(ns + "A1");
+            assertFalse(labelManager.areLabelsAvailable());
+            model.updateLabels();
+            assertEquals(treeLabels, treeLabels(labelManager, model, "A", "A1", "A11", "A2", "A21"));
+            assertAncestry(labelManager, model, "A1", "A12", true);
+            assertAncestry(labelManager, model, "A", "A12", true);
+            assertAncestry(labelManager, model, "A2", "A12", false);
+            assertAncestry(labelManager, model, "A11", "A12", false);
+
+            //A21 is relabeled out of A2, the rest keep their labels
+            model.triples().s(ns + "A21").p(RdfSchema.SUBCLASSOF).o(ns + "A2").fetch().delete();
+            assertFalse(labelManager.areLabelsAvailable());
+            model.updateLabels();
+            treeLabels.remove("A21");
+            assertEquals(treeLabels, treeLabels(labelManager, model, "A", "A1", "A11", "A2"));
+            assertAncestry(labelManager, model, "A2", "A21", false);
+            assertAncestry(labelManager, model, "A", "A21", false);
+            assertTrue(labelManager.isFirstAncestorOfSecond(
+                    model.mapResource(RdfSchema.RESOURCE), model.mapResource(ns + "A21")));
+
+            //a new edge between old classes
+            model.add().s(ns + "A21").p(RdfSchema.SUBCLASSOF).o(ns + "A1");
+            model.updateLabels();
+            assertEquals(treeLabels, treeLabels(labelManager, model, "A", "A1", "A11", "A2"));
+            assertAncestry(labelManager, model, "A1", "A21", true);
+            assertAncestry(labelManager, model, "A", "A21", true);
+            assertAncestry(labelManager, model, "A2", "A21", false);
+
+            //a non-tree edge is removed along with the propagated labels it induced
+            model.triples().s(ns + "A21").p(RdfSchema.SUBCLASSOF).o(ns + "A1").fetch().delete();
+            model.updateLabels();
+            assertAncestry(labelManager, model, "A1", "A21", false);
+            assertAncestry(labelManager, model, "A", "A21", false);
+
+            //removing A1 from A takes its whole subtree out of A
+            model.triples().s(ns + "A1").p(RdfSchema.SUBCLASSOF).o(ns + "A").fetch().delete();
+            model.updateLabels();
+            assertEquals(treeLabels.get("A2"), labelManager.getLabelOf(model.mapResource(ns + "A2")).getTreeLabel());
+            for (String descendant : new String[] { "A1", "A11", "A12" }) {
+                assertAncestry(labelManager, model, "A", descendant, false);
+            }
+            assertAncestry(labelManager, model, "A1", "A11", true);
+            assertAncestry(labelManager, model, "A1", "A12", true);
+            assertAncestry(labelManager, model, "A", "A2", true);
+            assertTrue(labelManager.areLabelsAvailable());
+        }
+
+        private static Map<String, Interval> treeLabels(LabelManagers.IncrementalMainMemoryManager labelManager,
+                Model model, String... classes) {
+            Map<String, Interval> treeLabels = Maps.newHashMap();
+            for (String c : classes) {
+                treeLabels.put(c, labelManager.getLabelOf(model.mapResource(ns + c)).getTreeLabel());
+            }
+            return treeLabels;
+        }
+
+        private static void assertAncestry(LabelManager labelManager, Model model,
+                String ancestor, String descendant, boolean expected) {
+            assertEquals(ancestor + " ancestor of " + descendant + "?", expected,
+                    labelManager.isFirstAncestorOfSecond(
+                        model.mapResource(ns + ancestor), model.mapResource(ns + descendant)));
+        }
+
+        private static boolean isAncestor(List<Set<Integer>> parents, int ancestor, int descendant) {
+            if (ancestor == descendant) {
+                return true;
+            }
+            for (int parent : parents.get(descendant)) {
+                if (isAncestor(parents, ancestor, parent)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
 }